@@ -0,0 +1,1227 @@
+/*
+ * Copyright (C) 2021 peter.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jemu.micro;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * This class implements a two pass assembler for source files. Instructions
+ * are translated by the Mnemonic classes of a Debugger, so it works for every
+ * CPU that the debugger supports (Z80, Intel 4004, Seiko UC 2000).
+ * 
+ * Source lines have the form
+ *   [label[:]] [operation [operand {, operand}]] [; comment]
+ * A label starts in the first column or ends with a colon. Directives are
+ * ORG, EQU (or =), DB/DEFB, DW/DEFW, DS/DEFS, INCLUDE and END.
+ * 
+ * Operands may contain expressions with the operators + - * / % &amp; | ^
+ * &lt;&lt; &gt;&gt; ~ and parentheses over numbers ($hex, 0xhex, %binary,
+ * decimal, 'c'), symbols and $ (the address of the current line). Operands
+ * that are not expressions (register names, conditions) are passed to the
+ * Mnemonic classes unchanged; "(expr)" and "(IX+expr)" keep the brackets.
+ * 
+ * Pass 1 assigns the addresses of all labels, using 0 for operands that
+ * refer to symbols defined later; pass 2 generates the code. Addresses
+ * count memory units of the CPU (nibbles on the 4004), see
+ * Debugger.getMemoryUnitBits.
+ * 
+ * @author peter
+ */
+public class Assembler {
+    public static final int MAX_INCLUDE_DEPTH = 16;
+    public static final int MAX_ERRORS = 100;
+    public static final long MAX_ADDRESS = 0x100000L;
+    
+    public static final Set<String> DIRECTIVES = new HashSet<>(Arrays.asList(
+            "ORG", "EQU", "=", "DB", "DEFB", "DW", "DEFW", "DS", "DEFS", "INCLUDE", "END"));
+    
+    /**
+     * Mnemonics whose last operand is a displacement to the next instruction
+     */
+    static final Set<Class<?>> RELATIVE_BRANCHES = new HashSet<>(Arrays.asList(
+            Z80Debugger.JR.class, Z80Debugger.JRC.class, Z80Debugger.JRNC.class,
+            Z80Debugger.JRZ.class, Z80Debugger.JRNZ.class, Z80Debugger.DJNZ.class));
+    
+    /**
+     * Mnemonics whose last operand is an address in the page of the instruction
+     */
+    static final Set<Class<?>> PAGE_BRANCHES = new HashSet<>(Arrays.asList(
+            Intel4004Debugger.JCN.class, Intel4004Debugger.ISZ.class));
+    
+    /**
+     * Mnemonics whose last operand is a forward offset in words to the next
+     * instruction (UC 2000 BTJR and CPJR)
+     */
+    static final Set<Class<?>> WORD_OFFSET_BRANCHES = new HashSet<>(Arrays.asList(
+            SeikoUC2000Debugger.BTJR.class, SeikoUC2000Debugger.CPJR.class));
+    
+    /**
+     * Mnemonics whose last operand is a forward offset in bytes to the next
+     * instruction (UC 2000 CPFJR)
+     */
+    static final Set<Class<?>> BYTE_OFFSET_BRANCHES = new HashSet<>(Arrays.asList(
+            SeikoUC2000Debugger.CPFJR.class));
+    
+    static final String HEX_DIGITS = "0123456789ABCDEF";
+    
+    /**
+     * A line of source code and the result of assembling it
+     */
+    public static class SourceLine {
+        String fileName;
+        int lineNumber;
+        String text;
+        String label;
+        String operation;
+        String operands;
+        long address;
+        int length;
+        
+        public SourceLine(String fileName, int lineNumber, String text) {
+            this.fileName = fileName;
+            this.lineNumber = lineNumber;
+            this.text = text;
+        }
+        
+        public String getFileName() {
+            return this.fileName;
+        }
+        
+        public int getLineNumber() {
+            return this.lineNumber;
+        }
+        
+        public String getText() {
+            return this.text;
+        }
+        
+        public long getAddress() {
+            return this.address;
+        }
+        
+        /**
+         * Returns the number of memory units that this line generated
+         * 
+         * @return the length (int)
+         */
+        public int getLength() {
+            return this.length;
+        }
+    }
+    
+    Debugger debugger;
+    Map<String, Debugger.Mnemonic> mnemonics;
+    int unitBits;
+    boolean bigEndian;
+    Debugger.Tokenizer tokenizer = new Debugger.Tokenizer();
+    
+    List<SourceLine> lines = new ArrayList<>();
+    Set<String> symbolNames = new HashSet<>();
+    Map<String, Long> symbols = new HashMap<>();
+    List<String> errors = new ArrayList<>();
+    
+    byte[] image = new byte[0];
+    long lowAddress;
+    long highAddress;
+    
+    // state of the current pass
+    int pass;
+    long location;
+    SourceLine currentLine;
+    boolean forwardReference;
+    
+    // state of the expression parser
+    String expression;
+    int pos;
+    
+    /**
+     * Creates a new instance of Assembler for the CPU of a debugger
+     * 
+     * @param debugger (Debugger) the debugger that provides the mnemonics
+     */
+    public Assembler(Debugger debugger) {
+        this.debugger = debugger;
+        this.mnemonics = debugger.getMnemonics();
+        this.unitBits = debugger.getMemoryUnitBits();
+        this.bigEndian = debugger.isBigEndian();
+    }
+    
+    /**
+     * Assembles a source file
+     * 
+     * @param source (File) the source file
+     * @throws IOException if a file could not be read
+     * @throws SyntaxErrorException if the source contains errors, the message lists all of them
+     */
+    public void assemble(File source) throws IOException, SyntaxErrorException {
+        reset();
+        this.lines.addAll(load(source, 0));
+        assembleLines();
+    }
+    
+    /**
+     * Assembles source code; includes are searched relative to the current
+     * directory
+     * 
+     * @param sourceName (String) the name used in error messages
+     * @param source (String) the source code
+     * @throws IOException if an included file could not be read
+     * @throws SyntaxErrorException if the source contains errors, the message lists all of them
+     */
+    public void assemble(String sourceName, String source) throws IOException, SyntaxErrorException {
+        reset();
+        this.lines.addAll(parse(sourceName, null, Arrays.asList(source.split("\r?\n", -1)), 0));
+        assembleLines();
+    }
+    
+    protected void reset() {
+        this.lines.clear();
+        this.symbolNames.clear();
+        this.symbols.clear();
+        this.errors.clear();
+        this.image = new byte[0];
+        this.lowAddress = Long.MAX_VALUE;
+        this.highAddress = Long.MIN_VALUE;
+    }
+    
+    protected List<SourceLine> load(File file, int depth) throws IOException {
+        List<String> text = Files.readAllLines(file.toPath(), StandardCharsets.ISO_8859_1);
+        return parse(file.getPath(), file.getAbsoluteFile().getParentFile(), text, depth);
+    }
+    
+    /**
+     * Splits source lines into label, operation and operands, collects the
+     * names of all symbols and expands includes
+     * 
+     * @param fileName (String) the file name for error messages
+     * @param directory (File) the directory for includes or null
+     * @param text (List&lt;String&gt;) the lines
+     * @param depth (int) the include depth
+     * @return the parsed lines (List&lt;SourceLine&gt;)
+     * @throws IOException if an included file could not be read
+     */
+    protected List<SourceLine> parse(String fileName, File directory, List<String> text, int depth) throws IOException {
+        List<SourceLine> result = new ArrayList<>(text.size());
+        
+        for(int i=0; i<text.size(); i++) {
+            SourceLine line = new SourceLine(fileName, i + 1, text.get(i));
+            result.add(line);
+            splitLine(line);
+            
+            if(line.label != null) {
+                if(!isIdentifier(line.label))
+                    error(line, "Illegal symbol name " + line.label);
+                else if(!this.symbolNames.add(line.label))
+                    error(line, "Symbol " + line.label + " defined twice");
+            }
+            
+            if("INCLUDE".equals(line.operation)) {
+                String name = unquote(line.operands);
+                if(depth >= MAX_INCLUDE_DEPTH) {
+                    error(line, "Includes nested too deep");
+                    continue;
+                }
+                File file = new File(name);
+                if(!file.isAbsolute() && (directory != null))
+                    file = new File(directory, name);
+                
+                try {
+                    result.addAll(load(file, depth + 1));
+                }
+                catch (IOException ex) {
+                    error(line, "Cannot read include file " + name + ": " + ex.getMessage());
+                }
+            }
+            else if("END".equals(line.operation)) {
+                break;
+            }
+        }
+        
+        return result;
+    }
+    
+    protected void splitLine(SourceLine line) {
+        String code = stripComment(line.text);
+        int length = code.length();
+        int p = 0;
+        
+        // label in the first column or ending with a colon
+        String first = null;
+        boolean firstColumn = (length > 0) && !Character.isWhitespace(code.charAt(0));
+        while((p < length) && Character.isWhitespace(code.charAt(p))) p++;
+        int start = p;
+        while((p < length) && !Character.isWhitespace(code.charAt(p)) && (code.charAt(p) != ':')) p++;
+        if(p > start) first = code.substring(start, p);
+        if(first == null) return;
+        
+        boolean colon = (p < length) && (code.charAt(p) == ':');
+        if(colon) p++;
+        
+        String rest = code.substring(p).trim();
+        String next = firstWord(rest);
+        String firstUpper = first.toUpperCase();
+        
+        if(colon || (firstColumn && !isOperation(firstUpper)) || "EQU".equalsIgnoreCase(next) || rest.startsWith("=")) {
+            line.label = firstUpper;
+            if(rest.isEmpty()) return;
+            
+            if(rest.startsWith("=")) {
+                line.operation = "=";
+                line.operands = rest.substring(1).trim();
+            }
+            else {
+                line.operation = next.toUpperCase();
+                line.operands = rest.substring(next.length()).trim();
+            }
+        }
+        else {
+            line.operation = firstUpper;
+            line.operands = rest;
+        }
+    }
+    
+    protected boolean isOperation(String word) {
+        return DIRECTIVES.contains(word) || this.mnemonics.containsKey(word);
+    }
+    
+    protected static String firstWord(String text) {
+        int p = 0;
+        while((p < text.length()) && !Character.isWhitespace(text.charAt(p)) && (text.charAt(p) != '=')) p++;
+        return text.substring(0, p);
+    }
+    
+    protected static String stripComment(String text) {
+        char quote = 0;
+        for(int i=0; i<text.length(); i++) {
+            char c = text.charAt(i);
+            if(quote != 0) {
+                if(c == quote) quote = 0;
+            }
+            else if(c == ';') {
+                return text.substring(0, i);
+            }
+            else if((c == '"') || ((c == '\'') && isCharLiteral(text, i))) {
+                quote = c;
+            }
+        }
+        return text;
+    }
+    
+    // an apostrophe after a register (AF') does not start a character
+    protected static boolean isCharLiteral(String text, int i) {
+        return (i == 0) || !Character.isLetterOrDigit(text.charAt(i - 1));
+    }
+    
+    protected static String unquote(String text) {
+        text = text.trim();
+        if((text.length() >= 2) && ((text.charAt(0) == '"') || (text.charAt(0) == '\'')) && (text.charAt(text.length() - 1) == text.charAt(0)))
+            return text.substring(1, text.length() - 1);
+        return text;
+    }
+    
+    protected static boolean isIdentifier(String text) {
+        if(text.isEmpty() || !isIdentifierStart(text.charAt(0))) return false;
+        for(int i=1; i<text.length(); i++) {
+            if(!isIdentifierPart(text.charAt(i))) return false;
+        }
+        return true;
+    }
+    
+    protected static boolean isIdentifierStart(char c) {
+        return Character.isLetter(c) || (c == '_') || (c == '.');
+    }
+    
+    protected static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || (c == '_') || (c == '.');
+    }
+    
+    protected void assembleLines() throws SyntaxErrorException {
+        if(this.errors.isEmpty()) {
+            runPass(1);
+            resolveEquates();
+            // pass 2 would only repeat the errors of pass 1
+            if(this.errors.isEmpty())
+                runPass(2);
+        }
+        
+        if(!this.errors.isEmpty())
+            throw new SyntaxErrorException(String.join("\n", this.errors));
+    }
+    
+    protected void runPass(int pass) {
+        this.pass = pass;
+        this.location = 0;
+        
+        for(SourceLine line : this.lines) {
+            this.currentLine = line;
+            int length = line.length;
+            boolean failed = true;
+            try {
+                assembleLine(line);
+                failed = false;
+            }
+            catch (SyntaxErrorException ex) {
+                error(line, ex.getMessage());
+            }
+            catch (RuntimeException ex) {
+                // the Mnemonic classes do not check every malformed operand
+                error(line, "Syntax error in <" + line.text.trim() + ">");
+            }
+            
+            // keep the addresses of pass 1, so that one error does not move all following labels
+            if(failed && (pass == 2)) {
+                line.length = length;
+                this.location = line.address + length;
+            }
+            
+            if("END".equals(line.operation)) break;
+            if(this.errors.size() >= MAX_ERRORS) break;
+        }
+    }
+    
+    /**
+     * Resolves the equates that refer to symbols defined further down, so
+     * that pass 2 knows all values before it uses them
+     */
+    protected void resolveEquates() {
+        List<SourceLine> open = new ArrayList<>();
+        for(SourceLine line : this.lines) {
+            if(("EQU".equals(line.operation) || "=".equals(line.operation)) && (line.label != null) && !this.symbols.containsKey(line.label))
+                open.add(line);
+        }
+        
+        boolean progress = true;
+        while(progress && !open.isEmpty()) {
+            progress = false;
+            for(int i=open.size()-1; i>=0; i--) {
+                SourceLine line = open.get(i);
+                this.currentLine = line;
+                try {
+                    defineEquate(line);
+                }
+                catch (SyntaxErrorException ex) {
+                    error(line, ex.getMessage());
+                    return;
+                }
+                if(this.symbols.containsKey(line.label)) {
+                    open.remove(i);
+                    progress = true;
+                }
+            }
+        }
+        
+        for(SourceLine line : open) {
+            error(line, "Symbol " + line.label + " cannot be resolved");
+        }
+    }
+    
+    protected void assembleLine(SourceLine line) throws SyntaxErrorException {
+        String operation = line.operation;
+        line.address = this.location;
+        line.length = 0;
+        
+        if(line.label != null) {
+            if("EQU".equals(operation) || "=".equals(operation)) {
+                defineEquate(line);
+                return;
+            }
+            defineSymbol(line, line.label, this.location);
+        }
+        
+        if(operation == null) return;
+        
+        switch (operation) {
+            case "ORG":
+                this.location = evaluateNow(line.operands, "ORG");
+                line.address = this.location;
+                return;
+                
+            case "DB":
+            case "DEFB":
+                for(String operand : splitOperands(line.operands)) {
+                    if(isString(operand)) {
+                        String text = operand.substring(1, operand.length() - 1);
+                        for(int i=0; i<text.length(); i++) {
+                            emitByte(line, text.charAt(i));
+                        }
+                    }
+                    else {
+                        long value = evaluateOperand(operand);
+                        if((value < -128) || (value > 255))
+                            throw new SyntaxErrorException("Value " + operand + " does not fit in 8 bit");
+                        emitByte(line, value);
+                    }
+                }
+                return;
+                
+            case "DW":
+            case "DEFW":
+                for(String operand : splitOperands(line.operands)) {
+                    long value = evaluateOperand(operand);
+                    if((value < -32768) || (value > 65535))
+                        throw new SyntaxErrorException("Value " + operand + " does not fit in 16 bit");
+                    emitWord(line, value);
+                }
+                return;
+                
+            case "DS":
+            case "DEFS":
+                List<String> operands = splitOperands(line.operands);
+                if(operands.isEmpty() || (operands.size() > 2))
+                    throw new SyntaxErrorException("DS requires a size and an optional fill value");
+                long size = evaluateNow(operands.get(0), "DS");
+                if((size < 0) || (size > MAX_ADDRESS))
+                    throw new SyntaxErrorException("Illegal size " + operands.get(0));
+                long fill = (operands.size() > 1) ? evaluateOperand(operands.get(1)) : 0;
+                for(long i=0; i<size; i++) {
+                    emit(line, (byte)fill);
+                }
+                return;
+                
+            case "EQU":
+            case "=":
+                throw new SyntaxErrorException(operation + " requires a symbol name");
+                
+            case "INCLUDE":
+            case "END":
+                return;
+                
+            default:
+                assembleInstruction(line);
+        }
+    }
+    
+    protected void assembleInstruction(SourceLine line) throws SyntaxErrorException {
+        Debugger.Mnemonic mnemonic = this.mnemonics.get(line.operation);
+        if(mnemonic == null)
+            throw new SyntaxErrorException("Unknown mnemonic " + line.operation);
+        
+        List<String> list = splitOperands(line.operands);
+        StringBuilder operands = new StringBuilder();
+        for(int i=0; i<list.size(); i++) {
+            if(operands.length() > 0) operands.append(", ");
+            if(i == list.size() - 1)
+                operands.append(substituteBranch(mnemonic, list.get(i)));
+            else
+                operands.append(substitute(list.get(i)));
+        }
+        
+        this.tokenizer.reset(operands.toString());
+        byte[] code = mnemonic.getOpCodes(this.tokenizer);
+        
+        for(byte unit : code) {
+            emit(line, unit);
+        }
+    }
+    
+    protected void defineEquate(SourceLine line) throws SyntaxErrorException {
+        this.forwardReference = false;
+        long value = evaluateOperand(line.operands);
+        
+        // symbols defined further down are resolved by resolveEquates
+        if(!this.forwardReference)
+            this.symbols.put(line.label, value);
+    }
+    
+    protected void defineSymbol(SourceLine line, String name, long value) throws SyntaxErrorException {
+        if(this.pass == 1) {
+            this.symbols.put(name, value);
+        }
+        else if(this.symbols.get(name) != value) {
+            throw new SyntaxErrorException("Address of " + name + " changed between the passes");
+        }
+    }
+    
+    protected void emit(SourceLine line, byte unit) throws SyntaxErrorException {
+        if((this.location < 0) || (this.location >= MAX_ADDRESS))
+            throw new SyntaxErrorException("Address $" + Long.toHexString(this.location) + " out of range");
+        
+        if(this.pass == 2) {
+            int offset = (int)this.location;
+            if(offset >= this.image.length)
+                this.image = Arrays.copyOf(this.image, Math.max(offset + 1, this.image.length * 2));
+            
+            this.image[offset] = (this.unitBits == 4) ? (byte)(unit & 0x0F) : unit;
+            this.lowAddress = Math.min(this.lowAddress, this.location);
+            this.highAddress = Math.max(this.highAddress, this.location + 1);
+        }
+        
+        this.location++;
+        line.length++;
+    }
+    
+    protected void emitByte(SourceLine line, long value) throws SyntaxErrorException {
+        if(this.unitBits == 4) {
+            emit(line, (byte)((value >> 4) & 0x0F));
+            emit(line, (byte)(value & 0x0F));
+        }
+        else {
+            emit(line, (byte)value);
+        }
+    }
+    
+    protected void emitWord(SourceLine line, long value) throws SyntaxErrorException {
+        if(this.bigEndian) {
+            emitByte(line, value >> 8);
+            emitByte(line, value);
+        }
+        else {
+            emitByte(line, value);
+            emitByte(line, value >> 8);
+        }
+    }
+    
+    protected static boolean isString(String operand) {
+        return (operand.length() >= 2) && (operand.charAt(0) == '"') && operand.endsWith("\"")
+                || (operand.length() > 3) && (operand.charAt(0) == '\'') && operand.endsWith("'");
+    }
+    
+    /**
+     * Splits operands at the commas that are not in brackets or quotes
+     * 
+     * @param operands (String) the operands
+     * @return the trimmed operands (List&lt;String&gt;)
+     */
+    protected static List<String> splitOperands(String operands) {
+        List<String> result = new ArrayList<>();
+        if((operands == null) || operands.isEmpty()) return result;
+        
+        int depth = 0;
+        char quote = 0;
+        int start = 0;
+        for(int i=0; i<operands.length(); i++) {
+            char c = operands.charAt(i);
+            if(quote != 0) {
+                if(c == quote) quote = 0;
+            }
+            else if((c == '"') || ((c == '\'') && isCharLiteral(operands, i))) {
+                quote = c;
+            }
+            else if(c == '(') {
+                depth++;
+            }
+            else if(c == ')') {
+                depth--;
+            }
+            else if((c == ',') && (depth == 0)) {
+                result.add(operands.substring(start, i).trim());
+                start = i + 1;
+            }
+        }
+        result.add(operands.substring(start).trim());
+        
+        return result;
+    }
+    
+    /**
+     * Replaces the expression in an instruction operand by its value in the
+     * "$hex" notation of the Mnemonic classes. Register names, conditions and
+     * operands that are not expressions are returned unchanged.
+     * 
+     * @param operand (String) the operand
+     * @return the operand for the Mnemonic (String)
+     * @throws SyntaxErrorException if the expression is not valid
+     */
+    protected String substitute(String operand) throws SyntaxErrorException {
+        if(operand.startsWith("(") && operand.endsWith(")") && (closingBracket(operand, 0) == operand.length() - 1)) {
+            String inner = operand.substring(1, operand.length() - 1).trim();
+            
+            // (IX+d) and (IY+d)
+            if((inner.length() > 2) && (inner.regionMatches(true, 0, "IX", 0, 2) || inner.regionMatches(true, 0, "IY", 0, 2))) {
+                String offset = inner.substring(2).trim();
+                if(offset.startsWith("+") || offset.startsWith("-")) {
+                    Long value = tryEvaluate(offset);
+                    if(value == null) return operand;
+                    // not all Mnemonic classes know "(IX-d)", a negative
+                    // offset is written in two's complement, e.g. "(IX+$FE)"
+                    if((value < 0) && (value >= -128)) value &= 0xFF;
+                    return "(" + inner.substring(0, 2) + "+" + toHex(value) + ")";
+                }
+                return operand;
+            }
+            
+            Long value = tryEvaluate(inner);
+            return (value == null) ? operand : "(" + toHex(value) + ")";
+        }
+        
+        Long value = tryEvaluate(operand);
+        return (value == null) ? operand : toHex(value);
+    }
+    
+    /**
+     * Replaces the target address of a branch by the value that the Mnemonic
+     * expects: the displacement target - ($ + 2) for the relative jumps of
+     * the Z80 (JR, DJNZ), the address in the page for JCN and ISZ of the
+     * 4004 and the forward offset from $ + 2 for the UC 2000 (in words for
+     * BTJR and CPJR, in bytes for CPFJR). Operands of other mnemonics are
+     * passed to substitute.
+     * 
+     * @param mnemonic (Debugger.Mnemonic) the mnemonic of the line
+     * @param operand (String) the last operand of the line
+     * @return the operand for the Mnemonic (String)
+     * @throws SyntaxErrorException if the expression is not valid or the target cannot be reached
+     */
+    protected String substituteBranch(Debugger.Mnemonic mnemonic, String operand) throws SyntaxErrorException {
+        boolean relative = RELATIVE_BRANCHES.contains(mnemonic.getClass());
+        boolean inPage = PAGE_BRANCHES.contains(mnemonic.getClass());
+        boolean wordOffset = WORD_OFFSET_BRANCHES.contains(mnemonic.getClass());
+        boolean byteOffset = BYTE_OFFSET_BRANCHES.contains(mnemonic.getClass());
+        if(!relative && !inPage && !wordOffset && !byteOffset) return substitute(operand);
+        
+        Long target = tryEvaluate(operand);
+        if(target == null) return substitute(operand);
+        
+        // the targets of pass 1 may still be unknown, the length does not depend on them
+        if(this.pass == 1) return toHex(0);
+        
+        if(relative) {
+            long displacement = target - (this.location + 2);
+            if((displacement < -128) || (displacement > 127))
+                throw new SyntaxErrorException("Relative jump to $" + Long.toHexString(target) + " out of range");
+            return toHex(displacement & 0xFF);
+        }
+        
+        if(wordOffset || byteOffset) {
+            // the UC 2000 only jumps forward, the offset has 5 bits
+            long offset = target - (this.location + 2);
+            if((target & 1) != 0)
+                throw new SyntaxErrorException("Jump to odd address $" + Long.toHexString(target));
+            if(wordOffset) offset >>= 1;
+            if((offset < 0) || (offset > 31))
+                throw new SyntaxErrorException("Relative jump to $" + Long.toHexString(target) + " out of range (forward by up to 31 " + (wordOffset ? "words)" : "bytes)"));
+            return toHex(offset);
+        }
+        
+        if((target & ~0xFFL) != (this.location & ~0xFFL))
+            throw new SyntaxErrorException("Jump to $" + Long.toHexString(target) + " leaves the page");
+        return toHex(target & 0xFF);
+    }
+    
+    protected static int closingBracket(String text, int open) {
+        int depth = 0;
+        for(int i=open; i<text.length(); i++) {
+            if(text.charAt(i) == '(') depth++;
+            else if((text.charAt(i) == ')') && (--depth == 0)) return i;
+        }
+        return -1;
+    }
+    
+    protected static String toHex(long value) {
+        return (value < 0) ? "$-" + Long.toHexString(-value) : "$" + Long.toHexString(value);
+    }
+    
+    /**
+     * Evaluates an expression that must be known in pass 1, e.g. for ORG
+     * 
+     * @param text (String) the expression
+     * @param directive (String) the directive for the error message
+     * @return the value (long)
+     * @throws SyntaxErrorException if the expression is not valid or uses symbols defined later
+     */
+    protected long evaluateNow(String text, String directive) throws SyntaxErrorException {
+        this.forwardReference = false;
+        long value = evaluateOperand(text);
+        if(this.forwardReference)
+            throw new SyntaxErrorException(directive + " must not use symbols that are defined later");
+        return value;
+    }
+    
+    /**
+     * Evaluates an expression; symbols that are not defined yet count as 0
+     * in pass 1
+     * 
+     * @param text (String) the expression
+     * @return the value (long)
+     * @throws SyntaxErrorException if the expression is not valid
+     */
+    protected long evaluateOperand(String text) throws SyntaxErrorException {
+        Long value = tryEvaluate(text);
+        if(value == null)
+            throw new SyntaxErrorException("Illegal expression " + text);
+        return value;
+    }
+    
+    /**
+     * Evaluates an expression. If the text uses a name that is not a symbol
+     * (e.g. a register) or is no expression, null is returned. In pass 1 the
+     * whole expression is 0 if it uses a symbol that is defined later.
+     * 
+     * @param text (String) the expression
+     * @return the value or null (Long)
+     * @throws SyntaxErrorException if the expression is not valid
+     */
+    protected Long tryEvaluate(String text) throws SyntaxErrorException {
+        if(text.isEmpty()) return null;
+        
+        this.expression = text;
+        this.pos = 0;
+        boolean forward = this.forwardReference;
+        this.forwardReference = false;
+        
+        Long value = parseOr();
+        if((value == null) || !atEnd()) {
+            this.forwardReference = forward;
+            return null;
+        }
+        
+        if(this.forwardReference && (this.pass == 1))
+            value = 0L;
+        this.forwardReference |= forward;
+        
+        return value;
+    }
+    
+    protected boolean atEnd() {
+        skipSpaces();
+        return this.pos >= this.expression.length();
+    }
+    
+    protected void skipSpaces() {
+        while((this.pos < this.expression.length()) && Character.isWhitespace(this.expression.charAt(this.pos)))
+            this.pos++;
+    }
+    
+    protected boolean accept(String token) {
+        skipSpaces();
+        if(this.expression.startsWith(token, this.pos)) {
+            this.pos += token.length();
+            return true;
+        }
+        return false;
+    }
+    
+    protected Long parseOr() throws SyntaxErrorException {
+        Long value = parseXor();
+        while((value != null) && accept("|")) {
+            Long right = parseXor();
+            value = (right == null) ? null : value | right;
+        }
+        return value;
+    }
+    
+    protected Long parseXor() throws SyntaxErrorException {
+        Long value = parseAnd();
+        while((value != null) && accept("^")) {
+            Long right = parseAnd();
+            value = (right == null) ? null : value ^ right;
+        }
+        return value;
+    }
+    
+    protected Long parseAnd() throws SyntaxErrorException {
+        Long value = parseShift();
+        while((value != null) && accept("&")) {
+            Long right = parseShift();
+            value = (right == null) ? null : value & right;
+        }
+        return value;
+    }
+    
+    protected Long parseShift() throws SyntaxErrorException {
+        Long value = parseSum();
+        while(value != null) {
+            if(accept("<<")) {
+                Long right = parseSum();
+                value = (right == null) ? null : value << right;
+            }
+            else if(accept(">>")) {
+                Long right = parseSum();
+                value = (right == null) ? null : value >> right;
+            }
+            else
+                break;
+        }
+        return value;
+    }
+    
+    protected Long parseSum() throws SyntaxErrorException {
+        Long value = parseProduct();
+        while(value != null) {
+            if(accept("+")) {
+                Long right = parseProduct();
+                value = (right == null) ? null : value + right;
+            }
+            else if(accept("-")) {
+                Long right = parseProduct();
+                value = (right == null) ? null : value - right;
+            }
+            else
+                break;
+        }
+        return value;
+    }
+    
+    protected Long parseProduct() throws SyntaxErrorException {
+        Long value = parseUnary();
+        while(value != null) {
+            if(accept("*")) {
+                Long right = parseUnary();
+                value = (right == null) ? null : value * right;
+            }
+            else if(accept("/") || accept("%")) {
+                boolean divide = this.expression.charAt(this.pos - 1) == '/';
+                Long right = parseUnary();
+                if(right == null) return null;
+                if(right == 0) {
+                    // the divisor may be a symbol that is still 0 in pass 1
+                    if(this.forwardReference) return 0L;
+                    throw new SyntaxErrorException("Division by zero");
+                }
+                value = divide ? value / right : value % right;
+            }
+            else
+                break;
+        }
+        return value;
+    }
+    
+    protected Long parseUnary() throws SyntaxErrorException {
+        if(accept("-")) {
+            Long value = parseUnary();
+            return (value == null) ? null : -value;
+        }
+        if(accept("+")) {
+            return parseUnary();
+        }
+        if(accept("~")) {
+            Long value = parseUnary();
+            return (value == null) ? null : ~value;
+        }
+        return parsePrimary();
+    }
+    
+    protected Long parsePrimary() throws SyntaxErrorException {
+        skipSpaces();
+        if(this.pos >= this.expression.length()) return null;
+        
+        char c = this.expression.charAt(this.pos);
+        
+        if(c == '(') {
+            this.pos++;
+            Long value = parseOr();
+            if((value == null) || !accept(")")) return null;
+            return value;
+        }
+        
+        if(c == '$') {
+            this.pos++;
+            if((this.pos < this.expression.length()) && (Character.digit(this.expression.charAt(this.pos), 16) >= 0))
+                return readNumber(16);
+            // $ alone is the address of the current line
+            return this.currentLine.address;
+        }
+        
+        if(c == '%') {
+            this.pos++;
+            return readNumber(2);
+        }
+        
+        if((c == '0') && (this.pos + 1 < this.expression.length()) && ((this.expression.charAt(this.pos + 1) == 'x') || (this.expression.charAt(this.pos + 1) == 'X'))) {
+            this.pos += 2;
+            return readNumber(16);
+        }
+        
+        if(Character.isDigit(c)) {
+            return readNumber(10);
+        }
+        
+        if((c == '\'') && (this.pos + 2 < this.expression.length()) && (this.expression.charAt(this.pos + 2) == '\'')) {
+            this.pos += 3;
+            return (long)this.expression.charAt(this.pos - 2);
+        }
+        
+        if(isIdentifierStart(c)) {
+            int start = this.pos;
+            while((this.pos < this.expression.length()) && isIdentifierPart(this.expression.charAt(this.pos)))
+                this.pos++;
+            String name = this.expression.substring(start, this.pos).toUpperCase();
+            
+            // registers, conditions etc. are no symbols
+            if(!this.symbolNames.contains(name)) return null;
+            
+            Long value = this.symbols.get(name);
+            if(value == null) {
+                if(this.pass == 2)
+                    throw new SyntaxErrorException("Symbol " + name + " is not defined");
+                this.forwardReference = true;
+                return 0L;
+            }
+            return value;
+        }
+        
+        return null;
+    }
+    
+    protected Long readNumber(int radix) {
+        int start = this.pos;
+        while((this.pos < this.expression.length()) && (Character.digit(this.expression.charAt(this.pos), radix) >= 0))
+            this.pos++;
+        
+        // a number must not run into letters, e.g. "1A" in decimal
+        if((this.pos == start) || ((this.pos < this.expression.length()) && isIdentifierPart(this.expression.charAt(this.pos))))
+            return null;
+        
+        try {
+            return Long.parseLong(this.expression.substring(start, this.pos), radix);
+        }
+        catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+    
+    protected void error(SourceLine line, String message) {
+        if(this.errors.size() < MAX_ERRORS)
+            this.errors.add(line.fileName + ":" + line.lineNumber + ": " + message);
+    }
+    
+    /**
+     * Returns the errors of the last assembly
+     * 
+     * @return the error messages (List&lt;String&gt;)
+     */
+    public List<String> getErrors() {
+        return this.errors;
+    }
+    
+    /**
+     * Returns the assembled source lines
+     * 
+     * @return the lines (List&lt;SourceLine&gt;)
+     */
+    public List<SourceLine> getLines() {
+        return this.lines;
+    }
+    
+    /**
+     * Returns all symbols and their values
+     * 
+     * @return the symbols sorted by name (Map&lt;String, Long&gt;)
+     */
+    public Map<String, Long> getSymbols() {
+        return new TreeMap<>(this.symbols);
+    }
+    
+    /**
+     * Returns the lowest address that code was generated for
+     * 
+     * @return the address (long)
+     */
+    public long getLowAddress() {
+        return (this.highAddress < 0) ? 0 : this.lowAddress;
+    }
+    
+    /**
+     * Returns the address after the highest generated unit
+     * 
+     * @return the address (long)
+     */
+    public long getHighAddress() {
+        return (this.highAddress < 0) ? 0 : this.highAddress;
+    }
+    
+    /**
+     * Returns the generated code from the lowest to the highest address, one
+     * memory unit per byte. Gaps are filled with 0.
+     * 
+     * @return the code (byte[])
+     */
+    public byte[] getCode() {
+        return Arrays.copyOfRange(this.image, (int)getLowAddress(), (int)getHighAddress());
+    }
+    
+    /**
+     * Returns the code as ROM image that is loaded like the bundled .bin
+     * files: byte by byte from getLowAddress(). For 4 bit CPUs two nibbles
+     * are packed into a byte the way Intel4004.readMemory4 reads them: the
+     * even address in the low nibble, the odd address in the high nibble.
+     * 
+     * @return the image (byte[])
+     */
+    public byte[] getBinary() {
+        byte[] code = getCode();
+        if(this.unitBits != 4) return code;
+        
+        long first = getLowAddress() >> 1;
+        byte[] packed = new byte[(int)(((getHighAddress() + 1) >> 1) - first)];
+        for(int i=0; i<code.length; i++) {
+            long address = getLowAddress() + i;
+            packed[(int)((address >> 1) - first)] |= ((address & 1) == 1) ? (byte)(code[i] << 4) : code[i];
+        }
+        return packed;
+    }
+    
+    /**
+     * Writes the ROM image
+     * 
+     * @param file (File) the .bin file
+     * @throws IOException if the file could not be written
+     */
+    public void writeBinary(File file) throws IOException {
+        try (OutputStream os = new FileOutputStream(file)) {
+            os.write(getBinary());
+        }
+    }
+    
+    /**
+     * Writes a listing with address, code, line number and source of every
+     * line
+     * 
+     * @param file (File) the listing file
+     * @throws IOException if the file could not be written
+     */
+    public void writeListing(File file) throws IOException {
+        try (PrintWriter out = new PrintWriter(file, "ISO-8859-1")) {
+            StringBuilder sb = new StringBuilder(120);
+            String fileName = null;
+            
+            for(SourceLine line : this.lines) {
+                if(!line.fileName.equals(fileName)) {
+                    fileName = line.fileName;
+                    out.println("; " + fileName);
+                }
+                
+                sb.setLength(0);
+                appendHex(sb, line.address, 4);
+                sb.append("  ");
+                int codeStart = sb.length();
+                for(int i=0; (i<line.length) && (i<8); i++) {
+                    appendHex(sb, Byte.toUnsignedLong(this.image[(int)line.address + i]), this.unitBits / 4);
+                    if(this.unitBits != 4) sb.append(' ');
+                }
+                if(line.length > 8) sb.append("...");
+                while(sb.length() < codeStart + 28) sb.append(' ');
+                
+                String number = Integer.toString(line.lineNumber);
+                for(int i=number.length(); i<5; i++) sb.append(' ');
+                sb.append(number).append("  ").append(line.text);
+                out.println(sb);
+            }
+            
+            out.println();
+            out.println("; " + this.symbols.size() + " symbols, " + (getHighAddress() - getLowAddress()) + " units");
+        }
+    }
+    
+    /**
+     * Writes the symbols sorted by name as EQU lines, so that the file can
+     * be included by other sources
+     * 
+     * @param file (File) the symbol file
+     * @throws IOException if the file could not be written
+     */
+    public void writeSymbols(File file) throws IOException {
+        try (PrintWriter out = new PrintWriter(file, "ISO-8859-1")) {
+            StringBuilder sb = new StringBuilder(64);
+            for(Map.Entry<String, Long> symbol : getSymbols().entrySet()) {
+                sb.setLength(0);
+                sb.append(symbol.getKey());
+                while(sb.length() < 24) sb.append(' ');
+                sb.append(" EQU ");
+                if(symbol.getValue() < 0) {
+                    sb.append(symbol.getValue());
+                }
+                else {
+                    sb.append('$');
+                    appendHex(sb, symbol.getValue(), 4);
+                }
+                out.println(sb);
+            }
+        }
+    }
+    
+    protected static void appendHex(StringBuilder sb, long value, int digits) {
+        int length = Math.max(digits, (64 - Long.numberOfLeadingZeros(value) + 3) / 4);
+        for(int i=length-1; i>=0; i--) {
+            sb.append(HEX_DIGITS.charAt((int)(value >>> (i * 4)) & 0x0F));
+        }
+    }
+    
+    /**
+     * Assembles a source file into a .bin file with a listing (.lst) and a
+     * symbol file (.sym) next to it.
+     * 
+     * Usage: Assembler z80|4004|uc2000 source.asm [output.bin]
+     * 
+     * @param args (String[]) the command line
+     * @throws Exception if the source could not be read or the output not written
+     */
+    public static void main(String[] args) throws Exception {
+        if((args.length < 2) || (args.length > 3)) {
+            System.err.println("Usage: Assembler z80|4004|uc2000 source.asm [output.bin]");
+            System.exit(1);
+        }
+        
+        Debugger debugger;
+        switch (args[0].toLowerCase()) {
+            case "z80":
+                debugger = new Z80Debugger();
+                break;
+                
+            case "4004":
+                debugger = new Intel4004Debugger();
+                break;
+                
+            case "uc2000":
+                debugger = new SeikoUC2000Debugger();
+                break;
+                
+            default:
+                System.err.println("Unknown CPU " + args[0]);
+                System.exit(1);
+                return;
+        }
+        
+        File source = new File(args[1]);
+        String baseName = (args.length > 2) ? args[2] : args[1];
+        int dot = baseName.lastIndexOf('.');
+        if(dot > baseName.lastIndexOf(File.separatorChar)) baseName = baseName.substring(0, dot);
+        
+        Assembler assembler = new Assembler(debugger);
+        long start = System.nanoTime();
+        try {
+            assembler.assemble(source);
+        }
+        catch (SyntaxErrorException ex) {
+            System.err.println(ex.getMessage());
+            System.exit(2);
+        }
+        long millis = (System.nanoTime() - start) / 1000000L;
+        
+        assembler.writeBinary(new File((args.length > 2) ? args[2] : baseName + ".bin"));
+        assembler.writeListing(new File(baseName + ".lst"));
+        assembler.writeSymbols(new File(baseName + ".sym"));
+        
+        System.out.println(assembler.getLines().size() + " lines, " + assembler.getCode().length + " units at $"
+                + Long.toHexString(assembler.getLowAddress()) + " in " + millis + " ms");
+    }
+}
@@ -0,0 +1,411 @@
+/*
+ * Copyright (C) 2021 peter.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jemu.micro;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class implements a bank switched memory. It owns a pool of RAM and/or
+ * ROM banks and divides its address window into slots of equal size. Each
+ * slot shows one of the banks, and writing to the control port selects which
+ * bank is visible in which slot.
+ * 
+ * When the memory is attached to a MemoryBus, switching a bank only changes
+ * the page table of the bus - no data is ever copied and accesses to other
+ * memory on the bus are not slowed down at all.
+ * 
+ * @author peter
+ */
+public class BankedMemory implements Memory {
+    
+    /**
+     * This interface decides which bank goes into which slot when a value is
+     * written to the control port.
+     */
+    public interface BankSelector {
+        public void select(BankedMemory memory, byte value) throws MemoryException;
+    }
+    
+    /**
+     * This class implements the IO port that switches the banks
+     */
+    public class ControlPort implements IO {
+        long port;
+        
+        public ControlPort(long port) {
+            this.port = port;
+        }
+        
+        @Override
+        public long getLowAddress() {
+            return this.port;
+        }
+
+        @Override
+        public long getHighAddress() {
+            return this.port + 1;
+        }
+
+        @Override
+        public boolean isReadable() {
+            return true;
+        }
+
+        @Override
+        public boolean isWriteable() {
+            return true;
+        }
+
+        @Override
+        public boolean isLittleEndian() {
+            return false;
+        }
+
+        @Override
+        public int getBitSize() {
+            return 8;
+        }
+
+        @Override
+        public int getContent(long address) throws MemoryException {
+            return Byte.toUnsignedInt(getByte(address));
+        }
+
+        @Override
+        public byte getByte(long address) throws MemoryException {
+            if(address != this.port)
+                throw new MemoryException("IO Port out of range");
+            return controlValue;
+        }
+
+        @Override
+        public short getShort(long address) throws MemoryException {
+            throw new MemoryException("Can only read bytes from bank control port");
+        }
+
+        @Override
+        public int getInt(long address) throws MemoryException {
+            throw new MemoryException("Can only read bytes from bank control port");
+        }
+
+        @Override
+        public long getLong(long address) throws MemoryException {
+            throw new MemoryException("Can only read bytes from bank control port");
+        }
+
+        @Override
+        public void setContent(long address, int value) throws MemoryException {
+            setByte(address, (byte)value);
+        }
+
+        @Override
+        public void setByte(long address, byte value) throws MemoryException {
+            if(address != this.port)
+                throw new MemoryException("IO Port out of range");
+            
+            controlValue = value;
+            selector.select(BankedMemory.this, value);
+        }
+
+        @Override
+        public void setShort(long address, short value) throws MemoryException {
+            throw new MemoryException("Can only write bytes to bank control port");
+        }
+
+        @Override
+        public void setInt(long address, int value) throws MemoryException {
+            throw new MemoryException("Can only write bytes to bank control port");
+        }
+
+        @Override
+        public void setLong(long address, long value) throws MemoryException {
+            throw new MemoryException("Can only write bytes to bank control port");
+        }
+    }
+    
+    long lowAddress;
+    long highAddress;
+    int slotShift;
+    Memory[] banks;
+    int[] slotBanks;
+    byte controlValue;
+    BankSelector selector;
+    ControlPort controlPort;
+    List<MemoryBus> buses = new ArrayList<>();
+    
+    /**
+     * Creates a new instance of BankedMemory. Initially, slot n shows bank n
+     * (or bank 0 if there are less banks than slots). By default, the value
+     * written to the control port selects the bank of the last slot.
+     * 
+     * @param lowAddress (long) the start address of the first slot
+     * @param slotSize (long) the size of a slot (power of 2)
+     * @param slotCount (int) the number of slots
+     * @param banks (Memory[]) the banks, each at least one slot in size
+     * @param controlPort (long) the IO port that switches the banks
+     * @throws MemoryException if the layout is not valid
+     */
+    public BankedMemory(long lowAddress, long slotSize, int slotCount, Memory[] banks, long controlPort) throws MemoryException {
+        if((slotSize <= 0) || (Long.bitCount(slotSize) != 1))
+            throw new MemoryException("Slot size must be a power of 2");
+        if((lowAddress & (slotSize - 1)) != 0)
+            throw new MemoryException("Banked memory must start on a slot boundary");
+        if((slotCount <= 0) || (banks.length == 0))
+            throw new MemoryException("Banked memory needs at least one slot and one bank");
+        
+        for(Memory bank : banks) {
+            if(bank.getHighAddress() - bank.getLowAddress() < slotSize)
+                throw new MemoryException("Bank is smaller than the slot size");
+        }
+        
+        this.lowAddress = lowAddress;
+        this.highAddress = lowAddress + slotSize * slotCount;
+        this.slotShift = Long.numberOfTrailingZeros(slotSize);
+        this.banks = banks;
+        this.slotBanks = new int[slotCount];
+        for(int slot=0; slot<slotCount; slot++) {
+            this.slotBanks[slot] = (slot < banks.length) ? slot : 0;
+        }
+        this.selector = (memory, value) -> memory.selectBank(memory.getSlotCount() - 1, Byte.toUnsignedInt(value) % memory.getBankCount());
+        this.controlPort = new ControlPort(controlPort);
+    }
+    
+    /**
+     * Called by the MemoryBus when this memory is attached to it. All slots
+     * are mapped into the page table of the bus.
+     * 
+     * @param bus (MemoryBus) the bus
+     * @throws MemoryException if the slots cannot be mapped
+     */
+    protected void attach(MemoryBus bus) throws MemoryException {
+        this.buses.add(bus);
+        
+        for(int slot=0; slot<this.slotBanks.length; slot++) {
+            mapSlot(bus, slot);
+        }
+    }
+    
+    /**
+     * Maps a single slot into the page table of a bus
+     * 
+     * @param bus (MemoryBus) the bus
+     * @param slot (int) the slot number
+     * @throws MemoryException if the slot cannot be mapped
+     */
+    protected void mapSlot(MemoryBus bus, int slot) throws MemoryException {
+        Memory bank = this.banks[this.slotBanks[slot]];
+        long slotLow = this.lowAddress + ((long)slot << this.slotShift);
+        
+        bus.map(slotLow, slotLow + getSlotSize(), bank, bank.getLowAddress());
+    }
+    
+    /**
+     * Shows a bank in a slot
+     * 
+     * @param slot (int) the slot number
+     * @param bank (int) the bank number
+     * @throws MemoryException if the slot or bank does not exist
+     */
+    public void selectBank(int slot, int bank) throws MemoryException {
+        if((slot < 0) || (slot >= this.slotBanks.length))
+            throw new MemoryException("Slot " + slot + " does not exist");
+        if((bank < 0) || (bank >= this.banks.length))
+            throw new MemoryException("Bank " + bank + " does not exist");
+        
+        if(this.slotBanks[slot] == bank) return;
+        
+        this.slotBanks[slot] = bank;
+        for(MemoryBus bus : this.buses) {
+            mapSlot(bus, slot);
+        }
+    }
+    
+    /**
+     * Returns the bank that is currently shown in a slot
+     * 
+     * @param slot (int) the slot number
+     * @return the bank number (int)
+     */
+    public int getSelectedBank(int slot) {
+        return this.slotBanks[slot];
+    }
+    
+    /**
+     * Changes the way control port values are translated to bank switches
+     * 
+     * @param selector (BankSelector) the new selector
+     */
+    public void setBankSelector(BankSelector selector) {
+        this.selector = selector;
+    }
+    
+    /**
+     * Returns the IO port that must be added to the IO blocks of the CPU in
+     * order to switch banks
+     * 
+     * @return the control port (IO)
+     */
+    public IO getControlPort() {
+        return this.controlPort;
+    }
+    
+    public Memory getBank(int bank) {
+        return this.banks[bank];
+    }
+    
+    public int getBankCount() {
+        return this.banks.length;
+    }
+    
+    public int getSlotCount() {
+        return this.slotBanks.length;
+    }
+    
+    public long getSlotSize() {
+        return 1L << this.slotShift;
+    }
+    
+    public int getSlotShift() {
+        return this.slotShift;
+    }
+    
+    /**
+     * Returns the bank that serves an address
+     * 
+     * @param address (long) the address
+     * @param size (int) the number of bytes accessed
+     * @return the bank (Memory)
+     * @throws MemoryException if the address is out of range
+     */
+    protected Memory getBankAt(long address, int size) throws MemoryException {
+        if((address < this.lowAddress) || (address + size > this.highAddress))
+            throw new MemoryException("address out of range");
+        
+        int slot = (int)((address - this.lowAddress) >>> this.slotShift);
+        if(((address + size - 1 - this.lowAddress) >>> this.slotShift) != slot)
+            throw new MemoryException("Access crosses a slot boundary at " + Long.toHexString(address));
+        
+        return this.banks[this.slotBanks[slot]];
+    }
+    
+    /**
+     * Translates an address to the address within the bank
+     * 
+     * @param bank (Memory) the bank
+     * @param address (long) the address
+     * @return the address within the bank (long)
+     */
+    protected long toBankAddress(Memory bank, long address) {
+        return bank.getLowAddress() + ((address - this.lowAddress) & (getSlotSize() - 1));
+    }
+
+    @Override
+    public long getLowAddress() {
+        return this.lowAddress;
+    }
+
+    @Override
+    public long getHighAddress() {
+        return this.highAddress;
+    }
+
+    @Override
+    public boolean isReadable() {
+        return true;
+    }
+
+    @Override
+    public boolean isWriteable() {
+        for(Memory bank : this.banks) {
+            if(bank.isWriteable()) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean isLittleEndian() {
+        return this.banks[0].isLittleEndian();
+    }
+
+    @Override
+    public int getBitSize() {
+        return this.banks[0].getBitSize();
+    }
+
+    @Override
+    public int getContent(long address) throws MemoryException {
+        Memory bank = getBankAt(address, 1);
+        return bank.getContent(toBankAddress(bank, address));
+    }
+
+    @Override
+    public byte getByte(long address) throws MemoryException {
+        Memory bank = getBankAt(address, 1);
+        return bank.getByte(toBankAddress(bank, address));
+    }
+
+    @Override
+    public short getShort(long address) throws MemoryException {
+        Memory bank = getBankAt(address, 2);
+        return bank.getShort(toBankAddress(bank, address));
+    }
+
+    @Override
+    public int getInt(long address) throws MemoryException {
+        Memory bank = getBankAt(address, 4);
+        return bank.getInt(toBankAddress(bank, address));
+    }
+
+    @Override
+    public long getLong(long address) throws MemoryException {
+        Memory bank = getBankAt(address, 8);
+        return bank.getLong(toBankAddress(bank, address));
+    }
+
+    @Override
+    public void setContent(long address, int value) throws MemoryException {
+        Memory bank = getBankAt(address, 1);
+        bank.setContent(toBankAddress(bank, address), value);
+    }
+
+    @Override
+    public void setByte(long address, byte value) throws MemoryException {
+        Memory bank = getBankAt(address, 1);
+        bank.setByte(toBankAddress(bank, address), value);
+    }
+
+    @Override
+    public void setShort(long address, short value) throws MemoryException {
+        Memory bank = getBankAt(address, 2);
+        bank.setShort(toBankAddress(bank, address), value);
+    }
+
+    @Override
+    public void setInt(long address, int value) throws MemoryException {
+        Memory bank = getBankAt(address, 4);
+        bank.setInt(toBankAddress(bank, address), value);
+    }
+
+    @Override
+    public void setLong(long address, long value) throws MemoryException {
+        Memory bank = getBankAt(address, 8);
+        bank.setLong(toBankAddress(bank, address), value);
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2021 peter.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jemu.micro;
+
+/**
+ * This class describes a breakpoint, i.e. an address that stops the
+ * execution when the program counter reaches it. A breakpoint can be
+ * temporary (removed after it stopped the execution once), can ignore a
+ * number of hits before it stops and can have a condition that decides
+ * whether a hit counts and what happens then (see BreakpointCondition).
+ * 
+ * @author peter
+ */
+public class Breakpoint {
+    int address;
+    boolean enabled;
+    boolean temporary;
+    int ignoreCount;
+    int hitCount;
+    BreakpointCondition condition;
+    
+    /**
+     * Creates a new instance of Breakpoint that stops every time
+     * 
+     * @param address (int) the address
+     */
+    public Breakpoint(int address) {
+        this(address, false, 0);
+    }
+    
+    /**
+     * Creates a new instance of Breakpoint
+     * 
+     * @param address (int) the address
+     * @param temporary (boolean) true if the breakpoint is removed when it stops the execution
+     * @param ignoreCount (int) the number of hits to ignore before the execution stops
+     */
+    public Breakpoint(int address, boolean temporary, int ignoreCount) {
+        this.address = address;
+        this.temporary = temporary;
+        this.ignoreCount = ignoreCount;
+        this.hitCount = 0;
+        this.enabled = true;
+        this.condition = null;
+    }
+    
+    /**
+     * Creates a new instance of Breakpoint with a condition
+     * 
+     * @param address (int) the address
+     * @param condition (BreakpointCondition) the condition or null
+     */
+    public Breakpoint(int address, BreakpointCondition condition) {
+        this(address, false, 0);
+        this.condition = condition;
+    }
+    
+    public int getAddress() {
+        return this.address;
+    }
+    
+    /**
+     * Returns whether the breakpoint is enabled. Use BreakpointSet.setEnabled
+     * to change it.
+     * 
+     * @return true if the breakpoint is enabled (boolean)
+     */
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+    
+    public boolean isTemporary() {
+        return this.temporary;
+    }
+    
+    public int getIgnoreCount() {
+        return this.ignoreCount;
+    }
+    
+    public void setIgnoreCount(int ignoreCount) {
+        this.ignoreCount = ignoreCount;
+    }
+    
+    /**
+     * Returns how often the program counter reached the breakpoint
+     * 
+     * @return the number of hits (int)
+     */
+    public int getHitCount() {
+        return this.hitCount;
+    }
+    
+    public BreakpointCondition getCondition() {
+        return this.condition;
+    }
+    
+    public void resetHitCount() {
+        this.hitCount = 0;
+    }
+    
+    /**
+     * Counts a hit if the condition holds and performs the action of the
+     * condition
+     * 
+     * @return true if the execution should stop (boolean)
+     */
+    protected boolean hit() {
+        if((this.condition != null) && !this.condition.isTrue())
+            return false;
+        
+        this.hitCount++;
+        if(this.hitCount <= this.ignoreCount)
+            return false;
+        
+        return (this.condition == null) || this.condition.performAction(this);
+    }
+    
+    @Override
+    public String toString() {
+        String text = "$" + Integer.toHexString(this.address);
+        
+        if(this.condition != null)
+            text += " if " + this.condition;
+        if(this.temporary)
+            text += " (temporary)";
+        if(this.ignoreCount > 0)
+            text += " after " + this.ignoreCount + " hits";
+        if(!this.enabled)
+            text += " (disabled)";
+        
+        return text + ", " + this.hitCount + " hits";
+    }
+}
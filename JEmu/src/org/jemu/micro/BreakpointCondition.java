@@ -0,0 +1,535 @@
+/*
+ * Copyright (C) 2021 peter.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jemu.micro;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongBinaryOperator;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class implements the condition of a conditional breakpoint. The
+ * condition is compiled once into a tree of lambdas in which the register
+ * reads of the debugger are bound directly, so checking it costs a few
+ * method calls and no parsing.
+ * 
+ * Syntax:
+ *   condition := [expression] ["in bank" expression] [":" action]
+ *   action    := "stop" | "count" | "log" expression {"," expression}
+ * 
+ * Expressions use the C operators || &amp;&amp; | ^ &amp; == != &lt; &lt;= &gt; &gt;=
+ * &lt;&lt; &gt;&gt; + - * / ! ~ and parentheses. Operands are numbers ($hex, 0xhex,
+ * %binary or decimal), register names (case insensitive, e.g. A, HL, RA5 or
+ * R5 for register 5 of the current bank on the UC-2000) and memory bytes:
+ * [expression] or (register) as in "(HL)". "in bank n" is short for
+ * "&amp;&amp; CB == n".
+ * 
+ * Examples: "A == $3F &amp;&amp; (HL) != 0", "r5 &gt; 7 in bank 2", "SP &lt; $100 : log SP".
+ * 
+ * @author peter
+ */
+public class BreakpointCondition {
+    public static final int ACTION_STOP = 0;
+    public static final int ACTION_COUNT = 1;
+    public static final int ACTION_LOG = 2;
+    
+    // Value of a memory byte that cannot be read
+    public static final long NO_MEMORY = -1L;
+    
+    String text;
+    LongSupplier condition;
+    int action = ACTION_STOP;
+    List<String> logNames = new ArrayList<>();
+    List<LongSupplier> logValues = new ArrayList<>();
+    
+    // Used while compiling only
+    Debugger debugger;
+    String source;
+    int pos;
+    
+    BreakpointCondition(String text, Debugger debugger) {
+        this.text = text;
+        this.debugger = debugger;
+        this.source = text;
+        this.pos = 0;
+    }
+    
+    /**
+     * Compiles a condition for a debugger
+     * 
+     * @param text (String) the condition
+     * @param debugger (Debugger) the debugger whose registers and memory are used
+     * @return the compiled condition (BreakpointCondition)
+     * @throws SyntaxErrorException if the condition is not valid
+     */
+    public static BreakpointCondition compile(String text, Debugger debugger) throws SyntaxErrorException {
+        BreakpointCondition compiled = new BreakpointCondition(text, debugger);
+        compiled.parse();
+        compiled.debugger = null;
+        compiled.source = null;
+        return compiled;
+    }
+    
+    /**
+     * Evaluates the condition
+     * 
+     * @return true if the condition holds (boolean)
+     */
+    public boolean isTrue() {
+        return this.condition.getAsLong() != 0;
+    }
+    
+    public int getAction() {
+        return this.action;
+    }
+    
+    public String getText() {
+        return this.text;
+    }
+    
+    /**
+     * Performs the action after the condition of a breakpoint held
+     * 
+     * @param breakpoint (Breakpoint) the breakpoint
+     * @return true if the execution should stop (boolean)
+     */
+    protected boolean performAction(Breakpoint breakpoint) {
+        switch (this.action) {
+            case ACTION_COUNT:
+                return false;
+                
+            case ACTION_LOG:
+                StringBuilder message = new StringBuilder("Breakpoint $");
+                message.append(Integer.toHexString(breakpoint.getAddress()));
+                for(int i=0; i<this.logValues.size(); i++) {
+                    message.append(i == 0 ? ": " : ", ");
+                    message.append(this.logNames.get(i)).append(" = $");
+                    message.append(Long.toHexString(this.logValues.get(i).getAsLong()));
+                }
+                Logger.getLogger(BreakpointCondition.class.getName()).log(Level.INFO, message.toString());
+                return false;
+                
+            default:
+                return true;
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return this.text;
+    }
+    
+    /**
+     * Parses the whole condition
+     * 
+     * @throws SyntaxErrorException 
+     */
+    protected void parse() throws SyntaxErrorException {
+        LongSupplier expression = null;
+        
+        if(!atEnd() && !peekKeyword("in") && (peek() != ':'))
+            expression = parseOr();
+        
+        if(acceptKeyword("in")) {
+            if(!acceptKeyword("bank"))
+                throw error("'bank' expected");
+            
+            LongSupplier bank = binary(register("CB"), parseOr(), (a, b) -> (a == b) ? 1 : 0);
+            expression = (expression == null) ? bank : and(expression, bank);
+        }
+        
+        if(expression == null)
+            throw error("Condition expected");
+        
+        this.condition = expression;
+        
+        if(accept(':')) {
+            if(acceptKeyword("count")) {
+                this.action = ACTION_COUNT;
+            }
+            else if(acceptKeyword("stop")) {
+                this.action = ACTION_STOP;
+            }
+            else if(acceptKeyword("log")) {
+                this.action = ACTION_LOG;
+                do {
+                    skipSpaces();
+                    int start = this.pos;
+                    LongSupplier value = parseOr();
+                    this.logNames.add(this.source.substring(start, this.pos).trim());
+                    this.logValues.add(value);
+                }
+                while(accept(','));
+            }
+            else {
+                throw error("Action count, log or stop expected");
+            }
+        }
+        
+        if(!atEnd())
+            throw error("Unexpected '" + this.source.substring(this.pos) + "'");
+    }
+    
+    protected LongSupplier parseOr() throws SyntaxErrorException {
+        LongSupplier left = parseAnd();
+        
+        while(accept("||")) {
+            LongSupplier a = left;
+            LongSupplier b = parseAnd();
+            left = () -> ((a.getAsLong() != 0) || (b.getAsLong() != 0)) ? 1 : 0;
+        }
+        
+        return left;
+    }
+    
+    protected LongSupplier parseAnd() throws SyntaxErrorException {
+        LongSupplier left = parseBitOr();
+        
+        while(accept("&&")) {
+            left = and(left, parseBitOr());
+        }
+        
+        return left;
+    }
+    
+    protected LongSupplier and(LongSupplier a, LongSupplier b) {
+        return () -> ((a.getAsLong() != 0) && (b.getAsLong() != 0)) ? 1 : 0;
+    }
+    
+    protected LongSupplier parseBitOr() throws SyntaxErrorException {
+        LongSupplier left = parseBitXor();
+        
+        while(!peek("||") && accept('|')) {
+            left = binary(left, parseBitXor(), (a, b) -> a | b);
+        }
+        
+        return left;
+    }
+    
+    protected LongSupplier parseBitXor() throws SyntaxErrorException {
+        LongSupplier left = parseBitAnd();
+        
+        while(accept('^')) {
+            left = binary(left, parseBitAnd(), (a, b) -> a ^ b);
+        }
+        
+        return left;
+    }
+    
+    protected LongSupplier parseBitAnd() throws SyntaxErrorException {
+        LongSupplier left = parseEquality();
+        
+        while(!peek("&&") && accept('&')) {
+            left = binary(left, parseEquality(), (a, b) -> a & b);
+        }
+        
+        return left;
+    }
+    
+    protected LongSupplier parseEquality() throws SyntaxErrorException {
+        LongSupplier left = parseRelation();
+        
+        while(true) {
+            if(accept("=="))
+                left = binary(left, parseRelation(), (a, b) -> (a == b) ? 1 : 0);
+            else if(accept("!="))
+                left = binary(left, parseRelation(), (a, b) -> (a != b) ? 1 : 0);
+            else
+                return left;
+        }
+    }
+    
+    protected LongSupplier parseRelation() throws SyntaxErrorException {
+        LongSupplier left = parseShift();
+        
+        while(true) {
+            if(accept("<="))
+                left = binary(left, parseShift(), (a, b) -> (a <= b) ? 1 : 0);
+            else if(accept(">="))
+                left = binary(left, parseShift(), (a, b) -> (a >= b) ? 1 : 0);
+            else if(!peek("<<") && accept('<'))
+                left = binary(left, parseShift(), (a, b) -> (a < b) ? 1 : 0);
+            else if(!peek(">>") && accept('>'))
+                left = binary(left, parseShift(), (a, b) -> (a > b) ? 1 : 0);
+            else
+                return left;
+        }
+    }
+    
+    protected LongSupplier parseShift() throws SyntaxErrorException {
+        LongSupplier left = parseAdditive();
+        
+        while(true) {
+            if(accept("<<"))
+                left = binary(left, parseAdditive(), (a, b) -> a << b);
+            else if(accept(">>"))
+                left = binary(left, parseAdditive(), (a, b) -> a >> b);
+            else
+                return left;
+        }
+    }
+    
+    protected LongSupplier parseAdditive() throws SyntaxErrorException {
+        LongSupplier left = parseMultiplicative();
+        
+        while(true) {
+            if(accept('+'))
+                left = binary(left, parseMultiplicative(), (a, b) -> a + b);
+            else if(accept('-'))
+                left = binary(left, parseMultiplicative(), (a, b) -> a - b);
+            else
+                return left;
+        }
+    }
+    
+    protected LongSupplier parseMultiplicative() throws SyntaxErrorException {
+        LongSupplier left = parseUnary();
+        
+        while(true) {
+            if(accept('*'))
+                left = binary(left, parseUnary(), (a, b) -> a * b);
+            else if(accept('/'))
+                left = binary(left, parseUnary(), (a, b) -> (b == 0) ? 0 : a / b);
+            else
+                return left;
+        }
+    }
+    
+    protected LongSupplier parseUnary() throws SyntaxErrorException {
+        if(!peek("!=") && accept('!')) {
+            LongSupplier a = parseUnary();
+            return () -> (a.getAsLong() == 0) ? 1 : 0;
+        }
+        if(accept('~')) {
+            LongSupplier a = parseUnary();
+            return () -> ~a.getAsLong();
+        }
+        if(accept('-')) {
+            LongSupplier a = parseUnary();
+            return () -> -a.getAsLong();
+        }
+        
+        return parsePrimary();
+    }
+    
+    protected LongSupplier parsePrimary() throws SyntaxErrorException {
+        skipSpaces();
+        if(atEnd())
+            throw error("Operand expected");
+        
+        char c = peek();
+        
+        if(c == '[') {
+            this.pos++;
+            LongSupplier address = parseOr();
+            expect(']');
+            return memory(address);
+        }
+        
+        if(c == '(') {
+            // "(register)" reads memory like in the assembly language,
+            // everything else in parentheses is a sub-expression
+            int start = this.pos;
+            this.pos++;
+            skipSpaces();
+            if(isIdentifierStart(peekOrZero())) {
+                String name = readIdentifier();
+                if(accept(')'))
+                    return memory(register(name));
+            }
+            
+            this.pos = start + 1;
+            LongSupplier inner = parseOr();
+            expect(')');
+            return inner;
+        }
+        
+        if((c == '$') || (c == '%') || Character.isDigit(c))
+            return constant(readNumber());
+        
+        if(isIdentifierStart(c))
+            return register(readIdentifier());
+        
+        throw error("Unexpected '" + c + "'");
+    }
+    
+    /**
+     * Combines two operands. Constant operands are folded and a constant
+     * right operand is bound into the lambda.
+     */
+    protected LongSupplier binary(LongSupplier a, LongSupplier b, LongBinaryOperator op) {
+        if((a instanceof Constant) && (b instanceof Constant)) {
+            return constant(op.applyAsLong(a.getAsLong(), b.getAsLong()));
+        }
+        if(b instanceof Constant) {
+            long value = b.getAsLong();
+            return () -> op.applyAsLong(a.getAsLong(), value);
+        }
+        
+        return () -> op.applyAsLong(a.getAsLong(), b.getAsLong());
+    }
+    
+    /**
+     * A constant value; constants are recognized to fold them
+     */
+    static class Constant implements LongSupplier {
+        final long value;
+        
+        Constant(long value) {
+            this.value = value;
+        }
+        
+        @Override
+        public long getAsLong() {
+            return this.value;
+        }
+    }
+    
+    protected LongSupplier constant(long value) {
+        return new Constant(value);
+    }
+    
+    protected LongSupplier register(String name) throws SyntaxErrorException {
+        try {
+            return this.debugger.getRegisterReader(name.toUpperCase());
+        }
+        catch (IllegalRegisterException ex) {
+            throw error("Unknown register " + name);
+        }
+    }
+    
+    protected LongSupplier memory(LongSupplier address) {
+        Debugger target = this.debugger;
+        
+        // conditions must not trigger read watchpoints
+        return () -> {
+            try {
+                MemoryBus bus = target.getMemoryBus();
+                if(bus != null)
+                    return Byte.toUnsignedLong(bus.peekByte(address.getAsLong()));
+                return Byte.toUnsignedLong(target.readMemoryByte(address.getAsLong()));
+            }
+            catch (MemoryException ex) {
+                return NO_MEMORY;
+            }
+        };
+    }
+    
+    protected long readNumber() throws SyntaxErrorException {
+        int radix = 10;
+        
+        if(accept('$')) {
+            radix = 16;
+        }
+        else if(accept('%')) {
+            radix = 2;
+        }
+        else if(this.source.startsWith("0x", this.pos) || this.source.startsWith("0X", this.pos)) {
+            this.pos += 2;
+            radix = 16;
+        }
+        
+        int start = this.pos;
+        while((this.pos < this.source.length()) && (Character.digit(peek(), radix) >= 0)) {
+            this.pos++;
+        }
+        
+        if(start == this.pos)
+            throw error("Number expected");
+        
+        return Long.parseLong(this.source.substring(start, this.pos), radix);
+    }
+    
+    protected String readIdentifier() {
+        int start = this.pos;
+        while((this.pos < this.source.length()) && (Character.isLetterOrDigit(peek()) || (peek() == '_') || (peek() == '\''))) {
+            this.pos++;
+        }
+        
+        return this.source.substring(start, this.pos);
+    }
+    
+    protected boolean isIdentifierStart(char c) {
+        return Character.isLetter(c) || (c == '_');
+    }
+    
+    protected void skipSpaces() {
+        while((this.pos < this.source.length()) && Character.isWhitespace(this.source.charAt(this.pos))) {
+            this.pos++;
+        }
+    }
+    
+    protected boolean atEnd() {
+        skipSpaces();
+        return this.pos >= this.source.length();
+    }
+    
+    protected char peek() {
+        return this.source.charAt(this.pos);
+    }
+    
+    protected char peekOrZero() {
+        return (this.pos < this.source.length()) ? peek() : 0;
+    }
+    
+    protected boolean peek(String token) {
+        skipSpaces();
+        return this.source.startsWith(token, this.pos);
+    }
+    
+    protected boolean accept(char c) {
+        if(atEnd() || (peek() != c)) return false;
+        
+        this.pos++;
+        return true;
+    }
+    
+    protected boolean accept(String token) {
+        if(!peek(token)) return false;
+        
+        this.pos += token.length();
+        return true;
+    }
+    
+    protected boolean peekKeyword(String keyword) {
+        skipSpaces();
+        int end = this.pos + keyword.length();
+        
+        return this.source.regionMatches(true, this.pos, keyword, 0, keyword.length())
+                && ((end >= this.source.length()) || !Character.isLetterOrDigit(this.source.charAt(end)));
+    }
+    
+    protected boolean acceptKeyword(String keyword) {
+        if(!peekKeyword(keyword)) return false;
+        
+        this.pos += keyword.length();
+        return true;
+    }
+    
+    protected void expect(char c) throws SyntaxErrorException {
+        if(!accept(c))
+            throw error("'" + c + "' expected");
+    }
+    
+    protected SyntaxErrorException error(String message) {
+        return new SyntaxErrorException(message + " at position " + this.pos + " in \"" + this.source + "\"");
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2021 peter.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jemu.micro;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class holds the breakpoints of a CPU with a 64K address space. The
+ * enabled breakpoints are kept in a bitset, so the run loop only needs one
+ * bit test per instruction (and none if the set is empty).
+ * 
+ * The set is not thread safe; it belongs to the thread that runs the CPU
+ * (see EmulationThread.execute).
+ * 
+ * @author peter
+ */
+public class BreakpointSet {
+    public static final int ADDRESS_COUNT = 0x10000;
+    public static final int ADDRESS_MASK = ADDRESS_COUNT - 1;
+    
+    // One bit per address, set if an enabled breakpoint is there
+    final long[] bits = new long[ADDRESS_COUNT / 64];
+    final Map<Integer, Breakpoint> breakpoints = new HashMap<>();
+    int enabledCount = 0;
+    
+    /**
+     * Adds a breakpoint, replacing an existing one at the same address
+     * 
+     * @param breakpoint (Breakpoint) the breakpoint
+     */
+    public void add(Breakpoint breakpoint) {
+        remove(breakpoint.getAddress());
+        
+        breakpoint.address &= ADDRESS_MASK;
+        this.breakpoints.put(breakpoint.getAddress(), breakpoint);
+        if(breakpoint.isEnabled())
+            setBit(breakpoint.getAddress(), true);
+    }
+    
+    /**
+     * Removes the breakpoint at an address
+     * 
+     * @param address (int) the address
+     * @return the removed breakpoint or null (Breakpoint)
+     */
+    public Breakpoint remove(int address) {
+        Breakpoint breakpoint = this.breakpoints.remove(address & ADDRESS_MASK);
+        
+        if((breakpoint != null) && breakpoint.isEnabled())
+            setBit(breakpoint.getAddress(), false);
+        
+        return breakpoint;
+    }
+    
+    /**
+     * Adds a breakpoint at an address or removes the existing one
+     * 
+     * @param address (int) the address
+     * @return true if a breakpoint was added (boolean)
+     */
+    public boolean toggle(int address) {
+        if(remove(address) != null)
+            return false;
+        
+        add(new Breakpoint(address));
+        return true;
+    }
+    
+    public Breakpoint get(int address) {
+        return this.breakpoints.get(address & ADDRESS_MASK);
+    }
+    
+    /**
+     * Enables or disables the breakpoint at an address
+     * 
+     * @param address (int) the address
+     * @param enabled (boolean) true to enable the breakpoint
+     */
+    public void setEnabled(int address, boolean enabled) {
+        Breakpoint breakpoint = get(address);
+        
+        if((breakpoint == null) || (breakpoint.isEnabled() == enabled)) return;
+        
+        breakpoint.enabled = enabled;
+        setBit(breakpoint.getAddress(), enabled);
+    }
+    
+    public void clear() {
+        this.breakpoints.clear();
+        Arrays.fill(this.bits, 0L);
+        this.enabledCount = 0;
+    }
+    
+    protected void setBit(int address, boolean value) {
+        if(value) {
+            this.bits[address >>> 6] |= (1L << address);
+            this.enabledCount++;
+        }
+        else {
+            this.bits[address >>> 6] &= ~(1L << address);
+            this.enabledCount--;
+        }
+    }
+    
+    /**
+     * Returns whether there is no enabled breakpoint
+     * 
+     * @return true if the run loop does not need to check (boolean)
+     */
+    public boolean isEmpty() {
+        return this.enabledCount == 0;
+    }
+    
+    /**
+     * Checks whether an enabled breakpoint is at an address
+     * 
+     * @param address (int) the address
+     * @return true if there is one (boolean)
+     */
+    public boolean contains(int address) {
+        return (this.bits[(address & ADDRESS_MASK) >>> 6] & (1L << address)) != 0;
+    }
+    
+    /**
+     * Checks the breakpoint at the program counter. Counts the hit and
+     * removes a temporary breakpoint when it stops the execution.
+     * 
+     * @param address (int) the program counter
+     * @return the breakpoint if the execution has to stop, otherwise null (Breakpoint)
+     */
+    public Breakpoint check(int address) {
+        if(!contains(address)) return null;
+        
+        Breakpoint breakpoint = get(address);
+        if(!breakpoint.hit()) return null;
+        
+        if(breakpoint.isTemporary())
+            remove(address);
+        
+        return breakpoint;
+    }
+    
+    /**
+     * Checks whether the breakpoint at the program counter would stop the
+     * execution, without counting a hit or performing the action of its
+     * condition. Ignore counts do not apply. Used to search recorded
+     * execution backwards.
+     * 
+     * @param address (int) the program counter
+     * @return the breakpoint or null (Breakpoint)
+     */
+    public Breakpoint test(int address) {
+        if(!contains(address)) return null;
+        
+        Breakpoint breakpoint = get(address);
+        if((breakpoint.getCondition() != null) && !breakpoint.getCondition().isTrue())
+            return null;
+        
+        return breakpoint;
+    }
+    
+    /**
+     * Returns all breakpoints
+     * 
+     * @return the breakpoints (List&lt;Breakpoint&gt;)
+     */
+    public List<Breakpoint> getBreakpoints() {
+        return new ArrayList<>(this.breakpoints.values());
+    }
+}
@@ -0,0 +1,421 @@
+/*
+ * Copyright (C) 2021 peter.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jemu.micro;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class counts the instructions and cycles that a ProfilableCPU
+ * executes per address and attributes the cycles to subroutines. The CPU
+ * reports its calls, returns and interrupts, from which the profiler keeps a
+ * shadow call stack. Every distinct chain of calls is a node of a call tree
+ * that collects the cycles spent directly in it; the exclusive and inclusive
+ * cycles per subroutine and the folded stacks for flame graphs are derived
+ * from that tree when a report is written.
+ * 
+ * The CPU calls begin() before and end() after every instruction. The cycles
+ * belong to the subroutine that was active at begin(), so a CALL counts for
+ * the caller and a RET for the called subroutine.
+ * 
+ * The profiler belongs to the thread that runs the CPU. Reports should be
+ * written while the CPU is paused or after the profiler was removed.
+ * 
+ * @author peter
+ */
+public class CodeProfiler {
+    public static final int ADDRESS_SPACE = 0x10000;
+    public static final int MAX_DEPTH = 1024;
+    public static final int DEFAULT_REPORT_LIMIT = 40;
+    public static final String TOP_NAME = "[top]";
+    
+    static final int ROOT = 0;
+    static final int INTERRUPT = 0x10000;     // added to the address of interrupt routines
+    
+    long[] instructions;
+    long[] cycles;
+    long totalInstructions;
+    long totalCycles;
+    
+    // the call tree, node 0 is the code outside of any subroutine
+    int[] nodeParent;
+    int[] nodeKey;
+    long[] nodeCycles;
+    long[] nodeCalls;
+    int nodeCount;
+    Map<Long, Integer> children;
+    
+    // the shadow call stack of call tree nodes, stack[0] is the root
+    int[] stack;
+    int depth;
+    int overflow;
+    
+    int startAddress;
+    int startNode;
+    
+    Map<Integer, String> symbols;
+    
+    /**
+     * Creates a new instance of CodeProfiler
+     */
+    public CodeProfiler() {
+        this.instructions = new long[ADDRESS_SPACE];
+        this.cycles = new long[ADDRESS_SPACE];
+        this.nodeParent = new int[256];
+        this.nodeKey = new int[256];
+        this.nodeCycles = new long[256];
+        this.nodeCalls = new long[256];
+        this.children = new HashMap<>();
+        this.stack = new int[MAX_DEPTH + 1];
+        this.symbols = new HashMap<>();
+        
+        reset();
+    }
+    
+    /**
+     * Forgets all counts and the call stack
+     */
+    public void reset() {
+        Arrays.fill(this.instructions, 0);
+        Arrays.fill(this.cycles, 0);
+        this.totalInstructions = 0;
+        this.totalCycles = 0;
+        
+        this.children.clear();
+        this.nodeCount = 1;
+        this.nodeParent[ROOT] = -1;
+        this.nodeKey[ROOT] = -1;
+        this.nodeCycles[ROOT] = 0;
+        this.nodeCalls[ROOT] = 0;
+        
+        resetCallStack();
+    }
+    
+    /**
+     * Forgets the call stack, e.g. after the CPU state was changed by hand
+     * or restored from a checkpoint. The following cycles count for the top
+     * level until the next call.
+     */
+    public void resetCallStack() {
+        this.stack[0] = ROOT;
+        this.depth = 0;
+        this.overflow = 0;
+        this.startNode = ROOT;
+    }
+    
+    /**
+     * Sets the names that are shown instead of the subroutine addresses,
+     * e.g. the symbols of an Assembler
+     * 
+     * @param symbols (Map) the addresses by name
+     */
+    public void setSymbols(Map<String, Long> symbols) {
+        this.symbols.clear();
+        
+        for(Map.Entry<String, Long> entry : symbols.entrySet()) {
+            int address = (int)(entry.getValue() & (ADDRESS_SPACE - 1));
+            String existing = this.symbols.get(address);
+            
+            // take the first name in alphabetical order if several share an address
+            if((existing == null) || (entry.getKey().compareTo(existing) < 0))
+                this.symbols.put(address, entry.getKey());
+        }
+    }
+    
+    /**
+     * Called by the CPU before it executes an instruction
+     * 
+     * @param address (int) the address of the instruction
+     */
+    public void begin(int address) {
+        this.startAddress = address & (ADDRESS_SPACE - 1);
+        this.startNode = this.stack[this.depth];
+    }
+    
+    /**
+     * Called by the CPU after it executed the instruction passed to begin()
+     * 
+     * @param cycles (int) the cycles of the instruction
+     */
+    public void end(int cycles) {
+        this.instructions[this.startAddress]++;
+        this.cycles[this.startAddress] += cycles;
+        this.nodeCycles[this.startNode] += cycles;
+        this.totalInstructions++;
+        this.totalCycles += cycles;
+    }
+    
+    /**
+     * Called by the CPU when it calls a subroutine
+     * 
+     * @param address (int) the address of the subroutine
+     */
+    public void call(int address) {
+        enter(address & (ADDRESS_SPACE - 1));
+    }
+    
+    /**
+     * Called by the CPU when it enters an interrupt routine
+     * 
+     * @param address (int) the address of the interrupt routine
+     */
+    public void interrupt(int address) {
+        enter((address & (ADDRESS_SPACE - 1)) | INTERRUPT);
+    }
+    
+    /**
+     * Called by the CPU when it returns from a subroutine. A return never
+     * leaves an interrupt routine, so unbalanced returns inside of interrupt
+     * routines do not spoil the stack of the interrupted code.
+     */
+    public void ret() {
+        if(this.overflow > 0) {
+            this.overflow--;
+            return;
+        }
+        
+        if((this.depth > 0) && ((this.nodeKey[this.stack[this.depth]] & INTERRUPT) == 0)) this.depth--;
+    }
+    
+    /**
+     * Called by the CPU when it returns from an interrupt routine. Removes
+     * the innermost interrupt routine and all subroutines it called from the
+     * stack.
+     */
+    public void returnFromInterrupt() {
+        if(this.overflow > 0) {
+            this.overflow--;
+            return;
+        }
+        
+        for(int i=this.depth; i>0; i--) {
+            if((this.nodeKey[this.stack[i]] & INTERRUPT) != 0) {
+                this.depth = i - 1;
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Pushes a subroutine or interrupt routine on the shadow stack. Beyond
+     * MAX_DEPTH the calls are only counted, so runaway recursion ends up in
+     * the deepest node.
+     * 
+     * @param key (int) the address, plus INTERRUPT for interrupt routines
+     */
+    protected void enter(int key) {
+        if(this.depth == MAX_DEPTH) {
+            this.overflow++;
+            return;
+        }
+        
+        int node = getChild(this.stack[this.depth], key);
+        this.nodeCalls[node]++;
+        this.stack[++this.depth] = node;
+    }
+    
+    /**
+     * Returns the call tree node for a call from a node, creates it if new
+     * 
+     * @param parent (int) the calling node
+     * @param key (int) the address, plus INTERRUPT for interrupt routines
+     * @return the node (int)
+     */
+    protected int getChild(int parent, int key) {
+        Long id = ((long)parent << 32) | key;
+        Integer existing = this.children.get(id);
+        if(existing != null) return existing;
+        
+        if(this.nodeCount == this.nodeParent.length) {
+            int size = this.nodeCount * 2;
+            this.nodeParent = Arrays.copyOf(this.nodeParent, size);
+            this.nodeKey = Arrays.copyOf(this.nodeKey, size);
+            this.nodeCycles = Arrays.copyOf(this.nodeCycles, size);
+            this.nodeCalls = Arrays.copyOf(this.nodeCalls, size);
+        }
+        
+        int node = this.nodeCount++;
+        this.nodeParent[node] = parent;
+        this.nodeKey[node] = key;
+        this.nodeCycles[node] = 0;
+        this.nodeCalls[node] = 0;
+        this.children.put(id, node);
+        
+        return node;
+    }
+    
+    /**
+     * Returns the number of instructions executed at an address
+     * 
+     * @param address (int) the address
+     * @return the count (long)
+     */
+    public long getInstructionCount(int address) {
+        return this.instructions[address & (ADDRESS_SPACE - 1)];
+    }
+    
+    /**
+     * Returns the cycles spent at an address
+     * 
+     * @param address (int) the address
+     * @return the cycles (long)
+     */
+    public long getCycleCount(int address) {
+        return this.cycles[address & (ADDRESS_SPACE - 1)];
+    }
+    
+    /**
+     * Returns the number of profiled instructions
+     * 
+     * @return the count (long)
+     */
+    public long getTotalInstructions() {
+        return this.totalInstructions;
+    }
+    
+    /**
+     * Returns the number of profiled cycles
+     * 
+     * @return the cycles (long)
+     */
+    public long getTotalCycles() {
+        return this.totalCycles;
+    }
+    
+    /**
+     * Returns the current depth of the shadow call stack
+     * 
+     * @return the depth (int)
+     */
+    public int getDepth() {
+        return this.depth + this.overflow;
+    }
+    
+    /**
+     * Returns the name of a subroutine
+     * 
+     * @param key (int) the address, plus INTERRUPT for interrupt routines, or -1 for the top level
+     * @return the name (String)
+     */
+    protected String getName(int key) {
+        if(key < 0) return TOP_NAME;
+        
+        int address = key & (ADDRESS_SPACE - 1);
+        String symbol = this.symbols.get(address);
+        
+        if((key & INTERRUPT) != 0) return (symbol != null) ? symbol + " (irq)" : String.format("irq_%04X", address);
+        return (symbol != null) ? symbol : String.format("sub_%04X", address);
+    }
+    
+    /**
+     * Sums up the call tree per subroutine
+     * 
+     * @return calls, exclusive and inclusive cycles by subroutine key (Map)
+     */
+    protected Map<Integer, long[]> getSubroutineTotals() {
+        Map<Integer, long[]> totals = new HashMap<>();
+        Set<Integer> counted = new HashSet<>();
+        
+        for(int node=0; node<this.nodeCount; node++) {
+            long[] total = totals.computeIfAbsent(this.nodeKey[node], key -> new long[3]);
+            total[0] += this.nodeCalls[node];
+            total[1] += this.nodeCycles[node];
+            
+            if(this.nodeCycles[node] == 0) continue;
+            
+            // the cycles count once for every subroutine on the path, also for recursive ones
+            counted.clear();
+            for(int n=node; n>=0; n=this.nodeParent[n]) {
+                if(counted.add(this.nodeKey[n]))
+                    totals.computeIfAbsent(this.nodeKey[n], key -> new long[3])[2] += this.nodeCycles[node];
+            }
+        }
+        
+        return totals;
+    }
+    
+    /**
+     * Writes the report with the hottest addresses and subroutines as text
+     * 
+     * @param writer (Writer) where to write to
+     * @param limit (int) the maximum number of lines per table
+     */
+    public void writeReport(Writer writer, int limit) {
+        PrintWriter out = new PrintWriter(writer);
+        double percent = (this.totalCycles > 0) ? 100.0 / this.totalCycles : 0;
+        
+        out.println("Instructions: " + this.totalInstructions + ", cycles: " + this.totalCycles);
+        out.println();
+        
+        List<Integer> addresses = new ArrayList<>();
+        for(int address=0; address<ADDRESS_SPACE; address++) {
+            if(this.instructions[address] != 0) addresses.add(address);
+        }
+        addresses.sort((a, b) -> Long.compare(this.cycles[b], this.cycles[a]));
+        
+        out.println("Address  Instructions        Cycles       %  Symbol");
+        for(int address : addresses.subList(0, Math.min(limit, addresses.size()))) {
+            String symbol = this.symbols.get(address);
+            out.println(String.format("%04X    %13d %13d %7.2f  %s", address, this.instructions[address], this.cycles[address], 
+                    this.cycles[address] * percent, (symbol != null) ? symbol : ""));
+        }
+        out.println();
+        
+        Map<Integer, long[]> totals = getSubroutineTotals();
+        List<Integer> keys = new ArrayList<>(totals.keySet());
+        keys.sort((a, b) -> Long.compare(totals.get(b)[2], totals.get(a)[2]));
+        
+        out.println("Subroutine                    Calls     Exclusive     Inclusive       %");
+        for(int key : keys.subList(0, Math.min(limit, keys.size()))) {
+            long[] total = totals.get(key);
+            out.println(String.format("%-24s %10d %13d %13d %7.2f", getName(key), total[0], total[1], total[2], total[2] * percent));
+        }
+        
+        out.flush();
+    }
+    
+    /**
+     * Writes the cycles per call stack in the folded format of flame graph
+     * tools: one line per stack with the names separated by semicolons,
+     * followed by a space and the cycles
+     * 
+     * @param writer (Writer) where to write to
+     */
+    public void writeFoldedStacks(Writer writer) {
+        PrintWriter out = new PrintWriter(writer);
+        // parents are always created before their children
+        String[] paths = new String[this.nodeCount];
+        
+        for(int node=0; node<this.nodeCount; node++) {
+            String name = getName(this.nodeKey[node]);
+            paths[node] = (node == ROOT) ? name : paths[this.nodeParent[node]] + ";" + name;
+            
+            if(this.nodeCycles[node] > 0) out.println(paths[node] + " " + this.nodeCycles[node]);
+        }
+        
+        out.flush();
+    }
+}
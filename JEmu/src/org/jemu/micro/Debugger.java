@@ -18,8 +18,12 @@
  */
 package org.jemu.micro;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.StringTokenizer;
+import java.util.function.LongSupplier;
 
 /**
  * This interface defines methods that a debugger interface must provide for a
@@ -29,6 +33,11 @@ import java.util.StringTokenizer;
  */
 public interface Debugger extends CPU {
     public abstract static class Mnemonic {
+        /**
+         * Marks a parameter that is not a valid number in parseNumber
+         */
+        public static final long NOT_NUMERIC = Long.MIN_VALUE;
+        
         /**
          * Checks if a string "param" is within a list "optList" (comma 
          * separated list of strings)
@@ -38,49 +47,74 @@ public interface Debugger extends CPU {
          * @return 
          */
         protected boolean isIn(String param, String optList) {
-            StringTokenizer st = new StringTokenizer(optList, ",");
-            while(st.hasMoreTokens()) {
-                if(param.equals(st.nextToken()))
+            int length = param.length();
+            int start = 0;
+            while(start <= optList.length()) {
+                int end = optList.indexOf(',', start);
+                if(end < 0) end = optList.length();
+                
+                if((end - start == length) && optList.regionMatches(start, param, 0, length))
                     return true;
+                
+                start = end + 1;
             }
             return false;
         }
         
-        protected boolean isNumeric(String param) {
-            int value = 0;
+        /**
+         * Parses the number in param starting at begin like Integer.parseInt
+         * does, without creating a substring
+         * 
+         * @param param (String) the parameter
+         * @param begin (int) the index of the first digit or sign
+         * @param radix (int) the radix
+         * @return the value or NOT_NUMERIC (long)
+         */
+        protected static long parseNumber(String param, int begin, int radix) {
+            int length = param.length();
+            if(begin >= length) return NOT_NUMERIC;
             
-            // $ indicates hex value
-            if(param.startsWith("$")) {
-                try {
-                    value = Integer.parseInt(param.substring(1), 16);
-                    return true;
-                }
-                catch (NumberFormatException ex) {
-                    
-                }
-            }
-            // b indicates binary value
-            else if(param.startsWith("b")) {
-                try {
-                    value = Integer.parseInt(param.substring(1), 2);
-                    return true;
-                }
-                catch (NumberFormatException ex) {
-                    
-                }
+            boolean negative = false;
+            char sign = param.charAt(begin);
+            if((sign == '-') || (sign == '+')) {
+                negative = (sign == '-');
+                begin++;
+                if(begin >= length) return NOT_NUMERIC;
             }
-            // otherwise, decimal
-            else {
-                try {
-                    value = Integer.parseInt(param);
-                    return true;
-                }
-                catch (NumberFormatException ex) {
-                    
-                }
+            
+            long value = 0;
+            for(int i=begin; i<length; i++) {
+                int digit = Character.digit(param.charAt(i), radix);
+                if(digit < 0) return NOT_NUMERIC;
+                
+                value = value * radix + digit;
+                if(value > -(long)Integer.MIN_VALUE) return NOT_NUMERIC;
             }
             
-            return false;
+            if(negative) value = -value;
+            if(value > Integer.MAX_VALUE) return NOT_NUMERIC;
+            
+            return value;
+        }
+        
+        /**
+         * Parses a parameter: $ indicates a hex value, b a binary value,
+         * otherwise it is decimal
+         * 
+         * @param param (String) the parameter
+         * @return the value or NOT_NUMERIC (long)
+         */
+        protected static long parseNumber(String param) {
+            if(param.startsWith("$"))
+                return parseNumber(param, 1, 16);
+            else if(param.startsWith("b"))
+                return parseNumber(param, 1, 2);
+            else
+                return parseNumber(param, 0, 10);
+        }
+        
+        protected boolean isNumeric(String param) {
+            return parseNumber(param) != NOT_NUMERIC;
         }
         
         /**
@@ -91,43 +125,148 @@ public interface Debugger extends CPU {
          * @throws SyntaxErrorException 
          */
         protected int getNumeric(String param) throws SyntaxErrorException {
-            int value;
+            long value = parseNumber(param);
+            if(value == NOT_NUMERIC)
+                throw new SyntaxErrorException(param + " is not numeric value");
             
-            // $ indicates hex value
-            if(param.startsWith("$")) {
-                try {
-                    value = Integer.parseInt(param.substring(1), 16);
-                    return value;
-                }
-                catch (NumberFormatException ex) {
-                    // exception thrown below
-                }
+            return (int)value;
+        }
+        
+        public abstract byte[] getOpCodes(StringTokenizer parameters) throws SyntaxErrorException;
+    }
+    
+    /**
+     * A tokenizer for assembler lines that can be reset to a new line and
+     * converts tokens to upper case. Tokens are interned in a small table,
+     * so that mnemonics, register names and repeated operands do not create
+     * a new String for every line. It is used in place of the
+     * StringTokenizer that the Mnemonic classes expect; like the
+     * StringTokenizer, nextToken(delimiters) changes the delimiters for all
+     * following calls.
+     */
+    public static class Tokenizer extends StringTokenizer {
+        public static final String DEFAULT_DELIMITERS = " \t\n\r\f";
+        public static final int TABLE_SIZE = 1024;
+        
+        String line = "";
+        int position;
+        String delimiters = DEFAULT_DELIMITERS;
+        String[] table = new String[TABLE_SIZE];
+        int tableCount;
+        
+        public Tokenizer() {
+            super("");
+        }
+        
+        /**
+         * Starts tokenizing a new line with the default delimiters
+         * 
+         * @param line (String) the line
+         */
+        public void reset(String line) {
+            this.line = line;
+            this.position = 0;
+            this.delimiters = DEFAULT_DELIMITERS;
+        }
+        
+        protected int skipDelimiters(int pos) {
+            while((pos < this.line.length()) && (this.delimiters.indexOf(this.line.charAt(pos)) >= 0))
+                pos++;
+            return pos;
+        }
+        
+        @Override
+        public boolean hasMoreTokens() {
+            return skipDelimiters(this.position) < this.line.length();
+        }
+        
+        @Override
+        public boolean hasMoreElements() {
+            return hasMoreTokens();
+        }
+        
+        @Override
+        public String nextToken() {
+            int start = skipDelimiters(this.position);
+            if(start >= this.line.length())
+                throw new NoSuchElementException();
+            
+            int end = start;
+            while((end < this.line.length()) && (this.delimiters.indexOf(this.line.charAt(end)) < 0))
+                end++;
+            
+            this.position = end;
+            return intern(start, end);
+        }
+        
+        @Override
+        public String nextToken(String delimiters) {
+            this.delimiters = delimiters;
+            return nextToken();
+        }
+        
+        @Override
+        public Object nextElement() {
+            return nextToken();
+        }
+        
+        @Override
+        public int countTokens() {
+            int count = 0;
+            int pos = this.position;
+            while(true) {
+                pos = skipDelimiters(pos);
+                if(pos >= this.line.length()) return count;
+                
+                count++;
+                while((pos < this.line.length()) && (this.delimiters.indexOf(this.line.charAt(pos)) < 0))
+                    pos++;
             }
-            // b indicates binary value
-            else if(param.startsWith("b")) {
-                try {
-                    value = Integer.parseInt(param.substring(1), 2);
-                    return value;
-                }
-                catch (NumberFormatException ex) {
-                    // exception thrown below
-                }
+        }
+        
+        /**
+         * Returns the upper case token line[start..end[ from the table,
+         * adding it if there is room
+         * 
+         * @param start (int) the first character
+         * @param end (int) the character after the token
+         * @return the token (String)
+         */
+        protected String intern(int start, int end) {
+            int hash = 0;
+            for(int i=start; i<end; i++) {
+                hash = 31 * hash + Character.toUpperCase(this.line.charAt(i));
             }
-            // otherwise, decimal
-            else {
-                try {
-                    value = Integer.parseInt(param);
-                    return value;
-                }
-                catch (NumberFormatException ex) {
-                    // exception thrown below
-                }
+            
+            int slot = (hash ^ (hash >>> 16)) & (TABLE_SIZE - 1);
+            while(this.table[slot] != null) {
+                String token = this.table[slot];
+                if(matches(token, start, end)) return token;
+                slot = (slot + 1) & (TABLE_SIZE - 1);
             }
             
-            throw new SyntaxErrorException(param + " is not numeric value");
+            char[] chars = new char[end - start];
+            for(int i=start; i<end; i++) {
+                chars[i - start] = Character.toUpperCase(this.line.charAt(i));
+            }
+            String token = new String(chars);
+            // keep a quarter of the table free so that probing stays short
+            if(this.tableCount < TABLE_SIZE * 3 / 4) {
+                this.table[slot] = token;
+                this.tableCount++;
+            }
+            return token;
         }
         
-        public abstract byte[] getOpCodes(StringTokenizer parameters) throws SyntaxErrorException;
+        protected boolean matches(String token, int start, int end) {
+            if(token.length() != end - start) return false;
+            
+            for(int i=start; i<end; i++) {
+                if(token.charAt(i - start) != Character.toUpperCase(this.line.charAt(i)))
+                    return false;
+            }
+            return true;
+        }
     }
     
     /**
@@ -205,6 +344,34 @@ public interface Debugger extends CPU {
      */
     public byte[] translate(String mnemonic) throws SyntaxErrorException;
     
+    /**
+     * Returns all mnemonics of the CPU by name (upper case), e.g. for an
+     * Assembler
+     * 
+     * @return the mnemonics (Map&lt;String, Mnemonic&gt;)
+     */
+    public Map<String, Mnemonic> getMnemonics();
+    
+    /**
+     * Returns the number of bits that one memory address holds. The opcodes
+     * of getOpCodes hold one unit per byte.
+     * 
+     * @return the bits per address (int)
+     */
+    public default int getMemoryUnitBits() {
+        return 8;
+    }
+    
+    /**
+     * Checks whether 16 bit values are stored with the high part at the
+     * lower address
+     * 
+     * @return true for big endian, false for little endian (boolean)
+     */
+    public default boolean isBigEndian() {
+        return false;
+    }
+    
     /**
      * Returns a list containing all the register names that are supported
      * by this CPU.
@@ -232,6 +399,30 @@ public interface Debugger extends CPU {
      */
     public long getRegisterValue(String registerName) throws IllegalRegisterException;
     
+    /**
+     * Returns a function that reads a register. Conditions (e.g. of
+     * breakpoints) bind it once and call it on every check, so debuggers
+     * should return a lambda that reads the register field directly. The
+     * default implementation goes through getRegisterValue.
+     * 
+     * @param registerName (String) the register name
+     * @return the register reader (LongSupplier)
+     * @throws IllegalRegisterException if the register does not exist
+     */
+    public default LongSupplier getRegisterReader(String registerName) throws IllegalRegisterException {
+        // fail now if the register does not exist
+        getRegisterValue(registerName);
+        
+        return () -> {
+            try {
+                return getRegisterValue(registerName);
+            }
+            catch (IllegalRegisterException ex) {
+                throw new AssertionError(ex);
+            }
+        };
+    }
+    
     /**
      * Returns the value of the program counter
      * 
@@ -273,4 +464,50 @@ public interface Debugger extends CPU {
      * @throws MemoryException 
      */
     public void writeMemoryByte(long address, byte value) throws MemoryException;
+    
+    /**
+     * Returns the memory bus of the CPU
+     * 
+     * @return the memory bus or null if the CPU does not use one (MemoryBus)
+     */
+    public MemoryBus getMemoryBus();
+    
+    /**
+     * Returns the memory blocks that hold the program code, e.g. so that a
+     * DisassemblyCache can subscribe to their writes. The default
+     * implementation returns the blocks of the memory bus.
+     * 
+     * @return the program memory blocks (List&lt;Memory&gt;)
+     */
+    public default List<Memory> getProgramMemoryBlocks() {
+        MemoryBus memoryBus = getMemoryBus();
+        if(memoryBus == null)
+            return Collections.emptyList();
+        
+        return memoryBus.getMemoryBlocks();
+    }
+    
+    /**
+     * Replaces the memory bus of the CPU, e.g. by a ProfilingMemoryBus
+     * 
+     * @param memoryBus (MemoryBus) the new memory bus
+     * @throws UnsupportedOperationException if the CPU does not use a memory bus
+     */
+    public void setMemoryBus(MemoryBus memoryBus);
+    
+    /**
+     * Installs watchpoints on the memory and IO of this CPU. Passing null
+     * removes them again.
+     * 
+     * @param watchpoints (WatchpointSet) the watchpoints or null
+     * @throws UnsupportedOperationException if the CPU does not support watchpoints
+     */
+    public void setWatchpoints(WatchpointSet watchpoints);
+    
+    /**
+     * Returns the installed watchpoints
+     * 
+     * @return the watchpoints or null (WatchpointSet)
+     */
+    public WatchpointSet getWatchpoints();
 }
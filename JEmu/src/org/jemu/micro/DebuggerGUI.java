@@ -20,7 +20,9 @@ package org.jemu.micro;
 
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.util.ArrayList;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -39,8 +41,13 @@ public class DebuggerGUI extends JFrame implements ActionListener, ListSelection
     public static final int DISPLAY_BINARY = 2;
     
     public static final int DEBUGGER_LINES = 600;
+    
+    public static final String[] WATCH_TYPE_NAMES = { "Read", "Write", "Read/Write", "IO in", "IO out", "IO in/out" };
+    public static final int[] WATCH_TYPES = { Watchpoint.WATCH_READ, Watchpoint.WATCH_WRITE, Watchpoint.WATCH_MEMORY,
+        Watchpoint.WATCH_IO_READ, Watchpoint.WATCH_IO_WRITE, Watchpoint.WATCH_IO };
      
     Debugger debugger;
+    DisassemblyCache disassembly;
     long startAddress = 0x1800L;
     int displayType = DISPLAY_HEX;
     String[] addresses = new String[DEBUGGER_LINES];
@@ -55,9 +62,11 @@ public class DebuggerGUI extends JFrame implements ActionListener, ListSelection
     JTable opCodeTable;
     JTable registerTable;
     JButton runStepButton;
-    javax.swing.Timer timer;
+    javax.swing.Timer snapshotTimer;
     JButton runContinuous;
     JButton runStop;
+    JButton reverseStepButton;
+    JButton reverseContinueButton;
     JTextField addressTextField;
     JButton goToAddressButton;
     JTextField contentTextField;
@@ -68,13 +77,29 @@ public class DebuggerGUI extends JFrame implements ActionListener, ListSelection
     JTextField registerValueTextField;
     JButton registerChangeButton;
     JButton breakPointButton;
+    JTextField conditionTextField;
+    JComboBox<String> watchTypeComboBox;
+    JTextField watchValueTextField;
+    JButton watchPointButton;
+    JLabel watchHitLabel;
+    JButton profileButton;
+    MemoryHeatmap heatmap;
+    JButton profileCodeButton;
+    CodeProfiler codeProfiler;
     
-    List<Integer> breakPoints = new ArrayList<>();
+    WatchpointSet watchpoints = new WatchpointSet();
+    EmulationThread emulation;
     
     public DebuggerGUI(Debugger debugger) {
         this.debugger = debugger;
+        this.disassembly = new DisassemblyCache(debugger);
+        this.emulation = new EmulationThread(debugger);
+        this.emulation.setStopCondition(this::checkStop);
         
         initialize();
+        
+        this.emulation.start();
+        this.emulation.setTimeTravel(true);
     }
     
     public final void initialize() {
@@ -139,7 +164,7 @@ public class DebuggerGUI extends JFrame implements ActionListener, ListSelection
         registerTable.setBounds(590, 20, 550, 500);
         add(scrollpane2);
         
-        setSize(1170, 610);
+        setSize(1170, 640);
         setTitle("Seiko Debugger GUI");
         setLayout(null);
         setVisible(true);
@@ -149,9 +174,10 @@ public class DebuggerGUI extends JFrame implements ActionListener, ListSelection
         runStepButton.addActionListener(this);
         add(runStepButton);
         
-        timer = new javax.swing.Timer(1, this);
+        snapshotTimer = new javax.swing.Timer(1000 / EmulationThread.SNAPSHOT_RATE, this);
+        snapshotTimer.start();
         
-        runContinuous = new JButton("Run every 1 sec");
+        runContinuous = new JButton("Run");
         runContinuous.setBounds(120, 530, 100, 20);
         runContinuous.addActionListener(this);
         add(runContinuous);
@@ -161,6 +187,20 @@ public class DebuggerGUI extends JFrame implements ActionListener, ListSelection
         runStop.addActionListener(this);
         add(runStop);
         
+        reverseStepButton = new JButton("Step back");
+        reverseStepButton.setBounds(590, 590, 100, 20);
+        reverseStepButton.setToolTipText("Go back by one instruction");
+        reverseStepButton.addActionListener(this);
+        reverseStepButton.setEnabled(this.emulation.isTimeTravelSupported());
+        add(reverseStepButton);
+        
+        reverseContinueButton = new JButton("Run back");
+        reverseContinueButton.setBounds(700, 590, 100, 20);
+        reverseContinueButton.setToolTipText("Go back to the previous breakpoint or watchpoint");
+        reverseContinueButton.addActionListener(this);
+        reverseContinueButton.setEnabled(this.emulation.isTimeTravelSupported());
+        add(reverseContinueButton);
+        
         addressTextField = new JTextField();
         addressTextField.setBounds(10,560,80,20);
         addressTextField.addActionListener(this);
@@ -176,6 +216,11 @@ public class DebuggerGUI extends JFrame implements ActionListener, ListSelection
         breakPointButton.addActionListener(this);
         add(breakPointButton);
         
+        conditionTextField = new JTextField();
+        conditionTextField.setBounds(10,590,560,20);
+        conditionTextField.setToolTipText("Condition of the next breakpoint, e.g. A == $3F && (HL) != 0 : log HL");
+        add(conditionTextField);
+        
         contentTextField = new JTextField();
         contentTextField.setBounds(200,560,130,20);
         contentTextField.addActionListener(this);
@@ -210,6 +255,130 @@ public class DebuggerGUI extends JFrame implements ActionListener, ListSelection
         registerChangeButton.setBounds(1090,560,60,20);
         registerChangeButton.addActionListener(this);
         add(registerChangeButton);
+        
+        watchTypeComboBox = new JComboBox<>(WATCH_TYPE_NAMES);
+        watchTypeComboBox.setBounds(340,530,90,20);
+        add(watchTypeComboBox);
+        
+        watchValueTextField = new JTextField();
+        watchValueTextField.setBounds(435,530,50,20);
+        watchValueTextField.setToolTipText("Only stop when this value is read/written (empty = any value)");
+        add(watchValueTextField);
+        
+        watchPointButton = new JButton("Watch");
+        watchPointButton.setBounds(490,530,80,20);
+        watchPointButton.setToolTipText("Add/remove a watchpoint at the address in the address field");
+        watchPointButton.addActionListener(this);
+        add(watchPointButton);
+        
+        watchHitLabel = new JLabel();
+        watchHitLabel.setBounds(590,530,430,20);
+        add(watchHitLabel);
+        
+        profileButton = new JButton("Profile");
+        profileButton.setBounds(1030,530,120,20);
+        profileButton.setToolTipText("Count memory accesses and show them as heatmap");
+        profileButton.addActionListener(this);
+        profileButton.setEnabled(this.debugger.getMemoryBus() != null);
+        add(profileButton);
+        
+        profileCodeButton = new JButton("Profile code");
+        profileCodeButton.setBounds(1030,590,120,20);
+        profileCodeButton.setToolTipText("Count cycles per address and subroutine, writes profile.txt and profile.folded when stopped");
+        profileCodeButton.addActionListener(this);
+        profileCodeButton.setEnabled(this.emulation.isProfilingSupported());
+        add(profileCodeButton);
+        
+        try {
+            this.debugger.setWatchpoints(this.watchpoints);
+        }
+        catch (UnsupportedOperationException ex) {
+            watchPointButton.setEnabled(false);
+            watchTypeComboBox.setEnabled(false);
+            watchValueTextField.setEnabled(false);
+        }
+    }
+    
+    /**
+     * Parses a number from a text field ("pc", "$" hex or decimal)
+     * 
+     * @param text (String) the text
+     * @return the value or null if the text is not a number (Integer)
+     */
+    protected Integer parseNumber(String text) {
+        try {
+            if(text.equalsIgnoreCase("pc"))
+                return (int)this.debugger.getProgramCounter();
+            else if(text.startsWith("$"))
+                return Integer.parseInt(text.substring(1), 16);
+            else
+                return Integer.parseInt(text);
+        }
+        catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+    
+    public EmulationThread getEmulationThread() {
+        return this.emulation;
+    }
+    
+    /**
+     * Checks whether the CPU has to stop at a watchpoint (breakpoints are
+     * checked by the emulation thread itself). Called by the emulation
+     * thread after every instruction.
+     * 
+     * @param debugger (Debugger) the CPU
+     * @return the reason to stop or null (String)
+     */
+    protected String checkStop(Debugger debugger) {
+        if(this.watchpoints.isHit())
+            return "Watchpoint";
+        
+        return null;
+    }
+    
+    /**
+     * Shows the latest snapshot of the emulation thread. While the CPU runs,
+     * only the registers are updated; when it stops, the disassembly follows
+     * the program counter.
+     */
+    protected void showSnapshot() {
+        if(!this.emulation.getSnapshots().update()) return;
+        
+        EmulationThread.Snapshot snapshot = this.emulation.getSnapshots().getFrontFrame();
+        long[] values = snapshot.getRegisterValues();
+        List<String> names = this.emulation.getRegisterNames();
+        
+        for(int i=0; i<values.length; i++) {
+            this.registerValues[i] = formatRegisterValue(names.get(i), values[i]);
+        }
+        
+        if(!snapshot.isRunning()) {
+            this.startAddress = snapshot.getProgramCounter();
+            this.createOpCodeTable();
+            this.copyToTextFields();
+            this.copyRegisterToTextField();
+            
+            if(!this.checkWatchpoints() && (snapshot.getStopReason() != null))
+                this.watchHitLabel.setText(snapshot.getStopReason() + " at $" + Long.toHexString(snapshot.getProgramCounter()));
+        }
+        
+        this.repaint();
+    }
+    
+    /**
+     * Checks whether the last instruction triggered a watchpoint and shows
+     * the hit
+     * 
+     * @return true if a watchpoint was hit (boolean)
+     */
+    protected boolean checkWatchpoints() {
+        if(!this.watchpoints.isHit()) return false;
+        
+        this.watchHitLabel.setText("Watchpoint: " + this.watchpoints.getHit());
+        this.watchpoints.clearHit();
+        return true;
     }
     
     protected void createRegisterTable() {
@@ -222,36 +391,7 @@ public class DebuggerGUI extends JFrame implements ActionListener, ListSelection
         for(String regName : regNamList) {
             this.registerNames[pos] = regName;
             try {
-                long value = this.debugger.getRegisterValue(regName);
-                
-                switch (this.displayType) {
-                    case DISPLAY_DECIMAL:
-                        this.registerValues[pos] = Long.toString(value);
-                        break;
-                        
-                    case DISPLAY_HEX:
-                        String hexVal = Long.toHexString(value);
-                        int size = this.debugger.getRegisterSize(regName) / 4;
-                        
-                        while(hexVal.length() < size) {
-                            hexVal = "0" + hexVal;
-                        }
-                        this.registerValues[pos] = "$" + hexVal;
-                        break;
-                        
-                    case DISPLAY_BINARY:
-                        String  binVal = Long.toBinaryString(value);
-                        int bitSize = this.debugger.getRegisterSize(regName);
-                        
-                        while(binVal.length() < bitSize) {
-                            binVal = "0" + binVal;
-                        }
-                        this.registerValues[pos] = "b" + binVal;
-                        break;
-                        
-                    default:
-                        throw new AssertionError();
-                }
+                this.registerValues[pos] = formatRegisterValue(regName, this.debugger.getRegisterValue(regName));
             }
             catch (IllegalRegisterException ex) {
                 // Don't do anything - shouldn't ever get here (TODO?)
@@ -261,34 +401,59 @@ public class DebuggerGUI extends JFrame implements ActionListener, ListSelection
         }
     }
     
+    /**
+     * Formats a register value in the current display type
+     * 
+     * @param regName (String) the register name
+     * @param value (long) the value
+     * @return the formatted value (String)
+     */
+    protected String formatRegisterValue(String regName, long value) {
+        try {
+            switch (this.displayType) {
+                case DISPLAY_DECIMAL:
+                    return Long.toString(value);
+                    
+                case DISPLAY_HEX:
+                    String hexVal = Long.toHexString(value);
+                    int size = this.debugger.getRegisterSize(regName) / 4;
+                    
+                    while(hexVal.length() < size) {
+                        hexVal = "0" + hexVal;
+                    }
+                    return "$" + hexVal;
+                    
+                case DISPLAY_BINARY:
+                    String  binVal = Long.toBinaryString(value);
+                    int bitSize = this.debugger.getRegisterSize(regName);
+                    
+                    while(binVal.length() < bitSize) {
+                        binVal = "0" + binVal;
+                    }
+                    return "b" + binVal;
+                    
+                default:
+                    throw new AssertionError();
+            }
+        }
+        catch (IllegalRegisterException ex) {
+            return Long.toString(value);
+        }
+    }
+    
     protected void createOpCodeTable() {
+        this.disassembly.refresh();
+        
         long address = this.startAddress;
         for(int i=0; i<DEBUGGER_LINES; i++) {
             try {
-                Debugger.CodeAndLength cal = debugger.getCodeAndLength(address);
-                
-                String addrHex = Long.toHexString(address);
-                while(addrHex.length() < 4)
-                    addrHex = "0" + addrHex;
+                DisassemblyCache.Entry entry = this.disassembly.get(address);
                 
-                String bytes = "";
-                String txt = "";
-                for(int x=0; x<cal.getCodeLength(); x++) {
-                    byte memVal = this.debugger.readMemoryByte(address + x);
-                    String opCode = Integer.toHexString(Byte.toUnsignedInt(memVal));
-                    
-                    while(opCode.length() < 2)
-                        opCode = "0" + opCode;
-                    
-                    bytes += opCode;
-                    txt += (char)(memVal);
-                }
-                
-                this.addresses[i] = "$"+addrHex;
-                this.opcodes[i] = "$" + bytes + " (" + txt + ")";
-                this.mnemonics[i] = cal.getCode();
+                this.addresses[i] = entry.getAddressText();
+                this.opcodes[i] = entry.getOpCodeText();
+                this.mnemonics[i] = entry.getCode();
                 
-                address += cal.getCodeLength();
+                address += entry.getCodeLength();
             }
             catch (MemoryException | OpCodeException ex) {
                 Logger.getLogger(DebuggerGUI.class.getName()).log(Level.SEVERE, null, ex);
@@ -302,7 +467,8 @@ public class DebuggerGUI extends JFrame implements ActionListener, ListSelection
     
     public static void main(String args[]) throws Exception {
         Memory mem = new RAMMemoryLittleEndian(8192);
-        SeikoUC2000Display display = new SeikoUC2000Display();
+        SeikoUC2000LCD lcd = new SeikoUC2000LCD();
+        SeikoUC2000Display display = new SeikoUC2000Display(lcd);
         
         // fill memory with something
         java.io.InputStream is = Class.class.getResourceAsStream("/tetris.bin");
@@ -316,58 +482,42 @@ public class DebuggerGUI extends JFrame implements ActionListener, ListSelection
             
         is.close();
         
-        SeikoUC2000Debugger uc2000 = new SeikoUC2000Debugger(mem, display);
+        SeikoUC2000Debugger uc2000 = new SeikoUC2000Debugger(mem, lcd);
         
         DebuggerGUI dg = new DebuggerGUI(uc2000);
-        display.setHandler((IRQHandler)uc2000);
+        lcd.setHandler((IRQHandler)uc2000);
+        lcd.setClock(uc2000.getClock());
+        dg.getEmulationThread().setClock(uc2000.getClock());
+        display.setEmulationThread(dg.getEmulationThread());
+        dg.getEmulationThread().addStateListener(lcd::publishFrame);
     }
 
     @Override
     public void actionPerformed(ActionEvent e) {
         if(e.getSource() == this.runStepButton) {
-            try {
-                this.debugger.runNextOpCode();
-                this.startAddress = this.debugger.getProgramCounter();
-                this.createOpCodeTable();
-                this.createRegisterTable();
-                this.copyToTextFields();
-                this.copyRegisterToTextField();
-                this.repaint();
-            } 
-            catch (MemoryException | OpCodeException ex) {
-                Logger.getLogger(DebuggerGUI.class.getName()).log(Level.SEVERE, null, ex);
-            }
-            
+            this.emulation.step();
         }
         else if(e.getSource() == this.runContinuous) {
-            this.timer.start();
+            this.watchHitLabel.setText("");
+            this.emulation.runContinuously();
         }
         else if(e.getSource() == this.runStop) {
-            this.timer.stop();
+            this.emulation.pause();
         }
-        else if(e.getSource() == this.timer) {
-            try {
-                this.debugger.runNextOpCode();
-                this.startAddress = this.debugger.getProgramCounter();
-                this.createOpCodeTable();
-                this.createRegisterTable();
-                this.copyToTextFields();
-                this.copyRegisterToTextField();
-                this.repaint();
-                
-                int currPC = (int)this.debugger.getProgramCounter();
-                for(Integer address : this.breakPoints) {
-                    if(currPC == address) {
-                        this.timer.stop();
-                    }
-                }
-            } 
-            catch (MemoryException | OpCodeException ex) {
-                this.timer.stop();
-                Logger.getLogger(DebuggerGUI.class.getName()).log(Level.SEVERE, null, ex);
-            }
+        else if(e.getSource() == this.reverseStepButton) {
+            this.emulation.reverseStep();
+        }
+        else if(e.getSource() == this.reverseContinueButton) {
+            this.watchHitLabel.setText("");
+            this.emulation.reverseContinue();
+        }
+        else if(e.getSource() == this.snapshotTimer) {
+            this.showSnapshot();
         }
         else if(e.getSource() == this.goToAddressButton) {
+            // the CPU must not run while its state is read
+            this.emulation.pause();
+            
             String addressText = this.addressTextField.getText();
             
             if(addressText.equalsIgnoreCase("pc")) {
@@ -399,6 +549,10 @@ public class DebuggerGUI extends JFrame implements ActionListener, ListSelection
             this.repaint();
         }
         else if(e.getSource() == this.contentChangeButton) {
+            // the CPU must not run while it is changed
+            this.emulation.pause();
+            this.emulation.discardFuture();
+            
             String contentText = this.contentTextField.getText();
             String addressText = this.addressTextField.getText();
             int addressValue = 0;
@@ -457,6 +611,10 @@ public class DebuggerGUI extends JFrame implements ActionListener, ListSelection
             }
         }
         else if(e.getSource() == this.opCodeChangeButton) {
+            // the CPU must not run while it is changed
+            this.emulation.pause();
+            this.emulation.discardFuture();
+            
             String opCodeText = this.opCodeTextField.getText();
             String addressText = this.addressTextField.getText();
             int addressValue = 0;
@@ -496,6 +654,10 @@ public class DebuggerGUI extends JFrame implements ActionListener, ListSelection
             }
         }
         else if(e.getSource() == this.registerChangeButton) {
+            // the CPU must not run while it is changed
+            this.emulation.pause();
+            this.emulation.discardFuture();
+            
             String valueText = this.registerValueTextField.getText();
             String registerName = this.registerNameTextField.getText();
             int value = 0;
@@ -530,6 +692,85 @@ public class DebuggerGUI extends JFrame implements ActionListener, ListSelection
                 }
             }
         }
+        else if(e.getSource() == this.watchPointButton) {
+            Integer address = parseNumber(this.addressTextField.getText());
+            String valueText = this.watchValueTextField.getText().trim();
+            Integer value = valueText.isEmpty() ? Watchpoint.ANY_VALUE : parseNumber(valueText);
+            int type = WATCH_TYPES[this.watchTypeComboBox.getSelectedIndex()];
+            
+            if((address != null) && (value != null)) {
+                WatchpointSet activeWatchpoints = this.watchpoints;
+                String[] message = new String[1];
+                
+                // the watchpoints and the page table belong to the emulation thread
+                this.emulation.invokeAndWait(() -> {
+                    Watchpoint existing = null;
+                    for(Watchpoint watchpoint : activeWatchpoints.getWatchpoints()) {
+                        if((watchpoint.getLowAddress() == address) && (watchpoint.getType() == type))
+                            existing = watchpoint;
+                    }
+                    
+                    if(existing != null) {
+                        // remove when it exists
+                        activeWatchpoints.remove(existing);
+                        message[0] = "Removed watchpoint " + existing;
+                    }
+                    else {
+                        // add when new
+                        int condition = (value == Watchpoint.ANY_VALUE) ? Watchpoint.ANY_VALUE : (value & 0xFF);
+                        Watchpoint watchpoint = new Watchpoint(address, address + 1, type, condition);
+                        activeWatchpoints.add(watchpoint);
+                        message[0] = "Added watchpoint " + watchpoint;
+                    }
+                });
+                this.watchHitLabel.setText(message[0]);
+            }
+        }
+        else if(e.getSource() == this.profileButton) {
+            // the CPU must not run while it is changed
+            this.emulation.pause();
+            
+            MemoryBus bus = this.debugger.getMemoryBus();
+            
+            if(bus instanceof ProfilingMemoryBus) {
+                // swap the uninstrumented bus back in
+                this.debugger.setMemoryBus(((ProfilingMemoryBus)bus).getOriginalBus());
+                if(this.heatmap != null) {
+                    this.heatmap.dispose();
+                    this.heatmap = null;
+                }
+                this.profileButton.setText("Profile");
+            }
+            else {
+                ProfilingMemoryBus profilingBus = new ProfilingMemoryBus(bus, true);
+                this.debugger.setMemoryBus(profilingBus);
+                this.heatmap = new MemoryHeatmap(profilingBus);
+                this.profileButton.setText("Stop profiling");
+            }
+        }
+        else if(e.getSource() == this.profileCodeButton) {
+            if(this.codeProfiler != null) {
+                this.emulation.setProfiler(null);
+                
+                try (Writer report = new FileWriter("profile.txt"); Writer folded = new FileWriter("profile.folded")) {
+                    this.codeProfiler.writeReport(report, CodeProfiler.DEFAULT_REPORT_LIMIT);
+                    this.codeProfiler.writeFoldedStacks(folded);
+                    this.watchHitLabel.setText("Wrote profile.txt and profile.folded");
+                }
+                catch (IOException ex) {
+                    Logger.getLogger(DebuggerGUI.class.getName()).log(Level.SEVERE, null, ex);
+                    this.watchHitLabel.setText(ex.getMessage());
+                }
+                
+                this.codeProfiler = null;
+                this.profileCodeButton.setText("Profile code");
+            }
+            else {
+                this.codeProfiler = new CodeProfiler();
+                this.emulation.setProfiler(this.codeProfiler);
+                this.profileCodeButton.setText("Stop profiling");
+            }
+        }
         else if(e.getSource() == this.breakPointButton) {
             String addressText = this.addressTextField.getText();
             Integer address = null; 
@@ -555,13 +796,31 @@ public class DebuggerGUI extends JFrame implements ActionListener, ListSelection
                 }
             }
             if(!error) {
-                if(this.breakPoints.contains(address)) {
-                    // remove when it exists
-                    this.breakPoints.remove(address);
+                int breakAddress = address;
+                BreakpointSet breakpoints = this.emulation.getBreakpoints();
+                String conditionText = this.conditionTextField.getText().trim();
+                
+                if(conditionText.isEmpty()) {
+                    boolean[] added = new boolean[1];
+                    
+                    // the breakpoints belong to the emulation thread
+                    this.emulation.invokeAndWait(() -> added[0] = breakpoints.toggle(breakAddress));
+                    
+                    if(added[0])
+                        this.watchHitLabel.setText("Added breakpoint $" + Integer.toHexString(breakAddress));
+                    else
+                        this.watchHitLabel.setText("Removed breakpoint $" + Integer.toHexString(breakAddress));
                 }
                 else {
-                    // add when new
-                    this.breakPoints.add(address);
+                    try {
+                        // replaces an existing breakpoint at the address
+                        Breakpoint breakpoint = new Breakpoint(breakAddress, BreakpointCondition.compile(conditionText, this.debugger));
+                        this.emulation.invokeAndWait(() -> breakpoints.add(breakpoint));
+                        this.watchHitLabel.setText("Added breakpoint " + breakpoint);
+                    }
+                    catch (SyntaxErrorException ex) {
+                        this.watchHitLabel.setText(ex.getMessage());
+                    }
                 }
             }
         }
@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2021 peter.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jemu.micro;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class keeps one dirty bit per page of a memory block. The memory marks
+ * pages on write, a consumer (snapshot writer, memory view, display) collects
+ * and clears the dirty pages whenever it needs them. Marking and collecting
+ * may happen on different threads.
+ * 
+ * @author peter
+ */
+public class DirtyPageMap {
+    public static final int DEFAULT_PAGE_SHIFT = 8;
+    
+    long lowAddress;
+    long highAddress;
+    int pageShift;
+    AtomicLongArray bits;
+    
+    /**
+     * Creates a new instance of DirtyPageMap for the address range of a
+     * memory block with 256 byte pages
+     * 
+     * @param memory (Memory) the memory block
+     */
+    public DirtyPageMap(Memory memory) {
+        this(memory.getLowAddress(), memory.getHighAddress(), DEFAULT_PAGE_SHIFT);
+    }
+    
+    /**
+     * Creates a new instance of DirtyPageMap
+     * 
+     * @param lowAddress (long) the first address
+     * @param highAddress (long) the address after the range (exclusive)
+     * @param pageShift (int) the page size as a power of 2
+     */
+    public DirtyPageMap(long lowAddress, long highAddress, int pageShift) {
+        this.lowAddress = lowAddress;
+        this.highAddress = highAddress;
+        this.pageShift = pageShift;
+        
+        int pages = (int)(((highAddress - lowAddress) + (1L << pageShift) - 1) >>> pageShift);
+        this.bits = new AtomicLongArray((pages + 63) >>> 6);
+    }
+    
+    /**
+     * Marks the page of an address as dirty. Addresses outside of the range
+     * are ignored.
+     * 
+     * @param address (long) the address that was written
+     */
+    public void mark(long address) {
+        if((address < this.lowAddress) || (address >= this.highAddress)) return;
+        
+        int page = (int)((address - this.lowAddress) >>> this.pageShift);
+        int word = page >>> 6;
+        long bit = 1L << page;
+        long value = this.bits.get(word);
+        
+        // Only pay for the atomic update the first time a page gets dirty
+        while((value & bit) == 0) {
+            if(this.bits.compareAndSet(word, value, value | bit)) return;
+            value = this.bits.get(word);
+        }
+    }
+    
+    /**
+     * Marks all pages as dirty, e.g. after the memory was loaded from a file
+     */
+    public void markAll() {
+        for(int page = 0; page < getPageCount(); page++) {
+            mark(getPageAddress(page));
+        }
+    }
+    
+    /**
+     * Checks whether a page is dirty
+     * 
+     * @param page (int) the page number
+     * @return true if the page was written since the last collect (boolean)
+     */
+    public boolean isDirty(int page) {
+        return (this.bits.get(page >>> 6) & (1L << page)) != 0;
+    }
+    
+    /**
+     * Writes the numbers of all dirty pages into the buffer and clears them.
+     * The buffer should hold getPageCount() entries; pages that do not fit
+     * stay dirty for the next call. No objects are allocated.
+     * 
+     * @param pages (int[]) the buffer for the page numbers
+     * @return the number of dirty pages written to the buffer (int)
+     */
+    public int collectAndClear(int[] pages) {
+        int count = 0;
+        
+        for(int word = 0; word < this.bits.length(); word++) {
+            if(this.bits.get(word) == 0) continue;
+            
+            long value = this.bits.getAndSet(word, 0L);
+            while(value != 0) {
+                int bit = Long.numberOfTrailingZeros(value);
+                value &= value - 1;
+                
+                if(count < pages.length) {
+                    pages[count++] = (word << 6) + bit;
+                }
+                else {
+                    // Buffer is full, keep the page for the next call
+                    mark(getPageAddress((word << 6) + bit));
+                }
+            }
+        }
+        
+        return count;
+    }
+    
+    /**
+     * Clears all dirty bits
+     */
+    public void clear() {
+        for(int word = 0; word < this.bits.length(); word++) {
+            this.bits.set(word, 0L);
+        }
+    }
+    
+    /**
+     * Returns the first address of a page
+     * 
+     * @param page (int) the page number
+     * @return the address (long)
+     */
+    public long getPageAddress(int page) {
+        return this.lowAddress + ((long)page << this.pageShift);
+    }
+    
+    public int getPageCount() {
+        return (int)(((this.highAddress - this.lowAddress) + getPageSize() - 1) >>> this.pageShift);
+    }
+    
+    public long getPageSize() {
+        return 1L << this.pageShift;
+    }
+    
+    public int getPageShift() {
+        return this.pageShift;
+    }
+    
+    public long getLowAddress() {
+        return this.lowAddress;
+    }
+    
+    public long getHighAddress() {
+        return this.highAddress;
+    }
+    
+    /**
+     * Helper for memory implementations: returns a copy of the subscriber
+     * array with the map added
+     * 
+     * @param maps (DirtyPageMap[]) the current subscribers or null
+     * @param map (DirtyPageMap) the new subscriber
+     * @return the new subscriber array (DirtyPageMap[])
+     */
+    static DirtyPageMap[] add(DirtyPageMap[] maps, DirtyPageMap map) {
+        if(maps == null) return new DirtyPageMap[] { map };
+        
+        DirtyPageMap[] result = new DirtyPageMap[maps.length + 1];
+        System.arraycopy(maps, 0, result, 0, maps.length);
+        result[maps.length] = map;
+        return result;
+    }
+    
+    /**
+     * Helper for memory implementations: returns a copy of the subscriber
+     * array without the map, or null if no subscriber is left
+     * 
+     * @param maps (DirtyPageMap[]) the current subscribers or null
+     * @param map (DirtyPageMap) the subscriber to remove
+     * @return the new subscriber array or null (DirtyPageMap[])
+     */
+    static DirtyPageMap[] remove(DirtyPageMap[] maps, DirtyPageMap map) {
+        if(maps == null) return null;
+        
+        int count = 0;
+        DirtyPageMap[] result = new DirtyPageMap[maps.length];
+        for(DirtyPageMap m : maps) {
+            if(m != map) result[count++] = m;
+        }
+        
+        if(count == 0) return null;
+        if(count == maps.length) return maps;
+        
+        DirtyPageMap[] shortened = new DirtyPageMap[count];
+        System.arraycopy(result, 0, shortened, 0, count);
+        return shortened;
+    }
+    
+    /**
+     * Helper for memory implementations: marks an address in all subscribers
+     * 
+     * @param maps (DirtyPageMap[]) the subscribers
+     * @param address (long) the address that was written
+     */
+    static void mark(DirtyPageMap[] maps, long address) {
+        for(DirtyPageMap map : maps) {
+            map.mark(address);
+        }
+    }
+}
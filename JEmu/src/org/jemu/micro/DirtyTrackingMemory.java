@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2021 peter.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jemu.micro;
+
+/**
+ * This interface is implemented by writable memory that can report which
+ * pages were written. As long as no DirtyPageMap is subscribed, writes do
+ * not pay anything for the tracking.
+ * 
+ * @author peter
+ */
+public interface DirtyTrackingMemory extends Memory {
+    
+    /**
+     * Subscribes a dirty page map. Every following write marks the page in
+     * the map.
+     * 
+     * @param dirtyPageMap (DirtyPageMap) the map
+     */
+    public void addDirtyPageMap(DirtyPageMap dirtyPageMap);
+    
+    /**
+     * Unsubscribes a dirty page map
+     * 
+     * @param dirtyPageMap (DirtyPageMap) the map
+     */
+    public void removeDirtyPageMap(DirtyPageMap dirtyPageMap);
+}
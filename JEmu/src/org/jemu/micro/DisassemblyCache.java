@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2021 peter.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jemu.micro;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * This class caches the disassembly of a debugger by address, so that the
+ * opcode view does not decode the same code again after every step or scroll.
+ * It subscribes a DirtyPageMap to every program memory block; on refresh()
+ * all entries that overlap a written page are dropped. If a block does not
+ * track writes (e.g. bank switched memory), the whole cache is dropped on
+ * every refresh instead.
+ * 
+ * @author peter
+ */
+public class DisassemblyCache {
+    /**
+     * Two digit lower case hex strings for all byte values
+     */
+    public static final String[] HEX = new String[256];
+    
+    static {
+        String digits = "0123456789abcdef";
+        for(int i=0; i<256; i++) {
+            HEX[i] = new String(new char[] { digits.charAt(i >>> 4), digits.charAt(i & 0x0F) });
+        }
+    }
+    
+    /**
+     * A disassembled opcode
+     */
+    public static class Entry {
+        long address;
+        long codeLength;
+        String code;
+        String addressText;
+        String opCodeText;
+        
+        public Entry(long address, long codeLength, String code, String addressText, String opCodeText) {
+            this.address = address;
+            this.codeLength = codeLength;
+            this.code = code;
+            this.addressText = addressText;
+            this.opCodeText = opCodeText;
+        }
+        
+        public long getAddress() {
+            return this.address;
+        }
+        
+        public long getCodeLength() {
+            return this.codeLength;
+        }
+        
+        /**
+         * Returns the mnemonic
+         * 
+         * @return the mnemonic (String)
+         */
+        public String getCode() {
+            return this.code;
+        }
+        
+        /**
+         * Returns the address as "$hhhh"
+         * 
+         * @return the address (String)
+         */
+        public String getAddressText() {
+            return this.addressText;
+        }
+        
+        /**
+         * Returns the opcode bytes as "$hhhh (text)"
+         * 
+         * @return the opcode bytes (String)
+         */
+        public String getOpCodeText() {
+            return this.opCodeText;
+        }
+    }
+    
+    Debugger debugger;
+    HashMap<Long, Entry> entries = new HashMap<>();
+    List<DirtyPageMap> dirtyPageMaps = new ArrayList<>();
+    boolean tracked;
+    long maxCodeLength = 1;
+    int[] dirtyPages;
+    long hits;
+    long misses;
+    
+    /**
+     * Creates a new instance of DisassemblyCache and subscribes to the writes
+     * of the program memory of the debugger
+     * 
+     * @param debugger (Debugger) the debugger that disassembles
+     */
+    public DisassemblyCache(Debugger debugger) {
+        this.debugger = debugger;
+        this.tracked = true;
+        
+        int maxPages = 0;
+        for(Memory memory : debugger.getProgramMemoryBlocks()) {
+            if(memory instanceof DirtyTrackingMemory) {
+                DirtyPageMap map = new DirtyPageMap(memory);
+                ((DirtyTrackingMemory)memory).addDirtyPageMap(map);
+                this.dirtyPageMaps.add(map);
+                maxPages = Math.max(maxPages, map.getPageCount());
+            }
+            else {
+                this.tracked = false;
+            }
+        }
+        if(this.dirtyPageMaps.isEmpty())
+            this.tracked = false;
+        
+        this.dirtyPages = new int[maxPages];
+    }
+    
+    /**
+     * Drops all entries that overlap memory written since the last refresh.
+     * Call this before reading a batch of entries.
+     */
+    public void refresh() {
+        if(!this.tracked) {
+            this.entries.clear();
+            return;
+        }
+        
+        for(DirtyPageMap map : this.dirtyPageMaps) {
+            int count = map.collectAndClear(this.dirtyPages);
+            for(int i=0; i<count; i++) {
+                long pageAddress = map.getPageAddress(this.dirtyPages[i]);
+                invalidate(pageAddress, pageAddress + map.getPageSize());
+            }
+        }
+    }
+    
+    /**
+     * Drops all entries that overlap the given address range
+     * 
+     * @param lowAddress (long) the first address
+     * @param highAddress (long) the address after the range (exclusive)
+     */
+    public void invalidate(long lowAddress, long highAddress) {
+        if(this.entries.isEmpty()) return;
+        
+        // an opcode starting up to maxCodeLength-1 bytes earlier reaches into the range
+        for(long address = lowAddress - this.maxCodeLength + 1; address < highAddress; address++) {
+            this.entries.remove(address);
+        }
+    }
+    
+    /**
+     * Drops all entries
+     */
+    public void invalidateAll() {
+        this.entries.clear();
+    }
+    
+    /**
+     * Returns the disassembled opcode at an address, decoding it only if it
+     * is not cached yet
+     * 
+     * @param address (long) the address
+     * @return the opcode (Entry)
+     * @throws MemoryException if the address is not in memory
+     * @throws OpCodeException if the opcode at this address is not valid
+     */
+    public Entry get(long address) throws MemoryException, OpCodeException {
+        Entry entry = this.entries.get(address);
+        if(entry != null) {
+            this.hits++;
+            return entry;
+        }
+        
+        this.misses++;
+        Debugger.CodeAndLength cal = this.debugger.getCodeAndLength(address);
+        long codeLength = cal.getCodeLength();
+        
+        byte[] code = new byte[(int)codeLength];
+        for(int x=0; x<codeLength; x++) {
+            code[x] = peekByte(address + x);
+        }
+        
+        StringBuilder bytes = new StringBuilder(4 + (int)codeLength * 3);
+        bytes.append('$');
+        for(int x=0; x<codeLength; x++) {
+            bytes.append(HEX[Byte.toUnsignedInt(code[x])]);
+        }
+        bytes.append(" (");
+        for(int x=0; x<codeLength; x++) {
+            bytes.append((char)code[x]);
+        }
+        bytes.append(')');
+        
+        entry = new Entry(address, codeLength, cal.getCode(), formatAddress(address), bytes.toString());
+        this.entries.put(address, entry);
+        if(codeLength > this.maxCodeLength)
+            this.maxCodeLength = codeLength;
+        
+        return entry;
+    }
+    
+    /**
+     * Reads a byte of code without triggering watchpoints
+     * 
+     * @param address (long) the address
+     * @return the content (byte)
+     * @throws MemoryException if there is no memory at this address
+     */
+    protected byte peekByte(long address) throws MemoryException {
+        MemoryBus bus = this.debugger.getMemoryBus();
+        return (bus != null) ? bus.peekByte(address) : this.debugger.readMemoryByte(address);
+    }
+    
+    /**
+     * Formats an address as "$hhhh" with at least four hex digits
+     * 
+     * @param address (long) the address
+     * @return the formatted address (String)
+     */
+    public static String formatAddress(long address) {
+        if((address >= 0) && (address <= 0xFFFF)) {
+            return "$" + HEX[(int)(address >>> 8)] + HEX[(int)(address & 0xFF)];
+        }
+        
+        return "$" + Long.toHexString(address);
+    }
+    
+    /**
+     * Returns the number of lookups that were answered from the cache
+     * 
+     * @return the hits (long)
+     */
+    public long getHits() {
+        return this.hits;
+    }
+    
+    /**
+     * Returns the number of lookups that had to decode the opcode
+     * 
+     * @return the misses (long)
+     */
+    public long getMisses() {
+        return this.misses;
+    }
+    
+    /**
+     * Returns the number of cached opcodes
+     * 
+     * @return the size (int)
+     */
+    public int size() {
+        return this.entries.size();
+    }
+}
@@ -0,0 +1,704 @@
+/*
+ * Copyright (C) 2021 peter.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jemu.micro;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class runs a CPU on its own thread. The CPU executes in batches of
+ * about BATCH_SIZE instructions; between the batches the thread executes the
+ * commands (run, pause, step, ...) that other threads (e.g. the EDT) have
+ * queued, and publishes a snapshot of the registers at most SNAPSHOT_RATE
+ * times per second.
+ * 
+ * While the thread runs the CPU, no other thread may touch the CPU. Use
+ * pause() or invokeAndWait() to access it from another thread.
+ * 
+ * @author peter
+ */
+public class EmulationThread extends Thread {
+    
+    /**
+     * This interface is checked after every instruction while the CPU runs
+     */
+    public interface StopCondition {
+        /**
+         * Checks whether the CPU should stop after the last instruction
+         * 
+         * @param debugger (Debugger) the CPU
+         * @return the reason to stop or null to continue (String)
+         */
+        public String check(Debugger debugger);
+    }
+    
+    /**
+     * This class holds the state of the CPU as it is shown to the user
+     */
+    public static class Snapshot {
+        final long[] registerValues;
+        long programCounter;
+        long instructionCount;
+        boolean running;
+        String stopReason;
+        
+        Snapshot(int registerCount) {
+            this.registerValues = new long[registerCount];
+        }
+        
+        /**
+         * Returns the register values in the order of getRegisterNames()
+         * 
+         * @return the values (long[])
+         */
+        public long[] getRegisterValues() {
+            return this.registerValues;
+        }
+        
+        public long getProgramCounter() {
+            return this.programCounter;
+        }
+        
+        public long getInstructionCount() {
+            return this.instructionCount;
+        }
+        
+        public boolean isRunning() {
+            return this.running;
+        }
+        
+        /**
+         * Returns why the CPU stopped
+         * 
+         * @return the reason or null (String)
+         */
+        public String getStopReason() {
+            return this.stopReason;
+        }
+    }
+    
+    // Instructions executed between two looks at the command queue on
+    // average, each batch has a random length from BATCH_SIZE / 2 to
+    // BATCH_SIZE * 3 / 2, so the samples do not alias with loops of the
+    // emulated program
+    public static final int BATCH_SIZE = 2000;
+    
+    // Snapshots per second while the CPU runs
+    public static final int SNAPSHOT_RATE = 30;
+    
+    // Longest time the thread waits for an interrupt before it looks at the command queue
+    static final long MAX_IDLE_MILLIS = 10L;
+    
+    // Layout of the sample published after every batch
+    public static final long SAMPLE_PC_MASK = 0xFFFFFFFFL;
+    public static final int SAMPLE_DEPTH_SHIFT = 32;
+    public static final int SAMPLE_SEQUENCE_SHIFT = 48;
+    
+    static final AtomicLongFieldUpdater<EmulationThread> SAMPLE_UPDATER = AtomicLongFieldUpdater.newUpdater(EmulationThread.class, "sample");
+    
+    final Debugger debugger;
+    final List<String> registerNames;
+    final FrameExchange<Snapshot> snapshots;
+    final ConcurrentLinkedQueue<Runnable> commands = new ConcurrentLinkedQueue<>();
+    final BreakpointSet breakpoints = new BreakpointSet();
+    final List<Consumer<String>> stopListeners = new CopyOnWriteArrayList<>();
+    final List<Runnable> stateListeners = new CopyOnWriteArrayList<>();
+    
+    volatile VirtualClock clock = null;
+    volatile StopCondition stopCondition = null;
+    volatile boolean shutdown = false;
+    volatile long sample = 0L;
+    
+    // Only used by the emulation thread
+    TimeMachine timeMachine = null;
+    boolean running = false;
+    long instructionCount = 0L;
+    String stopReason = null;
+    long nextSnapshotNanos = 0L;
+    int batchSeed = 0x2545F491;
+    
+    /**
+     * Creates a new instance of EmulationThread. The thread still has to be
+     * started.
+     * 
+     * @param debugger (Debugger) the CPU
+     */
+    public EmulationThread(Debugger debugger) {
+        super("Emulation");
+        this.debugger = debugger;
+        this.registerNames = debugger.getRegisterNames();
+        this.snapshots = new FrameExchange<>(() -> new Snapshot(this.registerNames.size()));
+        setDaemon(true);
+    }
+    
+    /**
+     * Sets the clock that paces the CPU. Without clock the CPU runs as fast
+     * as possible.
+     * 
+     * @param clock (VirtualClock) the clock or null
+     */
+    public void setClock(VirtualClock clock) {
+        this.clock = clock;
+    }
+    
+    public void setStopCondition(StopCondition stopCondition) {
+        this.stopCondition = stopCondition;
+    }
+    
+    public StopCondition getStopCondition() {
+        return this.stopCondition;
+    }
+    
+    /**
+     * Returns the breakpoints. They belong to the emulation thread, so other
+     * threads have to change them with execute() or invokeAndWait().
+     * 
+     * @return the breakpoints (BreakpointSet)
+     */
+    public BreakpointSet getBreakpoints() {
+        return this.breakpoints;
+    }
+    
+    public List<String> getRegisterNames() {
+        return this.registerNames;
+    }
+    
+    /**
+     * Returns the snapshots published by this thread. The reader side may only
+     * be used by one thread.
+     * 
+     * @return the snapshot exchange (FrameExchange&lt;Snapshot&gt;)
+     */
+    public FrameExchange<Snapshot> getSnapshots() {
+        return this.snapshots;
+    }
+    
+    /**
+     * Adds a listener that is called on the emulation thread with the reason
+     * whenever the running CPU stops
+     * 
+     * @param listener (Consumer) the listener
+     */
+    public void addStopListener(Consumer<String> listener) {
+        this.stopListeners.add(listener);
+    }
+    
+    /**
+     * Removes a listener added by addStopListener
+     * 
+     * @param listener (Consumer) the listener
+     */
+    public void removeStopListener(Consumer<String> listener) {
+        this.stopListeners.remove(listener);
+    }
+    
+    /**
+     * Adds a listener that is called on the emulation thread whenever the
+     * state of the stopped CPU has been published, i.e. after it paused,
+     * stepped or moved in the recorded history
+     * 
+     * @param listener (Runnable) the listener
+     */
+    public void addStateListener(Runnable listener) {
+        this.stateListeners.add(listener);
+    }
+    
+    /**
+     * Removes a listener added by addStateListener
+     * 
+     * @param listener (Runnable) the listener
+     */
+    public void removeStateListener(Runnable listener) {
+        this.stateListeners.remove(listener);
+    }
+    
+    /**
+     * Queues a command that is executed on the emulation thread between two
+     * instructions
+     * 
+     * @param command (Runnable) the command
+     */
+    public void execute(Runnable command) {
+        this.commands.add(command);
+        LockSupport.unpark(this);
+    }
+    
+    /**
+     * Executes a command on the emulation thread and waits until it is done
+     * 
+     * @param command (Runnable) the command
+     */
+    public void invokeAndWait(Runnable command) {
+        if(Thread.currentThread() == this) {
+            command.run();
+            return;
+        }
+        
+        FutureTask<Void> task = new FutureTask<>(command, null);
+        execute(task);
+        
+        try {
+            task.get();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException ex) {
+            Logger.getLogger(EmulationThread.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+    
+    /**
+     * Lets the CPU run continuously
+     */
+    public void runContinuously() {
+        execute(() -> {
+            this.running = true;
+            this.stopReason = null;
+            if(this.clock != null) this.clock.rebase();
+        });
+    }
+    
+    /**
+     * Stops the CPU and waits until it has stopped, so the caller may access
+     * the CPU afterwards
+     */
+    public void pause() {
+        invokeAndWait(() -> {
+            if(this.running) halt("Paused");
+        });
+    }
+    
+    /**
+     * Executes a single instruction
+     */
+    public void step() {
+        execute(() -> {
+            this.running = false;
+            this.stopReason = null;
+            runInstruction();
+            publishSnapshot();
+        });
+    }
+    
+    /**
+     * Checks whether the CPU can report to a CodeProfiler
+     * 
+     * @return true if the CPU is a ProfilableCPU (boolean)
+     */
+    public boolean isProfilingSupported() {
+        return this.debugger instanceof ProfilableCPU;
+    }
+    
+    /**
+     * Installs a profiler between two instructions; passing null switches
+     * profiling off
+     * 
+     * @param profiler (CodeProfiler) the profiler or null
+     */
+    public void setProfiler(CodeProfiler profiler) {
+        if(!isProfilingSupported()) return;
+        
+        invokeAndWait(() -> ((ProfilableCPU)this.debugger).setProfiler(profiler));
+    }
+    
+    /**
+     * Checks whether the CPU can go back in time
+     * 
+     * @return true if the CPU is a ReversibleCPU (boolean)
+     */
+    public boolean isTimeTravelSupported() {
+        return this.debugger instanceof ReversibleCPU;
+    }
+    
+    /**
+     * Starts or stops recording checkpoints and inputs for reverseStep and
+     * reverseContinue. Recording starts at the current state.
+     * 
+     * @param enabled (boolean) true to record
+     */
+    public void setTimeTravel(boolean enabled) {
+        if(!isTimeTravelSupported()) return;
+        
+        execute(() -> {
+            if(this.timeMachine != null) {
+                this.timeMachine.close();
+                this.timeMachine = null;
+            }
+            if(enabled) this.timeMachine = new TimeMachine((ReversibleCPU)this.debugger);
+        });
+    }
+    
+    /**
+     * Goes back by one instruction
+     */
+    public void reverseStep() {
+        execute(() -> {
+            this.running = false;
+            this.stopReason = null;
+            
+            if(this.timeMachine != null) {
+                long position = this.timeMachine.getPosition();
+                if(position > this.timeMachine.getOldestPosition())
+                    seek(position - 1);
+                else
+                    this.stopReason = "Start of recording";
+            }
+            publishSnapshot();
+        });
+    }
+    
+    /**
+     * Goes back to the last position at which the CPU would have stopped at
+     * a breakpoint or the stop condition, or to the start of the recording
+     */
+    public void reverseContinue() {
+        execute(() -> {
+            this.running = false;
+            this.stopReason = null;
+            
+            if(this.timeMachine != null) {
+                WatchpointSet watchpoints = this.debugger.getWatchpoints();
+                StopCondition condition = this.stopCondition;
+                String[] reason = new String[1];
+                
+                if(watchpoints != null) watchpoints.clearHit();
+                CodeProfiler profiler = suspendProfiler();
+                long position = this.timeMachine.findLast(this.timeMachine.getPosition(), (long p) -> {
+                    String stop = checkStop(condition);
+                    if(watchpoints != null) watchpoints.clearHit();
+                    if(stop != null) reason[0] = stop;
+                    return stop != null;
+                });
+                resumeProfiler(profiler);
+                
+                if(position >= 0) {
+                    seek(position);
+                    this.stopReason = reason[0];
+                }
+                else {
+                    seek(this.timeMachine.getOldestPosition());
+                    this.stopReason = "Start of recording";
+                }
+            }
+            publishSnapshot();
+        });
+    }
+    
+    /**
+     * Forgets the recorded future. Must be called before the state of the
+     * CPU is changed by hand, because the recorded execution after the
+     * current position would not match anymore.
+     */
+    public void discardFuture() {
+        invokeAndWait(() -> {
+            if(this.timeMachine != null) this.timeMachine.truncate();
+        });
+    }
+    
+    /**
+     * Moves the time machine to a position and keeps the instruction count
+     * in line
+     * 
+     * @param position (long) the position
+     */
+    protected void seek(long position) {
+        long previous = this.timeMachine.getPosition();
+        
+        CodeProfiler profiler = suspendProfiler();
+        this.timeMachine.seek(position);
+        resumeProfiler(profiler);
+        this.instructionCount += this.timeMachine.getPosition() - previous;
+        
+        // hits of the repeated instructions are not of interest
+        if(this.debugger.getWatchpoints() != null) this.debugger.getWatchpoints().clearHit();
+    }
+    
+    /**
+     * Removes the profiler while the time machine repeats instructions, so
+     * they are not counted twice
+     * 
+     * @return the removed profiler or null (CodeProfiler)
+     */
+    protected CodeProfiler suspendProfiler() {
+        if(!isProfilingSupported()) return null;
+        
+        CodeProfiler profiler = ((ProfilableCPU)this.debugger).getProfiler();
+        ((ProfilableCPU)this.debugger).setProfiler(null);
+        return profiler;
+    }
+    
+    /**
+     * Installs a profiler removed by suspendProfiler again. The call stack
+     * of the profiler does not match the restored state, so it starts over.
+     * 
+     * @param profiler (CodeProfiler) the profiler or null
+     */
+    protected void resumeProfiler(CodeProfiler profiler) {
+        if(profiler == null) return;
+        
+        profiler.resetCallStack();
+        ((ProfilableCPU)this.debugger).setProfiler(profiler);
+    }
+    
+    /**
+     * Checks the breakpoints and the stop condition for the current state
+     * without counting breakpoint hits
+     * 
+     * @param condition (StopCondition) the stop condition or null
+     * @return the reason to stop or null (String)
+     */
+    protected String checkStop(StopCondition condition) {
+        if(!this.breakpoints.isEmpty()) {
+            Breakpoint breakpoint = this.breakpoints.test((int)this.debugger.getProgramCounter());
+            if(breakpoint != null) return "Breakpoint " + breakpoint;
+        }
+        
+        return (condition != null) ? condition.check(this.debugger) : null;
+    }
+    
+    /**
+     * Stops the thread
+     */
+    public void shutdown() {
+        this.shutdown = true;
+        LockSupport.unpark(this);
+    }
+    
+    @Override
+    public void run() {
+        publishSnapshot();
+        
+        while(!this.shutdown) {
+            Runnable command;
+            while((command = this.commands.poll()) != null) {
+                try {
+                    command.run();
+                }
+                catch (RuntimeException ex) {
+                    // a failing command must not end the thread, callers may wait for it
+                    Logger.getLogger(EmulationThread.class.getName()).log(Level.SEVERE, null, ex);
+                    if(this.running) halt(ex.toString());
+                }
+            }
+            
+            if(!this.running) {
+                LockSupport.park(this);
+                continue;
+            }
+            
+            try {
+                runBatch();
+            }
+            catch (RuntimeException ex) {
+                // e.g. from a stop condition or a breakpoint condition
+                Logger.getLogger(EmulationThread.class.getName()).log(Level.SEVERE, null, ex);
+                halt(ex.toString());
+            }
+            publishSample();
+            
+            VirtualClock pacingClock = this.clock;
+            if(pacingClock != null) {
+                pacingClock.publish();
+                if(this.running) pacingClock.throttle();
+            }
+            
+            if(this.running && (System.nanoTime() - this.nextSnapshotNanos >= 0))
+                publishSnapshot();
+        }
+    }
+    
+    /**
+     * Returns the length of the next batch, a xorshift random number from
+     * BATCH_SIZE / 2 to BATCH_SIZE * 3 / 2
+     * 
+     * @return the number of instructions (int)
+     */
+    protected int nextBatchSize() {
+        int x = this.batchSeed;
+        x ^= x << 13;
+        x ^= x >>> 17;
+        x ^= x << 5;
+        this.batchSeed = x;
+        
+        return BATCH_SIZE / 2 + (x >>> 1) % BATCH_SIZE;
+    }
+    
+    /**
+     * Executes a batch of instructions, see nextBatchSize
+     */
+    protected void runBatch() {
+        StopCondition condition = this.stopCondition;
+        BreakpointSet activeBreakpoints = this.breakpoints.isEmpty() ? null : this.breakpoints;
+        int batchSize = nextBatchSize();
+        
+        for(int i=0; i<batchSize; i++) {
+            if(!runInstruction()) return;
+            
+            if(activeBreakpoints != null) {
+                Breakpoint breakpoint = activeBreakpoints.check((int)this.debugger.getProgramCounter());
+                if(breakpoint != null) {
+                    halt("Breakpoint " + breakpoint);
+                    return;
+                }
+            }
+            
+            if(condition != null) {
+                String reason = condition.check(this.debugger);
+                if(reason != null) {
+                    halt(reason);
+                    return;
+                }
+            }
+            
+            if((this.debugger instanceof WaitableCPU) && ((WaitableCPU)this.debugger).isWaiting()) {
+                idle((WaitableCPU)this.debugger);
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Publishes the program counter and the call depth for a
+     * SamplingProfiler. The sequence number is the low part of the
+     * instruction count, so the profiler can tell whether the CPU made
+     * progress. The store is not ordered against other stores, the profiler
+     * only needs to see it eventually.
+     */
+    protected void publishSample() {
+        long depth = (this.debugger instanceof ProfilableCPU) ? (((ProfilableCPU)this.debugger).getCallDepth() & 0xFFFF) : 0;
+        
+        SAMPLE_UPDATER.lazySet(this, (this.debugger.getProgramCounter() & SAMPLE_PC_MASK) | (depth << SAMPLE_DEPTH_SHIFT)
+                | ((this.instructionCount & 0xFFFF) << SAMPLE_SEQUENCE_SHIFT));
+    }
+    
+    /**
+     * Returns the sample published after the last batch: the program counter
+     * in the bits 0-31, the call depth in the bits 32-47 and the low 16 bits
+     * of the instruction count in the bits 48-63. May be called from any thread.
+     * 
+     * @return the sample (long)
+     */
+    public long getSample() {
+        return this.sample;
+    }
+    
+    /**
+     * Lets the emulated time pass while the CPU waits for an interrupt
+     * 
+     * @param cpu (WaitableCPU) the CPU
+     */
+    protected void idle(WaitableCPU cpu) {
+        long nanos = cpu.idle();
+        if(nanos <= 0) return;
+        
+        try {
+            cpu.awaitInterrupt(Math.max(1L, Math.min(MAX_IDLE_MILLIS, nanos / 1000000L)));
+        }
+        catch (InterruptedException ex) {
+            this.shutdown = true;
+        }
+    }
+    
+    /**
+     * Executes one instruction
+     * 
+     * @return false if the CPU stopped with an error (boolean)
+     */
+    protected boolean runInstruction() {
+        try {
+            if(this.timeMachine != null)
+                this.timeMachine.runNextOpCode();
+            else
+                this.debugger.runNextOpCode();
+            this.instructionCount++;
+            return true;
+        }
+        catch (MemoryException | OpCodeException ex) {
+            Logger.getLogger(EmulationThread.class.getName()).log(Level.SEVERE, null, ex);
+            halt(ex.getMessage());
+            return false;
+        }
+        catch (RuntimeException ex) {
+            // a bug in a core or a device stops the CPU instead of the thread
+            Logger.getLogger(EmulationThread.class.getName()).log(Level.SEVERE, null, ex);
+            halt(ex.toString());
+            return false;
+        }
+    }
+    
+    /**
+     * Stops running the CPU and publishes the final state
+     * 
+     * @param reason (String) the reason shown to the user
+     */
+    protected void halt(String reason) {
+        this.running = false;
+        this.stopReason = reason;
+        publishSnapshot();
+        
+        if((this.debugger instanceof TraceableCPU) && (((TraceableCPU)this.debugger).getTracer() != null))
+            ((TraceableCPU)this.debugger).getTracer().stopped();
+        
+        for(Consumer<String> listener : this.stopListeners) {
+            listener.accept(reason);
+        }
+    }
+    
+    /**
+     * Copies the registers into a snapshot and publishes it
+     */
+    protected void publishSnapshot() {
+        Snapshot snapshot = this.snapshots.getBackFrame();
+        
+        VirtualClock pacingClock = this.clock;
+        if(pacingClock != null) pacingClock.publish();
+        
+        for(int i=0; i<this.registerNames.size(); i++) {
+            try {
+                snapshot.registerValues[i] = this.debugger.getRegisterValue(this.registerNames.get(i));
+            }
+            catch (IllegalRegisterException ex) {
+                snapshot.registerValues[i] = 0L;
+            }
+        }
+        
+        snapshot.programCounter = this.debugger.getProgramCounter();
+        snapshot.instructionCount = this.instructionCount;
+        snapshot.running = this.running;
+        snapshot.stopReason = this.stopReason;
+        
+        this.snapshots.publish();
+        this.nextSnapshotNanos = System.nanoTime() + 1000000000L / SNAPSHOT_RATE;
+        
+        if(!this.running) {
+            for(Runnable listener : this.stateListeners) {
+                listener.run();
+            }
+        }
+    }
+}
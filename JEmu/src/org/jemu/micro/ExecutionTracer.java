@@ -0,0 +1,574 @@
+/*
+ * Copyright (C) 2021 peter.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jemu.micro;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class records the instructions that a TraceableCPU executes into a
+ * preallocated ring buffer of longs. Every record holds the program counter,
+ * the opcode units, the accumulated cycles and all register words in a slot
+ * of fixed size, so recording an instruction is a few plain stores without
+ * comparisons. No objects are created per instruction.
+ * 
+ * Slot layout in the ring buffer (longs):
+ *   header  : pc (bits 0-31), opcode units (56-59), fault (62)
+ *   opcodes : up to 8 units, the first in bits 0-7
+ *   cycles  : accumulated cycles after the instruction
+ *   words   : all words of packTraceWords
+ * 
+ * The buffer is written to a file by dump(), and automatically on a fault,
+ * when the emulation stops or when trigger() was called, if a dump file is
+ * set. The file only holds the words that changed since the previous
+ * record, every KEYFRAME_INTERVAL records all words:
+ *   header  : pc (bits 0-31), changed word mask (32-55), opcode units (56-59),
+ *             fault (62), keyframe (63)
+ *   opcodes
+ *   cycles  : accumulated cycles after the instruction
+ *   words   : one long per bit of the changed word mask
+ *   length  : the number of longs of this record
+ * decode() (or main) turns a dump into text with the disassembler of the
+ * CPU.
+ * 
+ * The tracer belongs to the thread that runs the CPU; trigger() may be
+ * called from any thread.
+ * 
+ * @author peter
+ */
+public class ExecutionTracer {
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+    public static final int KEYFRAME_INTERVAL = 4096;
+    public static final int MAX_WORDS = 24;
+    public static final long MAGIC = 0x4A454D5554524331L; // "JEMUTRC1"
+    
+    static final long HEADER_FAULT = 1L << 62;
+    static final long HEADER_KEYFRAME = 1L << 63;
+    
+    /**
+     * Describes where a register is stored in the traced words
+     */
+    public static class Field {
+        String name;
+        int word;
+        int shift;
+        int bits;
+        
+        public Field(String name, int word, int shift, int bits) {
+            this.name = name;
+            this.word = word;
+            this.shift = shift;
+            this.bits = bits;
+        }
+        
+        public String getName() {
+            return this.name;
+        }
+        
+        public int getWord() {
+            return this.word;
+        }
+        
+        public int getShift() {
+            return this.shift;
+        }
+        
+        public int getBits() {
+            return this.bits;
+        }
+        
+        /**
+         * Extracts the register value from the words
+         * 
+         * @param words (long[]) the words
+         * @return the value (long)
+         */
+        public long getValue(long[] words) {
+            long value = words[this.word] >>> this.shift;
+            return (this.bits == 64) ? value : value & ((1L << this.bits) - 1);
+        }
+    }
+    
+    TraceableCPU cpu;
+    Field[] fields;
+    int wordCount;
+    
+    long[] ring;
+    int recordSize;
+    int slotCount;
+    int slot;
+    long recordCount;
+    long totalCycles;
+    
+    Path dumpFile;
+    boolean dumpOnFault = true;
+    boolean dumpOnStop = false;
+    volatile boolean triggered;
+    
+    /**
+     * Creates a new instance of ExecutionTracer with the default capacity
+     * 
+     * @param cpu (TraceableCPU) the CPU to trace
+     */
+    public ExecutionTracer(TraceableCPU cpu) {
+        this(cpu, DEFAULT_CAPACITY);
+    }
+    
+    /**
+     * Creates a new instance of ExecutionTracer
+     * 
+     * @param cpu (TraceableCPU) the CPU to trace
+     * @param capacity (int) the size of the ring buffer in longs
+     */
+    public ExecutionTracer(TraceableCPU cpu, int capacity) {
+        this.cpu = cpu;
+        this.fields = cpu.getTraceFields();
+        
+        for(Field field : this.fields) {
+            this.wordCount = Math.max(this.wordCount, field.word + 1);
+        }
+        if(this.wordCount > MAX_WORDS)
+            throw new IllegalArgumentException("At most " + MAX_WORDS + " trace words are supported");
+        
+        this.recordSize = 3 + this.wordCount;
+        this.slotCount = Math.max(capacity, 1024) / this.recordSize;
+        this.ring = new long[this.slotCount * this.recordSize];
+    }
+    
+    /**
+     * Records an executed instruction. Called by the CPU after the
+     * instruction.
+     * 
+     * @param pc (long) the address of the instruction
+     * @param opCodes (long) the opcode units, the first in bits 0-7
+     * @param opCodeLength (int) the number of opcode units (up to 8)
+     * @param cycles (int) the cycles that the instruction took
+     */
+    public void record(long pc, long opCodes, int opCodeLength, int cycles) {
+        this.totalCycles += cycles;
+        write(pc, opCodes, opCodeLength, 0L);
+        
+        // the volatile trigger is only read once per keyframe interval
+        if(((this.recordCount & (KEYFRAME_INTERVAL - 1)) == 0) && this.triggered) {
+            this.triggered = false;
+            dumpQuietly();
+        }
+    }
+    
+    /**
+     * Records an instruction that failed (e.g. with an OpCodeException) and
+     * writes the dump file if dumpOnFault is set. Called by the CPU before it
+     * throws the exception on.
+     * 
+     * @param pc (long) the address of the instruction
+     * @param opCodes (long) the opcode units, the first in bits 0-7
+     * @param opCodeLength (int) the number of opcode units (up to 8)
+     */
+    public void fault(long pc, long opCodes, int opCodeLength) {
+        write(pc, opCodes, opCodeLength, HEADER_FAULT);
+        
+        if(this.dumpOnFault) dumpQuietly();
+    }
+    
+    /**
+     * Tells the tracer that the emulation has stopped, writes the dump file
+     * if dumpOnStop is set
+     */
+    public void stopped() {
+        if(this.dumpOnStop) dumpQuietly();
+    }
+    
+    /**
+     * Requests a dump. It is written by the CPU thread within the next
+     * KEYFRAME_INTERVAL instructions, so this may be called from any thread.
+     */
+    public void trigger() {
+        this.triggered = true;
+    }
+    
+    /**
+     * Stores a record in the next slot of the ring buffer. All words are
+     * stored unchanged, the deltas are only computed by dump().
+     * 
+     * @param pc (long) the address of the instruction
+     * @param opCodes (long) the opcode units
+     * @param opCodeLength (int) the number of opcode units
+     * @param flags (long) HEADER_FAULT or 0
+     */
+    protected void write(long pc, long opCodes, int opCodeLength, long flags) {
+        long[] buffer = this.ring;
+        int start = this.slot * this.recordSize;
+        
+        buffer[start] = (pc & 0xFFFFFFFFL) | ((long)opCodeLength << 56) | flags;
+        buffer[start + 1] = opCodes;
+        buffer[start + 2] = this.totalCycles;
+        this.cpu.packTraceWords(buffer, start + 3);
+        
+        if(++this.slot == this.slotCount) this.slot = 0;
+        this.recordCount++;
+    }
+    
+    /**
+     * Discards all records
+     */
+    public void clear() {
+        this.slot = 0;
+        this.recordCount = 0;
+    }
+    
+    public long getRecordCount() {
+        return this.recordCount;
+    }
+    
+    public long getTotalCycles() {
+        return this.totalCycles;
+    }
+    
+    public void setDumpFile(Path dumpFile) {
+        this.dumpFile = dumpFile;
+    }
+    
+    public Path getDumpFile() {
+        return this.dumpFile;
+    }
+    
+    public void setDumpOnFault(boolean dumpOnFault) {
+        this.dumpOnFault = dumpOnFault;
+    }
+    
+    public boolean isDumpOnFault() {
+        return this.dumpOnFault;
+    }
+    
+    public void setDumpOnStop(boolean dumpOnStop) {
+        this.dumpOnStop = dumpOnStop;
+    }
+    
+    public boolean isDumpOnStop() {
+        return this.dumpOnStop;
+    }
+    
+    protected void dumpQuietly() {
+        if(this.dumpFile == null) return;
+        
+        try {
+            dump(this.dumpFile);
+        }
+        catch (IOException ex) {
+            Logger.getLogger(ExecutionTracer.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+    
+    /**
+     * Returns the number of records that are still in the ring buffer
+     * 
+     * @return the number of records (int)
+     */
+    protected int getStoredRecords() {
+        return (int)Math.min(this.recordCount, this.slotCount);
+    }
+    
+    /**
+     * Returns the position of the n-th oldest record in the ring buffer
+     * 
+     * @param n (int) the number of the record, 0 for the oldest
+     * @return the position (int)
+     */
+    protected int getRecordPosition(int n) {
+        int first = (this.recordCount > this.slotCount) ? this.slot : 0;
+        int index = first + n;
+        if(index >= this.slotCount) index -= this.slotCount;
+        return index * this.recordSize;
+    }
+    
+    /**
+     * Returns the changed word mask of a record, compared to the record
+     * before it
+     * 
+     * @param n (int) the number of the record, 0 for the oldest
+     * @return the mask (long)
+     */
+    protected long getChangedWords(int n) {
+        if((n % KEYFRAME_INTERVAL) == 0) return (1L << this.wordCount) - 1;
+        
+        int pos = getRecordPosition(n) + 3;
+        int last = getRecordPosition(n - 1) + 3;
+        long mask = 0;
+        for(int i=0; i<this.wordCount; i++) {
+            if(this.ring[pos + i] != this.ring[last + i]) mask |= 1L << i;
+        }
+        return mask;
+    }
+    
+    /**
+     * Writes the records in the ring buffer to a file. Only the register
+     * words that changed since the previous record are written, and all
+     * words every KEYFRAME_INTERVAL records, starting with the oldest. Must
+     * be called by the thread that runs the CPU (or while the CPU is
+     * stopped).
+     * 
+     * @param file (Path) the file
+     * @throws IOException if the file could not be written
+     */
+    public void dump(Path file) throws IOException {
+        int records = getStoredRecords();
+        
+        long longCount = 0;
+        for(int n=0; n<records; n++) {
+            longCount += 4 + Long.bitCount(getChangedWords(n));
+        }
+        
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            buffer.putLong(MAGIC);
+            putString(buffer, this.cpu.getTraceName());
+            buffer.putInt(this.wordCount);
+            buffer.putInt(this.fields.length);
+            for(Field field : this.fields) {
+                if(buffer.remaining() < 1024) flush(channel, buffer);
+                putString(buffer, field.name);
+                buffer.put((byte)field.word);
+                buffer.put((byte)field.shift);
+                buffer.put((byte)field.bits);
+            }
+            buffer.putLong(this.recordCount);
+            buffer.putLong(longCount);
+            
+            for(int n=0; n<records; n++) {
+                if(buffer.remaining() < (4 + MAX_WORDS) * 8) flush(channel, buffer);
+                
+                int pos = getRecordPosition(n);
+                long mask = getChangedWords(n);
+                long header = this.ring[pos] | (mask << 32);
+                if((n % KEYFRAME_INTERVAL) == 0) header |= HEADER_KEYFRAME;
+                
+                buffer.putLong(header);
+                buffer.putLong(this.ring[pos + 1]);
+                buffer.putLong(this.ring[pos + 2]);
+                for(int i=0; i<this.wordCount; i++) {
+                    if((mask & (1L << i)) != 0) buffer.putLong(this.ring[pos + 3 + i]);
+                }
+                buffer.putLong(4 + Long.bitCount(mask));
+            }
+            flush(channel, buffer);
+        }
+    }
+    
+    protected static void putString(ByteBuffer buffer, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        buffer.putShort((short)bytes.length);
+        buffer.put(bytes);
+    }
+    
+    protected static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    protected static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while(buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+    
+    /**
+     * Creates a debugger with empty memory to disassemble the opcodes of a
+     * trace
+     * 
+     * @param traceName (String) the name of the CPU in the trace
+     * @param memory (Memory) the memory for the opcodes
+     * @return the debugger (Debugger)
+     * @throws IOException if the CPU is not known
+     */
+    protected static Debugger createDebugger(String traceName, Memory memory) throws IOException {
+        switch (traceName) {
+            case Z80.TRACE_NAME:
+                return new Z80Debugger(memory, new SimpleIO(0, 256));
+                
+            case SeikoUC2000.TRACE_NAME:
+                return new SeikoUC2000Debugger(memory, new SimpleIO(0, 16));
+                
+            case Intel4004.TRACE_NAME:
+                return new Intel4004Debugger(memory, null, new SimpleIO(0, 16));
+                
+            default:
+                throw new IOException("Unknown CPU " + traceName + " in trace");
+        }
+    }
+    
+    /**
+     * Decodes a dump file into text: one line per instruction with the
+     * record number, address, opcode units, disassembly, accumulated cycles
+     * and the registers that the instruction changed. Records before the
+     * first keyframe are skipped, because their register state is unknown.
+     * 
+     * @param file (Path) the dump file
+     * @param out (PrintWriter) the text output
+     * @throws IOException if the file could not be read or is no trace
+     */
+    public static void decode(Path file, PrintWriter out) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        
+        if(buffer.getLong() != MAGIC)
+            throw new IOException(file + " is no execution trace");
+        
+        String traceName = getString(buffer);
+        int wordCount = buffer.getInt();
+        int fieldCount = buffer.getInt();
+        List<Field> fields = new ArrayList<>();
+        for(int i=0; i<fieldCount; i++) {
+            String name = getString(buffer);
+            fields.add(new Field(name, buffer.get(), buffer.get(), buffer.get()));
+        }
+        long recordCount = buffer.getLong();
+        long longCount = buffer.getLong();
+        
+        long[] data = new long[(int)longCount];
+        buffer.asLongBuffer().get(data);
+        
+        // count the records to number them
+        long records = 0;
+        for(int pos=0; pos<data.length; pos+=recordLength(data[pos])) {
+            records++;
+        }
+        
+        Memory memory;
+        try {
+            memory = new RAMMemoryLittleEndian(0x10000);
+        }
+        catch (MemoryException ex) {
+            throw new IOException(ex);
+        }
+        Debugger debugger = createDebugger(traceName, memory);
+        boolean nibbles = debugger.getMemoryUnitBits() == 4;
+        
+        long[] words = new long[wordCount];
+        long[] last = new long[wordCount];
+        boolean synced = false;
+        long number = recordCount - records;
+        StringBuilder sb = new StringBuilder(160);
+        
+        out.println("; " + traceName + " trace, " + records + " of " + recordCount + " instructions");
+        for(int pos=0; pos<data.length; pos+=recordLength(data[pos]), number++) {
+            long header = data[pos];
+            long pc = header & 0xFFFFFFFFL;
+            long mask = (header >>> 32) & 0xFFFFFFL;
+            int length = (int)((header >>> 56) & 0x0F);
+            long opCodes = data[pos + 1];
+            long cycles = data[pos + 2];
+            
+            System.arraycopy(words, 0, last, 0, wordCount);
+            int index = pos + 3;
+            for(int i=0; i<wordCount; i++) {
+                if((mask & (1L << i)) != 0) words[i] = data[index++];
+            }
+            
+            boolean keyframe = (header & HEADER_KEYFRAME) != 0;
+            if(!synced && !keyframe) continue;
+            
+            String code;
+            int codeLength = length;
+            try {
+                for(int i=0; i<length; i++) {
+                    byte unit = (byte)(opCodes >>> (i * 8));
+                    long address = pc + i;
+                    if(nibbles) {
+                        // readMemory4 takes even addresses from the low nibble
+                        byte packed = memory.getByte(address >> 1);
+                        packed = ((address & 1) == 1) ? (byte)((packed & 0x0F) | (unit << 4)) : (byte)((packed & 0xF0) | (unit & 0x0F));
+                        memory.setByte(address >> 1, packed);
+                    }
+                    else {
+                        memory.setByte(address, unit);
+                    }
+                }
+                Debugger.CodeAndLength cal = debugger.getCodeAndLength(pc);
+                code = cal.getCode();
+                codeLength = (int)Math.min(cal.getCodeLength(), length);
+            }
+            catch (MemoryException | OpCodeException ex) {
+                code = "???";
+            }
+            
+            sb.setLength(0);
+            sb.append(number).append("  ");
+            sb.append(DisassemblyCache.formatAddress(pc)).append("  ");
+            for(int i=0; i<codeLength; i++) {
+                int unit = (int)(opCodes >>> (i * 8)) & 0xFF;
+                sb.append(nibbles ? Integer.toHexString(unit & 0x0F) : DisassemblyCache.HEX[unit]);
+            }
+            for(int i=sb.length(); i<32; i++) sb.append(' ');
+            sb.append(code);
+            for(int i=sb.length(); i<56; i++) sb.append(' ');
+            sb.append(cycles);
+            
+            if((header & HEADER_FAULT) != 0) sb.append("  FAULT");
+            
+            for(Field field : fields) {
+                long value = field.getValue(words);
+                if(!synced || (value != field.getValue(last))) {
+                    sb.append("  ").append(field.name).append('=').append(Long.toHexString(value));
+                }
+            }
+            synced = true;
+            
+            out.println(sb);
+        }
+        out.flush();
+    }
+    
+    protected static int recordLength(long header) {
+        return 4 + Long.bitCount((header >>> 32) & 0xFFFFFFL);
+    }
+    
+    /**
+     * Decodes a trace file into text.
+     * 
+     * Usage: ExecutionTracer trace.bin [trace.txt]
+     * 
+     * @param args (String[]) the command line
+     * @throws Exception if the trace could not be read or the text not written
+     */
+    public static void main(String[] args) throws Exception {
+        if((args.length < 1) || (args.length > 2)) {
+            System.err.println("Usage: ExecutionTracer trace.bin [trace.txt]");
+            System.exit(1);
+        }
+        
+        try (PrintWriter out = (args.length > 1) ? new PrintWriter(args[1], "UTF-8") : new PrintWriter(System.out)) {
+            decode(Paths.get(args[0]), out);
+        }
+    }
+}
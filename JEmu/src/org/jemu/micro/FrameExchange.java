@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2021 peter.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jemu.micro;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * This class hands frames of a video device from the emulation thread to
+ * the thread that draws them (usually the EDT) without locks and without
+ * allocating anything per frame.
+ * 
+ * It holds three frames: the writer fills the back frame and publishes it
+ * with a single atomic swap, the reader takes the latest published frame
+ * and keeps it as its front frame until it asks for the next one. The third
+ * frame sits in between, so neither side ever waits for the other and the
+ * reader always sees a complete frame.
+ * 
+ * There must only be one writer thread and one reader thread.
+ * 
+ * @author peter
+ * @param <F> the frame type
+ */
+public class FrameExchange<F> {
+    
+    // The middle slot holds a frame index and this bit if it was not read yet
+    static final int FRESH = 0x04;
+    static final int INDEX_MASK = 0x03;
+    
+    final Object[] frames = new Object[3];
+    final AtomicInteger middle = new AtomicInteger(1);
+    int backIndex = 0;
+    int frontIndex = 2;
+    
+    /**
+     * Creates a new instance of FrameExchange
+     * 
+     * @param frameFactory (Supplier) creates the three frames
+     */
+    public FrameExchange(Supplier<F> frameFactory) {
+        for(int i=0; i<this.frames.length; i++) {
+            this.frames[i] = frameFactory.get();
+        }
+    }
+    
+    /**
+     * Returns the frame that the writer may fill. Only to be called by the
+     * writer thread.
+     * 
+     * @return the back frame (F)
+     */
+    @SuppressWarnings("unchecked")
+    public F getBackFrame() {
+        return (F)this.frames[this.backIndex];
+    }
+    
+    /**
+     * Publishes the back frame. The writer gets another frame as back frame,
+     * which may hold older content, so it has to fill it completely.
+     */
+    public void publish() {
+        this.backIndex = this.middle.getAndSet(this.backIndex | FRESH) & INDEX_MASK;
+    }
+    
+    /**
+     * Takes the latest published frame as front frame if there is a new one.
+     * Only to be called by the reader thread.
+     * 
+     * @return true if the front frame changed (boolean)
+     */
+    public boolean update() {
+        if((this.middle.get() & FRESH) == 0)
+            return false;
+        
+        this.frontIndex = this.middle.getAndSet(this.frontIndex) & INDEX_MASK;
+        return true;
+    }
+    
+    /**
+     * Returns the frame that the reader draws. It does not change until the
+     * reader calls update() again.
+     * 
+     * @return the front frame (F)
+     */
+    @SuppressWarnings("unchecked")
+    public F getFrontFrame() {
+        return (F)this.frames[this.frontIndex];
+    }
+}
@@ -0,0 +1,966 @@
+/*
+ * Copyright (C) 2021 peter.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jemu.micro;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class implements a stub for the GDB remote serial protocol, so that a
+ * Z80 guest can be debugged with GDB (or other clients of the protocol)
+ * without the DebuggerGUI. It listens on a localhost port and serves one
+ * client at a time.
+ * 
+ * The sockets are served by a selector thread with non-blocking channels.
+ * Everything that touches the CPU is passed to the EmulationThread as a
+ * command, which runs between two batches, and the reply comes back through
+ * a queue. A connected debugger therefore never holds up the emulation
+ * longer than a single command takes.
+ * 
+ * Supported packets: ? g G p P m M x X c s Z0-Z4 z0-z4 D k, the queries
+ * qSupported, qAttached and qXfer:features:read, QStartNoAckMode and the
+ * interrupt byte (Ctrl-C). x returns memory as binary data, which is half
+ * the size of the hex reply of m.
+ * 
+ * The registers are numbered like in the z80 target of GDB: AF BC DE HL SP
+ * PC IX IY AF' BC' DE' HL' IR, all 16 bit little endian.
+ * 
+ * @author peter
+ */
+public class GdbServer implements Runnable {
+    public static final int DEFAULT_PORT = 1234;
+    public static final int PACKET_SIZE = 0x4000;
+    
+    static final String[][] REGISTERS = {
+        { "A", "F" }, { "B", "C" }, { "D", "E" }, { "H", "L" }, { "SP" }, { "PC" }, { "IX" }, { "IY" },
+        { "A'", "F'" }, { "B'", "C'" }, { "D'", "E'" }, { "H'", "L'" }, { "I", "R" }
+    };
+    static final String TARGET_XML = "<?xml version=\"1.0\"?><!DOCTYPE target SYSTEM \"gdb-target.dtd\">"
+            + "<target><architecture>z80</architecture></target>";
+    static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    
+    static final int SIGINT = 2;
+    static final int SIGTRAP = 5;
+    static final String ERROR_ARGUMENT = "E01";
+    static final String ERROR_MEMORY = "E0e";
+    
+    // queued instead of a reply to close the connection after the previous replies
+    static final ByteBuffer CLOSE = ByteBuffer.allocate(0);
+    
+    final Debugger debugger;
+    final EmulationThread emulation;
+    final int port;
+    final Consumer<String> stopListener = this::stopped;
+    final ConcurrentLinkedQueue<ByteBuffer> replies = new ConcurrentLinkedQueue<>();
+    
+    // Only used by the selector thread
+    Selector selector;
+    ServerSocketChannel serverChannel;
+    SocketChannel client = null;
+    final ByteBuffer input = ByteBuffer.allocate(PACKET_SIZE);
+    final ArrayDeque<ByteBuffer> output = new ArrayDeque<>();
+    ByteBuffer lastPacket = null;
+    byte[] packet = new byte[PACKET_SIZE];
+    int packetLength = 0;
+    int packetChecksum = 0;
+    int receivedChecksum = 0;
+    int parseState = 0;
+    boolean noAck = false;
+    
+    // Only used by the emulation thread
+    WatchpointSet watchpoints = null;
+    boolean continuing = false;
+    String lastStop = "S05";
+    final List<Integer> insertedBreakpoints = new ArrayList<>();
+    final List<Watchpoint> insertedWatchpoints = new ArrayList<>();
+    
+    EmulationThread.StopCondition previousStopCondition = null;
+    volatile Thread thread = null;
+    
+    /**
+     * Creates a new instance of GdbServer
+     * 
+     * @param debugger (Debugger) the Z80 to debug
+     * @param emulation (EmulationThread) the thread that runs the Z80
+     * @param port (int) the localhost port, 0 for any free port
+     */
+    public GdbServer(Debugger debugger, EmulationThread emulation, int port) {
+        this.debugger = debugger;
+        this.emulation = emulation;
+        this.port = port;
+    }
+    
+    /**
+     * Opens the port and starts the selector thread. The server takes over
+     * the stop condition of the emulation thread to stop at watchpoints;
+     * close() restores the previous one.
+     * 
+     * @throws IOException if the port can not be opened
+     */
+    public synchronized void start() throws IOException {
+        if(this.thread != null) return;
+        
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), this.port));
+        this.serverChannel.configureBlocking(false);
+        this.serverChannel.register(this.selector, SelectionKey.OP_ACCEPT);
+        
+        this.emulation.invokeAndWait(() -> {
+            this.watchpoints = this.debugger.getWatchpoints();
+            if(this.watchpoints == null) {
+                try {
+                    this.watchpoints = new WatchpointSet();
+                    this.debugger.setWatchpoints(this.watchpoints);
+                }
+                catch (UnsupportedOperationException ex) {
+                    this.watchpoints = null;
+                }
+            }
+        });
+        this.previousStopCondition = this.emulation.getStopCondition();
+        if(this.watchpoints != null) {
+            WatchpointSet activeWatchpoints = this.watchpoints;
+            this.emulation.setStopCondition((Debugger cpu) -> activeWatchpoints.isHit() ? "Watchpoint" : null);
+        }
+        this.emulation.addStopListener(this.stopListener);
+        
+        this.thread = new Thread(this, "GDB server");
+        this.thread.start();
+    }
+    
+    /**
+     * Closes the connection and the port and waits until the selector thread
+     * has ended. Restores the stop condition that was set before start().
+     */
+    public void close() {
+        Thread selectorThread = this.thread;
+        if(selectorThread == null) return;
+        
+        this.thread = null;
+        this.selector.wakeup();
+        
+        try {
+            selectorThread.join();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        
+        this.emulation.removeStopListener(this.stopListener);
+        this.emulation.setStopCondition(this.previousStopCondition);
+        this.previousStopCondition = null;
+    }
+    
+    /**
+     * Returns the port the server listens on
+     * 
+     * @return the port (int)
+     * @throws IOException if the port is not open
+     */
+    public int getPort() throws IOException {
+        return ((InetSocketAddress)this.serverChannel.getLocalAddress()).getPort();
+    }
+    
+    @Override
+    public void run() {
+        try {
+            while(this.thread == Thread.currentThread()) {
+                this.selector.select();
+                
+                ByteBuffer reply;
+                while((reply = this.replies.poll()) != null) {
+                    if(this.client != null) send(reply);
+                }
+                
+                Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+                while(keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    
+                    if(!key.isValid()) continue;
+                    if(key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    if(key.isReadable()) read();
+                    if(key.isValid() && key.isWritable()) write();
+                }
+            }
+        }
+        catch (IOException ex) {
+            Logger.getLogger(GdbServer.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        finally {
+            disconnect();
+            
+            try {
+                this.serverChannel.close();
+                this.selector.close();
+            }
+            catch (IOException ex) {
+                Logger.getLogger(GdbServer.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+    }
+    
+    /**
+     * Accepts a connection. The CPU is stopped, as GDB expects it when it
+     * attaches.
+     * 
+     * @throws IOException 
+     */
+    protected void accept() throws IOException {
+        SocketChannel channel = this.serverChannel.accept();
+        if(channel == null) return;
+        
+        // only one debugger at a time
+        if(this.client != null) {
+            channel.close();
+            return;
+        }
+        
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        channel.register(this.selector, SelectionKey.OP_READ);
+        
+        this.client = channel;
+        this.output.clear();
+        this.lastPacket = null;
+        this.parseState = 0;
+        this.noAck = false;
+        
+        this.emulation.execute(() -> {
+            this.continuing = false;
+            this.lastStop = "S" + toHex(SIGTRAP, 1);
+            this.emulation.pause();
+        });
+    }
+    
+    /**
+     * Closes the connection and removes the breakpoints and watchpoints the
+     * debugger has inserted
+     */
+    protected void disconnect() {
+        if(this.client == null) return;
+        
+        try {
+            this.client.close();
+        }
+        catch (IOException ex) {
+            Logger.getLogger(GdbServer.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        this.client = null;
+        this.output.clear();
+        
+        this.emulation.execute(() -> {
+            this.continuing = false;
+            removeInsertedPoints();
+        });
+    }
+    
+    /**
+     * Reads what the client has sent and handles complete packets
+     * 
+     * @throws IOException 
+     */
+    protected void read() throws IOException {
+        this.input.clear();
+        
+        int count;
+        try {
+            count = this.client.read(this.input);
+        }
+        catch (IOException ex) {
+            count = -1;
+        }
+        if(count < 0) {
+            disconnect();
+            return;
+        }
+        
+        this.input.flip();
+        while(this.input.hasRemaining() && (this.client != null)) {
+            parse(this.input.get());
+        }
+    }
+    
+    /**
+     * Feeds one received byte into the packet parser
+     * 
+     * @param b (byte) the byte
+     */
+    protected void parse(byte b) {
+        switch (this.parseState) {
+            case 0:     // between packets
+                if(b == '$') {
+                    this.packetLength = 0;
+                    this.packetChecksum = 0;
+                    this.parseState = 1;
+                }
+                else if(b == 0x03) {
+                    interrupt();
+                }
+                else if((b == '-') && (this.lastPacket != null) && !this.noAck) {
+                    send(this.lastPacket.duplicate());
+                }
+                break;
+                
+            case 1:     // packet data
+                if(b == '#') {
+                    this.parseState = 2;
+                    break;
+                }
+                this.packetChecksum += b & 0xFF;
+                if(this.packetLength < this.packet.length) this.packet[this.packetLength] = b;
+                this.packetLength++;
+                break;
+                
+            case 2:     // first checksum digit
+                this.receivedChecksum = Character.digit(b, 16) << 4;
+                this.parseState = 3;
+                break;
+                
+            case 3:     // second checksum digit
+                this.receivedChecksum |= Character.digit(b, 16);
+                this.parseState = 0;
+                
+                if((this.receivedChecksum != (this.packetChecksum & 0xFF)) || (this.packetLength > this.packet.length)) {
+                    if(!this.noAck) send(ByteBuffer.wrap(new byte[] { '-' }));
+                    break;
+                }
+                if(!this.noAck) send(ByteBuffer.wrap(new byte[] { '+' }));
+                dispatch(unescape(this.packet, this.packetLength));
+                break;
+        }
+    }
+    
+    /**
+     * Removes the escapes of binary data
+     * 
+     * @param data (byte[]) the packet data
+     * @param length (int) the length of the data
+     * @return the packet with one char per byte (String)
+     */
+    protected static String unescape(byte[] data, int length) {
+        StringBuilder command = new StringBuilder(length);
+        
+        for(int i=0; i<length; i++) {
+            if((data[i] == '}') && (i + 1 < length))
+                command.append((char)((data[++i] ^ 0x20) & 0xFF));
+            else
+                command.append((char)(data[i] & 0xFF));
+        }
+        
+        return command.toString();
+    }
+    
+    /**
+     * Handles a packet. Everything except the switch to no acknowledgement
+     * mode is executed on the emulation thread.
+     * 
+     * @param command (String) the packet
+     */
+    protected void dispatch(String command) {
+        if(command.equals("QStartNoAckMode")) {
+            send(frame("OK"));
+            this.noAck = true;
+            return;
+        }
+        
+        this.emulation.execute(() -> {
+            String reply = handle(command);
+            if(reply != null) sendReply(reply);
+        });
+    }
+    
+    /**
+     * Stops the running CPU when the client sends Ctrl-C. The stop reply is
+     * sent by the stop listener.
+     */
+    protected void interrupt() {
+        this.emulation.execute(() -> {
+            if(this.continuing) this.emulation.pause();
+        });
+    }
+    
+    /**
+     * Queues a buffer for sending and sends as much as possible right away
+     * 
+     * @param buffer (ByteBuffer) the bytes to send, or CLOSE
+     */
+    protected void send(ByteBuffer buffer) {
+        if((buffer != CLOSE) && (buffer.remaining() > 1)) this.lastPacket = buffer.duplicate();
+        this.output.add(buffer);
+        
+        try {
+            write();
+        }
+        catch (IOException ex) {
+            disconnect();
+        }
+    }
+    
+    /**
+     * Writes the queued buffers until the socket would block
+     * 
+     * @throws IOException 
+     */
+    protected void write() throws IOException {
+        while(!this.output.isEmpty()) {
+            ByteBuffer buffer = this.output.peek();
+            if(buffer == CLOSE) {
+                disconnect();
+                return;
+            }
+            
+            this.client.write(buffer);
+            if(buffer.hasRemaining()) break;
+            this.output.poll();
+        }
+        
+        this.client.keyFor(this.selector).interestOps(SelectionKey.OP_READ | (this.output.isEmpty() ? 0 : SelectionKey.OP_WRITE));
+    }
+    
+    /**
+     * Frames a reply and passes it to the selector thread. Called on the
+     * emulation thread.
+     * 
+     * @param reply (String) the reply with one char per byte
+     */
+    protected void sendReply(String reply) {
+        this.replies.add(frame(reply));
+        this.selector.wakeup();
+    }
+    
+    /**
+     * Frames a reply as packet. The characters that would end the packet or
+     * start an escape or a run length are escaped.
+     * 
+     * @param reply (String) the reply with one char per byte
+     * @return the packet (ByteBuffer)
+     */
+    protected static ByteBuffer frame(String reply) {
+        ByteBuffer buffer = ByteBuffer.allocate(reply.length() * 2 + 4);
+        int checksum = 0;
+        
+        buffer.put((byte)'$');
+        for(int i=0; i<reply.length(); i++) {
+            int b = reply.charAt(i) & 0xFF;
+            
+            if((b == '#') || (b == '$') || (b == '}') || (b == '*')) {
+                buffer.put((byte)'}');
+                checksum += '}';
+                b ^= 0x20;
+            }
+            buffer.put((byte)b);
+            checksum += b;
+        }
+        buffer.put((byte)'#');
+        buffer.put(HEX[(checksum >> 4) & 0x0F]);
+        buffer.put(HEX[checksum & 0x0F]);
+        
+        buffer.flip();
+        return buffer;
+    }
+    
+    /**
+     * Executes a packet on the emulation thread
+     * 
+     * @param command (String) the packet
+     * @return the reply or null if it is sent later (String)
+     */
+    protected String handle(String command) {
+        if(command.isEmpty()) return "";
+        
+        try {
+            switch (command.charAt(0)) {
+                case '?':
+                    return this.lastStop;
+                    
+                case 'g':
+                    return readRegisters();
+                    
+                case 'G':
+                    return writeRegisters(command.substring(1));
+                    
+                case 'p':
+                    return toHexLittleEndian(readRegister(Integer.parseInt(command.substring(1), 16)), 2);
+                    
+                case 'P': {
+                    int equals = command.indexOf('=');
+                    writeRegister(Integer.parseInt(command.substring(1, equals), 16), parseHexLittleEndian(command.substring(equals + 1)));
+                    this.emulation.discardFuture();
+                    return "OK";
+                }
+                    
+                case 'm':
+                case 'x':
+                    return readMemory(command);
+                    
+                case 'M':
+                case 'X':
+                    return writeMemory(command);
+                    
+                case 'c':
+                    return resume(command);
+                    
+                case 's':
+                    return step(command);
+                    
+                case 'Z':
+                case 'z':
+                    return changePoint(command);
+                    
+                case 'D':
+                    removeInsertedPoints();
+                    this.continuing = false;
+                    this.emulation.runContinuously();
+                    this.replies.add(frame("OK"));
+                    this.replies.add(CLOSE);
+                    this.selector.wakeup();
+                    return null;
+                    
+                case 'k':
+                    removeInsertedPoints();
+                    this.continuing = false;
+                    this.replies.add(CLOSE);
+                    this.selector.wakeup();
+                    return null;
+                    
+                case 'H':
+                case 'T':
+                    return "OK";
+                    
+                case 'q':
+                    return query(command);
+                    
+                default:
+                    return "";
+            }
+        }
+        catch (MemoryException ex) {
+            return ERROR_MEMORY;
+        }
+        catch (IllegalRegisterException | RuntimeException ex) {
+            return ERROR_ARGUMENT;
+        }
+    }
+    
+    /**
+     * Answers the general queries
+     * 
+     * @param command (String) the query packet
+     * @return the reply (String)
+     */
+    protected String query(String command) {
+        if(command.startsWith("qSupported"))
+            return "PacketSize=" + Integer.toHexString(PACKET_SIZE) + ";QStartNoAckMode+;swbreak+;hwbreak+;binary-upload+;qXfer:features:read+";
+        
+        if(command.equals("qAttached"))
+            return "1";
+        
+        if(command.startsWith("qXfer:features:read:target.xml:")) {
+            String[] range = command.substring("qXfer:features:read:target.xml:".length()).split(",");
+            int offset = Integer.parseInt(range[0], 16);
+            int length = Integer.parseInt(range[1], 16);
+            
+            if(offset >= TARGET_XML.length()) return "l";
+            int end = Math.min(TARGET_XML.length(), offset + length);
+            return ((end < TARGET_XML.length()) ? "m" : "l") + TARGET_XML.substring(offset, end);
+        }
+        
+        return "";
+    }
+    
+    /**
+     * Reads a register in the numbering of GDB
+     * 
+     * @param number (int) the register number
+     * @return the value (int)
+     * @throws IllegalRegisterException 
+     */
+    protected int readRegister(int number) throws IllegalRegisterException {
+        String[] names = REGISTERS[number];
+        
+        if(names.length == 1) return (int)this.debugger.getRegisterValue(names[0]) & 0xFFFF;
+        return (((int)this.debugger.getRegisterValue(names[0]) & 0xFF) << 8) | ((int)this.debugger.getRegisterValue(names[1]) & 0xFF);
+    }
+    
+    /**
+     * Writes a register in the numbering of GDB
+     * 
+     * @param number (int) the register number
+     * @param value (int) the value
+     * @throws IllegalRegisterException
+     * @throws IllegalRegisterValueException 
+     */
+    protected void writeRegister(int number, int value) throws IllegalRegisterException, IllegalRegisterValueException {
+        String[] names = REGISTERS[number];
+        
+        if(names.length == 1) {
+            this.debugger.setRegisterValue(names[0], value & 0xFFFF);
+        }
+        else {
+            this.debugger.setRegisterValue(names[0], (value >> 8) & 0xFF);
+            this.debugger.setRegisterValue(names[1], value & 0xFF);
+        }
+    }
+    
+    /**
+     * Handles the g packet
+     * 
+     * @return all registers in hex (String)
+     * @throws IllegalRegisterException 
+     */
+    protected String readRegisters() throws IllegalRegisterException {
+        StringBuilder reply = new StringBuilder(REGISTERS.length * 4);
+        
+        for(int i=0; i<REGISTERS.length; i++) {
+            reply.append(toHexLittleEndian(readRegister(i), 2));
+        }
+        
+        return reply.toString();
+    }
+    
+    /**
+     * Handles the G packet
+     * 
+     * @param data (String) the registers in hex
+     * @return the reply (String)
+     * @throws IllegalRegisterException
+     * @throws IllegalRegisterValueException 
+     */
+    protected String writeRegisters(String data) throws IllegalRegisterException, IllegalRegisterValueException {
+        for(int i=0; (i<REGISTERS.length) && ((i + 1) * 4 <= data.length()); i++) {
+            writeRegister(i, parseHexLittleEndian(data.substring(i * 4, (i + 1) * 4)));
+        }
+        this.emulation.discardFuture();
+        
+        return "OK";
+    }
+    
+    /**
+     * Handles the m and x packets. Watchpoints do not see these reads.
+     * 
+     * @param command (String) the packet
+     * @return the memory as hex (m) or binary data (x) (String)
+     * @throws MemoryException if nothing could be read
+     */
+    protected String readMemory(String command) throws MemoryException {
+        boolean binary = command.charAt(0) == 'x';
+        int comma = command.indexOf(',');
+        long address = Long.parseLong(command.substring(1, comma), 16);
+        // escaping may double the size of binary data, hex always doubles it
+        int length = Math.min(Integer.parseInt(command.substring(comma + 1), 16), PACKET_SIZE / 2 - 4);
+        
+        MemoryBus bus = this.debugger.getMemoryBus();
+        StringBuilder reply = new StringBuilder(binary ? length + 1 : length * 2);
+        if(binary) reply.append('b');
+        
+        for(int i=0; i<length; i++) {
+            int value;
+            try {
+                value = Byte.toUnsignedInt((bus != null) ? bus.peekByte(address + i) : this.debugger.readMemoryByte(address + i));
+            }
+            catch (MemoryException ex) {
+                // a partial read is fine, only the first byte must exist
+                if(i == 0) throw ex;
+                break;
+            }
+            
+            if(binary) reply.append((char)value);
+            else reply.append(toHex(value, 1));
+        }
+        
+        return reply.toString();
+    }
+    
+    /**
+     * Handles the M and X packets
+     * 
+     * @param command (String) the packet
+     * @return the reply (String)
+     * @throws MemoryException 
+     */
+    protected String writeMemory(String command) throws MemoryException {
+        boolean binary = command.charAt(0) == 'X';
+        int comma = command.indexOf(',');
+        int colon = command.indexOf(':', comma);
+        long address = Long.parseLong(command.substring(1, comma), 16);
+        int length = Integer.parseInt(command.substring(comma + 1, colon), 16);
+        String data = command.substring(colon + 1);
+        
+        for(int i=0; i<length; i++) {
+            int value = binary ? data.charAt(i) : Integer.parseInt(data.substring(i * 2, i * 2 + 2), 16);
+            this.debugger.writeMemoryByte(address + i, (byte)value);
+        }
+        
+        // writes of the debugger are no hits
+        if(this.watchpoints != null) this.watchpoints.clearHit();
+        if(length > 0) this.emulation.discardFuture();
+        
+        return "OK";
+    }
+    
+    /**
+     * Handles the c packet; the reply is sent when the CPU stops
+     * 
+     * @param command (String) the packet
+     * @return null (String)
+     * @throws IllegalRegisterValueException 
+     */
+    protected String resume(String command) throws IllegalRegisterValueException {
+        if(command.length() > 1) this.debugger.setProgramCounter(Long.parseLong(command.substring(1), 16));
+        if(this.watchpoints != null) this.watchpoints.clearHit();
+        
+        this.continuing = true;
+        this.emulation.runContinuously();
+        return null;
+    }
+    
+    /**
+     * Handles the s packet; the reply is sent after the step
+     * 
+     * @param command (String) the packet
+     * @return null (String)
+     * @throws IllegalRegisterValueException 
+     */
+    protected String step(String command) throws IllegalRegisterValueException {
+        if(command.length() > 1) this.debugger.setProgramCounter(Long.parseLong(command.substring(1), 16));
+        if(this.watchpoints != null) this.watchpoints.clearHit();
+        
+        // both run in this order on the emulation thread
+        this.emulation.step();
+        this.emulation.execute(() -> {
+            this.lastStop = getStopReply(null);
+            sendReply(this.lastStop);
+        });
+        return null;
+    }
+    
+    /**
+     * Handles the Z and z packets
+     * 
+     * @param command (String) the packet
+     * @return the reply (String)
+     */
+    protected String changePoint(String command) {
+        boolean insert = command.charAt(0) == 'Z';
+        String[] parameters = command.substring(1).split("[,;]");
+        int type = Integer.parseInt(parameters[0]);
+        long address = Long.parseLong(parameters[1], 16);
+        int length = Integer.parseInt(parameters[2], 16);
+        BreakpointSet breakpoints = this.emulation.getBreakpoints();
+        
+        switch (type) {
+            case 0:     // software breakpoint
+            case 1:     // hardware breakpoint
+                if(insert) {
+                    breakpoints.add(new Breakpoint((int)address));
+                    this.insertedBreakpoints.add((int)address);
+                }
+                else {
+                    breakpoints.remove((int)address);
+                    this.insertedBreakpoints.remove((Integer)(int)address);
+                }
+                return "OK";
+                
+            case 2:     // write watchpoint
+            case 3:     // read watchpoint
+            case 4:     // access watchpoint
+                if(this.watchpoints == null) return "";
+                
+                int watchType = (type == 2) ? Watchpoint.WATCH_WRITE : ((type == 3) ? Watchpoint.WATCH_READ : Watchpoint.WATCH_MEMORY);
+                if(insert) {
+                    Watchpoint watchpoint = new Watchpoint(address, address + length, watchType, Watchpoint.ANY_VALUE);
+                    this.watchpoints.add(watchpoint);
+                    this.insertedWatchpoints.add(watchpoint);
+                }
+                else {
+                    for(Watchpoint watchpoint : this.insertedWatchpoints) {
+                        if((watchpoint.getLowAddress() == address) && (watchpoint.getHighAddress() == address + length) && (watchpoint.getType() == watchType)) {
+                            this.watchpoints.remove(watchpoint);
+                            this.insertedWatchpoints.remove(watchpoint);
+                            break;
+                        }
+                    }
+                }
+                return "OK";
+                
+            default:
+                return "";
+        }
+    }
+    
+    /**
+     * Removes all breakpoints and watchpoints inserted by the client
+     */
+    protected void removeInsertedPoints() {
+        for(int address : this.insertedBreakpoints) {
+            this.emulation.getBreakpoints().remove(address);
+        }
+        this.insertedBreakpoints.clear();
+        
+        for(Watchpoint watchpoint : this.insertedWatchpoints) {
+            this.watchpoints.remove(watchpoint);
+        }
+        this.insertedWatchpoints.clear();
+    }
+    
+    /**
+     * Called on the emulation thread when the CPU stops; sends the stop
+     * reply if the client waits for one
+     * 
+     * @param reason (String) the reason of the emulation thread
+     */
+    protected void stopped(String reason) {
+        if(!this.continuing) return;
+        
+        this.continuing = false;
+        this.lastStop = getStopReply(reason);
+        sendReply(this.lastStop);
+    }
+    
+    /**
+     * Builds the stop reply for the current state
+     * 
+     * @param reason (String) the reason of the emulation thread or null after a step
+     * @return the reply (String)
+     */
+    protected String getStopReply(String reason) {
+        if("Paused".equals(reason)) return "T" + toHex(SIGINT, 1);
+        
+        String trap = "T" + toHex(SIGTRAP, 1);
+        WatchpointHit hit = (this.watchpoints != null) ? this.watchpoints.getHit() : null;
+        if(hit != null) {
+            this.watchpoints.clearHit();
+            
+            switch (hit.getWatchpoint().getType()) {
+                case Watchpoint.WATCH_WRITE:
+                    return trap + "watch:" + Long.toHexString(hit.getAddress()) + ";";
+                case Watchpoint.WATCH_READ:
+                    return trap + "rwatch:" + Long.toHexString(hit.getAddress()) + ";";
+                case Watchpoint.WATCH_MEMORY:
+                    return trap + "awatch:" + Long.toHexString(hit.getAddress()) + ";";
+            }
+        }
+        
+        if((reason != null) && reason.startsWith("Breakpoint")) return trap + "swbreak:;";
+        return trap;
+    }
+    
+    /**
+     * Formats a value as hex with two digits per byte, the highest byte first
+     * 
+     * @param value (int) the value
+     * @param bytes (int) the number of bytes
+     * @return the hex digits (String)
+     */
+    protected static String toHex(int value, int bytes) {
+        char[] digits = new char[bytes * 2];
+        
+        for(int i=0; i<digits.length; i++) {
+            digits[i] = (char)HEX[(value >>> ((digits.length - 1 - i) * 4)) & 0x0F];
+        }
+        
+        return new String(digits);
+    }
+    
+    /**
+     * Formats a value as hex with two digits per byte, the lowest byte first
+     * 
+     * @param value (int) the value
+     * @param bytes (int) the number of bytes
+     * @return the hex digits (String)
+     */
+    protected static String toHexLittleEndian(int value, int bytes) {
+        StringBuilder hex = new StringBuilder(bytes * 2);
+        
+        for(int i=0; i<bytes; i++) {
+            hex.append(toHex(value >>> (i * 8), 1));
+        }
+        
+        return hex.toString();
+    }
+    
+    /**
+     * Parses hex digits with the lowest byte first
+     * 
+     * @param hex (String) the hex digits, two per byte
+     * @return the value (int)
+     */
+    protected static int parseHexLittleEndian(String hex) {
+        int value = 0;
+        
+        for(int i=0; i + 1 < hex.length(); i+=2) {
+            value |= Integer.parseInt(hex.substring(i, i + 2), 16) << (i * 4);
+        }
+        
+        return value;
+    }
+    
+    /**
+     * Runs a Z80 binary and waits for GDB to connect
+     * 
+     * @param args the binary file, loaded at address 0, and the port (optional)
+     * @throws Exception 
+     */
+    public static void main(String[] args) throws Exception {
+        if(args.length < 1) {
+            System.err.println("Usage: GdbServer <binary file> [port]");
+            return;
+        }
+        
+        Memory memory = new RAMMemoryLittleEndian(0x10000);
+        try (InputStream in = Files.newInputStream(Paths.get(args[0]))) {
+            int fileByte;
+            long address = 0;
+            while(((fileByte = in.read()) >= 0) && (address < 0x10000)) {
+                memory.setByte(address++, (byte)fileByte);
+            }
+        }
+        
+        Z80Debugger z80 = new Z80Debugger(memory, new SimpleIO(0, 256));
+        EmulationThread emulation = new EmulationThread(z80);
+        emulation.start();
+        
+        GdbServer server = new GdbServer(z80, emulation, (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_PORT);
+        server.start();
+        System.out.println("Waiting for GDB on localhost:" + server.getPort());
+    }
+}
@@ -26,7 +26,14 @@ import java.util.List;
  * 
  * @author peter
  */
-public class Intel4004 implements CPU {
+public class Intel4004 implements TraceableCPU, ProfilableCPU {
+    public static final String TRACE_NAME = "4004";
+    
+    // a machine cycle takes 8 clock periods, one per nibble of the opcode
+    public static final int CYCLES_PER_NIBBLE = 4;
+    
+    static final ExecutionTracer.Field[] TRACE_FIELDS = createTraceFields();
+    
     Memory programMemory;
     Memory dataMemory;
     List<IO> IOBlocks;
@@ -38,6 +45,8 @@ public class Intel4004 implements CPU {
     boolean carry;
     byte regDataRamBank;
     short regRegisterControl;
+    ExecutionTracer tracer;
+    CodeProfiler profiler;
     
     
     public Intel4004() {
@@ -296,6 +305,7 @@ public class Intel4004 implements CPU {
         push(this.regPC);
         
         this.regPC = (short)opCode2;
+        if(this.profiler != null) this.profiler.call(opCode2);
         
         return 4;
     }
@@ -419,6 +429,7 @@ public class Intel4004 implements CPU {
     protected int opBBL(int opCode) {
         this.regA = (byte)(opCode & 0x0F);
         this.regPC = pop();
+        if(this.profiler != null) this.profiler.ret();
         return 2;
     }
     
@@ -637,6 +648,59 @@ public class Intel4004 implements CPU {
 
     @Override
     public int runNextOpCode() throws MemoryException, OpCodeException {
+        CodeProfiler profiler = this.profiler;
+        if(profiler == null) return (this.tracer == null) ? executeNextOpCode() : runTracedOpCode();
+        
+        profiler.begin(Short.toUnsignedInt(this.regPC));
+        int result = (this.tracer == null) ? executeNextOpCode() : runTracedOpCode();
+        profiler.end(result * CYCLES_PER_NIBBLE);
+        return result;
+    }
+    
+    /**
+     * Runs the operation at the current program counter address and records
+     * it in the tracer
+     * 
+     * @return the number of nibbles of the operation (int)
+     * @throws MemoryException
+     * @throws OpCodeException 
+     */
+    protected int runTracedOpCode() throws MemoryException, OpCodeException {
+        long pc = Short.toUnsignedLong(this.regPC);
+        long opCodes = 0;
+        int length = 0;
+        try {
+            // jumps do not tell the length by the PC, so keep the nibbles
+            // of the longest (two byte) instruction
+            for(; length<4; length++) {
+                opCodes |= Byte.toUnsignedLong(readMemory4(pc + length, true)) << (length * 8);
+            }
+        }
+        catch (MemoryException ex) {
+            // end of the program memory
+        }
+        
+        int result;
+        try {
+            result = executeNextOpCode();
+        }
+        catch (MemoryException | OpCodeException | RuntimeException ex) {
+            this.tracer.fault(pc, opCodes, length);
+            throw ex;
+        }
+        
+        this.tracer.record(pc, opCodes, length, result * CYCLES_PER_NIBBLE);
+        return result;
+    }
+    
+    /**
+     * Executes the operation at the current program counter address
+     * 
+     * @return the number of nibbles of the operation (int)
+     * @throws MemoryException
+     * @throws OpCodeException 
+     */
+    protected int executeNextOpCode() throws MemoryException, OpCodeException {
         int opCode = Byte.toUnsignedInt(readMemory8(Short.toUnsignedLong(this.regPC), true));
         
         switch (opCode & 0xF0) {
@@ -690,4 +754,81 @@ public class Intel4004 implements CPU {
         }
     }
     
+    /**
+     * Creates the description of the traced registers
+     * 
+     * @return the fields (ExecutionTracer.Field[])
+     */
+    static ExecutionTracer.Field[] createTraceFields() {
+        ExecutionTracer.Field[] fields = new ExecutionTracer.Field[16 + 7];
+        
+        for(int i=0; i<16; i++) {
+            fields[i] = new ExecutionTracer.Field("R" + i, 0, i * 4, 4);
+        }
+        fields[16] = new ExecutionTracer.Field("A", 1, 0, 4);
+        fields[17] = new ExecutionTracer.Field("C", 1, 4, 1);
+        fields[18] = new ExecutionTracer.Field("DtRamBnk", 1, 8, 8);
+        fields[19] = new ExecutionTracer.Field("Stack0", 1, 16, 16);
+        fields[20] = new ExecutionTracer.Field("Stack1", 1, 32, 16);
+        fields[21] = new ExecutionTracer.Field("Stack2", 1, 48, 16);
+        fields[22] = new ExecutionTracer.Field("RegCtrl", 2, 0, 16);
+        
+        return fields;
+    }
+    
+    @Override
+    public void setProfiler(CodeProfiler profiler) {
+        this.profiler = profiler;
+    }
+    
+    @Override
+    public CodeProfiler getProfiler() {
+        return this.profiler;
+    }
+    
+    /**
+     * Returns the number of used levels of the internal stack. pop() clears
+     * the levels it frees, so a return to address 0 is not counted.
+     * 
+     * @return the depth (int)
+     */
+    @Override
+    public int getCallDepth() {
+        int depth = 0;
+        while((depth < this.stacks.length) && (this.stacks[depth] != 0)) depth++;
+        return depth;
+    }
+    
+    @Override
+    public void setTracer(ExecutionTracer tracer) {
+        this.tracer = tracer;
+    }
+    
+    @Override
+    public ExecutionTracer getTracer() {
+        return this.tracer;
+    }
+    
+    @Override
+    public String getTraceName() {
+        return TRACE_NAME;
+    }
+    
+    @Override
+    public ExecutionTracer.Field[] getTraceFields() {
+        return TRACE_FIELDS;
+    }
+    
+    @Override
+    public void packTraceWords(long[] words, int offset) {
+        long index = 0;
+        for(int i=0; i<16; i++) {
+            index |= (long)(this.regIndex[i] & 0x0F) << (i * 4);
+        }
+        words[offset] = index;
+        words[offset + 1] = (this.regA & 0x0F) | (this.carry ? 0x10 : 0) | (Byte.toUnsignedLong(this.regDataRamBank) << 8)
+                | (Short.toUnsignedLong(this.stacks[0]) << 16) | (Short.toUnsignedLong(this.stacks[1]) << 32) | (Short.toUnsignedLong(this.stacks[2]) << 48);
+        words[offset + 2] = Short.toUnsignedLong(this.regRegisterControl);
+    }
+    
 }
@@ -19,10 +19,11 @@
 package org.jemu.micro;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.StringTokenizer;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 
 /**
  * This class implements the debugger for an Intel 4004 CPU.
@@ -762,6 +763,66 @@ public class Intel4004Debugger extends Intel4004 implements Debugger {
         }
     }
     
+    /**
+     * All mnemonics of the Intel 4004 by name, built once when the class is loaded.
+     * The Mnemonic classes have no state, so the instances are reused for
+     * every line that is translated.
+     */
+    public static final Map<String, Debugger.Mnemonic> MNEMONICS = createMnemonics();
+    
+    private static Map<String, Debugger.Mnemonic> createMnemonics() {
+        HashMap<String, Debugger.Mnemonic> mnemonics = new HashMap<>();
+        mnemonics.put("NOP", new NOP());
+        mnemonics.put("JCN", new JCN());
+        mnemonics.put("FIM", new FIM());
+        mnemonics.put("FIN", new FIN());
+        mnemonics.put("JIN", new JIN());
+        mnemonics.put("JUN", new JUN());
+        mnemonics.put("JMS", new JMS());
+        mnemonics.put("INC", new INC());
+        mnemonics.put("ISZ", new ISZ());
+        mnemonics.put("ADD", new ADD());
+        mnemonics.put("SUB", new SUB());
+        mnemonics.put("LD", new LD());
+        mnemonics.put("XCH", new XCH());
+        mnemonics.put("BBL", new BBL());
+        mnemonics.put("LDM", new LDM());
+        mnemonics.put("CLB", new CLB());
+        mnemonics.put("CLC", new CLC());
+        mnemonics.put("IAC", new IAC());
+        mnemonics.put("CMC", new CMC());
+        mnemonics.put("CMA", new CMA());
+        mnemonics.put("RAL", new RAL());
+        mnemonics.put("RAR", new RAR());
+        mnemonics.put("TCC", new TCC());
+        mnemonics.put("DAC", new DAC());
+        mnemonics.put("TCS", new TCS());
+        mnemonics.put("STC", new STC());
+        mnemonics.put("DAA", new DAA());
+        mnemonics.put("KBP", new KBP());
+        mnemonics.put("DCL", new DCL());
+        mnemonics.put("SRC", new SRC());
+        mnemonics.put("WRM", new WRM());
+        mnemonics.put("WMP", new WMP());
+        mnemonics.put("WRR", new WRR());
+        mnemonics.put("WPM", new WPM());
+        mnemonics.put("WR0", new WR0());
+        mnemonics.put("WR1", new WR1());
+        mnemonics.put("WR2", new WR2());
+        mnemonics.put("WR3", new WR3());
+        mnemonics.put("SBM", new SBM());
+        mnemonics.put("RDM", new RDM());
+        mnemonics.put("RDR", new RDR());
+        mnemonics.put("ADM", new ADM());
+        mnemonics.put("RD0", new RD0());
+        mnemonics.put("RD1", new RD1());
+        mnemonics.put("RD2", new RD2());
+        mnemonics.put("RD3", new RD3());
+        return Collections.unmodifiableMap(mnemonics);
+    }
+    
+    Debugger.Tokenizer tokenizer = new Debugger.Tokenizer();
+    
     /**
      * Creates a new instance of Intel4004Debugger with no RAM or ROM
      */
@@ -779,6 +840,22 @@ public class Intel4004Debugger extends Intel4004 implements Debugger {
         this.registerNames.add("DtRamBnk");
         this.registerNames.add("RegCtrl");
     }
+    
+    /**
+     * Creates a new instance of Intel4004Debugger
+     * 
+     * @param programMemory (Memory) the program memory (ROM)
+     * @param dataMemory (Memory) the data memory (RAM)
+     * @param IOBlock (IO) the IO
+     */
+    public Intel4004Debugger(Memory programMemory, Memory dataMemory, IO IOBlock) {
+        this();
+        
+        this.programMemory = programMemory;
+        this.dataMemory = dataMemory;
+        this.IOBlocks = new ArrayList<>();
+        this.IOBlocks.add(IOBlock);
+    }
 
     /**
      * Returns the code length at a given memory locatio
@@ -990,6 +1067,31 @@ public class Intel4004Debugger extends Intel4004 implements Debugger {
         }
     }
 
+    @Override
+    public Map<String, Debugger.Mnemonic> getMnemonics() {
+        return MNEMONICS;
+    }
+    
+    /**
+     * Each address of the 4004 holds a nibble
+     * 
+     * @return 4 (int)
+     */
+    @Override
+    public int getMemoryUnitBits() {
+        return 4;
+    }
+    
+    /**
+     * The 4004 stores the high nibble of a byte at the lower address
+     * 
+     * @return true (boolean)
+     */
+    @Override
+    public boolean isBigEndian() {
+        return true;
+    }
+    
     /**
      * Returns the machine code for a given opcode Mnemonic
      * 
@@ -999,29 +1101,16 @@ public class Intel4004Debugger extends Intel4004 implements Debugger {
      */
     @Override
     public byte[] translate(String mnemonic) throws SyntaxErrorException {
-        mnemonic = mnemonic.toUpperCase();
-        StringTokenizer st = new StringTokenizer(mnemonic);
-        
-        String mnem1 = st.nextToken();
-        
-        try {
-            String className = "org.ansic.micro.Intel4004Debugger$" + mnem1;
-            Class theClass = Class.forName(className);
-            Object theObj = theClass.newInstance();
-            
-            Z80Debugger.Mnemonic mnem = (Z80Debugger.Mnemonic)theObj;
-            
+        synchronized(this.tokenizer) {
+            this.tokenizer.reset(mnemonic);
+            if(!this.tokenizer.hasMoreTokens())
+                throw new SyntaxErrorException("Syntax error in <" + mnemonic + ">");
             
-            byte[] opCodes = mnem.getOpCodes(st);
+            Debugger.Mnemonic mnem = MNEMONICS.get(this.tokenizer.nextToken());
+            if(mnem == null)
+                throw new SyntaxErrorException("Syntax error in <" + mnemonic + ">");
             
-            return opCodes;
-        }
-        catch (SyntaxErrorException sex) {
-            throw sex;
-        }
-        catch (ClassNotFoundException | IllegalAccessException | InstantiationException ex) {
-            Logger.getLogger(DebuggerGUI.class.getName()).log(Level.SEVERE, null, ex);
-            throw new SyntaxErrorException("Syntax error in <" + mnemonic + ">");
+            return mnem.getOpCodes(this.tokenizer);
         }
     }
 
@@ -1291,4 +1380,40 @@ public class Intel4004Debugger extends Intel4004 implements Debugger {
     public void writeMemoryByte(long address, byte value) throws MemoryException {
         this.writeMemory4(address, value, true);
     }
+
+    /**
+     * Watchpoints are not supported, the 4004 accesses its program and data
+     * memory directly instead of through a MemoryBus.
+     * 
+     * @param watchpoints (WatchpointSet) the watchpoints
+     */
+    @Override
+    public void setWatchpoints(WatchpointSet watchpoints) {
+        throw new UnsupportedOperationException("Watchpoints are not supported for the Intel 4004");
+    }
+
+    @Override
+    public WatchpointSet getWatchpoints() {
+        return null;
+    }
+
+    @Override
+    public MemoryBus getMemoryBus() {
+        return null;
+    }
+
+    /**
+     * Returns the program memory, the 4004 keeps it apart from the data memory
+     * 
+     * @return the program memory (List&lt;Memory&gt;)
+     */
+    @Override
+    public List<Memory> getProgramMemoryBlocks() {
+        return Collections.singletonList(this.programMemory);
+    }
+
+    @Override
+    public void setMemoryBus(MemoryBus memoryBus) {
+        throw new UnsupportedOperationException("The Intel 4004 does not use a memory bus");
+    }
 }
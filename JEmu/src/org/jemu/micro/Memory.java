@@ -125,6 +125,24 @@ public interface Memory {
      */
     public long getLong(long address) throws MemoryException;
     
+    /**
+     * This method returns up to 8 consecutive bytes, the first byte in bits
+     * 0-7 of the result, e.g. for tracers that keep the opcodes of every
+     * instruction. Memory implementations may read them at once.
+     * 
+     * @param address (long) the memory address of the first byte
+     * @param count (int) the number of bytes (up to 8)
+     * @return the bytes (long)
+     * @throws MemoryException if there was a problem
+     */
+    public default long getBytes(long address, int count) throws MemoryException {
+        long result = 0L;
+        for(int i=0; i<count; i++) {
+            result |= Byte.toUnsignedLong(getByte(address + i)) << (i * 8);
+        }
+        return result;
+    }
+    
     /**
      * This method stores a single entry in memory of the inherent size of the
      * memory implementation at the given address
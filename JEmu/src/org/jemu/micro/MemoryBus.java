@@ -0,0 +1,551 @@
+/*
+ * Copyright (C) 2021 peter.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jemu.micro;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class implements the address decoder of a CPU. The address space is
+ * split into pages of equal size and every page points directly to the memory
+ * block (and the address within that block) that serves it. Finding the memory
+ * for an access is therefore a single array lookup instead of a walk over all
+ * memory blocks.
+ * 
+ * Devices such as the BankedMemory change the page table at runtime in order
+ * to page banks in and out without copying any data.
+ * 
+ * @author peter
+ */
+public class MemoryBus {
+    public static final int MAX_PAGE_SHIFT = 8;
+    
+    /**
+     * This class describes an address range that shows another part of the
+     * address space (address lines that are not decoded by the hardware).
+     * An address within the range is redirected to base + (address &amp; mask).
+     */
+    public static class Mirror {
+        long lowAddress;
+        long highAddress;
+        long mask;
+        long base;
+        
+        public Mirror(long lowAddress, long highAddress, long mask, long base) {
+            this.lowAddress = lowAddress;
+            this.highAddress = highAddress;
+            this.mask = mask;
+            this.base = base;
+        }
+        
+        public long getLowAddress() {
+            return this.lowAddress;
+        }
+        
+        public long getHighAddress() {
+            return this.highAddress;
+        }
+        
+        public long getMask() {
+            return this.mask;
+        }
+        
+        public long getBase() {
+            return this.base;
+        }
+        
+        /**
+         * Returns the address that is actually accessed for a given address
+         * 
+         * @param address (long) the address within the mirror range
+         * @return the target address (long)
+         */
+        public long getTargetAddress(long address) {
+            return this.base + (address & this.mask);
+        }
+    }
+    
+    int pageShift;
+    long addressMask;
+    Memory[] pageMemory;
+    long[] pageOffset;
+    List<Memory> memoryBlocks;
+    List<Mirror> mirrors = new ArrayList<>();
+    WatchpointSet watchpointSet;
+    
+    // the bus that holds the watchpoints of a shared page table
+    MemoryBus owner = this;
+    
+    /**
+     * Creates a new, empty instance of MemoryBus for a given address space
+     * 
+     * @param addressSpaceSize (long) the size of the address space (power of 2)
+     */
+    public MemoryBus(long addressSpaceSize) {
+        this(new ArrayList<>(), addressSpaceSize);
+    }
+    
+    /**
+     * Creates a new instance of MemoryBus and maps the given memory blocks.
+     * If blocks overlap, the first block in the list wins. The page size is
+     * chosen so that every block starts and ends on a page boundary.
+     * 
+     * @param memoryBlocks (List&lt;Memory&gt;) the memory blocks
+     * @param addressSpaceSize (long) the size of the address space (power of 2)
+     */
+    public MemoryBus(List<Memory> memoryBlocks, long addressSpaceSize) {
+        if((addressSpaceSize <= 0) || (Long.bitCount(addressSpaceSize) != 1))
+            throw new IllegalArgumentException("Address space size must be a power of 2");
+        
+        int shift = MAX_PAGE_SHIFT;
+        for(Memory mem : memoryBlocks) {
+            shift = Math.min(shift, getAlignment(mem));
+        }
+        shift = Math.min(shift, Long.numberOfTrailingZeros(addressSpaceSize));
+        
+        this.pageShift = shift;
+        this.addressMask = addressSpaceSize - 1;
+        this.pageMemory = new Memory[(int)(addressSpaceSize >> shift)];
+        this.pageOffset = new long[this.pageMemory.length];
+        this.memoryBlocks = new ArrayList<>();
+        
+        for(Memory mem : memoryBlocks) {
+            try {
+                attach(mem);
+            }
+            catch (MemoryException ex) {
+                Logger.getLogger(MemoryBus.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+    }
+    
+    /**
+     * Creates a new instance of MemoryBus that shares the page table, the
+     * memory blocks and the mirrors with another bus. Changes of the mapping
+     * on either bus are visible on both, and so are the watchpoints set with
+     * setWatchpointSet. This is used to swap in a bus with a different
+     * access path (e.g. the ProfilingMemoryBus) at runtime.
+     * 
+     * @param bus (MemoryBus) the bus to share the page table with
+     */
+    protected MemoryBus(MemoryBus bus) {
+        this.pageShift = bus.pageShift;
+        this.addressMask = bus.addressMask;
+        this.pageMemory = bus.pageMemory;
+        this.pageOffset = bus.pageOffset;
+        this.memoryBlocks = bus.memoryBlocks;
+        this.mirrors = bus.mirrors;
+        this.owner = bus.owner;
+    }
+    
+    /**
+     * Returns the number of low address bits that are zero for both ends of
+     * the memory block (capped at 63)
+     * 
+     * @param mem (Memory) the memory block
+     * @return the alignment as a power of 2 (int)
+     */
+    protected static int getAlignment(Memory mem) {
+        int alignment = Math.min(Long.numberOfTrailingZeros(mem.getLowAddress()), Long.numberOfTrailingZeros(mem.getHighAddress()));
+        
+        if(mem instanceof BankedMemory) {
+            alignment = Math.min(alignment, ((BankedMemory)mem).getSlotShift());
+        }
+        
+        return alignment;
+    }
+    
+    /**
+     * Adds a memory block to the bus. Pages that are already served by
+     * another block are not changed.
+     * 
+     * @param memory (Memory) the memory block
+     * @throws MemoryException if the block is not aligned to the page size
+     */
+    public void attach(Memory memory) throws MemoryException {
+        if(getAlignment(memory) < this.pageShift)
+            throw new MemoryException("Memory block is not aligned to the page size of " + getPageSize());
+        
+        this.memoryBlocks.add(memory);
+        
+        if(memory instanceof BankedMemory) {
+            ((BankedMemory)memory).attach(this);
+            return;
+        }
+        
+        long low = Math.max(0L, memory.getLowAddress());
+        long high = Math.min(this.addressMask + 1, memory.getHighAddress());
+        for(long address = low; address < high; address += getPageSize()) {
+            int page = (int)(address >>> this.pageShift);
+            
+            if(this.pageMemory[page] == null) {
+                this.pageMemory[page] = memory;
+                this.pageOffset[page] = 0L;
+            }
+        }
+        
+        updatePageTable();
+    }
+    
+    /**
+     * Maps an address range of the bus to a memory block. The range
+     * lowAddress..highAddress of the bus is served by the memory block
+     * starting at memoryAddress.
+     * 
+     * @param lowAddress (long) the first bus address
+     * @param highAddress (long) the bus address after the range (exclusive)
+     * @param memory (Memory) the memory block
+     * @param memoryAddress (long) the address within the block for lowAddress
+     * @throws MemoryException if the range is not aligned to the page size
+     */
+    public void map(long lowAddress, long highAddress, Memory memory, long memoryAddress) throws MemoryException {
+        checkRange(lowAddress, highAddress);
+        
+        long offset = memoryAddress - lowAddress;
+        for(int page = (int)(lowAddress >>> this.pageShift); page < (int)(highAddress >>> this.pageShift); page++) {
+            this.pageMemory[page] = memory;
+            this.pageOffset[page] = offset;
+        }
+        
+        updatePageTable();
+    }
+    
+    /**
+     * Removes all memory from an address range of the bus
+     * 
+     * @param lowAddress (long) the first bus address
+     * @param highAddress (long) the bus address after the range (exclusive)
+     * @throws MemoryException if the range is not aligned to the page size
+     */
+    public void unmap(long lowAddress, long highAddress) throws MemoryException {
+        checkRange(lowAddress, highAddress);
+        
+        for(int page = (int)(lowAddress >>> this.pageShift); page < (int)(highAddress >>> this.pageShift); page++) {
+            this.pageMemory[page] = null;
+            this.pageOffset[page] = 0L;
+        }
+        
+        updatePageTable();
+    }
+    
+    /**
+     * Makes an address range show another part of the address space. Every
+     * address within lowAddress..highAddress is redirected to
+     * base + (address &amp; mask), e.g. a 2K RAM at 0x0000 which appears four
+     * times within 0x0000..0x2000 is mirrored with mask 0x07FF and base 0.
+     * 
+     * The mirror is resolved in the page table, so it costs nothing per
+     * access and no memory is duplicated. Mirrors are kept up to date when
+     * the mapping of the target changes (e.g. by bank switching) and take
+     * precedence over memory that is mapped into the mirror range itself.
+     * 
+     * @param lowAddress (long) the first bus address of the mirror
+     * @param highAddress (long) the bus address after the mirror (exclusive)
+     * @param mask (long) the address lines that are decoded
+     * @param base (long) the address that the masked address is added to
+     * @throws MemoryException if the range is not aligned or the mask does not keep the address within a page
+     */
+    public void mirror(long lowAddress, long highAddress, long mask, long base) throws MemoryException {
+        checkRange(lowAddress, highAddress);
+        
+        long pageMask = getPageSize() - 1;
+        if((mask & pageMask) != pageMask)
+            throw new MemoryException("Mirror mask " + Long.toHexString(mask) + " must keep the lowest " + this.pageShift + " address bits");
+        if((base & pageMask) != 0)
+            throw new MemoryException("Mirror base is not aligned to the page size of " + getPageSize());
+        
+        this.mirrors.add(new Mirror(lowAddress, highAddress, mask, base));
+        updatePageTable();
+    }
+    
+    /**
+     * Removes all mirrors that start at the given address. The pages of the
+     * mirror are unmapped.
+     * 
+     * @param lowAddress (long) the first bus address of the mirror
+     * @throws MemoryException if there is no mirror at this address
+     */
+    public void removeMirror(long lowAddress) throws MemoryException {
+        Mirror removed = null;
+        
+        for(Mirror mirror : this.mirrors) {
+            if(mirror.getLowAddress() == lowAddress)
+                removed = mirror;
+        }
+        
+        if(removed == null)
+            throw new MemoryException("No mirror at address " + Long.toHexString(lowAddress));
+        
+        this.mirrors.remove(removed);
+        unmap(removed.getLowAddress(), removed.getHighAddress());
+    }
+    
+    /**
+     * Returns all mirrors of this bus
+     * 
+     * @return the mirrors (List&lt;Mirror&gt;)
+     */
+    public List<Mirror> getMirrors() {
+        return this.mirrors;
+    }
+    
+    /**
+     * Brings the page table up to date after the mapping has changed: the
+     * mirrors are resolved again and watched pages are wrapped.
+     */
+    protected void updatePageTable() {
+        applyMirrors();
+        
+        WatchpointSet watchpoints = this.owner.watchpointSet;
+        if(watchpoints != null)
+            watchpoints.wrapPages(this.pageMemory, this.pageOffset, this.pageShift);
+    }
+    
+    /**
+     * Sets the watchpoints that wrap the watched pages of this bus. Setting
+     * null removes all wrappers again.
+     * 
+     * @param watchpointSet (WatchpointSet) the watchpoints or null
+     */
+    public void setWatchpointSet(WatchpointSet watchpointSet) {
+        this.owner.watchpointSet = watchpointSet;
+        
+        if(watchpointSet == null) {
+            for(int page=0; page<this.pageMemory.length; page++) {
+                if(this.pageMemory[page] instanceof WatchpointSet.WatchedMemory)
+                    this.pageMemory[page] = ((WatchpointSet.WatchedMemory)this.pageMemory[page]).getMemory();
+            }
+        }
+        else {
+            updatePageTable();
+        }
+    }
+    
+    /**
+     * Copies the page table entries of the mirror targets into the mirror
+     * ranges. The targets are read before any mirror page is changed, so a
+     * mirror may include its own target. Watched targets are copied without
+     * their wrapper, wrapPages wraps the mirror pages with their own bus
+     * addresses afterwards.
+     */
+    protected void applyMirrors() {
+        for(Mirror mirror : this.mirrors) {
+            int firstPage = (int)(mirror.getLowAddress() >>> this.pageShift);
+            int lastPage = (int)(mirror.getHighAddress() >>> this.pageShift);
+            Memory[] memory = new Memory[lastPage - firstPage];
+            long[] offset = new long[lastPage - firstPage];
+            
+            for(int page = firstPage; page < lastPage; page++) {
+                long address = (long)page << this.pageShift;
+                long target = mirror.getTargetAddress(address) & this.addressMask;
+                int targetPage = (int)(target >>> this.pageShift);
+                
+                Memory targetMemory = this.pageMemory[targetPage];
+                if(targetMemory instanceof WatchpointSet.WatchedMemory)
+                    targetMemory = ((WatchpointSet.WatchedMemory)targetMemory).getMemory();
+                
+                memory[page - firstPage] = targetMemory;
+                offset[page - firstPage] = this.pageOffset[targetPage] + target - address;
+            }
+            
+            System.arraycopy(memory, 0, this.pageMemory, firstPage, memory.length);
+            System.arraycopy(offset, 0, this.pageOffset, firstPage, offset.length);
+        }
+    }
+    
+    /**
+     * Checks that an address range lies on page boundaries within the bus
+     * 
+     * @param lowAddress (long) the first bus address
+     * @param highAddress (long) the bus address after the range (exclusive)
+     * @throws MemoryException if the range is not valid
+     */
+    protected void checkRange(long lowAddress, long highAddress) throws MemoryException {
+        long pageMask = getPageSize() - 1;
+        
+        if(((lowAddress & pageMask) != 0) || ((highAddress & pageMask) != 0))
+            throw new MemoryException("Address range is not aligned to the page size of " + getPageSize());
+        if((lowAddress < 0) || (highAddress > this.addressMask + 1) || (lowAddress > highAddress))
+            throw new MemoryException("Address range " + Long.toHexString(lowAddress) + "-" + Long.toHexString(highAddress) + " out of range");
+    }
+    
+    /**
+     * Read an (8 bit) byte from the bus
+     * 
+     * @param address (long) the address
+     * @return the memory content (byte)
+     * @throws MemoryException if there is no memory at this address
+     */
+    public byte readByte(long address) throws MemoryException {
+        address &= this.addressMask;
+        int page = (int)(address >>> this.pageShift);
+        Memory mem = this.pageMemory[page];
+        
+        if(mem == null)
+            throw new MemoryException("No memory at address " + Long.toHexString(address));
+        
+        return mem.getByte(address + this.pageOffset[page]);
+    }
+    
+    /**
+     * Read an (8 bit) instruction byte from the bus. Unlike readByte, a code
+     * fetch is not a data read and does not trigger READ watchpoints; an
+     * instrumented bus may also count fetches separately.
+     * 
+     * @param address (long) the address
+     * @return the memory content (byte)
+     * @throws MemoryException if there is no memory at this address
+     */
+    public byte fetchByte(long address) throws MemoryException {
+        return peekByte(address);
+    }
+    
+    /**
+     * Read an (8 bit) byte from the bus without triggering watchpoints, e.g.
+     * for tracers and debuggers that must not influence the emulation
+     * 
+     * @param address (long) the address
+     * @return the memory content (byte)
+     * @throws MemoryException if there is no memory at this address
+     */
+    public byte peekByte(long address) throws MemoryException {
+        address &= this.addressMask;
+        int page = (int)(address >>> this.pageShift);
+        Memory mem = this.pageMemory[page];
+        
+        if(mem instanceof WatchpointSet.WatchedMemory)
+            mem = ((WatchpointSet.WatchedMemory)mem).getMemory();
+        if(mem == null)
+            throw new MemoryException("No memory at address " + Long.toHexString(address));
+        
+        return mem.getByte(address + this.pageOffset[page]);
+    }
+    
+    /**
+     * Reads up to 8 consecutive bytes like peekByte, the first byte in bits
+     * 0-7 of the result. Reading stops at the first unmapped address, the
+     * missing bytes are 0.
+     * 
+     * @param address (long) the address of the first byte
+     * @param count (int) the number of bytes (up to 8)
+     * @return the bytes (long)
+     */
+    public long peekBytes(long address, int count) {
+        int page = (int)((address & this.addressMask) >>> this.pageShift);
+        Memory mem = this.pageMemory[page];
+        
+        if((mem != null) && !(mem instanceof WatchpointSet.WatchedMemory)
+                && (((address + count - 1) & this.addressMask) >>> this.pageShift == page)) {
+            // all bytes are on the same page, the memory reads them at once
+            try {
+                return mem.getBytes((address & this.addressMask) + this.pageOffset[page], count);
+            }
+            catch (MemoryException ex) {
+                // the memory ends within the page, read byte by byte
+            }
+        }
+        
+        long result = 0L;
+        try {
+            for(int i=0; i<count; i++) {
+                result |= Byte.toUnsignedLong(peekByte(address + i)) << (i * 8);
+            }
+        }
+        catch (MemoryException ex) {
+            // end of the mapped memory
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Write an (8 bit) byte to the bus
+     * 
+     * @param address (long) the address
+     * @param value (byte) the new value
+     * @throws MemoryException if there is no memory at this address
+     */
+    public void writeByte(long address, byte value) throws MemoryException {
+        address &= this.addressMask;
+        int page = (int)(address >>> this.pageShift);
+        Memory mem = this.pageMemory[page];
+        
+        if(mem == null)
+            throw new MemoryException("No memory at address " + Long.toHexString(address));
+        
+        mem.setByte(address + this.pageOffset[page], value);
+    }
+    
+    /**
+     * Returns the memory block that currently serves a given address
+     * 
+     * @param address (long) the address
+     * @return the memory block or null if the address is not mapped (Memory)
+     */
+    public Memory getMemory(long address) {
+        return this.pageMemory[(int)((address & this.addressMask) >>> this.pageShift)];
+    }
+    
+    /**
+     * Returns all memory blocks that have been attached to this bus
+     * 
+     * @return the memory blocks (List&lt;Memory&gt;)
+     */
+    public List<Memory> getMemoryBlocks() {
+        return this.memoryBlocks;
+    }
+    
+    /**
+     * Returns the number of address bits that select the address within a page
+     * 
+     * @return the page shift (int)
+     */
+    public int getPageShift() {
+        return this.pageShift;
+    }
+    
+    /**
+     * Returns the size of a page
+     * 
+     * @return the page size (long)
+     */
+    public long getPageSize() {
+        return 1L << this.pageShift;
+    }
+    
+    /**
+     * Returns the number of pages
+     * 
+     * @return the number of pages (int)
+     */
+    public int getPageCount() {
+        return this.pageMemory.length;
+    }
+    
+    /**
+     * Returns the size of the address space
+     * 
+     * @return the address space size (long)
+     */
+    public long getAddressSpaceSize() {
+        return this.addressMask + 1;
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2021 peter.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jemu.micro;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.MouseEvent;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.*;
+
+/**
+ * This class shows the access statistics of a ProfilingMemoryBus as heatmap.
+ * Every cell is a page (or an address if the bus counts per address), the
+ * color goes from dark blue (no access) to red (most accessed) on a
+ * logarithmic scale.
+ * 
+ * @author peter
+ */
+public class MemoryHeatmap extends JFrame implements ActionListener {
+    private static final long serialVersionUID = 1L;
+    
+    public static final String[] MODE_NAMES = { "All accesses", "Reads", "Writes", "Fetches" };
+    public static final int MODE_ALL = 0;
+    public static final int MODE_READS = 1;
+    public static final int MODE_WRITES = 2;
+    public static final int MODE_FETCHES = 3;
+    
+    public static final int MAP_SIZE = 512;
+    
+    ProfilingMemoryBus bus;
+    int mode = MODE_ALL;
+    boolean showAddresses;
+    
+    JComponent mapPanel;
+    JComboBox<String> modeComboBox;
+    JButton resetButton;
+    JButton csvButton;
+    JButton binaryButton;
+    JLabel infoLabel;
+    javax.swing.Timer timer;
+    
+    public MemoryHeatmap(ProfilingMemoryBus bus) {
+        this.bus = bus;
+        this.showAddresses = bus.isPerAddress();
+        
+        initialize();
+    }
+    
+    public final void initialize() {
+        setTitle("Memory Heatmap");
+        // closing the window calls dispose, which stops the timer
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+        setLayout(null);
+        setSize(MAP_SIZE + 40, MAP_SIZE + 120);
+        
+        this.mapPanel = new JComponent() {
+            @Override
+            protected void paintComponent(Graphics g) {
+                paintMap(g);
+            }
+            
+            @Override
+            public String getToolTipText(MouseEvent e) {
+                return getCellText(e.getX(), e.getY());
+            }
+        };
+        this.mapPanel.setBounds(10, 10, MAP_SIZE, MAP_SIZE);
+        this.mapPanel.setPreferredSize(new Dimension(MAP_SIZE, MAP_SIZE));
+        this.mapPanel.setToolTipText("");
+        add(this.mapPanel);
+        
+        this.modeComboBox = new JComboBox<>(MODE_NAMES);
+        this.modeComboBox.setBounds(10, MAP_SIZE + 20, 130, 20);
+        this.modeComboBox.addActionListener(this);
+        add(this.modeComboBox);
+        
+        this.resetButton = new JButton("Reset");
+        this.resetButton.setBounds(150, MAP_SIZE + 20, 80, 20);
+        this.resetButton.addActionListener(this);
+        add(this.resetButton);
+        
+        this.csvButton = new JButton("CSV");
+        this.csvButton.setBounds(240, MAP_SIZE + 20, 80, 20);
+        this.csvButton.addActionListener(this);
+        add(this.csvButton);
+        
+        this.binaryButton = new JButton("Binary");
+        this.binaryButton.setBounds(330, MAP_SIZE + 20, 80, 20);
+        this.binaryButton.addActionListener(this);
+        add(this.binaryButton);
+        
+        this.infoLabel = new JLabel();
+        this.infoLabel.setBounds(10, MAP_SIZE + 50, MAP_SIZE, 20);
+        add(this.infoLabel);
+        
+        this.timer = new javax.swing.Timer(500, this);
+        this.timer.start();
+        
+        setVisible(true);
+    }
+    
+    /**
+     * Returns the number of cells (pages or addresses)
+     * 
+     * @return the cell count (int)
+     */
+    protected int getCellCount() {
+        return this.showAddresses ? (int)this.bus.getAddressSpaceSize() : this.bus.getPageCount();
+    }
+    
+    /**
+     * Returns the counter of a cell for the current mode
+     * 
+     * @param cell (int) the page or address
+     * @return the counter (long)
+     */
+    protected long getCount(int cell) {
+        if(this.showAddresses) {
+            switch (this.mode) {
+                case MODE_READS:
+                    return this.bus.getAddressReads(cell);
+                case MODE_WRITES:
+                    return this.bus.getAddressWrites(cell);
+                case MODE_FETCHES:
+                    return this.bus.getAddressFetches(cell);
+                default:
+                    return this.bus.getAddressAccesses(cell);
+            }
+        }
+        
+        switch (this.mode) {
+            case MODE_READS:
+                return this.bus.getPageReads(cell);
+            case MODE_WRITES:
+                return this.bus.getPageWrites(cell);
+            case MODE_FETCHES:
+                return this.bus.getPageFetches(cell);
+            default:
+                return this.bus.getPageAccesses(cell);
+        }
+    }
+    
+    /**
+     * Returns the number of cells per row of the map
+     * 
+     * @return the number of columns (int)
+     */
+    protected int getColumns() {
+        return Math.max(1, (int)Math.ceil(Math.sqrt(getCellCount())));
+    }
+    
+    protected void paintMap(Graphics g) {
+        int cells = getCellCount();
+        int columns = getColumns();
+        int rows = (cells + columns - 1) / columns;
+        double cellWidth = (double)MAP_SIZE / columns;
+        double cellHeight = (double)MAP_SIZE / rows;
+        
+        long max = 1;
+        for(int cell=0; cell<cells; cell++) {
+            max = Math.max(max, getCount(cell));
+        }
+        double logMax = Math.log1p(max);
+        
+        g.setColor(Color.BLACK);
+        g.fillRect(0, 0, MAP_SIZE, MAP_SIZE);
+        
+        for(int cell=0; cell<cells; cell++) {
+            long count = getCount(cell);
+            if(count == 0) continue;
+            
+            float heat = (float)(Math.log1p(count) / logMax);
+            g.setColor(Color.getHSBColor(0.66f * (1.0f - heat), 1.0f, 0.4f + 0.6f * heat));
+            
+            int x = (int)((cell % columns) * cellWidth);
+            int y = (int)((cell / columns) * cellHeight);
+            g.fillRect(x, y, Math.max(1, (int)((cell % columns + 1) * cellWidth) - x), Math.max(1, (int)((cell / columns + 1) * cellHeight) - y));
+        }
+    }
+    
+    /**
+     * Returns the tool tip text for a position on the map
+     * 
+     * @param x (int) the x position
+     * @param y (int) the y position
+     * @return the text (String)
+     */
+    protected String getCellText(int x, int y) {
+        int cells = getCellCount();
+        int columns = getColumns();
+        int rows = (cells + columns - 1) / columns;
+        int cell = (int)(y / ((double)MAP_SIZE / rows)) * columns + (int)(x / ((double)MAP_SIZE / columns));
+        
+        if((cell < 0) || (cell >= cells)) return null;
+        
+        long address = this.showAddresses ? cell : ((long)cell << this.bus.getPageShift());
+        return "$" + Long.toHexString(address) + ": " + getCount(cell);
+    }
+    
+    @Override
+    public void dispose() {
+        this.timer.stop();
+        super.dispose();
+    }
+
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        if(e.getSource() == this.timer) {
+            long total = 0;
+            for(int page=0; page<this.bus.getPageCount(); page++) {
+                total += this.bus.getPageAccesses(page);
+            }
+            this.infoLabel.setText(total + " accesses, " + (this.showAddresses ? "per address" : "per page of " + this.bus.getPageSize() + " bytes"));
+            this.mapPanel.repaint();
+        }
+        else if(e.getSource() == this.modeComboBox) {
+            this.mode = this.modeComboBox.getSelectedIndex();
+            this.mapPanel.repaint();
+        }
+        else if(e.getSource() == this.resetButton) {
+            this.bus.reset();
+            this.mapPanel.repaint();
+        }
+        else if(e.getSource() == this.csvButton) {
+            JFileChooser chooser = new JFileChooser();
+            if(chooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
+                try (Writer writer = new FileWriter(chooser.getSelectedFile())) {
+                    this.bus.writeCSV(writer);
+                }
+                catch (IOException ex) {
+                    Logger.getLogger(MemoryHeatmap.class.getName()).log(Level.SEVERE, null, ex);
+                }
+            }
+        }
+        else if(e.getSource() == this.binaryButton) {
+            JFileChooser chooser = new JFileChooser();
+            if(chooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
+                try (OutputStream stream = new FileOutputStream(chooser.getSelectedFile())) {
+                    this.bus.writeBinary(stream);
+                }
+                catch (IOException ex) {
+                    Logger.getLogger(MemoryHeatmap.class.getName()).log(Level.SEVERE, null, ex);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2021 peter.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jemu.micro;
+
+/**
+ * This interface is implemented by CPUs that report the instructions they
+ * execute, their subroutine calls and returns and their interrupts to a
+ * CodeProfiler. As long as no profiler is set, the CPU only checks a null
+ * field per instruction and per call or return.
+ * 
+ * @author peter
+ */
+public interface ProfilableCPU extends CPU {
+    
+    /**
+     * Installs a profiler; passing null switches profiling off. Must be
+     * called on the thread that runs the CPU.
+     * 
+     * @param profiler (CodeProfiler) the profiler or null
+     */
+    public void setProfiler(CodeProfiler profiler);
+    
+    /**
+     * Returns the installed profiler
+     * 
+     * @return the profiler or null (CodeProfiler)
+     */
+    public CodeProfiler getProfiler();
+    
+    /**
+     * Returns the current call depth as far as the CPU can tell it from its
+     * registers, without keeping track of calls. Used by the
+     * SamplingProfiler, so it must be cheap.
+     * 
+     * @return the depth (int)
+     */
+    public int getCallDepth();
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2021 peter.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jemu.micro;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * This class implements a MemoryBus that counts reads, writes and instruction
+ * fetches per page and, on request, per address. It shares the page table
+ * with the bus it is created from, so it can be swapped into a CPU while the
+ * emulation is running and swapped out again when profiling is done. The
+ * normal MemoryBus has no counting code at all.
+ * 
+ * @author peter
+ */
+public class ProfilingMemoryBus extends MemoryBus {
+    public static final int BINARY_MAGIC = 0x4A454D50;  // "JEMP"
+    public static final int BINARY_VERSION = 1;
+    
+    MemoryBus originalBus;
+    long[] pageReads;
+    long[] pageWrites;
+    long[] pageFetches;
+    int[] addressReads;
+    int[] addressWrites;
+    int[] addressFetches;
+    
+    /**
+     * Creates a new instance of ProfilingMemoryBus
+     * 
+     * @param bus (MemoryBus) the bus to instrument
+     * @param perAddress (boolean) also count per address (uses 12 bytes per address)
+     */
+    public ProfilingMemoryBus(MemoryBus bus, boolean perAddress) {
+        super(bus);
+        
+        this.originalBus = bus;
+        this.pageReads = new long[getPageCount()];
+        this.pageWrites = new long[getPageCount()];
+        this.pageFetches = new long[getPageCount()];
+        
+        if(perAddress) {
+            if(getAddressSpaceSize() > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("Address space too large for per address counters");
+            
+            this.addressReads = new int[(int)getAddressSpaceSize()];
+            this.addressWrites = new int[(int)getAddressSpaceSize()];
+            this.addressFetches = new int[(int)getAddressSpaceSize()];
+        }
+    }
+    
+    /**
+     * Returns the bus that this bus was created from (to swap it back in)
+     * 
+     * @return the original bus (MemoryBus)
+     */
+    public MemoryBus getOriginalBus() {
+        return this.originalBus;
+    }
+
+    @Override
+    public byte readByte(long address) throws MemoryException {
+        byte value = super.readByte(address);
+        
+        address &= this.addressMask;
+        this.pageReads[(int)(address >>> this.pageShift)]++;
+        if(this.addressReads != null) this.addressReads[(int)address]++;
+        
+        return value;
+    }
+
+    @Override
+    public byte fetchByte(long address) throws MemoryException {
+        byte value = super.fetchByte(address);
+        
+        address &= this.addressMask;
+        this.pageFetches[(int)(address >>> this.pageShift)]++;
+        if(this.addressFetches != null) this.addressFetches[(int)address]++;
+        
+        return value;
+    }
+
+    @Override
+    public void writeByte(long address, byte value) throws MemoryException {
+        super.writeByte(address, value);
+        
+        address &= this.addressMask;
+        this.pageWrites[(int)(address >>> this.pageShift)]++;
+        if(this.addressWrites != null) this.addressWrites[(int)address]++;
+    }
+    
+    /**
+     * Sets all counters to 0
+     */
+    public void reset() {
+        Arrays.fill(this.pageReads, 0L);
+        Arrays.fill(this.pageWrites, 0L);
+        Arrays.fill(this.pageFetches, 0L);
+        
+        if(this.addressReads != null) {
+            Arrays.fill(this.addressReads, 0);
+            Arrays.fill(this.addressWrites, 0);
+            Arrays.fill(this.addressFetches, 0);
+        }
+    }
+    
+    public boolean isPerAddress() {
+        return this.addressReads != null;
+    }
+    
+    public long getPageReads(int page) {
+        return this.pageReads[page];
+    }
+    
+    public long getPageWrites(int page) {
+        return this.pageWrites[page];
+    }
+    
+    public long getPageFetches(int page) {
+        return this.pageFetches[page];
+    }
+    
+    /**
+     * Returns the sum of all accesses to a page
+     * 
+     * @param page (int) the page number
+     * @return the number of accesses (long)
+     */
+    public long getPageAccesses(int page) {
+        return this.pageReads[page] + this.pageWrites[page] + this.pageFetches[page];
+    }
+    
+    public int getAddressReads(long address) {
+        return (this.addressReads == null) ? 0 : this.addressReads[(int)(address & this.addressMask)];
+    }
+    
+    public int getAddressWrites(long address) {
+        return (this.addressWrites == null) ? 0 : this.addressWrites[(int)(address & this.addressMask)];
+    }
+    
+    public int getAddressFetches(long address) {
+        return (this.addressFetches == null) ? 0 : this.addressFetches[(int)(address & this.addressMask)];
+    }
+    
+    /**
+     * Returns the sum of all accesses to an address (0 if not counting per
+     * address)
+     * 
+     * @param address (long) the address
+     * @return the number of accesses (long)
+     */
+    public long getAddressAccesses(long address) {
+        return (long)getAddressReads(address) + getAddressWrites(address) + getAddressFetches(address);
+    }
+    
+    /**
+     * Writes the statistics as CSV. There is one line per page with any
+     * access and, when counting per address, one line per address with any
+     * access.
+     * 
+     * @param writer (Writer) the destination
+     */
+    public void writeCSV(Writer writer) {
+        PrintWriter out = new PrintWriter(writer);
+        
+        out.println("type,address,memory,reads,writes,fetches");
+        for(int page=0; page<getPageCount(); page++) {
+            if(getPageAccesses(page) == 0) continue;
+            
+            long address = (long)page << this.pageShift;
+            Memory memory = getMemory(address);
+            out.println("page,$" + Long.toHexString(address) + ","
+                    + ((memory == null) ? "" : memory.getClass().getSimpleName()) + ","
+                    + this.pageReads[page] + "," + this.pageWrites[page] + "," + this.pageFetches[page]);
+        }
+        
+        if(isPerAddress()) {
+            for(int address=0; address<this.addressReads.length; address++) {
+                if(getAddressAccesses(address) == 0) continue;
+                
+                Memory memory = getMemory(address);
+                out.println("address,$" + Integer.toHexString(address) + ","
+                        + ((memory == null) ? "" : memory.getClass().getSimpleName()) + ","
+                        + this.addressReads[address] + "," + this.addressWrites[address] + "," + this.addressFetches[address]);
+            }
+        }
+        
+        out.flush();
+    }
+    
+    /**
+     * Writes the statistics in binary form (big endian): magic, version,
+     * page shift, page count, per address flag, then reads/writes/fetches
+     * (long) per page and, if present, reads/writes/fetches (int) per
+     * address.
+     * 
+     * @param stream (OutputStream) the destination
+     * @throws IOException if the data cannot be written
+     */
+    public void writeBinary(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+        
+        out.writeInt(BINARY_MAGIC);
+        out.writeInt(BINARY_VERSION);
+        out.writeInt(this.pageShift);
+        out.writeInt(getPageCount());
+        out.writeBoolean(isPerAddress());
+        
+        for(int page=0; page<getPageCount(); page++) {
+            out.writeLong(this.pageReads[page]);
+            out.writeLong(this.pageWrites[page]);
+            out.writeLong(this.pageFetches[page]);
+        }
+        
+        if(isPerAddress()) {
+            for(int address=0; address<this.addressReads.length; address++) {
+                out.writeInt(this.addressReads[address]);
+                out.writeInt(this.addressWrites[address]);
+                out.writeInt(this.addressFetches[address]);
+            }
+        }
+        
+        out.flush();
+    }
+}
@@ -23,11 +23,12 @@ package org.jemu.micro;
  * 
  * @author peter
  */
-public class RAMMemory4Bit implements Memory {
+public class RAMMemory4Bit implements DirtyTrackingMemory {
     byte[] memoryContent;
     long lowAddress;
     long highAddress;
     boolean littleEndian;
+    volatile DirtyPageMap[] dirtyPageMaps;
 
     /**
      * Creates a new instance ot RAMMemory4Bit with a given size (in # of
@@ -160,6 +161,8 @@ public class RAMMemory4Bit implements Memory {
         if((value < 0) || (value > 15))
             throw new MemoryException("Memory can only store 4 bit data");
         this.memoryContent[(int)(address - this.lowAddress)] = (byte)value;
+        DirtyPageMap[] maps = this.dirtyPageMaps;
+        if(maps != null) DirtyPageMap.mark(maps, address);
     }
 
     @Override
@@ -181,4 +184,14 @@ public class RAMMemory4Bit implements Memory {
     public void setLong(long address, long value) throws MemoryException {
         throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
     }
+
+    @Override
+    public void addDirtyPageMap(DirtyPageMap dirtyPageMap) {
+        this.dirtyPageMaps = DirtyPageMap.add(this.dirtyPageMaps, dirtyPageMap);
+    }
+
+    @Override
+    public void removeDirtyPageMap(DirtyPageMap dirtyPageMap) {
+        this.dirtyPageMaps = DirtyPageMap.remove(this.dirtyPageMaps, dirtyPageMap);
+    }
 }
@@ -24,10 +24,11 @@ package org.jemu.micro;
  * 
  * @author peter
  */
-public class RAMMemoryLittleEndian implements Memory {
+public class RAMMemoryLittleEndian implements DirtyTrackingMemory {
     long lowAddress;
     long highAddress;
     byte[] content;
+    volatile DirtyPageMap[] dirtyPageMaps;
     
     /**
      * Creates a new instance of RAMMemoryLittleEndian starting at address 0
@@ -109,6 +110,19 @@ public class RAMMemoryLittleEndian implements Memory {
         return this.content[(int)(address - this.lowAddress)];
     }
 
+    @Override
+    public long getBytes(long address, int count) throws MemoryException {
+        if((address < this.lowAddress) || (address + count > this.highAddress))
+            throw new MemoryException("address out of range");
+        
+        int offset = (int)(address - this.lowAddress);
+        long result = 0L;
+        for(int i=0; i<count; i++) {
+            result |= Byte.toUnsignedLong(this.content[offset + i]) << (i * 8);
+        }
+        return result;
+    }
+
     @Override
     public short getShort(long address) throws MemoryException {
         int byte1 = ((int)getByte(address)) & 0xFF;
@@ -146,6 +160,8 @@ public class RAMMemoryLittleEndian implements Memory {
         if((address < this.lowAddress) || (address >= this.highAddress))
             throw new MemoryException("address out of range");
         content[(int)(address - this.lowAddress)] = (byte)value;
+        DirtyPageMap[] maps = this.dirtyPageMaps;
+        if(maps != null) DirtyPageMap.mark(maps, address);
     }
 
     @Override
@@ -153,6 +169,8 @@ public class RAMMemoryLittleEndian implements Memory {
         if((address < this.lowAddress) || (address >= this.highAddress))
             throw new MemoryException("address out of range");
         content[(int)(address - this.lowAddress)] = value;
+        DirtyPageMap[] maps = this.dirtyPageMaps;
+        if(maps != null) DirtyPageMap.mark(maps, address);
     }
 
     @Override
@@ -198,4 +216,14 @@ public class RAMMemoryLittleEndian implements Memory {
         setByte(address + 7, (byte)byte8);
     }
 
+
+    @Override
+    public void addDirtyPageMap(DirtyPageMap dirtyPageMap) {
+        this.dirtyPageMaps = DirtyPageMap.add(this.dirtyPageMaps, dirtyPageMap);
+    }
+
+    @Override
+    public void removeDirtyPageMap(DirtyPageMap dirtyPageMap) {
+        this.dirtyPageMaps = DirtyPageMap.remove(this.dirtyPageMaps, dirtyPageMap);
+    }
 }
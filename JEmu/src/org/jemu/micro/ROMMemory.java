@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2021 peter.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jemu.micro;
+
+/**
+ * This class implements a ROM memory. The content is given when the memory is
+ * created, writes are silently ignored (like on a real ROM chip).
+ * 
+ * @author peter
+ */
+public class ROMMemory extends RAMMemoryLittleEndian {
+    
+    /**
+     * Creates a new instance of ROMMemory
+     * 
+     * @param lowAddress (long) the starting address of the ROM
+     * @param content (byte[]) the ROM content
+     * @throws MemoryException if there was a problem
+     */
+    public ROMMemory(long lowAddress, byte[] content) throws MemoryException {
+        super(lowAddress, lowAddress + content.length);
+        System.arraycopy(content, 0, this.content, 0, content.length);
+    }
+
+    @Override
+    public boolean isWriteable() {
+        return false;
+    }
+
+    @Override
+    public void setContent(long address, int value) throws MemoryException {
+        if((address < this.lowAddress) || (address >= this.highAddress))
+            throw new MemoryException("address out of range");
+    }
+
+    @Override
+    public void setByte(long address, byte value) throws MemoryException {
+        if((address < this.lowAddress) || (address >= this.highAddress))
+            throw new MemoryException("address out of range");
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2021 peter.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jemu.micro;
+
+import java.util.Arrays;
+
+/**
+ * This class records the inputs that make the execution of a CPU
+ * non-deterministic: the IRQs it takes and the values it reads from IO.
+ * Every event is stored with the position (the number of executed
+ * runNextOpCode calls) at which it happened. While the position is before the
+ * end of the recording, the CPU takes its inputs from the log instead of the
+ * devices, so the recorded execution is repeated exactly.
+ * 
+ * The log belongs to the thread that runs the CPU.
+ * 
+ * @author peter
+ */
+public class ReplayLog {
+    public static final int EVENT_IRQ = 1;
+    public static final int EVENT_INPUT = 2;
+    
+    // returned by replayInput if no value was recorded
+    public static final int NO_EVENT = -1;
+    
+    static final int VALUE_MASK = 0x00FFFFFF;
+    static final int INITIAL_CAPACITY = 1024;
+    
+    long position;
+    long end;
+    long[] eventPositions = new long[INITIAL_CAPACITY];
+    int[] events = new int[INITIAL_CAPACITY];
+    int count;
+    int cursor;
+    
+    /**
+     * Returns whether the CPU repeats recorded execution
+     * 
+     * @return true if the position is before the end of the recording (boolean)
+     */
+    public boolean isReplaying() {
+        return this.position < this.end;
+    }
+    
+    public long getPosition() {
+        return this.position;
+    }
+    
+    /**
+     * Returns the position after the last recorded instruction
+     * 
+     * @return the position (long)
+     */
+    public long getEnd() {
+        return this.end;
+    }
+    
+    /**
+     * Returns the number of bytes used by the stored events. The spare
+     * capacity of the arrays is not counted, so one busy stretch does not
+     * inflate the size after its events have been discarded.
+     * 
+     * @return the size (long)
+     */
+    public long getSize() {
+        return this.count * 12L;
+    }
+    
+    /**
+     * Moves on to the next instruction
+     */
+    public void advance() {
+        this.position++;
+        if(this.position > this.end) this.end = this.position;
+    }
+    
+    /**
+     * Moves to a position, e.g. after a checkpoint has been restored
+     * 
+     * @param position (long) the position
+     */
+    public void seek(long position) {
+        this.position = position;
+        this.cursor = findEvent(position);
+    }
+    
+    /**
+     * Returns the index of the first event at or after a position
+     * 
+     * @param position (long) the position
+     * @return the index (int)
+     */
+    protected int findEvent(long position) {
+        int index = Arrays.binarySearch(this.eventPositions, 0, this.count, position);
+        if(index < 0) return -index - 1;
+        
+        // several events may share the position, find the first one
+        while((index > 0) && (this.eventPositions[index - 1] == position)) index--;
+        return index;
+    }
+    
+    /**
+     * Records that the CPU took an IRQ
+     * 
+     * @param irq (int) the IRQ
+     */
+    public void recordIrq(int irq) {
+        add(EVENT_IRQ, irq);
+    }
+    
+    /**
+     * Returns the IRQ that the CPU took at the current position
+     * 
+     * @return the IRQ or 0 if none was taken (int)
+     */
+    public int replayIrq() {
+        if((this.cursor < this.count) && (this.eventPositions[this.cursor] == this.position) && ((this.events[this.cursor] >>> 24) == EVENT_IRQ))
+            return this.events[this.cursor++] & VALUE_MASK;
+        
+        return 0;
+    }
+    
+    /**
+     * Records a value that the CPU read from IO
+     * 
+     * @param value (int) the value (up to 24 bits)
+     */
+    public void recordInput(int value) {
+        add(EVENT_INPUT, value);
+    }
+    
+    /**
+     * Returns the next value that the CPU read from IO at the current
+     * position
+     * 
+     * @return the value or NO_EVENT (int)
+     */
+    public int replayInput() {
+        if((this.cursor < this.count) && (this.eventPositions[this.cursor] == this.position) && ((this.events[this.cursor] >>> 24) == EVENT_INPUT))
+            return this.events[this.cursor++] & VALUE_MASK;
+        
+        return NO_EVENT;
+    }
+    
+    protected void add(int type, int value) {
+        if(this.count == this.events.length) {
+            this.eventPositions = Arrays.copyOf(this.eventPositions, this.count * 2);
+            this.events = Arrays.copyOf(this.events, this.count * 2);
+        }
+        
+        this.eventPositions[this.count] = this.position;
+        this.events[this.count] = (type << 24) | (value & VALUE_MASK);
+        this.count++;
+        this.cursor = this.count;
+    }
+    
+    /**
+     * Forgets all events before a position, e.g. when the oldest checkpoint
+     * has been dropped
+     * 
+     * @param position (long) the position
+     */
+    public void discardBefore(long position) {
+        int first = findEvent(position);
+        
+        // only compact when it frees a good part of the arrays
+        if(first < this.count / 2) return;
+        
+        System.arraycopy(this.eventPositions, first, this.eventPositions, 0, this.count - first);
+        System.arraycopy(this.events, first, this.events, 0, this.count - first);
+        this.count -= first;
+        this.cursor = Math.max(0, this.cursor - first);
+    }
+    
+    /**
+     * Forgets the recorded future, so the current position becomes the end.
+     * Needed when the state of the CPU was changed by hand.
+     */
+    public void truncate() {
+        this.count = findEvent(this.position);
+        this.cursor = this.count;
+        this.end = this.position;
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2021 peter.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jemu.micro;
+
+import java.util.List;
+
+/**
+ * This interface is implemented by CPUs that a TimeMachine can move back in
+ * time. The CPU saves and restores its complete state (without memory) and
+ * takes its IRQs and IO inputs from a ReplayLog while it repeats recorded
+ * execution.
+ * 
+ * @author peter
+ */
+public interface ReversibleCPU extends CPU {
+    
+    /**
+     * Returns the number of longs that saveState writes
+     * 
+     * @return the size (int)
+     */
+    public int getStateSize();
+    
+    /**
+     * Saves all registers and internal flags, including the program counter
+     * 
+     * @param state (long[]) the state, getStateSize() longs
+     */
+    public void saveState(long[] state);
+    
+    /**
+     * Restores a state written by saveState
+     * 
+     * @param state (long[]) the state
+     */
+    public void restoreState(long[] state);
+    
+    /**
+     * Returns the memory blocks whose content belongs to the state
+     * 
+     * @return the memory blocks (List&lt;Memory&gt;)
+     */
+    public List<Memory> getStateMemory();
+    
+    /**
+     * Installs the log for IRQs and IO inputs; passing null switches
+     * recording off
+     * 
+     * @param replayLog (ReplayLog) the log or null
+     */
+    public void setReplayLog(ReplayLog replayLog);
+    
+    public ReplayLog getReplayLog();
+}
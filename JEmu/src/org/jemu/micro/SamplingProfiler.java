@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2021 peter.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jemu.micro;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class profiles a running CPU statistically. A timer thread reads the
+ * sample that the EmulationThread publishes after every batch (program
+ * counter, call depth and a sequence number in one volatile long) and counts
+ * it per address and per call depth. The emulation only pays for one store
+ * per batch, so sampling can stay switched on during long runs.
+ * 
+ * Samples with the same sequence number as the previous one are counted as
+ * idle: the CPU was paused or did not finish a batch in the meantime. One
+ * sample per batch can not tell the callers of a subroutine, so the folded
+ * stacks group the sampled locations by call depth; the CodeProfiler gives
+ * exact call chains.
+ * 
+ * @author peter
+ */
+public class SamplingProfiler implements Runnable {
+    public static final long DEFAULT_INTERVAL_MICROS = 1000L;
+    public static final int DEFAULT_REPORT_LIMIT = 40;
+    
+    final EmulationThread emulation;
+    final long intervalNanos;
+    
+    // written by the sampler thread, read by the reports
+    final Map<Long, long[]> samples = new HashMap<>();
+    final TreeMap<Long, String> symbols = new TreeMap<>();
+    long sampleCount = 0L;
+    long idleCount = 0L;
+    long lastSample = -1L;
+    
+    volatile Thread thread = null;
+    
+    /**
+     * Creates a new instance of SamplingProfiler with the default interval
+     * 
+     * @param emulation (EmulationThread) the thread that runs the CPU
+     */
+    public SamplingProfiler(EmulationThread emulation) {
+        this(emulation, DEFAULT_INTERVAL_MICROS);
+    }
+    
+    /**
+     * Creates a new instance of SamplingProfiler
+     * 
+     * @param emulation (EmulationThread) the thread that runs the CPU
+     * @param intervalMicros (long) the time between two samples
+     */
+    public SamplingProfiler(EmulationThread emulation, long intervalMicros) {
+        this.emulation = emulation;
+        this.intervalNanos = TimeUnit.MICROSECONDS.toNanos(intervalMicros);
+    }
+    
+    /**
+     * Sets the names that are shown for the sampled addresses, e.g. the
+     * symbols of an Assembler. An address is shown relative to the closest
+     * symbol below it.
+     * 
+     * @param symbols (Map) the addresses by name
+     */
+    public synchronized void setSymbols(Map<String, Long> symbols) {
+        this.symbols.clear();
+        
+        for(Map.Entry<String, Long> entry : symbols.entrySet()) {
+            this.symbols.merge(entry.getValue(), entry.getKey(), (a, b) -> (a.compareTo(b) <= 0) ? a : b);
+        }
+    }
+    
+    /**
+     * Starts the sampler thread
+     */
+    public synchronized void start() {
+        if(this.thread != null) return;
+        
+        this.thread = new Thread(this, "Sampling profiler");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+    
+    /**
+     * Stops the sampler thread and waits until it is done
+     */
+    public void stop() {
+        Thread sampler = this.thread;
+        if(sampler == null) return;
+        
+        this.thread = null;
+        LockSupport.unpark(sampler);
+        
+        try {
+            sampler.join();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    @Override
+    public void run() {
+        long next = System.nanoTime();
+        
+        while(this.thread == Thread.currentThread()) {
+            takeSample();
+            
+            // keep the rate even if a sample was late
+            next += this.intervalNanos;
+            long wait = next - System.nanoTime();
+            if(wait > 0) LockSupport.parkNanos(this, wait);
+            else next = System.nanoTime();
+        }
+    }
+    
+    /**
+     * Reads the current sample of the emulation and counts it
+     */
+    protected synchronized void takeSample() {
+        long sample = this.emulation.getSample();
+        
+        if(sample == this.lastSample) {
+            this.idleCount++;
+            return;
+        }
+        this.lastSample = sample;
+        
+        // the key keeps the program counter and the call depth
+        long key = sample & ~(0xFFFFL << EmulationThread.SAMPLE_SEQUENCE_SHIFT);
+        this.samples.computeIfAbsent(key, k -> new long[1])[0]++;
+        this.sampleCount++;
+    }
+    
+    /**
+     * Forgets all samples
+     */
+    public synchronized void reset() {
+        this.samples.clear();
+        this.sampleCount = 0;
+        this.idleCount = 0;
+    }
+    
+    /**
+     * Returns the number of samples taken while the CPU was running
+     * 
+     * @return the count (long)
+     */
+    public synchronized long getSampleCount() {
+        return this.sampleCount;
+    }
+    
+    /**
+     * Returns the number of samples at which the CPU made no progress
+     * 
+     * @return the count (long)
+     */
+    public synchronized long getIdleCount() {
+        return this.idleCount;
+    }
+    
+    /**
+     * Returns the name of an address: the closest symbol below it plus the
+     * offset, or the address in hex
+     * 
+     * @param address (long) the address
+     * @return the name (String)
+     */
+    protected String getName(long address) {
+        Map.Entry<Long, String> symbol = this.symbols.floorEntry(address);
+        
+        if(symbol == null) return String.format("%04X", address);
+        if(symbol.getKey() == address) return symbol.getValue();
+        return symbol.getValue() + "+" + Long.toHexString(address - symbol.getKey());
+    }
+    
+    /**
+     * Sums the samples per address or per call depth
+     * 
+     * @param shift (int) 0 for the address, EmulationThread.SAMPLE_DEPTH_SHIFT for the depth
+     * @param mask (long) the mask of the value after shifting
+     * @return the counts by value, largest first (List)
+     */
+    protected List<long[]> sumSamples(int shift, long mask) {
+        Map<Long, long[]> sums = new HashMap<>();
+        
+        for(Map.Entry<Long, long[]> entry : this.samples.entrySet()) {
+            long value = (entry.getKey() >>> shift) & mask;
+            sums.computeIfAbsent(value, k -> new long[] { value, 0 })[1] += entry.getValue()[0];
+        }
+        
+        List<long[]> sorted = new ArrayList<>(sums.values());
+        sorted.sort((a, b) -> Long.compare(b[1], a[1]));
+        return sorted;
+    }
+    
+    /**
+     * Writes the histogram of the sampled addresses and call depths as text
+     * 
+     * @param writer (Writer) where to write to
+     * @param limit (int) the maximum number of addresses
+     */
+    public synchronized void writeReport(Writer writer, int limit) {
+        PrintWriter out = new PrintWriter(writer);
+        double percent = (this.sampleCount > 0) ? 100.0 / this.sampleCount : 0;
+        
+        out.println("Samples: " + this.sampleCount + ", idle: " + this.idleCount);
+        out.println();
+        
+        List<long[]> addresses = sumSamples(0, EmulationThread.SAMPLE_PC_MASK);
+        out.println("Address       Samples       %  Location");
+        for(long[] address : addresses.subList(0, Math.min(limit, addresses.size()))) {
+            out.println(String.format("%04X    %13d %7.2f  %s", address[0], address[1], address[1] * percent, getName(address[0])));
+        }
+        out.println();
+        
+        List<long[]> depths = sumSamples(EmulationThread.SAMPLE_DEPTH_SHIFT, 0xFFFF);
+        depths.sort((a, b) -> Long.compare(a[0], b[0]));
+        out.println("Depth         Samples       %");
+        for(long[] depth : depths) {
+            out.println(String.format("%5d   %13d %7.2f", depth[0], depth[1], depth[1] * percent));
+        }
+        
+        out.flush();
+    }
+    
+    /**
+     * Writes the samples in the folded format of flame graph tools. The
+     * stack of every sample is the call depth followed by the location.
+     * 
+     * @param writer (Writer) where to write to
+     */
+    public synchronized void writeFoldedStacks(Writer writer) {
+        PrintWriter out = new PrintWriter(writer);
+        Map<String, long[]> stacks = new TreeMap<>();
+        
+        for(Map.Entry<Long, long[]> entry : this.samples.entrySet()) {
+            long address = entry.getKey() & EmulationThread.SAMPLE_PC_MASK;
+            long depth = (entry.getKey() >>> EmulationThread.SAMPLE_DEPTH_SHIFT) & 0xFFFF;
+            String stack = CodeProfiler.TOP_NAME + ";depth " + depth + ";" + getName(address);
+            
+            stacks.computeIfAbsent(stack, k -> new long[1])[0] += entry.getValue()[0];
+        }
+        
+        for(Map.Entry<String, long[]> stack : stacks.entrySet()) {
+            out.println(stack.getKey() + " " + stack.getValue()[0]);
+        }
+        
+        out.flush();
+    }
+}
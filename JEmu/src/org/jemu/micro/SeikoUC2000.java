@@ -18,15 +18,20 @@
  */
 package org.jemu.micro;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  *
  * @author peter
  */
-public class SeikoUC2000 implements CPU, IRQHandler {
+public class SeikoUC2000 implements WaitableCPU, IRQHandler, TraceableCPU, ProfilableCPU, ReversibleCPU {
     public static final byte FLAG_Z = (byte)0x01;
     public static final byte FLAG_C = (byte)0x02;
     
@@ -36,8 +41,103 @@ public class SeikoUC2000 implements CPU, IRQHandler {
     public static final int IRQ_SELECT_BUTTON   = 0x0008;
     public static final int IRQ_SECOND_TIMER    = 0x0010;
     public static final int IRQ_REDRAW_SCREEN   = 0x0020;
-    
-    byte[][] registers = new byte[4][32];
+    public static final int IRQ_MASK            = 0x003F;
+    
+    // Address of the interrupt routine per IRQ bit
+    static final int[] IRQ_VECTORS = new int[] { 0xAC08, 0xAC05, 0xAC06, 0xAC07, 0xAC01, 0xAC0D };
+    
+    static final AtomicIntegerFieldUpdater<SeikoUC2000> IRQ_UPDATER = AtomicIntegerFieldUpdater.newUpdater(SeikoUC2000.class, "irq");
+    
+    public static final long ADDRESS_SPACE_SIZE = 0x10000L;
+    
+    public static final int BANK_COUNT = 4;
+    public static final int BANK_SIZE = 32;
+    
+    // Emulated clock: the real timing of the UC-2000 is not documented, so
+    // every instruction counts as CYCLES_PER_INSTRUCTION cycles of a clock
+    // that runs at CLOCK_FREQUENCY
+    public static final long CLOCK_FREQUENCY = 500000L;
+    public static final int CYCLES_PER_INSTRUCTION = 4;
+    
+    public static final String TRACE_NAME = "UC2000";
+    
+    // The register file is traced as 16 words of 8 registers, followed by
+    // one word with SP, SA, LA, flags and the bank selection
+    static final ExecutionTracer.Field[] TRACE_FIELDS = createTraceFields();
+    
+    // Ids for the dispatch table (0 = illegal opcode)
+    static final byte OP_ILLEGAL = 0;
+    static final byte OP_ADD = 1;
+    static final byte OP_ADB = 2;
+    static final byte OP_SUB = 3;
+    static final byte OP_SBB = 4;
+    static final byte OP_ADI = 5;
+    static final byte OP_ADBI = 6;
+    static final byte OP_SBI = 7;
+    static final byte OP_SBBI = 8;
+    static final byte OP_ADM = 9;
+    static final byte OP_ADBM = 10;
+    static final byte OP_SBM = 11;
+    static final byte OP_SBBM = 12;
+    static final byte OP_CMP = 13;
+    static final byte OP_CPM = 14;
+    static final byte OP_CPI = 15;
+    static final byte OP_LCRB = 16;
+    static final byte OP_LARB = 17;
+    static final byte OP_ANDI = 18;
+    static final byte OP_ORI = 19;
+    static final byte OP_XORI = 20;
+    static final byte OP_INC = 21;
+    static final byte OP_INCB = 22;
+    static final byte OP_DEC = 23;
+    static final byte OP_DECB = 24;
+    static final byte OP_RSHM = 25;
+    static final byte OP_LSHM = 26;
+    static final byte OP_IN = 27;
+    static final byte OP_OUT = 28;
+    static final byte OP_OUTI = 29;
+    static final byte OP_PSAM = 30;
+    static final byte OP_PLAM = 31;
+    static final byte OP_LDSM = 32;
+    static final byte OP_STSM = 33;
+    static final byte OP_STLM = 34;
+    static final byte OP_STL = 35;
+    static final byte OP_PSAI = 36;
+    static final byte OP_PLAI = 37;
+    static final byte OP_STLI = 38;
+    static final byte OP_MOV = 39;
+    static final byte OP_MOVM = 40;
+    static final byte OP_LDI = 41;
+    static final byte OP_CLRM = 42;
+    static final byte OP_MVAC = 43;
+    static final byte OP_MVACM = 44;
+    static final byte OP_MVCA = 45;
+    static final byte OP_MVCAM = 46;
+    static final byte OP_CALL = 47;
+    static final byte OP_RET = 48;
+    static final byte OP_HLT = 49;
+    static final byte OP_CPFJR = 50;
+    static final byte OP_IJMR = 51;
+    static final byte OP_WFI = 52;
+    static final byte OP_JMP = 53;
+    static final byte OP_JZ = 54;
+    static final byte OP_JNZ = 55;
+    static final byte OP_JC = 56;
+    static final byte OP_JNC = 57;
+    static final byte OP_BTJR = 58;
+    static final byte OP_CPJR = 59;
+    // Groups that need the full opcode to be decoded
+    static final byte OP_GROUP_LCRB_LARB = 60;
+    static final byte OP_GROUP_RET_HLT = 61;
+    
+    /**
+     * Dispatch table, indexed by the top 6 bits of the opcode and bits 3-4
+     * (which select between instructions sharing the top bits, e.g. INC/DEC)
+     */
+    static final byte[] DISPATCH_TABLE = createDispatchTable();
+    
+    // Register file: all banks in one array, a bank starts at bank * BANK_SIZE
+    byte[] registers = new byte[BANK_COUNT * BANK_SIZE];
     short regPC = 0x1800;
     short regSP = 0x2000;
     short regLA = 0x0000;
@@ -45,14 +145,27 @@ public class SeikoUC2000 implements CPU, IRQHandler {
     byte regFlags;
     byte regCurrentBank;
     byte regAdditionalBank;
-    int irq = 0;
+    int currentBankOffset = 0;
+    int additionalBankOffset = 0;
+    volatile int irq = 0;
     boolean inIrq = false;
+    volatile boolean waiting = false;
+    volatile Thread waitingThread;
     
     List<Memory> memoryBlocks;
     List<IO> IOBlocks;
+    MemoryBus memoryBus;
+    VirtualClock clock = new VirtualClock(CLOCK_FREQUENCY);
+    ExecutionTracer tracer;
+    CodeProfiler profiler;
+    ReplayLog replayLog;
+    ByteBuffer traceRegisters = ByteBuffer.wrap(this.registers).order(ByteOrder.LITTLE_ENDIAN);
     
     public SeikoUC2000() {
         // TODO: Initialize
+        this.memoryBlocks = new ArrayList<>();
+        this.IOBlocks = new ArrayList<>();
+        this.memoryBus = new MemoryBus(this.memoryBlocks, ADDRESS_SPACE_SIZE);
     }
     
     public SeikoUC2000(Memory memoryBlock, IO IOBlock) {
@@ -63,12 +176,64 @@ public class SeikoUC2000 implements CPU, IRQHandler {
         
         this.memoryBlocks.add(memoryBlock);
         this.IOBlocks.add(IOBlock);
+        this.memoryBus = new MemoryBus(this.memoryBlocks, ADDRESS_SPACE_SIZE);
     }
     
     public SeikoUC2000(List<Memory> memoryBlocks, List<IO> IOBlocks) {
         this();
         this.memoryBlocks = memoryBlocks;
         this.IOBlocks = IOBlocks;
+        this.memoryBus = new MemoryBus(memoryBlocks, ADDRESS_SPACE_SIZE);
+    }
+    
+    /**
+     * Returns the memory bus that decodes all memory accesses of this CPU.
+     * Memory blocks added to the bus later on are visible to the CPU at once.
+     * 
+     * @return the memory bus (MemoryBus)
+     */
+    public MemoryBus getMemoryBus() {
+        return this.memoryBus;
+    }
+    
+    /**
+     * Replaces the memory bus, e.g. by a ProfilingMemoryBus that shares the
+     * page table of the current bus
+     * 
+     * @param memoryBus (MemoryBus) the new memory bus
+     */
+    public void setMemoryBus(MemoryBus memoryBus) {
+        this.memoryBus = memoryBus;
+    }
+    
+    /**
+     * Returns the emulated time base. It is advanced by every instruction
+     * and while the CPU waits for an interrupt (see idle).
+     * 
+     * @return the clock (VirtualClock)
+     */
+    public VirtualClock getClock() {
+        return this.clock;
+    }
+    
+    /**
+     * Selects the current register bank
+     * 
+     * @param bank (int) the bank (0-3)
+     */
+    protected void setCurrentBank(int bank) {
+        this.regCurrentBank = (byte)bank;
+        this.currentBankOffset = bank * BANK_SIZE;
+    }
+    
+    /**
+     * Selects the additional register bank
+     * 
+     * @param bank (int) the bank (0-3)
+     */
+    protected void setAdditionalBank(int bank) {
+        this.regAdditionalBank = (byte)bank;
+        this.additionalBankOffset = bank * BANK_SIZE;
     }
     
     /**
@@ -92,20 +257,7 @@ public class SeikoUC2000 implements CPU, IRQHandler {
      * @throws MemoryException if the address is not in the memory range
      */
     protected byte readMemory8(long address) throws MemoryException {
-        Iterator<Memory> memIterator = memoryBlocks.iterator();
-        
-        while(memIterator.hasNext()) {
-            Memory mem = memIterator.next();
-            
-            try {
-                return mem.getByte(address);
-            }
-            catch (MemoryException ex) {
-                // Try next memory block
-            }
-        }
-        
-        throw new MemoryException("No memory at address " + Long.toHexString(address));
+        return this.memoryBus.readByte(address);
     }
     
     /**
@@ -124,6 +276,23 @@ public class SeikoUC2000 implements CPU, IRQHandler {
         return (short)(Byte.toUnsignedInt(lowByte) + (Byte.toUnsignedInt(highByte) << 8));
     }
     
+    /**
+     * Read a (16 bit) opcode from memory. Works like readMemory16, but tells
+     * the memory bus that this is an instruction fetch.
+     * 
+     * @param address (long) the memory address
+     * @return the opcode (short)
+     * @throws MemoryException if the address is not in the memory range
+     */
+    protected short fetchOpCode(long address) throws MemoryException {
+        byte lowByte = this.memoryBus.fetchByte(address + 1);
+        byte highByte = this.memoryBus.fetchByte(address);
+        
+        if(address < 0x1800) return (short)(0xB001);
+        
+        return (short)(Byte.toUnsignedInt(lowByte) + (Byte.toUnsignedInt(highByte) << 8));
+    }
+    
     /**
      * Write an (8 bit) byte to memory
      * 
@@ -132,21 +301,7 @@ public class SeikoUC2000 implements CPU, IRQHandler {
      * @throws MemoryException if the address is not in the memory range
      */
     protected void writeMemory8(long address, byte value) throws MemoryException {
-        Iterator<Memory> memIterator = memoryBlocks.iterator();
-        
-        while(memIterator.hasNext()) {
-            Memory mem = memIterator.next();
-            
-            try {
-                mem.setByte(address, value);
-                return;
-            }
-            catch (MemoryException ex) {
-                // Try next memory block
-            }
-        }
-        
-        throw new MemoryException("No memory at address " + Long.toHexString(address));
+        this.memoryBus.writeByte(address, value);
     }
     
     /**
@@ -172,6 +327,31 @@ public class SeikoUC2000 implements CPU, IRQHandler {
      * @throws MemoryException if the address is not in the memory range
      */
     protected byte readIO8(long address) throws MemoryException {
+        byte value = readIODevice8(address);
+        
+        // the device is read while replaying as well, for its side effects
+        ReplayLog log = this.replayLog;
+        if(log != null) {
+            if(log.isReplaying()) {
+                int recorded = log.replayInput();
+                if(recorded != ReplayLog.NO_EVENT) value = (byte)recorded;
+            }
+            else {
+                log.recordInput(Byte.toUnsignedInt(value));
+            }
+        }
+        
+        return value;
+    }
+    
+    /**
+     * Read an (8 bit) byte from the IO blocks
+     * 
+     * @param address (long) the memory address
+     * @return the memory content (byte)
+     * @throws MemoryException if the address is not in the memory range
+     */
+    protected byte readIODevice8(long address) throws MemoryException {
         Iterator<IO> IOIterator = IOBlocks.iterator();
         
         while(IOIterator.hasNext()) {
@@ -223,10 +403,10 @@ public class SeikoUC2000 implements CPU, IRQHandler {
         int rd = (opCode & 0x03E0) >> 5;
         int rs = (opCode & 0x001F);
         
-        this.registers[this.regCurrentBank][rd] += this.registers[this.regCurrentBank][rs];
+        this.registers[this.currentBankOffset + rd] += this.registers[this.currentBankOffset + rs];
         
-        this.setFlag(FLAG_C, (this.registers[this.regCurrentBank][rd] & 0x10) == 0x10);
-        this.registers[this.regCurrentBank][rd] &= 0x0F;
+        this.setFlag(FLAG_C, (this.registers[this.currentBankOffset + rd] & 0x10) == 0x10);
+        this.registers[this.currentBankOffset + rd] &= 0x0F;
         
         this.regPC+=2;
         
@@ -243,13 +423,13 @@ public class SeikoUC2000 implements CPU, IRQHandler {
         int rd = (opCode & 0x03E0) >> 5;
         int rs = (opCode & 0x001F);
         
-        this.registers[this.regCurrentBank][rd] += this.registers[this.regCurrentBank][rs];
+        this.registers[this.currentBankOffset + rd] += this.registers[this.currentBankOffset + rs];
         
-        if(this.registers[this.regCurrentBank][rd] > 9)
-            this.registers[this.regCurrentBank][rd] += 6;
+        if(this.registers[this.currentBankOffset + rd] > 9)
+            this.registers[this.currentBankOffset + rd] += 6;
         
-        this.setFlag(FLAG_C, (this.registers[this.regCurrentBank][rd] & 0x10) == 0x10);
-        this.registers[this.regCurrentBank][rd] &= 0x0F;
+        this.setFlag(FLAG_C, (this.registers[this.currentBankOffset + rd] & 0x10) == 0x10);
+        this.registers[this.currentBankOffset + rd] &= 0x0F;
 
         this.regPC+=2;
         
@@ -266,11 +446,11 @@ public class SeikoUC2000 implements CPU, IRQHandler {
         int rd = (opCode & 0x03E0) >> 5;
         int rs = (opCode & 0x001F);
         
-        this.registers[this.regCurrentBank][rd] -= this.registers[this.regCurrentBank][rs];
+        this.registers[this.currentBankOffset + rd] -= this.registers[this.currentBankOffset + rs];
         
-        this.setFlag(FLAG_C, (this.registers[this.regCurrentBank][rd] & 0x10) == 0x10);
-        this.registers[this.regCurrentBank][rd] &= 0x0F;
-        this.setFlag(FLAG_Z, this.registers[this.regCurrentBank][rd] == 0);
+        this.setFlag(FLAG_C, (this.registers[this.currentBankOffset + rd] & 0x10) == 0x10);
+        this.registers[this.currentBankOffset + rd] &= 0x0F;
+        this.setFlag(FLAG_Z, this.registers[this.currentBankOffset + rd] == 0);
         
         this.regPC+=2;
         
@@ -287,14 +467,14 @@ public class SeikoUC2000 implements CPU, IRQHandler {
         int rd = (opCode & 0x03E0) >> 5;
         int rs = (opCode & 0x001F);
         
-        this.registers[this.regCurrentBank][rd] -= this.registers[this.regCurrentBank][rs];
+        this.registers[this.currentBankOffset + rd] -= this.registers[this.currentBankOffset + rs];
         
-        if(this.registers[this.regCurrentBank][rd] > 9)
-            this.registers[this.regCurrentBank][rd] -= 6;
+        if(this.registers[this.currentBankOffset + rd] > 9)
+            this.registers[this.currentBankOffset + rd] -= 6;
         
-        this.setFlag(FLAG_C, (this.registers[this.regCurrentBank][rd] & 0x10) == 0x10);
-        this.registers[this.regCurrentBank][rd] &= 0x0F;
-        this.setFlag(FLAG_Z, this.registers[this.regCurrentBank][rd] == 0);
+        this.setFlag(FLAG_C, (this.registers[this.currentBankOffset + rd] & 0x10) == 0x10);
+        this.registers[this.currentBankOffset + rd] &= 0x0F;
+        this.setFlag(FLAG_Z, this.registers[this.currentBankOffset + rd] == 0);
 
         this.regPC+=2;
         
@@ -311,10 +491,10 @@ public class SeikoUC2000 implements CPU, IRQHandler {
         int rd = (opCode & 0x03E0) >> 5;
         int i = (opCode & 0x001E) >> 1;
         
-        this.registers[this.regCurrentBank][rd] += i;
+        this.registers[this.currentBankOffset + rd] += i;
         
-        this.setFlag(FLAG_C, (this.registers[this.regCurrentBank][rd] & 0x10) == 0x10);
-        this.registers[this.regCurrentBank][rd] &= 0x0F;
+        this.setFlag(FLAG_C, (this.registers[this.currentBankOffset + rd] & 0x10) == 0x10);
+        this.registers[this.currentBankOffset + rd] &= 0x0F;
         
         this.regPC+=2;
         
@@ -331,13 +511,13 @@ public class SeikoUC2000 implements CPU, IRQHandler {
         int rd = (opCode & 0x03E0) >> 5;
         int i = (opCode & 0x001E) >> 1;
         
-        this.registers[this.regCurrentBank][rd] += i;
+        this.registers[this.currentBankOffset + rd] += i;
         
-        if(this.registers[this.regCurrentBank][rd] > 9)
-            this.registers[this.regCurrentBank][rd] += 6;
+        if(this.registers[this.currentBankOffset + rd] > 9)
+            this.registers[this.currentBankOffset + rd] += 6;
         
-        this.setFlag(FLAG_C, (this.registers[this.regCurrentBank][rd] & 0x10) == 0x10);
-        this.registers[this.regCurrentBank][rd] &= 0x0F;
+        this.setFlag(FLAG_C, (this.registers[this.currentBankOffset + rd] & 0x10) == 0x10);
+        this.registers[this.currentBankOffset + rd] &= 0x0F;
 
         this.regPC+=2;
         
@@ -354,11 +534,11 @@ public class SeikoUC2000 implements CPU, IRQHandler {
         int rd = (opCode & 0x03E0) >> 5;
         int i = (opCode & 0x001F) >> 1;
         
-        this.registers[this.regCurrentBank][rd] -= i;
+        this.registers[this.currentBankOffset + rd] -= i;
         
-        this.setFlag(FLAG_C, (this.registers[this.regCurrentBank][rd] & 0x10) == 0x10);
-        this.registers[this.regCurrentBank][rd] &= 0x0F;
-        this.setFlag(FLAG_Z, this.registers[this.regCurrentBank][rd] == 0);
+        this.setFlag(FLAG_C, (this.registers[this.currentBankOffset + rd] & 0x10) == 0x10);
+        this.registers[this.currentBankOffset + rd] &= 0x0F;
+        this.setFlag(FLAG_Z, this.registers[this.currentBankOffset + rd] == 0);
         
         this.regPC+=2;
         
@@ -375,14 +555,14 @@ public class SeikoUC2000 implements CPU, IRQHandler {
         int rd = (opCode & 0x03E0) >> 5;
         int i = (opCode & 0x001F) >> 1;
         
-        this.registers[this.regCurrentBank][rd] -= i;
+        this.registers[this.currentBankOffset + rd] -= i;
         
-        if(this.registers[this.regCurrentBank][rd] > 9)
-            this.registers[this.regCurrentBank][rd] -= 6;
+        if(this.registers[this.currentBankOffset + rd] > 9)
+            this.registers[this.currentBankOffset + rd] -= 6;
         
-        this.setFlag(FLAG_C, (this.registers[this.regCurrentBank][rd] & 0x10) == 0x10);
-        this.registers[this.regCurrentBank][rd] &= 0x0F;
-        this.setFlag(FLAG_Z, this.registers[this.regCurrentBank][rd] == 0);
+        this.setFlag(FLAG_C, (this.registers[this.currentBankOffset + rd] & 0x10) == 0x10);
+        this.registers[this.currentBankOffset + rd] &= 0x0F;
+        this.setFlag(FLAG_Z, this.registers[this.currentBankOffset + rd] == 0);
 
         this.regPC+=2;
         
@@ -402,10 +582,10 @@ public class SeikoUC2000 implements CPU, IRQHandler {
         boolean carry = false;
 
         for(int i=0; i<k+1; i++) {
-            this.registers[this.regCurrentBank][rd+i] += this.registers[this.regCurrentBank][rs-k+i];
-            if(carry) this.registers[this.regCurrentBank][rd+i]++;
-            carry = ((this.registers[this.regCurrentBank][rd+i] & 0x10) == 0x10);
-            this.registers[this.regCurrentBank][rd+i] &= 0x0F;
+            this.registers[this.currentBankOffset + rd+i] += this.registers[this.currentBankOffset + rs-k+i];
+            if(carry) this.registers[this.currentBankOffset + rd+i]++;
+            carry = ((this.registers[this.currentBankOffset + rd+i] & 0x10) == 0x10);
+            this.registers[this.currentBankOffset + rd+i] &= 0x0F;
         }
         
         this.setFlag(FLAG_C, carry);
@@ -428,12 +608,12 @@ public class SeikoUC2000 implements CPU, IRQHandler {
         boolean carry = false;
         
         for(int i=0; i<k+1; i++) {
-            this.registers[this.regCurrentBank][rd+i] += this.registers[this.regCurrentBank][rs-k+i];
-            if(carry) this.registers[this.regCurrentBank][rd+i]++;
-            if(this.registers[this.regCurrentBank][rd+i] > 9)
-                this.registers[this.regCurrentBank][rd+i] += 6;
-            carry = ((this.registers[this.regCurrentBank][rd+i] & 0x10) == 0x10);
-            this.registers[this.regCurrentBank][rd+i] &= 0x0F;
+            this.registers[this.currentBankOffset + rd+i] += this.registers[this.currentBankOffset + rs-k+i];
+            if(carry) this.registers[this.currentBankOffset + rd+i]++;
+            if(this.registers[this.currentBankOffset + rd+i] > 9)
+                this.registers[this.currentBankOffset + rd+i] += 6;
+            carry = ((this.registers[this.currentBankOffset + rd+i] & 0x10) == 0x10);
+            this.registers[this.currentBankOffset + rd+i] &= 0x0F;
         }
         
         this.setFlag(FLAG_C, carry);
@@ -457,11 +637,11 @@ public class SeikoUC2000 implements CPU, IRQHandler {
         boolean carry = false;
         
         for(int i=0; i<k+1; i++) {
-            this.registers[this.regCurrentBank][rd+i] -= this.registers[this.regCurrentBank][rs-k+i];
-            if(carry) this.registers[this.regCurrentBank][rd+i]--;
-            carry = ((this.registers[this.regCurrentBank][rd+i] & 0x10) == 0x10);
-            this.registers[this.regCurrentBank][rd+i] &= 0x0F;
-            if(this.registers[this.regCurrentBank][rd+i] != 0) zero = false;
+            this.registers[this.currentBankOffset + rd+i] -= this.registers[this.currentBankOffset + rs-k+i];
+            if(carry) this.registers[this.currentBankOffset + rd+i]--;
+            carry = ((this.registers[this.currentBankOffset + rd+i] & 0x10) == 0x10);
+            this.registers[this.currentBankOffset + rd+i] &= 0x0F;
+            if(this.registers[this.currentBankOffset + rd+i] != 0) zero = false;
         }
         
         this.setFlag(FLAG_C, carry);
@@ -486,13 +666,13 @@ public class SeikoUC2000 implements CPU, IRQHandler {
         boolean carry = false;
         
         for(int i=0; i<k+1; i++) {
-            this.registers[this.regCurrentBank][rd+i] -= this.registers[this.regCurrentBank][rs-k+i];
-            if(carry) this.registers[this.regCurrentBank][rd+i]--;
-            if((this.registers[this.regCurrentBank][rd+i] & 0x0F) > 9)
-                this.registers[this.regCurrentBank][rd+i] -= 6;
-            carry = ((this.registers[this.regCurrentBank][rd+i] & 0x10) == 0x10);
-            this.registers[this.regCurrentBank][rd+i] &= 0x0F;
-            if(this.registers[this.regCurrentBank][rd+i] != 0) zero = false;
+            this.registers[this.currentBankOffset + rd+i] -= this.registers[this.currentBankOffset + rs-k+i];
+            if(carry) this.registers[this.currentBankOffset + rd+i]--;
+            if((this.registers[this.currentBankOffset + rd+i] & 0x0F) > 9)
+                this.registers[this.currentBankOffset + rd+i] -= 6;
+            carry = ((this.registers[this.currentBankOffset + rd+i] & 0x10) == 0x10);
+            this.registers[this.currentBankOffset + rd+i] &= 0x0F;
+            if(this.registers[this.currentBankOffset + rd+i] != 0) zero = false;
 
         }
         
@@ -514,8 +694,8 @@ public class SeikoUC2000 implements CPU, IRQHandler {
         int rd = (opCode & 0x03E0) >> 5;
         int rs = (opCode & 0x001F);
         
-        this.setFlag(FLAG_Z, this.registers[this.regCurrentBank][rd] == this.registers[this.regCurrentBank][rs]);
-        this.setFlag(FLAG_C, this.registers[this.regCurrentBank][rd] < this.registers[this.regCurrentBank][rs]);
+        this.setFlag(FLAG_Z, this.registers[this.currentBankOffset + rd] == this.registers[this.currentBankOffset + rs]);
+        this.setFlag(FLAG_C, this.registers[this.currentBankOffset + rd] < this.registers[this.currentBankOffset + rs]);
         
         this.regPC+=2;
         return 2;
@@ -535,12 +715,12 @@ public class SeikoUC2000 implements CPU, IRQHandler {
         this.setFlag(FLAG_Z, false);
         this.setFlag(FLAG_C, false);
         for(int i=k+1; i>=0; i--) {
-            if(this.registers[this.regCurrentBank][rd+i] < this.registers[this.regCurrentBank][rs-k+i]) {
+            if(this.registers[this.currentBankOffset + rd+i] < this.registers[this.currentBankOffset + rs-k+i]) {
                 this.setFlag(FLAG_C, true);
                 this.regPC += 2;
                 return 2;
             }
-            else if(this.registers[this.regCurrentBank][rd+i] > this.registers[this.regCurrentBank][rs-k+i]) {
+            else if(this.registers[this.currentBankOffset + rd+i] > this.registers[this.currentBankOffset + rs-k+i]) {
                 this.setFlag(FLAG_C, false);
                 this.regPC += 2;
                 return 2;
@@ -563,8 +743,8 @@ public class SeikoUC2000 implements CPU, IRQHandler {
         int rd = (opCode & 0x03E0) >> 5;
         int i = (opCode & 0x001E) >> 1;
         
-        this.setFlag(FLAG_Z, this.registers[this.regCurrentBank][rd] == i);
-        this.setFlag(FLAG_C, this.registers[this.regCurrentBank][rd] < i);
+        this.setFlag(FLAG_Z, this.registers[this.currentBankOffset + rd] == i);
+        this.setFlag(FLAG_C, this.registers[this.currentBankOffset + rd] < i);
         
         this.regPC+=2;
         return 2;
@@ -579,7 +759,7 @@ public class SeikoUC2000 implements CPU, IRQHandler {
     protected int opLCRB(int opCode) {
         int bank = (opCode & 0x0018) >> 3;
         
-        this.regCurrentBank = (byte)bank;
+        this.setCurrentBank(bank);
         
         this.regPC+=2;
         return 2;
@@ -594,7 +774,7 @@ public class SeikoUC2000 implements CPU, IRQHandler {
     protected int opLARB(int opCode) {
         int bank = (opCode & 0x0018) >> 3;
         
-        this.regAdditionalBank = (byte)bank;
+        this.setAdditionalBank(bank);
         
         this.regPC+=2;
         return 2;
@@ -610,8 +790,8 @@ public class SeikoUC2000 implements CPU, IRQHandler {
         int rd = (opCode & 0x03E0) >> 5;
         int i = (opCode & 0x001E) >> 1;
         
-        this.registers[this.regCurrentBank][rd] &= i;
-        this.setFlag(FLAG_Z, this.registers[this.regCurrentBank][rd] == 0);
+        this.registers[this.currentBankOffset + rd] &= i;
+        this.setFlag(FLAG_Z, this.registers[this.currentBankOffset + rd] == 0);
         
         this.regPC+=2;
         return 2;
@@ -627,7 +807,7 @@ public class SeikoUC2000 implements CPU, IRQHandler {
         int rd = (opCode & 0x03E0) >> 5;
         int i = (opCode & 0x001E) >> 1;
         
-        this.registers[this.regCurrentBank][rd] |= i;
+        this.registers[this.currentBankOffset + rd] |= i;
         
         this.regPC+=2;
         return 2;
@@ -643,7 +823,7 @@ public class SeikoUC2000 implements CPU, IRQHandler {
         int rd = (opCode & 0x03E0) >> 5;
         int i = (opCode & 0x001E) >> 1;
         
-        this.registers[this.regCurrentBank][rd] ^= i;
+        this.registers[this.currentBankOffset + rd] ^= i;
         
         this.regPC+=2;
         return 2;
@@ -661,9 +841,9 @@ public class SeikoUC2000 implements CPU, IRQHandler {
         boolean carry = true;
         
         for(int i=rd; i<=rs; i++) {
-            if(carry) this.registers[this.regCurrentBank][i]++;
-            carry = (this.registers[this.regCurrentBank][i] & 0x10) == 0x10;
-            this.registers[this.regCurrentBank][i] &= 0x0F;
+            if(carry) this.registers[this.currentBankOffset + i]++;
+            carry = (this.registers[this.currentBankOffset + i] & 0x10) == 0x10;
+            this.registers[this.currentBankOffset + i] &= 0x0F;
         }
         
         this.setFlag(FLAG_C, carry);
@@ -684,10 +864,10 @@ public class SeikoUC2000 implements CPU, IRQHandler {
         boolean carry = true;
         
         for(int i=rd; i<=rs; i++) {
-            if(carry) this.registers[this.regCurrentBank][i]++;
-            if(this.registers[this.regCurrentBank][i] > 9) this.registers[this.regCurrentBank][i] += 6;
-            carry = (this.registers[this.regCurrentBank][i] & 0x10) == 0x10;
-            this.registers[this.regCurrentBank][i] &= 0x0F;
+            if(carry) this.registers[this.currentBankOffset + i]++;
+            if(this.registers[this.currentBankOffset + i] > 9) this.registers[this.currentBankOffset + i] += 6;
+            carry = (this.registers[this.currentBankOffset + i] & 0x10) == 0x10;
+            this.registers[this.currentBankOffset + i] &= 0x0F;
         }
         
         this.setFlag(FLAG_C, carry);
@@ -709,10 +889,10 @@ public class SeikoUC2000 implements CPU, IRQHandler {
         boolean carry = true;
         
         for(int i=rd; i<=rs; i++) {
-            if(carry) this.registers[this.regCurrentBank][i]--;
-            carry = (this.registers[this.regCurrentBank][i] & 0x10) == 0x10;
-            this.registers[this.regCurrentBank][i] &= 0x0F;
-            if(this.registers[this.regCurrentBank][i] != 0) zero = false;
+            if(carry) this.registers[this.currentBankOffset + i]--;
+            carry = (this.registers[this.currentBankOffset + i] & 0x10) == 0x10;
+            this.registers[this.currentBankOffset + i] &= 0x0F;
+            if(this.registers[this.currentBankOffset + i] != 0) zero = false;
         }
         
         this.setFlag(FLAG_C, carry);
@@ -735,11 +915,11 @@ public class SeikoUC2000 implements CPU, IRQHandler {
         boolean carry = true;
         
         for(int i=rd; i<=rs; i++) {
-            if(carry) this.registers[this.regCurrentBank][i]--;
-            if(this.registers[this.regCurrentBank][i] < 0) this.registers[this.regCurrentBank][i] -= 6;
-            carry = (this.registers[this.regCurrentBank][i] & 0x10) == 0x10;
-            this.registers[this.regCurrentBank][i] &= 0x0F;
-            if(this.registers[this.regCurrentBank][i] != 0) zero = false;
+            if(carry) this.registers[this.currentBankOffset + i]--;
+            if(this.registers[this.currentBankOffset + i] < 0) this.registers[this.currentBankOffset + i] -= 6;
+            carry = (this.registers[this.currentBankOffset + i] & 0x10) == 0x10;
+            this.registers[this.currentBankOffset + i] &= 0x0F;
+            if(this.registers[this.currentBankOffset + i] != 0) zero = false;
         }
 
         this.setFlag(FLAG_C, carry);
@@ -760,7 +940,7 @@ public class SeikoUC2000 implements CPU, IRQHandler {
         int rs = (rd & 0x0018) | (opCode & 0x0007);
         
         for(int i=rd; i>=rs; i--) {
-            this.registers[this.regCurrentBank][i] = this.registers[this.regCurrentBank][i-1];
+            this.registers[this.currentBankOffset + i] = this.registers[this.currentBankOffset + i-1];
         }
         
         this.regPC+=2;
@@ -778,7 +958,7 @@ public class SeikoUC2000 implements CPU, IRQHandler {
         int rs = (rd & 0x0018) | (opCode & 0x0007);
         
         for(int i=rs; i<=rd; i++) {
-            this.registers[this.regCurrentBank][i] = this.registers[this.regCurrentBank][(i+1)%32];
+            this.registers[this.currentBankOffset + i] = this.registers[this.currentBankOffset + (i+1)%32];
         }
         
         this.regPC+=2;
@@ -796,7 +976,7 @@ public class SeikoUC2000 implements CPU, IRQHandler {
         int rd = (opCode & 0x03E0) >> 5;
         int port = (opCode & 0x000F);
         
-        this.registers[this.regCurrentBank][rd] = this.readIO8(port);
+        this.registers[this.currentBankOffset + rd] = this.readIO8(port);
         
         this.regPC+=2;
         return 2;
@@ -813,7 +993,7 @@ public class SeikoUC2000 implements CPU, IRQHandler {
         int rs = (opCode & 0x03E0) >> 5;
         int port = (opCode & 0x000F);
         
-        this.writeIO8(port, this.registers[this.regCurrentBank][rs]);
+        this.writeIO8(port, this.registers[this.currentBankOffset + rs]);
         
         this.regPC+=2;
         return 2;
@@ -851,7 +1031,7 @@ public class SeikoUC2000 implements CPU, IRQHandler {
         int value = 0;
         for(int i=rs; i>=rd; i--) {
             value <<= 4;
-            value |= this.registers[this.regCurrentBank][i];
+            value |= this.registers[this.currentBankOffset + i];
         }
         
         this.regSA = (short)((value & 0x07FF) + 0x1800);
@@ -876,7 +1056,7 @@ public class SeikoUC2000 implements CPU, IRQHandler {
         int value = 0;
         for(int i=rs; i>=rd; i--) {
             value <<= 4;
-            value |= this.registers[this.regCurrentBank][i];
+            value |= this.registers[this.currentBankOffset + i];
         }
         
 //        this.regLA = (short)(value);
@@ -902,7 +1082,7 @@ public class SeikoUC2000 implements CPU, IRQHandler {
             byte byteRead = this.readMemory8(this.regSA++);
             
             for(int i=rd; i<=rs; i++) {
-                this.registers[this.regCurrentBank][i] = (byte)(byteRead & 0x0F);
+                this.registers[this.currentBankOffset + i] = (byte)(byteRead & 0x0F);
                 if(half) {
                     byteRead >>= 4;
                     half = false;
@@ -934,7 +1114,7 @@ public class SeikoUC2000 implements CPU, IRQHandler {
             byte byteRead = 0;
             
             for(int i=rs; i>=rd; i--) {
-                byteRead |= this.registers[this.regCurrentBank][i];
+                byteRead |= this.registers[this.currentBankOffset + i];
                 if(half) {
                     byteRead <<= 4;
                     half = false;
@@ -969,7 +1149,7 @@ public class SeikoUC2000 implements CPU, IRQHandler {
             byte byteRead = 0;
             
             for(int i=rs; i<=rd; i++) {
-                byteRead = this.registers[this.regCurrentBank][i];
+                byteRead = this.registers[this.currentBankOffset + i];
                 if(half) {
                     byteRead <<= 4;
                     half = false;
@@ -997,7 +1177,7 @@ public class SeikoUC2000 implements CPU, IRQHandler {
     protected int opSTL(int opCode) throws MemoryException {
         int r = (opCode & 0x03E0) >> 5;
         
-        this.writeIO8(1, (byte)(this.registers[this.regCurrentBank][r] | 0x30));
+        this.writeIO8(1, (byte)(this.registers[this.currentBankOffset + r] | 0x30));
         
         this.regPC+=2;
         return 2;
@@ -1084,7 +1264,7 @@ public class SeikoUC2000 implements CPU, IRQHandler {
         int rd = (opCode & 0x03E0) >> 5;
         int rs = (opCode & 0x001F);
         
-        this.registers[this.regCurrentBank][rd] = this.registers[this.regCurrentBank][rs];
+        this.registers[this.currentBankOffset + rd] = this.registers[this.currentBankOffset + rs];
         
         this.regPC+=2;
         return 2;
@@ -1101,8 +1281,9 @@ public class SeikoUC2000 implements CPU, IRQHandler {
         int rs = (opCode & 0x001F);
         int k = ((rs-rd) % 8);
         
+        // The source is read in reverse order, so this is no block copy
         for(int i=0; i<k+1; i++) {
-            this.registers[this.regCurrentBank][rd+i] = this.registers[this.regCurrentBank][rs-k-i];
+            this.registers[this.currentBankOffset + rd+i] = this.registers[this.currentBankOffset + rs-k-i];
         }
         
         this.regPC+=2;
@@ -1119,7 +1300,7 @@ public class SeikoUC2000 implements CPU, IRQHandler {
         int rd = (opCode & 0x03E0) >> 5;
         int i = (opCode & 0x001F) >> 1;
         
-        this.registers[this.regCurrentBank][rd] = (byte)i;
+        this.registers[this.currentBankOffset + rd] = (byte)i;
         
         this.regPC+=2;
         return 2;
@@ -1135,9 +1316,8 @@ public class SeikoUC2000 implements CPU, IRQHandler {
         int rd = (opCode & 0x03E0) >> 5;
         int rs = (rd & 0x0018) | (opCode & 0x0007);
         
-        for(int i=rd; i<=rs; i++) {
-            this.registers[this.regCurrentBank][i] = 0;
-        }
+        if(rs >= rd)
+            Arrays.fill(this.registers, this.currentBankOffset + rd, this.currentBankOffset + rs + 1, (byte)0);
         
         this.regPC+=2;
         return 2;
@@ -1153,7 +1333,7 @@ public class SeikoUC2000 implements CPU, IRQHandler {
         int rd = (opCode & 0x03E0) >> 5;
         int rs = (opCode & 0x001F);
         
-        this.registers[this.regAdditionalBank][rd] = this.registers[this.regCurrentBank][rs];
+        this.registers[this.additionalBankOffset + rd] = this.registers[this.currentBankOffset + rs];
         
         this.regPC+=2;
         return 2;
@@ -1171,11 +1351,10 @@ public class SeikoUC2000 implements CPU, IRQHandler {
         int k = ((rs-rd) % 8);
         
 //        for(int i=rd; i<rs; i++) {
-//            this.registers[this.regAdditionalBank][i] = this.registers[this.regCurrentBank][i];
+//            this.registers[this.additionalBankOffset + i] = this.registers[this.currentBankOffset + i];
 //        }
-        for(int i=0; i<k+1; i++) {
-            this.registers[this.regAdditionalBank][rd+i] = this.registers[this.regCurrentBank][rs-k+i];
-        }
+        if(k >= 0)
+            System.arraycopy(this.registers, this.currentBankOffset + rs-k, this.registers, this.additionalBankOffset + rd, k+1);
         
         this.regPC+=2;
         return 2;
@@ -1191,7 +1370,7 @@ public class SeikoUC2000 implements CPU, IRQHandler {
         int rd = (opCode & 0x03E0) >> 5;
         int rs = (opCode & 0x001F);
         
-        this.registers[this.regCurrentBank][rd] = this.registers[this.regAdditionalBank][rs];
+        this.registers[this.currentBankOffset + rd] = this.registers[this.additionalBankOffset + rs];
         
         this.regPC+=2;
         return 2;
@@ -1209,11 +1388,10 @@ public class SeikoUC2000 implements CPU, IRQHandler {
         int k = ((rs-rd) % 8);
         
 //        for(int i=rd; i<rs; i++) {
-//            this.registers[this.regCurrentBank][i] = this.registers[this.regAdditionalBank][i];
+//            this.registers[this.currentBankOffset + i] = this.registers[this.additionalBankOffset + i];
 //        }
-        for(int i=0; i<k+1; i++) {
-            this.registers[this.regCurrentBank][rd+i] = this.registers[this.regAdditionalBank][rs-k+i];
-        }
+        if(k >= 0)
+            System.arraycopy(this.registers, this.additionalBankOffset + rs-k, this.registers, this.currentBankOffset + rd, k+1);
         
         this.regPC+=2;
         return 2;
@@ -1251,16 +1429,13 @@ public class SeikoUC2000 implements CPU, IRQHandler {
                 break;
                 
             case 0x11E4:    // Clear current bank
-                for(int i=0; i<32; i++)
-                    this.registers[this.regCurrentBank][i] = 0;
+                Arrays.fill(this.registers, this.currentBankOffset, this.currentBankOffset + BANK_SIZE, (byte)0);
                 this.regPC+=2;
                 break;
                 
             default:
-                this.regPC+=2;
-                this.regSP-=2;
-                this.writeMemory16(Short.toUnsignedLong(this.regSP), this.regPC);
-                this.regPC= (short)address;
+                callSubroutine(address);
+                if(isProfiling()) this.profiler.call(address);
                 break;
         }
         
@@ -1268,6 +1443,20 @@ public class SeikoUC2000 implements CPU, IRQHandler {
         return 2;
     }
     
+    /**
+     * Pushes the address after the current instruction and jumps to a
+     * subroutine
+     * 
+     * @param address (int) the address of the subroutine
+     * @throws MemoryException 
+     */
+    protected void callSubroutine(int address) throws MemoryException {
+        this.regPC+=2;
+        this.regSP-=2;
+        this.writeMemory16(Short.toUnsignedLong(this.regSP), this.regPC);
+        this.regPC= (short)address;
+    }
+    
     /**
      * Operation RET - return from subroutine
      * 
@@ -1278,6 +1467,7 @@ public class SeikoUC2000 implements CPU, IRQHandler {
     protected int opRET(int opCode) throws MemoryException {
         this.regPC = this.readMemory16(Short.toUnsignedLong(this.regSP));
         this.regSP+=2;
+        if(isProfiling()) this.profiler.ret();
         return 2;
     }
     
@@ -1285,6 +1475,7 @@ public class SeikoUC2000 implements CPU, IRQHandler {
         if(this.inIrq) {
             this.inIrq = false;
             this.opRET(0xB000);
+            if(isProfiling()) this.profiler.returnFromInterrupt();
         }
         return 2;
     }
@@ -1299,7 +1490,7 @@ public class SeikoUC2000 implements CPU, IRQHandler {
         int r = (opCode & 0x03E0) >> 5;
         int offset = (opCode & 0x001F);
         
-        if(this.registers[this.regCurrentBank][r] == 4) {
+        if(this.registers[this.currentBankOffset + r] == 4) {
             //if((offset & 0x0010) == 0x0010) offset = offset | 0xFFFFFFF0;
             this.regPC += (short)(offset);
         }
@@ -1317,7 +1508,7 @@ public class SeikoUC2000 implements CPU, IRQHandler {
      */
     protected int opIJMR(int opCode) {
         int r = (opCode & 0x03E0) >> 5;
-        int offset = this.registers[this.regCurrentBank][r];
+        int offset = this.registers[this.currentBankOffset + r];
         
         if((offset & 0x0008) == 0x0008) offset |=0xFFFFFFF0;
         
@@ -1332,8 +1523,9 @@ public class SeikoUC2000 implements CPU, IRQHandler {
      * @return 
      */
     protected int opWFI(int opCode) {
-        // TODO: Code the waiting using synchronization?
+        // Continue after the WFI when the interrupt routine returns
         this.regPC+=2;
+        this.waiting = true;
         return 2;
     }
     
@@ -1434,7 +1626,7 @@ public class SeikoUC2000 implements CPU, IRQHandler {
         
         //if((offset & 0x0010) == 0x0010) offset |= 0xFFFFFFF0;
         
-        if((this.registers[this.regCurrentBank][r] & bitVal) == bitVal) {
+        if((this.registers[this.currentBankOffset + r] & bitVal) == bitVal) {
             this.regPC += (offset << 1);
         }
         
@@ -1456,7 +1648,7 @@ public class SeikoUC2000 implements CPU, IRQHandler {
         
         //if((offset & 0x0010) == 0x0010) offset |= 0xFFFFFFF0;
         
-        if(this.registers[this.regCurrentBank][r] == value) {
+        if(this.registers[this.currentBankOffset + r] == value) {
             this.regPC += (offset << 1);
         }
         
@@ -1472,149 +1664,607 @@ public class SeikoUC2000 implements CPU, IRQHandler {
      */
     public void checkIrq() throws MemoryException {
         if(this.inIrq) return;
-        if(this.irq != 0) {
-            // In order of precedence
-            if((this.irq & IRQ_REDRAW_SCREEN) != 0) {
-                this.inIrq = true;
-                this.opCALL(0xAC0D);
-                this.irq -= IRQ_REDRAW_SCREEN;
-            }
-            else if((this.irq & IRQ_SET_BUTTON) != 0) {
-                this.inIrq = true;
-                this.opCALL(0xAC08);
-                this.irq -= IRQ_SET_BUTTON;
-            }
-            else if((this.irq & IRQ_MODE_BUTTON) != 0) {
-                this.inIrq = true;
-                this.opCALL(0xAC05);
-                this.irq -= IRQ_MODE_BUTTON;
-            }
-            else if((this.irq & IRQ_TRANSMIT_BUTTON) != 0) {
-                this.inIrq = true;
-                this.opCALL(0xAC06);
-                this.irq -= IRQ_TRANSMIT_BUTTON;
-            }
-            else if((this.irq & IRQ_SELECT_BUTTON) != 0) {
-                this.inIrq = true;
-                this.opCALL(0xAC07);
-                this.irq -= IRQ_SELECT_BUTTON;
-            }
-            else if((this.irq & IRQ_SECOND_TIMER) != 0) {
-                this.inIrq = true;
-                this.opCALL(0xAC01);
-                this.irq -= IRQ_SECOND_TIMER;
-            }
+        
+        ReplayLog log = this.replayLog;
+        if((log != null) && log.isReplaying()) {
+            int irqBit = log.replayIrq();
+            if(irqBit != 0) takeIrq(irqBit);
+            return;
+        }
+        
+        int pending;
+        int irqBit;
+        do {
+            pending = this.irq;
+            if(pending == 0) return;
+            
+            irqBit = getPriorityIrq(pending);
         }
+        while(!IRQ_UPDATER.compareAndSet(this, pending, pending & ~irqBit));
+        
+        if(log != null) log.recordIrq(irqBit);
+        takeIrq(irqBit);
     }
     
-    @Override
-    public int runNextOpCode() throws MemoryException, OpCodeException {
-        checkIrq();
+    /**
+     * Calls the interrupt routine of an IRQ
+     * 
+     * @param irqBit (int) the IRQ
+     * @throws MemoryException 
+     */
+    protected void takeIrq(int irqBit) throws MemoryException {
+        // the vectors are CALL opcodes of routines without special handling
+        int address = (IRQ_VECTORS[Integer.numberOfTrailingZeros(irqBit)] & 0x0FFF) << 1;
         
-        int opCode = Short.toUnsignedInt(readMemory16(Short.toUnsignedLong(this.regPC)));
-        
-        if((opCode >= 0x0000) && (opCode <= 0x03FF)) return opADD(opCode);
-        if((opCode >= 0x0400) && (opCode <= 0x07FF)) return opADB(opCode);
-        if((opCode >= 0x0800) && (opCode <= 0x0BFF)) return opSUB(opCode);
-        if((opCode >= 0x0C00) && (opCode <= 0x0FFF)) return opSBB(opCode);
-        if((opCode >= 0x1000) && (opCode <= 0x13FF)) return opADI(opCode);
-        if((opCode >= 0x1400) && (opCode <= 0x17FF)) return opADBI(opCode);
-        if((opCode >= 0x1800) && (opCode <= 0x1BFF)) return opSBI(opCode);
-        if((opCode >= 0x1C00) && (opCode <= 0x1FFF)) return opSBBI(opCode);
-        if((opCode >= 0x2000) && (opCode <= 0x23FF)) return opADM(opCode);
-        if((opCode >= 0x2400) && (opCode <= 0x27FF)) return opADBM(opCode);
-        if((opCode >= 0x2800) && (opCode <= 0x2BFF)) return opSBM(opCode);
-        if((opCode >= 0x2C00) && (opCode <= 0x2FFF)) return opSBBM(opCode);
-        if((opCode >= 0x3000) && (opCode <= 0x33FF)) return opCMP(opCode);
-        if((opCode >= 0x3400) && (opCode <= 0x37FF)) return opCPM(opCode);
-        if((opCode >= 0x3800) && (opCode <= 0x3BFF)) return opCPI(opCode);
-        if((opCode >= 0x3C00) && (opCode <= 0x3C18)) return opLCRB(opCode);
-        if((opCode >= 0x3E00) && (opCode <= 0x3E18)) return opLARB(opCode);
-        if((opCode >= 0x4000) && (opCode <= 0x43FF)) return opANDI(opCode);
-        if((opCode >= 0x4400) && (opCode <= 0x47FF)) return opORI(opCode);
-        if((opCode >= 0x4800) && (opCode <= 0x4BFF)) return opXORI(opCode);
+        this.waiting = false;
+        this.inIrq = true;
+        callSubroutine(address);
+        if(isProfiling()) this.profiler.interrupt(address);
+    }
+    
+    /**
+     * Returns the pending IRQ with the highest priority. The redraw IRQ comes
+     * first, then the buttons and the second timer in the order of their
+     * bits. Rotating the redraw bit down to bit 0 turns this into a single
+     * bit scan.
+     * 
+     * @param pending (int) the mask of pending IRQs (not 0)
+     * @return the IRQ bit (int)
+     */
+    static int getPriorityIrq(int pending) {
+        int rotated = ((pending << 1) | (pending >>> 5)) & IRQ_MASK;
+        int index = Integer.numberOfTrailingZeros(rotated);
+        
+        return (index == 0) ? IRQ_REDRAW_SCREEN : (1 << (index - 1));
+    }
+    
+    /**
+     * Returns the index into the dispatch table for an opcode
+     * 
+     * @param opCode (int) the opcode
+     * @return the index (int)
+     */
+    static int getDispatchIndex(int opCode) {
+        return ((opCode >>> 8) & 0xFC) | ((opCode >>> 3) & 0x03);
+    }
+    
+    /**
+     * Builds the dispatch table. Every entry is decoded once from a
+     * representative opcode, groups that are only partly used (LCRB/LARB and
+     * RET/HLT) are marked to be decoded with the full opcode.
+     * 
+     * @return the dispatch table (byte[])
+     */
+    static byte[] createDispatchTable() {
+        byte[] table = new byte[256];
+        
+        for(int index=0; index<table.length; index++) {
+            table[index] = decodeOpCode(((index & 0xFC) << 8) | ((index & 0x03) << 3));
+        }
+        
+        for(int subField=0; subField<4; subField++) {
+            table[getDispatchIndex(0x3C00) | subField] = OP_GROUP_LCRB_LARB;
+            table[getDispatchIndex(0xB000) | subField] = OP_GROUP_RET_HLT;
+        }
+        
+        return table;
+    }
+    
+    /**
+     * Decodes an opcode into the id of its operation
+     * 
+     * @param opCode (int) the opcode
+     * @return the operation id (byte)
+     */
+    static byte decodeOpCode(int opCode) {
+        if((opCode >= 0x0000) && (opCode <= 0x03FF)) return OP_ADD;
+        if((opCode >= 0x0400) && (opCode <= 0x07FF)) return OP_ADB;
+        if((opCode >= 0x0800) && (opCode <= 0x0BFF)) return OP_SUB;
+        if((opCode >= 0x0C00) && (opCode <= 0x0FFF)) return OP_SBB;
+        if((opCode >= 0x1000) && (opCode <= 0x13FF)) return OP_ADI;
+        if((opCode >= 0x1400) && (opCode <= 0x17FF)) return OP_ADBI;
+        if((opCode >= 0x1800) && (opCode <= 0x1BFF)) return OP_SBI;
+        if((opCode >= 0x1C00) && (opCode <= 0x1FFF)) return OP_SBBI;
+        if((opCode >= 0x2000) && (opCode <= 0x23FF)) return OP_ADM;
+        if((opCode >= 0x2400) && (opCode <= 0x27FF)) return OP_ADBM;
+        if((opCode >= 0x2800) && (opCode <= 0x2BFF)) return OP_SBM;
+        if((opCode >= 0x2C00) && (opCode <= 0x2FFF)) return OP_SBBM;
+        if((opCode >= 0x3000) && (opCode <= 0x33FF)) return OP_CMP;
+        if((opCode >= 0x3400) && (opCode <= 0x37FF)) return OP_CPM;
+        if((opCode >= 0x3800) && (opCode <= 0x3BFF)) return OP_CPI;
+        if((opCode >= 0x3C00) && (opCode <= 0x3C18)) return OP_LCRB;
+        if((opCode >= 0x3E00) && (opCode <= 0x3E18)) return OP_LARB;
+        if((opCode >= 0x4000) && (opCode <= 0x43FF)) return OP_ANDI;
+        if((opCode >= 0x4400) && (opCode <= 0x47FF)) return OP_ORI;
+        if((opCode >= 0x4800) && (opCode <= 0x4BFF)) return OP_XORI;
         // Hier gibt es Überschneidungen!!
         if((opCode >= 0x4C00) && (opCode <= 0x4FFF)) {
-            if((opCode & 0x0018) == 0x0000) return opINC(opCode);
-            if((opCode & 0x0018) == 0x0008) return opINCB(opCode);
-            if((opCode & 0x0018) == 0x0010) return opDEC(opCode);
-            if((opCode & 0x0018) == 0x0018) return opDECB(opCode);
+            if((opCode & 0x0018) == 0x0000) return OP_INC;
+            if((opCode & 0x0018) == 0x0008) return OP_INCB;
+            if((opCode & 0x0018) == 0x0010) return OP_DEC;
+            if((opCode & 0x0018) == 0x0018) return OP_DECB;
         }
         if((opCode >= 0x5000) && (opCode <= 0x53FF)) {
-            if((opCode & 0x0018) == 0x0000) return opRSHM(opCode);
-            if((opCode & 0x0018) == 0x0008) return opLSHM(opCode);
+            if((opCode & 0x0018) == 0x0000) return OP_RSHM;
+            if((opCode & 0x0018) == 0x0008) return OP_LSHM;
         }
-        if((opCode >= 0x5400) && (opCode <= 0x57FF)) return opIN(opCode);
-        if((opCode >= 0x5800) && (opCode <= 0x5BFF)) return opOUT(opCode);
-        if((opCode >= 0x5C00) && (opCode <= 0x5FFF)) return opOUTI(opCode);
+        if((opCode >= 0x5400) && (opCode <= 0x57FF)) return OP_IN;
+        if((opCode >= 0x5800) && (opCode <= 0x5BFF)) return OP_OUT;
+        if((opCode >= 0x5C00) && (opCode <= 0x5FFF)) return OP_OUTI;
         if((opCode >= 0x6000) && (opCode <= 0x63FF)) {
-            if((opCode & 0x0018) == 0x0000) return opPSAM(opCode);
-            if((opCode & 0x0018) == 0x0010) return opPLAM(opCode);
+            if((opCode & 0x0018) == 0x0000) return OP_PSAM;
+            if((opCode & 0x0018) == 0x0010) return OP_PLAM;
         }
         if((opCode >= 0x6400) && (opCode <= 0x67FF)) {
-            if((opCode & 0x0008) == 0x0008) return opLDSM(opCode);
-            if((opCode & 0x0008) == 0x0000) return opSTSM(opCode);
+            if((opCode & 0x0008) == 0x0008) return OP_LDSM;
+            if((opCode & 0x0008) == 0x0000) return OP_STSM;
+        }
+        if((opCode >= 0x6800) && (opCode <= 0x6BFF)) return OP_STLM;
+        if((opCode >= 0x6C00) && (opCode <= 0x6FFF)) return OP_STL;
+        if((opCode >= 0x7000) && (opCode <= 0x77FF)) return OP_PSAI;
+        if((opCode >= 0x7800) && (opCode <= 0x7BFF)) return OP_PLAI;
+        if((opCode >= 0x7C00) && (opCode <= 0x7FFF)) return OP_STLI;
+        if((opCode >= 0x8000) && (opCode <= 0x83FF)) return OP_MOV;
+        if((opCode >= 0x8400) && (opCode <= 0x87FF)) return OP_MOVM;
+        if((opCode >= 0x8800) && (opCode <= 0x8BFF)) return OP_LDI;
+        if((opCode >= 0x8C00) && (opCode <= 0x8FFF)) return OP_CLRM;
+        if((opCode >= 0x9000) && (opCode <= 0x93FF)) return OP_MVAC;
+        if((opCode >= 0x9400) && (opCode <= 0x97FF)) return OP_MVACM;
+        if((opCode >= 0x9800) && (opCode <= 0x9BFF)) return OP_MVCA;
+        if((opCode >= 0x9C00) && (opCode <= 0x9FFF)) return OP_MVCAM;
+        if((opCode >= 0xA000) && (opCode <= 0xAFFF)) return OP_CALL;
+        if(opCode == 0xB000) return OP_RET;
+        if(opCode == 0xB001) return OP_HLT;
+        if((opCode >= 0xB400) && (opCode <= 0xB7FF)) return OP_CPFJR;
+        if((opCode >= 0xB800) && (opCode <= 0xBBFF)) return OP_IJMR;
+        if((opCode >= 0xBC00) && (opCode <= 0xBFFF)) return OP_WFI;
+        if((opCode >= 0xC000) && (opCode <= 0xCFFF)) return OP_JMP;
+        if((opCode >= 0xD000) && (opCode <= 0xD3FF)) return OP_JZ;
+        if((opCode >= 0xD400) && (opCode <= 0xD7FF)) return OP_JNZ;
+        if((opCode >= 0xD800) && (opCode <= 0xDBFF)) return OP_JC;
+        if((opCode >= 0xDC00) && (opCode <= 0xDFFF)) return OP_JNC;
+        if((opCode >= 0xE000) && (opCode <= 0xEFFF)) return OP_BTJR;
+        if((opCode >= 0xF000) && (opCode <= 0xFFFF)) return OP_CPJR;
+        
+        
+        return OP_ILLEGAL;
+    }
+    
+    @Override
+    public int runNextOpCode() throws MemoryException, OpCodeException {
+        int result = executeNextOpCode();
+        
+        // repeated execution must not fire the clock events a second time
+        if((result != 0) && !isReplaying())
+            this.clock.advance(CYCLES_PER_INSTRUCTION);
+        
+        return result;
+    }
+    
+    /**
+     * Executes the next opcode without advancing the clock
+     * 
+     * @return the result of the operation, 0 if the CPU is waiting (int)
+     * @throws MemoryException
+     * @throws OpCodeException 
+     */
+    protected int executeNextOpCode() throws MemoryException, OpCodeException {
+        checkIrq();
+        
+        // Nothing to do until an interrupt arrives
+        if(this.waiting) return 0;
+        
+        int opCode = Short.toUnsignedInt(fetchOpCode(Short.toUnsignedLong(this.regPC)));
+        
+        if(isProfiling()) return executeProfiledOpCode(opCode);
+        if(this.tracer != null) return executeTracedOpCode(opCode);
+        
+        return executeOpCode(opCode);
+    }
+    
+    /**
+     * Checks whether the CPU repeats recorded execution of a TimeMachine
+     * 
+     * @return true if a replay log is set and replaying (boolean)
+     */
+    protected boolean isReplaying() {
+        ReplayLog log = this.replayLog;
+        return (log != null) && log.isReplaying();
+    }
+    
+    /**
+     * Checks whether instructions are counted in the profiler. Repeated
+     * execution is not, it was counted when it was recorded.
+     * 
+     * @return true if a profiler is set and the CPU is not replaying (boolean)
+     */
+    protected boolean isProfiling() {
+        return (this.profiler != null) && !isReplaying();
+    }
+    
+    /**
+     * Executes an opcode and counts it in the profiler
+     * 
+     * @param opCode (int) the opcode at the program counter
+     * @return the result of the operation (int)
+     * @throws MemoryException
+     * @throws OpCodeException 
+     */
+    protected int executeProfiledOpCode(int opCode) throws MemoryException, OpCodeException {
+        CodeProfiler profiler = this.profiler;
+        
+        profiler.begin(Short.toUnsignedInt(this.regPC));
+        int result = (this.tracer != null) ? executeTracedOpCode(opCode) : executeOpCode(opCode);
+        profiler.end(CYCLES_PER_INSTRUCTION);
+        
+        return result;
+    }
+    
+    /**
+     * Executes an opcode and records it in the tracer
+     * 
+     * @param opCode (int) the opcode at the program counter
+     * @return the result of the operation (int)
+     * @throws MemoryException
+     * @throws OpCodeException 
+     */
+    protected int executeTracedOpCode(int opCode) throws MemoryException, OpCodeException {
+        long pc = Short.toUnsignedLong(this.regPC);
+        // opcodes are stored big endian, the tracer keeps the first byte lowest
+        long opCodes = (opCode >> 8) | ((opCode & 0xFF) << 8);
+        int result;
+        
+        try {
+            result = executeOpCode(opCode);
+        }
+        catch (MemoryException | OpCodeException | RuntimeException ex) {
+            this.tracer.fault(pc, opCodes, 2);
+            throw ex;
+        }
+        
+        this.tracer.record(pc, opCodes, 2, CYCLES_PER_INSTRUCTION);
+        return result;
+    }
+    
+    /**
+     * Executes an opcode that was fetched from the program counter
+     * 
+     * @param opCode (int) the opcode
+     * @return the result of the operation (int)
+     * @throws MemoryException
+     * @throws OpCodeException 
+     */
+    protected int executeOpCode(int opCode) throws MemoryException, OpCodeException {
+        switch (DISPATCH_TABLE[getDispatchIndex(opCode)]) {
+            case OP_ADD:
+                return opADD(opCode);
+            case OP_ADB:
+                return opADB(opCode);
+            case OP_SUB:
+                return opSUB(opCode);
+            case OP_SBB:
+                return opSBB(opCode);
+            case OP_ADI:
+                return opADI(opCode);
+            case OP_ADBI:
+                return opADBI(opCode);
+            case OP_SBI:
+                return opSBI(opCode);
+            case OP_SBBI:
+                return opSBBI(opCode);
+            case OP_ADM:
+                return opADM(opCode);
+            case OP_ADBM:
+                return opADBM(opCode);
+            case OP_SBM:
+                return opSBM(opCode);
+            case OP_SBBM:
+                return opSBBM(opCode);
+            case OP_CMP:
+                return opCMP(opCode);
+            case OP_CPM:
+                return opCPM(opCode);
+            case OP_CPI:
+                return opCPI(opCode);
+            case OP_ANDI:
+                return opANDI(opCode);
+            case OP_ORI:
+                return opORI(opCode);
+            case OP_XORI:
+                return opXORI(opCode);
+            case OP_INC:
+                return opINC(opCode);
+            case OP_INCB:
+                return opINCB(opCode);
+            case OP_DEC:
+                return opDEC(opCode);
+            case OP_DECB:
+                return opDECB(opCode);
+            case OP_RSHM:
+                return opRSHM(opCode);
+            case OP_LSHM:
+                return opLSHM(opCode);
+            case OP_IN:
+                return opIN(opCode);
+            case OP_OUT:
+                return opOUT(opCode);
+            case OP_OUTI:
+                return opOUTI(opCode);
+            case OP_PSAM:
+                return opPSAM(opCode);
+            case OP_PLAM:
+                return opPLAM(opCode);
+            case OP_LDSM:
+                return opLDSM(opCode);
+            case OP_STSM:
+                return opSTSM(opCode);
+            case OP_STLM:
+                return opSTLM(opCode);
+            case OP_STL:
+                return opSTL(opCode);
+            case OP_PSAI:
+                return opPSAI(opCode);
+            case OP_PLAI:
+                return opPLAI(opCode);
+            case OP_STLI:
+                return opSTLI(opCode);
+            case OP_MOV:
+                return opMOV(opCode);
+            case OP_MOVM:
+                return opMOVM(opCode);
+            case OP_LDI:
+                return opLDI(opCode);
+            case OP_CLRM:
+                return opCLRM(opCode);
+            case OP_MVAC:
+                return opMVAC(opCode);
+            case OP_MVACM:
+                return opMVACM(opCode);
+            case OP_MVCA:
+                return opMVCA(opCode);
+            case OP_MVCAM:
+                return opMVCAM(opCode);
+            case OP_CALL:
+                return opCALL(opCode);
+            case OP_CPFJR:
+                return opCPFJR(opCode);
+            case OP_IJMR:
+                return opIJMR(opCode);
+            case OP_WFI:
+                return opWFI(opCode);
+            case OP_JMP:
+                return opJMP(opCode);
+            case OP_JZ:
+                return opJZ(opCode);
+            case OP_JNZ:
+                return opJNZ(opCode);
+            case OP_JC:
+                return opJC(opCode);
+            case OP_JNC:
+                return opJNC(opCode);
+            case OP_BTJR:
+                return opBTJR(opCode);
+            case OP_CPJR:
+                return opCPJR(opCode);
+            case OP_GROUP_LCRB_LARB:
+                if((opCode >= 0x3C00) && (opCode <= 0x3C18)) return opLCRB(opCode);
+                if((opCode >= 0x3E00) && (opCode <= 0x3E18)) return opLARB(opCode);
+                break;
+            case OP_GROUP_RET_HLT:
+                if(opCode == 0xB000) return opRET(opCode);
+                if(opCode == 0xB001) return opHLT(opCode);
+                break;
         }
-        if((opCode >= 0x6800) && (opCode <= 0x6BFF)) return opSTLM(opCode);
-        if((opCode >= 0x6C00) && (opCode <= 0x6FFF)) return opSTL(opCode);
-        if((opCode >= 0x7000) && (opCode <= 0x77FF)) return opPSAI(opCode);
-        if((opCode >= 0x7800) && (opCode <= 0x7BFF)) return opPLAI(opCode);
-        if((opCode >= 0x7C00) && (opCode <= 0x7FFF)) return opSTLI(opCode);
-        if((opCode >= 0x8000) && (opCode <= 0x83FF)) return opMOV(opCode);
-        if((opCode >= 0x8400) && (opCode <= 0x87FF)) return opMOVM(opCode);
-        if((opCode >= 0x8800) && (opCode <= 0x8BFF)) return opLDI(opCode);
-        if((opCode >= 0x8C00) && (opCode <= 0x8FFF)) return opCLRM(opCode);
-        if((opCode >= 0x9000) && (opCode <= 0x93FF)) return opMVAC(opCode);
-        if((opCode >= 0x9400) && (opCode <= 0x97FF)) return opMVACM(opCode);
-        if((opCode >= 0x9800) && (opCode <= 0x9BFF)) return opMVCA(opCode);
-        if((opCode >= 0x9C00) && (opCode <= 0x9FFF)) return opMVCAM(opCode);
-        if((opCode >= 0xA000) && (opCode <= 0xAFFF)) return opCALL(opCode);
-        if(opCode == 0xB000) return opRET(opCode);
-        if(opCode == 0xB001) return opHLT(opCode);
-        if((opCode >= 0xB400) && (opCode <= 0xB7FF)) return opCPFJR(opCode);
-        if((opCode >= 0xB800) && (opCode <= 0xBBFF)) return opIJMR(opCode);
-        if((opCode >= 0xBC00) && (opCode <= 0xBFFF)) return opWFI(opCode);
-        if((opCode >= 0xC000) && (opCode <= 0xCFFF)) return opJMP(opCode);
-        if((opCode >= 0xD000) && (opCode <= 0xD3FF)) return opJZ(opCode);
-        if((opCode >= 0xD400) && (opCode <= 0xD7FF)) return opJNZ(opCode);
-        if((opCode >= 0xD800) && (opCode <= 0xDBFF)) return opJC(opCode);
-        if((opCode >= 0xDC00) && (opCode <= 0xDFFF)) return opJNC(opCode);
-        if((opCode >= 0xE000) && (opCode <= 0xEFFF)) return opBTJR(opCode);
-        if((opCode >= 0xF000) && (opCode <= 0xFFFF)) return opCPJR(opCode);
         
         throw new OpCodeException("Illegal Opcode " + opCode);
     }
 
+    /**
+     * Adds an IRQ to the pending IRQs. This may be called from any thread
+     * (e.g. the Swing thread of the display); the IRQ is added lock-free and
+     * a run loop parked in awaitInterrupt is woken up.
+     * 
+     * @param IRQNumber (int) the IRQ (one of the IRQ_ constants)
+     */
     @Override
     public void handleIRQ(int IRQNumber) {
-        switch (IRQNumber) {
-            case IRQ_SET_BUTTON:
-                this.irq |= IRQNumber;
-                break;
-                
-            case IRQ_MODE_BUTTON:
-                this.irq |= IRQNumber;
-                break;
-                
-            case IRQ_TRANSMIT_BUTTON:
-                this.irq |= IRQNumber;
-                break;
-                
-            case IRQ_SELECT_BUTTON:
-                this.irq |= IRQNumber;
-                break;
-                
-            case IRQ_SECOND_TIMER:
-                this.irq |= IRQNumber;
-                break;
-                
-            case IRQ_REDRAW_SCREEN:
-                this.irq |= IRQNumber;
-                break;
+        if((Integer.bitCount(IRQNumber) != 1) || ((IRQNumber & IRQ_MASK) == 0))
+            throw new AssertionError();
+        
+        int pending;
+        do {
+            pending = this.irq;
+        }
+        while(!IRQ_UPDATER.compareAndSet(this, pending, pending | IRQNumber));
+        
+        Thread waiter = this.waitingThread;
+        if(waiter != null)
+            LockSupport.unpark(waiter);
+    }
+
+    @Override
+    public boolean isWaiting() {
+        return this.waiting;
+    }
+
+    /**
+     * Parks the calling thread until an IRQ is pending or the timeout has
+     * passed. Only one thread (the run loop) may wait at a time.
+     * 
+     * @param timeoutMillis (long) the maximum time to wait in milliseconds
+     * @return true if an IRQ is pending (boolean)
+     * @throws InterruptedException if the thread was interrupted
+     */
+    @Override
+    public boolean awaitInterrupt(long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutMillis * 1000000L;
+        
+        this.waitingThread = Thread.currentThread();
+        try {
+            // handleIRQ sets irq before reading waitingThread, so either the
+            // IRQ is seen here or the thread gets unparked
+            while(this.waiting && (this.irq == 0)) {
+                long remaining = deadline - System.nanoTime();
+                if(remaining <= 0) break;
                 
-            default:
-                throw new AssertionError();
+                LockSupport.parkNanos(this, remaining);
+                if(Thread.interrupted())
+                    throw new InterruptedException();
+            }
         }
+        finally {
+            this.waitingThread = null;
+        }
+        
+        return this.irq != 0;
+    }
+    
+    /**
+     * Lets the emulated time pass while the CPU is waiting for an interrupt.
+     * In time warp mode the clock jumps to the next event at once, otherwise
+     * it follows the wall clock up to the next event. Does not block.
+     * 
+     * @return the wall time until the next event is due in nanoseconds (long)
+     */
+    @Override
+    public long idle() {
+        if(!this.waiting) return 0L;
+        
+        // the clock does not move while recorded execution is repeated,
+        // the recorded IRQs wake the CPU
+        ReplayLog log = this.replayLog;
+        if((log != null) && log.isReplaying()) return 0L;
+        
+        long target = Math.min(this.clock.getNextEventCycle(), this.clock.getWallCycle());
+        if(target != Long.MAX_VALUE)
+            this.clock.advanceTo(target);
+        
+        return this.clock.getWallNanosUntil(this.clock.getNextEventCycle());
+    }
+    
+    /**
+     * Creates the description of the traced registers
+     * 
+     * @return the fields (ExecutionTracer.Field[])
+     */
+    static ExecutionTracer.Field[] createTraceFields() {
+        ExecutionTracer.Field[] fields = new ExecutionTracer.Field[BANK_COUNT * BANK_SIZE + 6];
+        int control = BANK_COUNT * BANK_SIZE / 8;
+        
+        for(int i=0; i<BANK_COUNT * BANK_SIZE; i++) {
+            fields[i] = new ExecutionTracer.Field("R" + (char)(i / BANK_SIZE + 'A') + (i % BANK_SIZE), i / 8, (i % 8) * 8, 8);
+        }
+        fields[BANK_COUNT * BANK_SIZE] = new ExecutionTracer.Field("SP", control, 48, 16);
+        fields[BANK_COUNT * BANK_SIZE + 1] = new ExecutionTracer.Field("SA", control, 32, 16);
+        fields[BANK_COUNT * BANK_SIZE + 2] = new ExecutionTracer.Field("LA", control, 16, 16);
+        fields[BANK_COUNT * BANK_SIZE + 3] = new ExecutionTracer.Field("F", control, 8, 8);
+        fields[BANK_COUNT * BANK_SIZE + 4] = new ExecutionTracer.Field("CB", control, 4, 4);
+        fields[BANK_COUNT * BANK_SIZE + 5] = new ExecutionTracer.Field("AB", control, 0, 4);
+        
+        return fields;
+    }
+    
+    @Override
+    public void setProfiler(CodeProfiler profiler) {
+        this.profiler = profiler;
+    }
+    
+    @Override
+    public CodeProfiler getProfiler() {
+        return this.profiler;
+    }
+    
+    /**
+     * Returns the number of return addresses on the stack, which only holds
+     * the return addresses of calls and interrupts
+     * 
+     * @return the depth (int)
+     */
+    @Override
+    public int getCallDepth() {
+        return Math.max(0, (0x2000 - Short.toUnsignedInt(this.regSP)) / 2);
+    }
+    
+    @Override
+    public void setTracer(ExecutionTracer tracer) {
+        this.tracer = tracer;
+    }
+    
+    @Override
+    public ExecutionTracer getTracer() {
+        return this.tracer;
+    }
+    
+    @Override
+    public String getTraceName() {
+        return TRACE_NAME;
+    }
+    
+    @Override
+    public ExecutionTracer.Field[] getTraceFields() {
+        return TRACE_FIELDS;
+    }
+    
+    @Override
+    public void packTraceWords(long[] words, int offset) {
+        int control = BANK_COUNT * BANK_SIZE / 8;
+        
+        for(int i=0; i<control; i++) {
+            words[offset + i] = this.traceRegisters.getLong(i * 8);
+        }
+        words[offset + control] = (Short.toUnsignedLong(this.regSP) << 48) | (Short.toUnsignedLong(this.regSA) << 32) | (Short.toUnsignedLong(this.regLA) << 16)
+                | (Byte.toUnsignedLong(this.regFlags) << 8) | ((this.regCurrentBank & 0x0F) << 4) | (this.regAdditionalBank & 0x0F);
+    }
+    
+    @Override
+    public int getStateSize() {
+        return BANK_COUNT * BANK_SIZE / 8 + 2;
+    }
+    
+    @Override
+    public void saveState(long[] state) {
+        int words = BANK_COUNT * BANK_SIZE / 8;
+        
+        for(int i=0; i<words; i++) {
+            state[i] = this.traceRegisters.getLong(i * 8);
+        }
+        state[words] = (Short.toUnsignedLong(this.regPC) << 48) | (Short.toUnsignedLong(this.regSP) << 32)
+                | (Short.toUnsignedLong(this.regLA) << 16) | Short.toUnsignedLong(this.regSA);
+        state[words + 1] = Byte.toUnsignedLong(this.regFlags) | (Byte.toUnsignedLong(this.regCurrentBank) << 8)
+                | (Byte.toUnsignedLong(this.regAdditionalBank) << 16) | (this.inIrq ? 0x1000000L : 0L) | (this.waiting ? 0x2000000L : 0L);
+    }
+    
+    @Override
+    public void restoreState(long[] state) {
+        int words = BANK_COUNT * BANK_SIZE / 8;
+        
+        for(int i=0; i<words; i++) {
+            this.traceRegisters.putLong(i * 8, state[i]);
+        }
+        this.regPC = (short)(state[words] >>> 48);
+        this.regSP = (short)(state[words] >>> 32);
+        this.regLA = (short)(state[words] >>> 16);
+        this.regSA = (short)state[words];
+        this.regFlags = (byte)state[words + 1];
+        setCurrentBank((int)(state[words + 1] >>> 8) & 0xFF);
+        setAdditionalBank((int)(state[words + 1] >>> 16) & 0xFF);
+        this.inIrq = (state[words + 1] & 0x1000000L) != 0;
+        this.waiting = (state[words + 1] & 0x2000000L) != 0;
+    }
+    
+    @Override
+    public List<Memory> getStateMemory() {
+        return this.memoryBus.getMemoryBlocks();
+    }
+    
+    @Override
+    public void setReplayLog(ReplayLog replayLog) {
+        this.replayLog = replayLog;
+    }
+    
+    @Override
+    public ReplayLog getReplayLog() {
+        return this.replayLog;
     }
     
 }
@@ -19,10 +19,12 @@
 package org.jemu.micro;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.StringTokenizer;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.function.LongSupplier;
 
 /**
  * This class implements a debugger for the Seiko UC 2000 CPU
@@ -1278,7 +1280,8 @@ public class SeikoUC2000Debugger extends SeikoUC2000 implements Debugger {
             if(isNumeric(param1)) {
                 int value = getNumeric(param1);
                 
-                if((value < 0) || (value > 6143)) throw new SyntaxErrorException("Value must be within [0..6143]");
+                if((value < 0) || (value > 0x1FFF)) throw new SyntaxErrorException("Value must be within [0..8191]");
+                if((value & 1) != 0) throw new SyntaxErrorException("Value must be an even address");
                 value >>= 1;
                 
                 return new byte[]{(byte)(0xA0 | (value>>8)), (byte)(value & 0xFF)};
@@ -1371,7 +1374,8 @@ public class SeikoUC2000Debugger extends SeikoUC2000 implements Debugger {
             if(isNumeric(param1)) {
                 int value = getNumeric(param1);
                 
-                if((value < 0) || (value > 6143)) throw new SyntaxErrorException("Value must be within [0..6143]");
+                if((value < 0) || (value > 0x1FFF)) throw new SyntaxErrorException("Value must be within [0..8191]");
+                if((value & 1) != 0) throw new SyntaxErrorException("Value must be an even address");
                 value >>= 1;
                 
                 return new byte[]{(byte)(0xC0 | (value>>8)), (byte)(value & 0xFF)};
@@ -1394,7 +1398,8 @@ public class SeikoUC2000Debugger extends SeikoUC2000 implements Debugger {
             if(isNumeric(param1)) {
                 int value = getNumeric(param1);
                 
-                if((value < 0x1800) || (value > 6143)) throw new SyntaxErrorException("Value must be within [4096..6143]");
+                if((value < 0x1800) || (value > 0x1FFF)) throw new SyntaxErrorException("Value must be within [6144..8191]");
+                if((value & 1) != 0) throw new SyntaxErrorException("Value must be an even address");
                 value >>= 1;
                 value -= 0xC00;
                 
@@ -1418,7 +1423,8 @@ public class SeikoUC2000Debugger extends SeikoUC2000 implements Debugger {
             if(isNumeric(param1)) {
                 int value = getNumeric(param1);
                 
-                if((value < 0x1800) || (value > 6143)) throw new SyntaxErrorException("Value must be within [4096..6143]");
+                if((value < 0x1800) || (value > 0x1FFF)) throw new SyntaxErrorException("Value must be within [6144..8191]");
+                if((value & 1) != 0) throw new SyntaxErrorException("Value must be an even address");
                 value >>= 1;
                 value -= 0xC00;
                 
@@ -1442,7 +1448,8 @@ public class SeikoUC2000Debugger extends SeikoUC2000 implements Debugger {
             if(isNumeric(param1)) {
                 int value = getNumeric(param1);
                 
-                if((value < 0x1800) || (value > 6143)) throw new SyntaxErrorException("Value must be within [4096..6143]");
+                if((value < 0x1800) || (value > 0x1FFF)) throw new SyntaxErrorException("Value must be within [6144..8191]");
+                if((value & 1) != 0) throw new SyntaxErrorException("Value must be an even address");
                 value >>= 1;
                 value -= 0xC00;
                 
@@ -1466,7 +1473,8 @@ public class SeikoUC2000Debugger extends SeikoUC2000 implements Debugger {
             if(isNumeric(param1)) {
                 int value = getNumeric(param1);
                 
-                if((value < 0x1800) || (value > 6143)) throw new SyntaxErrorException("Value must be within [4096..6143]");
+                if((value < 0x1800) || (value > 0x1FFF)) throw new SyntaxErrorException("Value must be within [6144..8191]");
+                if((value & 1) != 0) throw new SyntaxErrorException("Value must be an even address");
                 value >>= 1;
                 value -= 0xC00;
                 
@@ -1500,7 +1508,7 @@ public class SeikoUC2000Debugger extends SeikoUC2000 implements Debugger {
                 if((value < 0) || (value > 3)) throw new SyntaxErrorException("Bit number must be within [0..3]");
                 if((offset < 0) || (offset > 31)) throw new SyntaxErrorException("Offset must be within [0..31]");
                 
-                return new byte[]{(byte)(0xE0 | (value<<4) | (reg1>>3)), (byte)(((reg1 & 0x07)<<5) | (offset))};
+                return new byte[]{(byte)(0xE0 | (value<<2) | (reg1>>3)), (byte)(((reg1 & 0x07)<<5) | (offset))};
             }
             else
                 throw new SyntaxErrorException("Syntax error in BTJR command");
@@ -1530,13 +1538,89 @@ public class SeikoUC2000Debugger extends SeikoUC2000 implements Debugger {
                 if((value < 0) || (value > 3)) throw new SyntaxErrorException("Bit number must be within [0..3]");
                 if((offset < 0) || (offset > 31)) throw new SyntaxErrorException("Offset must be within [0..31]");
                 
-                return new byte[]{(byte)(0xF0 | (value<<4) | (reg1>>3)), (byte)(((reg1 & 0x07)<<5) | (offset))};
+                return new byte[]{(byte)(0xF0 | (value<<2) | (reg1>>3)), (byte)(((reg1 & 0x07)<<5) | (offset))};
             }
             else
                 throw new SyntaxErrorException("Syntax error in CPJR command");
         }
     }
     
+    /**
+     * All mnemonics of the Seiko UC 2000 by name, built once when the class is loaded.
+     * The Mnemonic classes have no state, so the instances are reused for
+     * every line that is translated.
+     */
+    public static final Map<String, Debugger.Mnemonic> MNEMONICS = createMnemonics();
+    
+    private static Map<String, Debugger.Mnemonic> createMnemonics() {
+        HashMap<String, Debugger.Mnemonic> mnemonics = new HashMap<>();
+        mnemonics.put("ADD", new ADD());
+        mnemonics.put("ADB", new ADB());
+        mnemonics.put("SUB", new SUB());
+        mnemonics.put("SBB", new SBB());
+        mnemonics.put("ADI", new ADI());
+        mnemonics.put("ADBI", new ADBI());
+        mnemonics.put("SBI", new SBI());
+        mnemonics.put("SBBI", new SBBI());
+        mnemonics.put("ADM", new ADM());
+        mnemonics.put("ADBM", new ADBM());
+        mnemonics.put("SBM", new SBM());
+        mnemonics.put("SBBM", new SBBM());
+        mnemonics.put("CMP", new CMP());
+        mnemonics.put("CPM", new CPM());
+        mnemonics.put("CPI", new CPI());
+        mnemonics.put("LCRB", new LCRB());
+        mnemonics.put("LARB", new LARB());
+        mnemonics.put("ANDI", new ANDI());
+        mnemonics.put("ORI", new ORI());
+        mnemonics.put("XORI", new XORI());
+        mnemonics.put("INC", new INC());
+        mnemonics.put("INCB", new INCB());
+        mnemonics.put("DEC", new DEC());
+        mnemonics.put("DECB", new DECB());
+        mnemonics.put("RSHM", new RSHM());
+        mnemonics.put("LSHM", new LSHM());
+        mnemonics.put("IN", new IN());
+        mnemonics.put("OUT", new OUT());
+        mnemonics.put("OUTI", new OUTI());
+        mnemonics.put("PSAM", new PSAM());
+        mnemonics.put("PLAM", new PLAM());
+        mnemonics.put("LDSM", new LDSM());
+        mnemonics.put("STSM", new STSM());
+        mnemonics.put("STLM", new STLM());
+        mnemonics.put("STL", new STL());
+        mnemonics.put("PSAI", new PSAI());
+        mnemonics.put("PLAI", new PLAI());
+        mnemonics.put("STLI", new STLI());
+        mnemonics.put("STLS", new STLS());
+        mnemonics.put("STLALI", new STLALI());
+        mnemonics.put("MOV", new MOV());
+        mnemonics.put("MOVM", new MOVM());
+        mnemonics.put("LDI", new LDI());
+        mnemonics.put("CLRM", new CLRM());
+        mnemonics.put("MVAC", new MVAC());
+        mnemonics.put("MVACM", new MVACM());
+        mnemonics.put("MVCA", new MVCA());
+        mnemonics.put("MVCAM", new MVCAM());
+        mnemonics.put("CALL", new CALL());
+        mnemonics.put("RET", new RET());
+        mnemonics.put("CPFJR", new CPFJR());
+        mnemonics.put("IJMR", new IJMR());
+        mnemonics.put("WFI", new WFI());
+        mnemonics.put("JMP", new JMP());
+        mnemonics.put("JZ", new JZ());
+        mnemonics.put("JNZ", new JNZ());
+        mnemonics.put("JC", new JC());
+        mnemonics.put("JNC", new JNC());
+        mnemonics.put("BTJR", new BTJR());
+        mnemonics.put("CPJR", new CPJR());
+        return Collections.unmodifiableMap(mnemonics);
+    }
+    
+    Debugger.Tokenizer tokenizer = new Debugger.Tokenizer();
+    
+    WatchpointSet watchpoints;
+    
     public SeikoUC2000Debugger() {
         super();
     }
@@ -1561,7 +1645,7 @@ public class SeikoUC2000Debugger extends SeikoUC2000 implements Debugger {
 
     @Override
     public CodeAndLength getCodeAndLength(long address) throws MemoryException, OpCodeException {
-        int opCode = (Byte.toUnsignedInt(this.readMemory8(address)) << 8) + (Byte.toUnsignedInt(this.readMemory8(address + 1)));
+        int opCode = (Byte.toUnsignedInt(this.peekMemory8(address)) << 8) + (Byte.toUnsignedInt(this.peekMemory8(address + 1)));
         int k;
         int d = ((opCode & 0x03E0) >> 5);
         int s = ((opCode & 0x001F));
@@ -1839,6 +1923,21 @@ public class SeikoUC2000Debugger extends SeikoUC2000 implements Debugger {
         }
     }
 
+    @Override
+    public Map<String, Debugger.Mnemonic> getMnemonics() {
+        return MNEMONICS;
+    }
+    
+    /**
+     * The UC 2000 stores opcodes and addresses with the high byte first
+     * 
+     * @return true (boolean)
+     */
+    @Override
+    public boolean isBigEndian() {
+        return true;
+    }
+    
     /**
      * Returns the bytecode for a given assembler mnemonic
      * 
@@ -1848,29 +1947,16 @@ public class SeikoUC2000Debugger extends SeikoUC2000 implements Debugger {
      */
     @Override
     public byte[] translate(String mnemonic) throws SyntaxErrorException {
-        mnemonic = mnemonic.toUpperCase();
-        StringTokenizer st = new StringTokenizer(mnemonic);
-        
-        String mnem1 = st.nextToken();
-        
-        try {
-            String className = "org.ansic.micro.SeikoUC2000Debugger$" + mnem1;
-            Class theClass = Class.forName(className);
-            Object theObj = theClass.newInstance();
+        synchronized(this.tokenizer) {
+            this.tokenizer.reset(mnemonic);
+            if(!this.tokenizer.hasMoreTokens())
+                throw new SyntaxErrorException("Syntax error in <" + mnemonic + ">");
             
-            Z80Debugger.Mnemonic mnem = (Z80Debugger.Mnemonic)theObj;
+            Debugger.Mnemonic mnem = MNEMONICS.get(this.tokenizer.nextToken());
+            if(mnem == null)
+                throw new SyntaxErrorException("Syntax error in <" + mnemonic + ">");
             
-            
-            byte[] opCodes = mnem.getOpCodes(st);
-            
-            return opCodes;
-        }
-        catch (SyntaxErrorException sex) {
-            throw sex;
-        }
-        catch (ClassNotFoundException | IllegalAccessException | InstantiationException ex) {
-            Logger.getLogger(DebuggerGUI.class.getName()).log(Level.SEVERE, null, ex);
-            throw new SyntaxErrorException("Syntax error in <" + mnemonic + ">");
+            return mnem.getOpCodes(this.tokenizer);
         }
     }
 
@@ -1918,15 +2004,15 @@ public class SeikoUC2000Debugger extends SeikoUC2000 implements Debugger {
                 break;
                 
             case "CB":
-                if((registerValue < 0) || (registerValue > 0x000F))
+                if((registerValue < 0) || (registerValue >= BANK_COUNT))
                     throw new IllegalRegisterValueException("Value " + registerValue + " does not fit in bank select register");
-                this.regCurrentBank = (byte)registerValue;
+                this.setCurrentBank((int)registerValue);
                 break;
                 
             case "AB":
-                if((registerValue < 0) || (registerValue > 0x000F))
+                if((registerValue < 0) || (registerValue >= BANK_COUNT))
                     throw new IllegalRegisterValueException("Value " + registerValue + " does not fit in bank select register");
-                this.regAdditionalBank = (byte)registerValue;
+                this.setAdditionalBank((int)registerValue);
                 break;
                 
             case "SA":
@@ -1985,7 +2071,7 @@ public class SeikoUC2000Debugger extends SeikoUC2000 implements Debugger {
                     if((registerValue < -8) || (registerValue > 15)) 
                         throw new IllegalRegisterValueException("Value " + registerValue + " does not fit in register " + registerName);
                     
-                    this.registers[bank][regNum] = (byte)(registerValue & 0x0F);
+                    this.registers[bank * BANK_SIZE + regNum] = (byte)(registerValue & 0x0F);
                 }
                 catch (NumberFormatException ex) {
                     throw new IllegalRegisterException("Register " + registerName + " does not exist");
@@ -2056,7 +2142,7 @@ public class SeikoUC2000Debugger extends SeikoUC2000 implements Debugger {
                     if((regNum < 0) || (regNum > 31))
                         throw new IllegalRegisterException("Register " + registerName + " does not exist");
                     
-                    return this.registers[bank][regNum];
+                    return this.registers[bank * BANK_SIZE + regNum];
                 }
                 catch (NumberFormatException ex) {
                     throw new IllegalRegisterException("Register " + registerName + " does not exist");
@@ -2065,6 +2151,58 @@ public class SeikoUC2000Debugger extends SeikoUC2000 implements Debugger {
         }
     }
     
+    /**
+     * Returns a function that reads a register field directly. Besides the
+     * register names of getRegisterNames, Rx reads register x of the current
+     * bank. 16 bit registers are read unsigned.
+     * 
+     * @param registerName (String) the register name
+     * @return the register reader (LongSupplier)
+     * @throws IllegalRegisterException if the register does not exist
+     */
+    @Override
+    public LongSupplier getRegisterReader(String registerName) throws IllegalRegisterException {
+        switch (registerName) {
+            case "PC":
+                return () -> Short.toUnsignedLong(this.regPC);
+                
+            case "F":
+                return () -> this.regFlags;
+                
+            case "CB":
+                return () -> this.regCurrentBank;
+                
+            case "AB":
+                return () -> this.regAdditionalBank;
+                
+            case "SA":
+                return () -> Short.toUnsignedLong(this.regSA);
+                
+            case "SP":
+                return () -> Short.toUnsignedLong(this.regSP);
+                
+            default:
+                if((registerName.length() >= 2) && (registerName.charAt(0) == 'R') && Character.isDigit(registerName.charAt(1))) {
+                    try {
+                        int regNum = Integer.parseInt(registerName.substring(1));
+                        if((regNum >= 0) && (regNum < BANK_SIZE))
+                            return () -> this.registers[this.currentBankOffset + regNum];
+                    }
+                    catch (NumberFormatException ex) {
+                        // exception thrown below
+                    }
+                    throw new IllegalRegisterException("Register " + registerName + " does not exist");
+                }
+                
+                // Rbx: check the name and bind the register index
+                if(!registerName.startsWith("R"))
+                    throw new IllegalRegisterException("Register " + registerName + " does not exist");
+                getRegisterValue(registerName);
+                int index = (registerName.charAt(1) - 'A') * BANK_SIZE + Integer.parseInt(registerName.substring(2));
+                return () -> this.registers[index];
+        }
+    }
+    
     /**
      * Returns the program counter
      * 
@@ -2128,7 +2266,19 @@ public class SeikoUC2000Debugger extends SeikoUC2000 implements Debugger {
      */
     @Override
     public byte readMemoryByte(long address) throws MemoryException {
-        return this.readMemory8(address);
+        return this.peekMemory8(address);
+    }
+    
+    /**
+     * Read an (8 bit) byte from memory without triggering watchpoints, used
+     * by the disassembler and the memory views
+     * 
+     * @param address (long) the memory address
+     * @return the memory content (byte)
+     * @throws MemoryException if the address is not in the memory range
+     */
+    protected byte peekMemory8(long address) throws MemoryException {
+        return this.memoryBus.peekByte(address);
     }
     
     /**
@@ -2143,6 +2293,52 @@ public class SeikoUC2000Debugger extends SeikoUC2000 implements Debugger {
         this.writeMemory8(address, value);
     }
     
+    @Override
+    public void setWatchpoints(WatchpointSet watchpoints) {
+        if(this.watchpoints != null)
+            this.watchpoints.uninstall();
+        
+        this.watchpoints = watchpoints;
+        if(watchpoints != null)
+            watchpoints.install(this.memoryBus, this.IOBlocks);
+    }
+    
+    @Override
+    public WatchpointSet getWatchpoints() {
+        return this.watchpoints;
+    }
+    
+    @Override
+    public void setMemoryBus(MemoryBus memoryBus) {
+        super.setMemoryBus(memoryBus);
+        
+        // move the watchpoints to the new bus
+        if(this.watchpoints != null)
+            this.watchpoints.install(memoryBus, this.IOBlocks);
+    }
+    
+    /**
+     * Runs the next opcode and reports the address of the instruction to the
+     * watchpoints (if there are any)
+     * 
+     * @return the number of cycles (int)
+     * @throws MemoryException if a memory access failed
+     * @throws OpCodeException if the opcode is not valid
+     */
+    @Override
+    public int runNextOpCode() throws MemoryException, OpCodeException {
+        if(this.watchpoints == null)
+            return super.runNextOpCode();
+        
+        long programCounter = getProgramCounter();
+        try {
+            return super.runNextOpCode();
+        }
+        finally {
+            this.watchpoints.completeInstruction(programCounter);
+        }
+    }
+    
     /**
      * Sets a new program counter value
      * 
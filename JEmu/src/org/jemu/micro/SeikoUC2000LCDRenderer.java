@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2021 peter.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jemu.micro;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * This class draws the LCD of the Seiko UC 2000. The character ROM is
+ * rendered once into a glyph atlas (at the current pixel size and contrast),
+ * the LCD image is then composed by copying one glyph per changed character
+ * cell. The atlas is only rebuilt when the contrast or the scale changes.
+ * 
+ * @author peter
+ */
+public class SeikoUC2000LCDRenderer {
+    
+    // Glyph index of an empty cell: a blinking character in its off phase
+    public static final int GLYPH_BLANK = 256;
+    public static final int GLYPH_COUNT = 257;
+    
+    // Layout of the atlas
+    static final int ATLAS_COLUMNS = 16;
+    
+    // Background between the LCD pixels
+    static final Color BACKGROUND = new Color(196, 196, 196);
+    
+    int pixelWidth;
+    int pixelHeight;
+    int cellWidth;
+    int cellHeight;
+    int contrast = -1;
+    
+    BufferedImage atlas;
+    BufferedImage image;
+    
+    // Glyph currently drawn in every cell of the image (-1 = nothing drawn)
+    int[] drawnGlyphs = new int[SeikoUC2000LCD.ROWS * SeikoUC2000LCD.COLUMNS];
+    
+    /**
+     * Creates a new instance of SeikoUC2000LCDRenderer
+     * 
+     * @param pixelWidth (int) the width of one LCD pixel incl. gap
+     * @param pixelHeight (int) the height of one LCD pixel incl. gap
+     */
+    public SeikoUC2000LCDRenderer(int pixelWidth, int pixelHeight) {
+        setScale(pixelWidth, pixelHeight);
+    }
+    
+    /**
+     * Sets the size of the LCD pixels. Rebuilds the atlas on the next paint.
+     * 
+     * @param pixelWidth (int) the width of one LCD pixel incl. gap
+     * @param pixelHeight (int) the height of one LCD pixel incl. gap
+     */
+    public final void setScale(int pixelWidth, int pixelHeight) {
+        this.pixelWidth = pixelWidth;
+        this.pixelHeight = pixelHeight;
+        this.cellWidth = pixelWidth * (SeikoUC2000LCD.CHARACTER_WIDTH + 1);
+        this.cellHeight = pixelHeight * (SeikoUC2000LCD.CHARACTER_HEIGHT + 1);
+        this.contrast = -1;
+        this.atlas = null;
+        this.image = new BufferedImage(this.cellWidth * SeikoUC2000LCD.COLUMNS, this.cellHeight * SeikoUC2000LCD.ROWS, BufferedImage.TYPE_INT_RGB);
+        invalidate();
+    }
+    
+    public int getWidth() {
+        return this.image.getWidth();
+    }
+    
+    public int getHeight() {
+        return this.image.getHeight();
+    }
+    
+    /**
+     * Forces all cells to be drawn again on the next paint
+     */
+    public void invalidate() {
+        Arrays.fill(this.drawnGlyphs, -1);
+    }
+    
+    /**
+     * Renders all glyphs of the character ROM for the given contrast
+     * 
+     * @param contrast (int) the contrast (0-196)
+     */
+    protected void buildAtlas(int contrast) {
+        int rows = (GLYPH_COUNT + ATLAS_COLUMNS - 1) / ATLAS_COLUMNS;
+        Color lcdOn = new Color(SeikoUC2000LCD.MAX_CONTRAST - contrast, SeikoUC2000LCD.MAX_CONTRAST - contrast, SeikoUC2000LCD.MAX_CONTRAST - contrast);
+        Color lcdOff = new Color(contrast, contrast, contrast);
+        
+        this.atlas = new BufferedImage(ATLAS_COLUMNS * this.cellWidth, rows * this.cellHeight, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = this.atlas.createGraphics();
+        g.setColor(BACKGROUND);
+        g.fillRect(0, 0, this.atlas.getWidth(), this.atlas.getHeight());
+        
+        for(int glyph=0; glyph<GLYPH_COUNT; glyph++) {
+            int gx = (glyph % ATLAS_COLUMNS) * this.cellWidth;
+            int gy = (glyph / ATLAS_COLUMNS) * this.cellHeight;
+            
+            for(int y=0; y<SeikoUC2000LCD.CHARACTER_HEIGHT; y++) {
+                for(int x=0; x<SeikoUC2000LCD.CHARACTER_WIDTH; x++) {
+                    boolean on = (glyph != GLYPH_BLANK) && ((SeikoUC2000LCD.characterRom[glyph][y] & (1 << x)) != 0);
+                    g.setColor(on ? lcdOn : lcdOff);
+                    g.fillRect(gx + x * this.pixelWidth, gy + y * this.pixelHeight, this.pixelWidth * 8 / 10, this.pixelHeight * 8 / 10);
+                }
+            }
+        }
+        
+        g.dispose();
+        this.contrast = contrast;
+        invalidate();
+    }
+    
+    /**
+     * Returns the glyph that a cell shows at the moment
+     * 
+     * @param frame (SeikoUC2000LCD.Frame) the LCD frame
+     * @param row (int) the row
+     * @param col (int) the column
+     * @return the glyph index (int)
+     */
+    protected int getGlyph(SeikoUC2000LCD.Frame frame, int row, int col) {
+        if((frame.getAttribute(row, col) != 0) && !frame.isBlink())
+            return GLYPH_BLANK;
+        
+        return frame.getCharacter(row, col);
+    }
+    
+    /**
+     * Brings the LCD image up to date, copying a glyph into every cell that
+     * changed since the last call
+     * 
+     * @param frame (SeikoUC2000LCD.Frame) the LCD frame
+     * @return the number of cells drawn (int)
+     */
+    public int update(SeikoUC2000LCD.Frame frame) {
+        if((this.atlas == null) || (frame.getContrast() != this.contrast))
+            buildAtlas(frame.getContrast());
+        
+        Graphics g = null;
+        int drawn = 0;
+        
+        for(int row=0; row<SeikoUC2000LCD.ROWS; row++) {
+            for(int col=0; col<SeikoUC2000LCD.COLUMNS; col++) {
+                int cell = row * SeikoUC2000LCD.COLUMNS + col;
+                int glyph = getGlyph(frame, row, col);
+                
+                if(this.drawnGlyphs[cell] == glyph) continue;
+                
+                if(g == null) g = this.image.getGraphics();
+                
+                int sx = (glyph % ATLAS_COLUMNS) * this.cellWidth;
+                int sy = (glyph / ATLAS_COLUMNS) * this.cellHeight;
+                int dx = col * this.cellWidth;
+                int dy = row * this.cellHeight;
+                g.drawImage(this.atlas, dx, dy, dx + this.cellWidth, dy + this.cellHeight, 
+                        sx, sy, sx + this.cellWidth, sy + this.cellHeight, null);
+                
+                this.drawnGlyphs[cell] = glyph;
+                drawn++;
+            }
+        }
+        
+        if(g != null) g.dispose();
+        return drawn;
+    }
+    
+    /**
+     * Updates the LCD image and draws it
+     * 
+     * @param g (Graphics) the graphics context
+     * @param frame (SeikoUC2000LCD.Frame) the LCD frame
+     * @param x (int) the left edge of the LCD
+     * @param y (int) the top edge of the LCD
+     */
+    public void paint(Graphics g, SeikoUC2000LCD.Frame frame, int x, int y) {
+        update(frame);
+        g.drawImage(this.image, x, y, null);
+    }
+    
+    public BufferedImage getImage() {
+        return this.image;
+    }
+}
@@ -0,0 +1,441 @@
+/*
+ * Copyright (C) 2021 peter.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jemu.micro;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongPredicate;
+
+/**
+ * This class lets a ReversibleCPU go back in time. While the CPU runs, it
+ * takes a checkpoint of the CPU state and memory every interval
+ * instructions, and the ReplayLog records the IRQs and IO inputs. To go back,
+ * the latest checkpoint before the target is restored and the recorded
+ * execution is repeated up to the target, so no rerun from the start is
+ * needed.
+ * 
+ * Checkpoints only store the memory pages that were written since the
+ * previous checkpoint; every FULL_INTERVAL-th checkpoint stores all pages.
+ * When the checkpoints and the log use more than the memory budget, the
+ * oldest checkpoints are dropped.
+ * 
+ * Devices are not part of the state: outputs are sent to them again while
+ * execution is repeated. The time machine belongs to the thread that runs
+ * the CPU.
+ * 
+ * @author peter
+ */
+public class TimeMachine {
+    public static final long DEFAULT_INTERVAL = 10000L;
+    public static final long DEFAULT_BUDGET = 32L * 1024L * 1024L;
+    public static final int FULL_INTERVAL = 16;
+    
+    /**
+     * This class holds the state at one position
+     */
+    static class Checkpoint {
+        long position;
+        long[] state;
+        // [block][page], null if the page did not change since the previous checkpoint
+        byte[][][] pages;
+        boolean full;
+        long size;
+    }
+    
+    final ReversibleCPU cpu;
+    final ReplayLog log = new ReplayLog();
+    final List<Memory> memoryBlocks = new ArrayList<>();
+    final List<DirtyPageMap> dirtyPageMaps = new ArrayList<>();
+    final ArrayList<Checkpoint> checkpoints = new ArrayList<>();
+    int[] dirtyPages;
+    
+    long interval = DEFAULT_INTERVAL;
+    long budget = DEFAULT_BUDGET;
+    long size;
+    int sinceFull;
+    Checkpoint last;
+    
+    /**
+     * Creates a new instance of TimeMachine and takes the first checkpoint
+     * at the current state of the CPU
+     * 
+     * @param cpu (ReversibleCPU) the CPU
+     */
+    public TimeMachine(ReversibleCPU cpu) {
+        this.cpu = cpu;
+        
+        int maxPages = 0;
+        for(Memory memory : cpu.getStateMemory()) {
+            // memory that cannot be written does not need checkpoints
+            if(!(memory instanceof DirtyTrackingMemory)) continue;
+            
+            DirtyPageMap map = new DirtyPageMap(memory);
+            ((DirtyTrackingMemory)memory).addDirtyPageMap(map);
+            this.memoryBlocks.add(memory);
+            this.dirtyPageMaps.add(map);
+            maxPages = Math.max(maxPages, map.getPageCount());
+        }
+        this.dirtyPages = new int[maxPages];
+        
+        cpu.setReplayLog(this.log);
+        checkpoint();
+    }
+    
+    /**
+     * Stops recording and releases the memory blocks
+     */
+    public void close() {
+        for(int i=0; i<this.memoryBlocks.size(); i++) {
+            ((DirtyTrackingMemory)this.memoryBlocks.get(i)).removeDirtyPageMap(this.dirtyPageMaps.get(i));
+        }
+        this.cpu.setReplayLog(null);
+        this.checkpoints.clear();
+    }
+    
+    /**
+     * Sets the number of instructions between two checkpoints. Shorter
+     * intervals make going back faster and use more memory.
+     * 
+     * @param interval (long) the interval
+     */
+    public void setInterval(long interval) {
+        this.interval = Math.max(1L, interval);
+    }
+    
+    public long getInterval() {
+        return this.interval;
+    }
+    
+    /**
+     * Sets the memory that checkpoints and log may use in bytes
+     * 
+     * @param budget (long) the budget
+     */
+    public void setBudget(long budget) {
+        this.budget = budget;
+        evict();
+    }
+    
+    public long getBudget() {
+        return this.budget;
+    }
+    
+    /**
+     * Returns the memory used by checkpoints and log in bytes
+     * 
+     * @return the size (long)
+     */
+    public long getSize() {
+        return this.size + this.log.getSize();
+    }
+    
+    /**
+     * Returns the number of instructions executed since recording started
+     * 
+     * @return the position (long)
+     */
+    public long getPosition() {
+        return this.log.getPosition();
+    }
+    
+    /**
+     * Returns the earliest position that can be reached
+     * 
+     * @return the position (long)
+     */
+    public long getOldestPosition() {
+        return this.checkpoints.get(0).position;
+    }
+    
+    /**
+     * Returns the position after the last recorded instruction
+     * 
+     * @return the position (long)
+     */
+    public long getEnd() {
+        return this.log.getEnd();
+    }
+    
+    public int getCheckpointCount() {
+        return this.checkpoints.size();
+    }
+    
+    /**
+     * Runs the next instruction of the CPU and takes a checkpoint if one is
+     * due. Use this instead of the runNextOpCode of the CPU.
+     * 
+     * @return the result of the CPU (int)
+     * @throws MemoryException
+     * @throws OpCodeException 
+     */
+    public int runNextOpCode() throws MemoryException, OpCodeException {
+        if(!this.log.isReplaying() && (this.log.getPosition() - this.last.position >= this.interval))
+            checkpoint();
+        
+        try {
+            return this.cpu.runNextOpCode();
+        }
+        finally {
+            // a failed instruction counts as well, it fails again when repeated
+            this.log.advance();
+        }
+    }
+    
+    /**
+     * Takes a checkpoint at the current position
+     */
+    protected void checkpoint() {
+        Checkpoint checkpoint = new Checkpoint();
+        checkpoint.position = this.log.getPosition();
+        checkpoint.state = new long[this.cpu.getStateSize()];
+        this.cpu.saveState(checkpoint.state);
+        checkpoint.size = checkpoint.state.length * 8L;
+        checkpoint.full = this.checkpoints.isEmpty() || (++this.sinceFull >= FULL_INTERVAL);
+        if(checkpoint.full) this.sinceFull = 0;
+        
+        checkpoint.pages = new byte[this.memoryBlocks.size()][][];
+        for(int b=0; b<this.memoryBlocks.size(); b++) {
+            Memory memory = this.memoryBlocks.get(b);
+            DirtyPageMap map = this.dirtyPageMaps.get(b);
+            int pageCount = map.getPageCount();
+            byte[][] pages = new byte[pageCount][];
+            
+            int dirty = map.collectAndClear(this.dirtyPages);
+            if(checkpoint.full) {
+                for(int page=0; page<pageCount; page++) {
+                    pages[page] = readPage(memory, map, page);
+                    checkpoint.size += pages[page].length;
+                }
+            }
+            else {
+                for(int i=0; i<dirty; i++) {
+                    int page = this.dirtyPages[i];
+                    pages[page] = readPage(memory, map, page);
+                    checkpoint.size += pages[page].length;
+                }
+            }
+            checkpoint.pages[b] = pages;
+        }
+        
+        this.checkpoints.add(checkpoint);
+        this.last = checkpoint;
+        this.size += checkpoint.size;
+        evict();
+    }
+    
+    protected static byte[] readPage(Memory memory, DirtyPageMap map, int page) {
+        long address = map.getPageAddress(page);
+        int length = (int)Math.min(map.getPageSize(), map.getHighAddress() - address);
+        byte[] content = new byte[length];
+        
+        try {
+            for(int i=0; i<length; i++) {
+                content[i] = memory.getByte(address + i);
+            }
+        }
+        catch (MemoryException ex) {
+            // the range of the map is the range of the memory
+        }
+        
+        return content;
+    }
+    
+    /**
+     * Drops the oldest checkpoints until the budget is kept. The next
+     * checkpoint takes over the pages it does not have itself, so it becomes
+     * a full checkpoint.
+     */
+    protected void evict() {
+        while((getSize() > this.budget) && (this.checkpoints.size() > 1)) {
+            Checkpoint oldest = this.checkpoints.remove(0);
+            Checkpoint next = this.checkpoints.get(0);
+            
+            this.size -= oldest.size;
+            if(!next.full) {
+                for(int b=0; b<next.pages.length; b++) {
+                    for(int page=0; page<next.pages[b].length; page++) {
+                        if(next.pages[b][page] == null) {
+                            next.pages[b][page] = oldest.pages[b][page];
+                            next.size += next.pages[b][page].length;
+                            this.size += next.pages[b][page].length;
+                        }
+                    }
+                }
+                next.full = true;
+            }
+            
+            this.log.discardBefore(next.position);
+        }
+    }
+    
+    /**
+     * Returns the index of the latest checkpoint at or before a position
+     * 
+     * @param position (long) the position
+     * @return the index or -1 (int)
+     */
+    protected int findCheckpoint(long position) {
+        int low = 0;
+        int high = this.checkpoints.size() - 1;
+        
+        while(low <= high) {
+            int middle = (low + high) >>> 1;
+            if(this.checkpoints.get(middle).position <= position)
+                low = middle + 1;
+            else
+                high = middle - 1;
+        }
+        
+        return high;
+    }
+    
+    /**
+     * Restores the state of a checkpoint
+     * 
+     * @param index (int) the index of the checkpoint
+     */
+    protected void restore(int index) {
+        Checkpoint checkpoint = this.checkpoints.get(index);
+        this.cpu.restoreState(checkpoint.state);
+        
+        for(int b=0; b<this.memoryBlocks.size(); b++) {
+            Memory memory = this.memoryBlocks.get(b);
+            DirtyPageMap map = this.dirtyPageMaps.get(b);
+            
+            for(int page=0; page<map.getPageCount(); page++) {
+                // the page as of the checkpoint is in the latest checkpoint
+                // up to this one that stored it
+                byte[] content = null;
+                for(int i=index; (content == null) && (i >= 0); i--) {
+                    content = this.checkpoints.get(i).pages[b][page];
+                }
+                
+                long address = map.getPageAddress(page);
+                try {
+                    for(int i=0; i<content.length; i++) {
+                        if(memory.getByte(address + i) != content[i])
+                            memory.setByte(address + i, content[i]);
+                    }
+                }
+                catch (MemoryException ex) {
+                    // the range of the map is the range of the memory
+                }
+            }
+            
+            // the pages changed by repeating execution from here make up the
+            // next checkpoint
+            map.collectAndClear(this.dirtyPages);
+        }
+        
+        this.log.seek(checkpoint.position);
+    }
+    
+    /**
+     * Repeats recorded execution
+     * 
+     * @param count (long) the number of instructions
+     */
+    protected void replay(long count) {
+        for(long i=0; i<count; i++) {
+            try {
+                this.cpu.runNextOpCode();
+            }
+            catch (MemoryException | OpCodeException ex) {
+                // the recorded execution failed here as well
+            }
+            this.log.advance();
+        }
+    }
+    
+    /**
+     * Moves the CPU to a position between the oldest checkpoint and the end
+     * of the recording
+     * 
+     * @param position (long) the position
+     * @return false if the position cannot be reached (boolean)
+     */
+    public boolean seek(long position) {
+        if((position < getOldestPosition()) || (position > getEnd())) return false;
+        
+        int index = findCheckpoint(position);
+        long current = this.log.getPosition();
+        
+        // going forward from the current position is cheaper if no
+        // checkpoint lies between
+        if((current > position) || (this.checkpoints.get(index).position > current))
+            restore(index);
+        
+        replay(position - this.log.getPosition());
+        return true;
+    }
+    
+    /**
+     * Searches backwards for the latest position before a target at which a
+     * condition is true. The condition is checked for every position from the
+     * oldest checkpoint up to the target (exclusive), with the CPU in the
+     * state of that position, and may be checked more than once for the
+     * same position. The CPU is left in an undefined state; call seek
+     * afterwards.
+     * 
+     * @param target (long) the position to search back from
+     * @param condition (LongPredicate) the condition, gets the position
+     * @return the position or -1 if there is none (long)
+     */
+    public long findLast(long target, LongPredicate condition) {
+        for(int index = findCheckpoint(target - 1); index >= 0; index--) {
+            long end = (index + 1 < this.checkpoints.size()) ? Math.min(target, this.checkpoints.get(index + 1).position) : target;
+            long found = -1L;
+            
+            // the first position of the next segment is tested here as well,
+            // after executing the instruction before it, because side effects
+            // of that instruction (e.g. watchpoint hits) are not restored
+            long last = (end < target) ? end : end - 1;
+            
+            restore(index);
+            for(long position = this.log.getPosition(); position <= last; position++) {
+                if(condition.test(position)) found = position;
+                if(position < last) replay(1);
+            }
+            
+            if(found >= 0) return found;
+        }
+        
+        return -1L;
+    }
+    
+    /**
+     * Forgets the recorded future, e.g. after the state of the CPU was
+     * changed by hand at a past position
+     */
+    public void truncate() {
+        long position = this.log.getPosition();
+        
+        while(this.checkpoints.size() > 1 && (this.last.position > position)) {
+            Checkpoint dropped = this.checkpoints.remove(this.checkpoints.size() - 1);
+            this.size -= dropped.size;
+            this.last = this.checkpoints.get(this.checkpoints.size() - 1);
+        }
+        this.sinceFull = 0;
+        for(int i=this.checkpoints.size() - 1; (i >= 0) && !this.checkpoints.get(i).full; i--) {
+            this.sinceFull++;
+        }
+        
+        this.log.truncate();
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2021 peter.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jemu.micro;
+
+/**
+ * This interface is implemented by CPUs that can record the instructions
+ * they execute into an ExecutionTracer. As long as no tracer is set, the CPU
+ * only checks a null field per instruction.
+ * 
+ * @author peter
+ */
+public interface TraceableCPU extends CPU {
+    
+    /**
+     * Installs a tracer; passing null switches tracing off
+     * 
+     * @param tracer (ExecutionTracer) the tracer or null
+     */
+    public void setTracer(ExecutionTracer tracer);
+    
+    /**
+     * Returns the installed tracer
+     * 
+     * @return the tracer or null (ExecutionTracer)
+     */
+    public ExecutionTracer getTracer();
+    
+    /**
+     * Returns the name of the CPU that is written into trace files, so that
+     * the decoder can pick the matching disassembler
+     * 
+     * @return the name, e.g. "Z80" (String)
+     */
+    public String getTraceName();
+    
+    /**
+     * Describes where the registers are stored in the words written by
+     * packTraceWords. The program counter is traced separately.
+     * 
+     * @return the register fields (ExecutionTracer.Field[])
+     */
+    public ExecutionTracer.Field[] getTraceFields();
+    
+    /**
+     * Packs all registers (except the program counter) into words. This is
+     * called after every traced instruction and must not allocate.
+     * 
+     * @param words (long[]) the array that receives the words
+     * @param offset (int) the index of the first word, as many words follow as the fields use
+     */
+    public void packTraceWords(long[] words, int offset);
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright (C) 2021 peter.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jemu.micro;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class implements the emulated time base of a machine. Time is counted
+ * in CPU cycles and converted to emulated seconds with the clock frequency,
+ * so the emulation does not depend on the wall clock or the Swing thread.
+ * 
+ * Periodic events (e.g. a second timer) are fired when the cycle count
+ * passes their time. The run loop calls throttle() to keep the emulated time
+ * in step with the wall clock at the configured speed multiplier; in time
+ * warp mode the emulation runs as fast as possible.
+ * 
+ * The cycle count belongs to the thread that runs the CPU (the emulation
+ * thread), which publishes it to other threads once per batch with
+ * publish(). Event and speed changes are synchronized.
+ * 
+ * @author peter
+ */
+public class VirtualClock {
+    
+    /**
+     * This class describes a periodic event
+     */
+    public static class Event {
+        long periodCycles;
+        long nextCycle;
+        Runnable action;
+        boolean enabled;
+        
+        public Event(long periodCycles, long nextCycle, Runnable action) {
+            this.periodCycles = periodCycles;
+            this.nextCycle = nextCycle;
+            this.action = action;
+            this.enabled = true;
+        }
+        
+        public long getPeriodCycles() {
+            return this.periodCycles;
+        }
+        
+        public long getNextCycle() {
+            return this.nextCycle;
+        }
+        
+        public boolean isEnabled() {
+            return this.enabled;
+        }
+        
+        /**
+         * Enables or disables the event. A disabled event still keeps its
+         * schedule, it just does not run its action.
+         * 
+         * @param enabled (boolean) whether the action should run
+         */
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+    }
+    
+    static final AtomicLongFieldUpdater<VirtualClock> PUBLISHED_UPDATER = AtomicLongFieldUpdater.newUpdater(VirtualClock.class, "publishedCycles");
+    
+    long frequency;
+    long cycles = 0L;
+    volatile long publishedCycles = 0L;
+    volatile long nextEventCycle = Long.MAX_VALUE;
+    List<Event> events = new ArrayList<>();
+    
+    double speed = 1.0;
+    boolean timeWarp = false;
+    long baseCycles = 0L;
+    long baseWallNanos;
+    
+    /**
+     * Creates a new instance of VirtualClock
+     * 
+     * @param frequency (long) the number of cycles per emulated second
+     */
+    public VirtualClock(long frequency) {
+        this.frequency = frequency;
+        this.baseWallNanos = System.nanoTime();
+    }
+    
+    /**
+     * Adds a periodic event
+     * 
+     * @param periodNanos (long) the period in emulated nanoseconds
+     * @param action (Runnable) the action, runs on the thread that advances the clock
+     * @return the event (Event)
+     */
+    public synchronized Event addPeriodicEvent(long periodNanos, Runnable action) {
+        long periodCycles = Math.max(1L, nanosToCycles(periodNanos));
+        Event event = new Event(periodCycles, this.publishedCycles + periodCycles, action);
+        
+        this.events.add(event);
+        this.nextEventCycle = Math.min(this.nextEventCycle, event.nextCycle);
+        return event;
+    }
+    
+    public synchronized void removeEvent(Event event) {
+        this.events.remove(event);
+        updateNextEventCycle();
+    }
+    
+    /**
+     * Advances the clock by a number of cycles and fires all events that
+     * became due. Must only be called from the thread that runs the CPU.
+     * 
+     * @param cycleCount (long) the number of cycles
+     */
+    public void advance(long cycleCount) {
+        this.cycles += cycleCount;
+        
+        if(this.cycles >= this.nextEventCycle)
+            fireEvents();
+    }
+    
+    /**
+     * Advances the clock to a given cycle (if it is in the future). Must
+     * only be called from the thread that runs the CPU.
+     * 
+     * @param cycle (long) the cycle
+     */
+    public void advanceTo(long cycle) {
+        if(cycle > this.cycles)
+            advance(cycle - this.cycles);
+    }
+    
+    protected synchronized void fireEvents() {
+        for(Event event : this.events) {
+            while(event.nextCycle <= this.cycles) {
+                event.nextCycle += event.periodCycles;
+                if(event.enabled)
+                    event.action.run();
+            }
+        }
+        
+        updateNextEventCycle();
+    }
+    
+    protected void updateNextEventCycle() {
+        long next = Long.MAX_VALUE;
+        
+        for(Event event : this.events) {
+            next = Math.min(next, event.nextCycle);
+        }
+        
+        this.nextEventCycle = next;
+    }
+    
+    /**
+     * Returns the cycle at which the next event is due
+     * 
+     * @return the cycle or Long.MAX_VALUE if there are no events (long)
+     */
+    public long getNextEventCycle() {
+        return this.nextEventCycle;
+    }
+    
+    /**
+     * Returns the cycle count. Only the thread that runs the CPU sees the
+     * current value, other threads should use getPublishedCycles.
+     * 
+     * @return the cycle count (long)
+     */
+    public long getCycles() {
+        return this.cycles;
+    }
+    
+    /**
+     * Makes the cycle count visible to other threads. Called by the thread
+     * that runs the CPU, e.g. once per batch of instructions. The store is
+     * not ordered against other stores, readers only need to see it
+     * eventually.
+     */
+    public void publish() {
+        PUBLISHED_UPDATER.lazySet(this, this.cycles);
+    }
+    
+    /**
+     * Returns the cycle count of the last publish(). May be called from any
+     * thread.
+     * 
+     * @return the cycle count (long)
+     */
+    public long getPublishedCycles() {
+        return this.publishedCycles;
+    }
+    
+    public long getFrequency() {
+        return this.frequency;
+    }
+    
+    /**
+     * Returns the emulated time since the clock was started
+     * 
+     * @return the emulated time in nanoseconds (long)
+     */
+    public long getEmulatedNanos() {
+        return cyclesToNanos(this.cycles);
+    }
+    
+    public long getEmulatedMillis() {
+        return getEmulatedNanos() / 1000000L;
+    }
+    
+    public long cyclesToNanos(long cycleCount) {
+        return (long)(cycleCount * (1000000000.0 / this.frequency));
+    }
+    
+    public long nanosToCycles(long nanos) {
+        return (long)(nanos * (this.frequency / 1000000000.0));
+    }
+    
+    /**
+     * Sets the speed of the emulation relative to real time (1.0 = real
+     * time, 2.0 = twice as fast)
+     * 
+     * @param speed (double) the speed multiplier
+     */
+    public synchronized void setSpeed(double speed) {
+        if(speed <= 0.0)
+            throw new IllegalArgumentException("Speed must be greater than 0");
+        
+        rebase(this.publishedCycles);
+        this.speed = speed;
+    }
+    
+    public double getSpeed() {
+        return this.speed;
+    }
+    
+    /**
+     * Switches the time warp mode on or off. In time warp mode, throttle()
+     * never waits and a waiting CPU skips directly to the next event.
+     * 
+     * @param timeWarp (boolean) true for unthrottled emulation
+     */
+    public synchronized void setTimeWarp(boolean timeWarp) {
+        rebase(this.publishedCycles);
+        this.timeWarp = timeWarp;
+    }
+    
+    public boolean isTimeWarp() {
+        return this.timeWarp;
+    }
+    
+    /**
+     * Restarts the mapping of wall time to emulated time at the current
+     * cycle, e.g. after the emulation was paused. Must only be called from
+     * the thread that runs the CPU.
+     */
+    public synchronized void rebase() {
+        rebase(this.cycles);
+    }
+    
+    protected void rebase(long cycle) {
+        this.baseCycles = cycle;
+        this.baseWallNanos = System.nanoTime();
+    }
+    
+    /**
+     * Returns the cycle that the emulation should have reached by now
+     * according to the wall clock and the speed
+     * 
+     * @return the cycle (long)
+     */
+    public synchronized long getWallCycle() {
+        if(this.timeWarp) return Long.MAX_VALUE;
+        
+        long wallNanos = System.nanoTime() - this.baseWallNanos;
+        return this.baseCycles + nanosToCycles((long)(wallNanos * this.speed));
+    }
+    
+    /**
+     * Returns the wall time until the emulation should reach a cycle
+     * 
+     * @param cycle (long) the cycle
+     * @return the time in nanoseconds, 0 if the cycle is due already (long)
+     */
+    public synchronized long getWallNanosUntil(long cycle) {
+        if(this.timeWarp) return 0L;
+        
+        long ahead = cycle - getWallCycle();
+        if(ahead <= 0) return 0L;
+        
+        return (long)(cyclesToNanos(ahead) / this.speed);
+    }
+    
+    /**
+     * Parks the calling thread while the emulation is ahead of the wall
+     * clock. Does nothing in time warp mode.
+     */
+    public void throttle() {
+        long nanos = getWallNanosUntil(this.cycles);
+        
+        if(nanos > 0)
+            LockSupport.parkNanos(this, nanos);
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2021 peter.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jemu.micro;
+
+/**
+ * This interface is implemented by CPUs that can wait for an interrupt (e.g.
+ * with a WFI instruction). While the CPU is waiting, runNextOpCode does not
+ * execute anything, so the run loop should rather block in awaitInterrupt
+ * (or advance the emulated time) than keep calling it.
+ * 
+ * @author peter
+ */
+public interface WaitableCPU extends CPU {
+    
+    /**
+     * Returns whether the CPU waits for an interrupt
+     * 
+     * @return true if the CPU is waiting (boolean)
+     */
+    public boolean isWaiting();
+    
+    /**
+     * Blocks the calling thread until an interrupt is pending or the timeout
+     * has passed. Returns at once if the CPU is not waiting.
+     * 
+     * @param timeoutMillis (long) the maximum time to wait in milliseconds
+     * @return true if an interrupt is pending (boolean)
+     * @throws InterruptedException if the thread was interrupted
+     */
+    public boolean awaitInterrupt(long timeoutMillis) throws InterruptedException;
+    
+    /**
+     * Lets the emulated time pass while the CPU is waiting, so that timer
+     * interrupts can arrive. Does not block; a run loop may park for the
+     * returned time (e.g. in awaitInterrupt) before calling it again.
+     * 
+     * @return the wall time until the next emulated event in nanoseconds (long)
+     */
+    public long idle();
+}
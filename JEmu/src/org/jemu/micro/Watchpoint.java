@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2021 peter.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jemu.micro;
+
+/**
+ * This class describes a watchpoint, i.e. an address range that stops the
+ * execution when it is read or written (memory or IO), optionally only if a
+ * given value is read or written.
+ * 
+ * @author peter
+ */
+public class Watchpoint {
+    public static final int WATCH_READ     = 0x01;
+    public static final int WATCH_WRITE    = 0x02;
+    public static final int WATCH_IO_READ  = 0x04;
+    public static final int WATCH_IO_WRITE = 0x08;
+    
+    public static final int WATCH_MEMORY   = WATCH_READ | WATCH_WRITE;
+    public static final int WATCH_IO       = WATCH_IO_READ | WATCH_IO_WRITE;
+    
+    public static final int ANY_VALUE = -1;
+    
+    long lowAddress;
+    long highAddress;
+    int type;
+    int value;
+    boolean enabled;
+    
+    /**
+     * Creates a new instance of Watchpoint for a single address which
+     * triggers on any value
+     * 
+     * @param address (long) the address or port
+     * @param type (int) combination of the WATCH_ flags
+     */
+    public Watchpoint(long address, int type) {
+        this(address, address + 1, type, ANY_VALUE);
+    }
+    
+    /**
+     * Creates a new instance of Watchpoint
+     * 
+     * @param lowAddress (long) the first address or port
+     * @param highAddress (long) the address after the range (exclusive)
+     * @param type (int) combination of the WATCH_ flags
+     * @param value (int) the value (0-255) that must be read/written or ANY_VALUE
+     */
+    public Watchpoint(long lowAddress, long highAddress, int type, int value) {
+        this.lowAddress = lowAddress;
+        this.highAddress = highAddress;
+        this.type = type;
+        this.value = value;
+        this.enabled = true;
+    }
+    
+    /**
+     * Checks whether an access triggers this watchpoint
+     * 
+     * @param accessType (int) the WATCH_ flag of the access
+     * @param address (long) the address or port
+     * @param accessValue (int) the value read or written (0-255)
+     * @return true if the watchpoint triggers (boolean)
+     */
+    public boolean matches(int accessType, long address, int accessValue) {
+        return this.enabled
+                && ((this.type & accessType) != 0)
+                && (address >= this.lowAddress) && (address < this.highAddress)
+                && ((this.value == ANY_VALUE) || (this.value == accessValue));
+    }
+    
+    public long getLowAddress() {
+        return this.lowAddress;
+    }
+    
+    public long getHighAddress() {
+        return this.highAddress;
+    }
+    
+    public int getType() {
+        return this.type;
+    }
+    
+    public int getValue() {
+        return this.value;
+    }
+    
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+    
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+    
+    /**
+     * Returns a short name for an access type
+     * 
+     * @param type (int) the WATCH_ flag
+     * @return the name (String)
+     */
+    public static String getTypeName(int type) {
+        switch (type) {
+            case WATCH_READ:
+                return "read";
+                
+            case WATCH_WRITE:
+                return "write";
+                
+            case WATCH_IO_READ:
+                return "IO read";
+                
+            case WATCH_IO_WRITE:
+                return "IO write";
+                
+            default:
+                return "access";
+        }
+    }
+    
+    @Override
+    public String toString() {
+        String text = getTypeName(this.type) + " $" + Long.toHexString(this.lowAddress);
+        
+        if(this.highAddress > this.lowAddress + 1)
+            text += "-$" + Long.toHexString(this.highAddress - 1);
+        if(this.value != ANY_VALUE)
+            text += " = $" + Integer.toHexString(this.value);
+        
+        return text;
+    }
+}
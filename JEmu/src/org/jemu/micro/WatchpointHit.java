@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2021 peter.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jemu.micro;
+
+/**
+ * This class describes an access that triggered a watchpoint
+ * 
+ * @author peter
+ */
+public class WatchpointHit {
+    public static final int UNKNOWN_VALUE = -1;
+    
+    Watchpoint watchpoint;
+    int type;
+    long programCounter;
+    long address;
+    int oldValue;
+    int newValue;
+    
+    public WatchpointHit(Watchpoint watchpoint, int type, long address, int oldValue, int newValue) {
+        this.watchpoint = watchpoint;
+        this.type = type;
+        this.address = address;
+        this.oldValue = oldValue;
+        this.newValue = newValue;
+        this.programCounter = -1L;
+    }
+    
+    public Watchpoint getWatchpoint() {
+        return this.watchpoint;
+    }
+    
+    /**
+     * Returns the kind of access (one of the Watchpoint.WATCH_ flags)
+     * 
+     * @return the access type (int)
+     */
+    public int getType() {
+        return this.type;
+    }
+    
+    /**
+     * Returns the address of the instruction that did the access
+     * 
+     * @return the program counter (long)
+     */
+    public long getProgramCounter() {
+        return this.programCounter;
+    }
+    
+    public void setProgramCounter(long programCounter) {
+        this.programCounter = programCounter;
+    }
+    
+    public long getAddress() {
+        return this.address;
+    }
+    
+    /**
+     * Returns the value before the access (for reads the value read, for
+     * IO writes UNKNOWN_VALUE because reading a port may have side effects)
+     * 
+     * @return the old value (int)
+     */
+    public int getOldValue() {
+        return this.oldValue;
+    }
+    
+    /**
+     * Returns the value after the access (for reads the value read)
+     * 
+     * @return the new value (int)
+     */
+    public int getNewValue() {
+        return this.newValue;
+    }
+    
+    @Override
+    public String toString() {
+        String text = Watchpoint.getTypeName(this.type) + " at $" + Long.toHexString(this.address)
+                + " by PC $" + Long.toHexString(this.programCounter);
+        
+        if(this.oldValue != UNKNOWN_VALUE)
+            text += ", old $" + Integer.toHexString(this.oldValue);
+        text += ", new $" + Integer.toHexString(this.newValue);
+        
+        return text;
+    }
+}
@@ -0,0 +1,404 @@
+/*
+ * Copyright (C) 2021 peter.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jemu.micro;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class manages the watchpoints of a CPU. Memory watchpoints are
+ * installed by replacing the entries of the watched pages in the page table
+ * of the MemoryBus with a checking wrapper; all other pages keep their
+ * normal, unchecked path. IO watchpoints wrap the IO blocks of the CPU in the
+ * same way.
+ * 
+ * The first access that triggers a watchpoint is kept as hit until it is
+ * cleared. The debugger fills in the address of the instruction that did the
+ * access when the instruction is finished, so execution stops right after
+ * the accessing instruction.
+ * 
+ * @author peter
+ */
+public class WatchpointSet {
+    
+    /**
+     * This class wraps the memory of a watched page
+     */
+    public class WatchedMemory implements Memory {
+        Memory memory;
+        long pageOffset;
+        
+        public WatchedMemory(Memory memory, long pageOffset) {
+            this.memory = memory;
+            this.pageOffset = pageOffset;
+        }
+        
+        public Memory getMemory() {
+            return this.memory;
+        }
+
+        @Override
+        public long getLowAddress() {
+            return this.memory.getLowAddress();
+        }
+
+        @Override
+        public long getHighAddress() {
+            return this.memory.getHighAddress();
+        }
+
+        @Override
+        public boolean isReadable() {
+            return this.memory.isReadable();
+        }
+
+        @Override
+        public boolean isWriteable() {
+            return this.memory.isWriteable();
+        }
+
+        @Override
+        public boolean isLittleEndian() {
+            return this.memory.isLittleEndian();
+        }
+
+        @Override
+        public int getBitSize() {
+            return this.memory.getBitSize();
+        }
+
+        @Override
+        public int getContent(long address) throws MemoryException {
+            return Byte.toUnsignedInt(getByte(address));
+        }
+
+        @Override
+        public byte getByte(long address) throws MemoryException {
+            byte value = this.memory.getByte(address);
+            int unsigned = Byte.toUnsignedInt(value);
+            
+            check(Watchpoint.WATCH_READ, address - this.pageOffset, unsigned, unsigned);
+            return value;
+        }
+
+        @Override
+        public short getShort(long address) throws MemoryException {
+            return this.memory.getShort(address);
+        }
+
+        @Override
+        public int getInt(long address) throws MemoryException {
+            return this.memory.getInt(address);
+        }
+
+        @Override
+        public long getLong(long address) throws MemoryException {
+            return this.memory.getLong(address);
+        }
+
+        @Override
+        public void setContent(long address, int value) throws MemoryException {
+            setByte(address, (byte)value);
+        }
+
+        @Override
+        public void setByte(long address, byte value) throws MemoryException {
+            int oldValue = Byte.toUnsignedInt(this.memory.getByte(address));
+            
+            this.memory.setByte(address, value);
+            check(Watchpoint.WATCH_WRITE, address - this.pageOffset, oldValue, Byte.toUnsignedInt(value));
+        }
+
+        @Override
+        public void setShort(long address, short value) throws MemoryException {
+            this.memory.setShort(address, value);
+        }
+
+        @Override
+        public void setInt(long address, int value) throws MemoryException {
+            this.memory.setInt(address, value);
+        }
+
+        @Override
+        public void setLong(long address, long value) throws MemoryException {
+            this.memory.setLong(address, value);
+        }
+    }
+    
+    /**
+     * This class wraps an IO block of the CPU
+     */
+    public class WatchedIO implements IO {
+        IO io;
+        
+        public WatchedIO(IO io) {
+            this.io = io;
+        }
+        
+        public IO getIO() {
+            return this.io;
+        }
+
+        @Override
+        public long getLowAddress() {
+            return this.io.getLowAddress();
+        }
+
+        @Override
+        public long getHighAddress() {
+            return this.io.getHighAddress();
+        }
+
+        @Override
+        public boolean isReadable() {
+            return this.io.isReadable();
+        }
+
+        @Override
+        public boolean isWriteable() {
+            return this.io.isWriteable();
+        }
+
+        @Override
+        public boolean isLittleEndian() {
+            return this.io.isLittleEndian();
+        }
+
+        @Override
+        public int getBitSize() {
+            return this.io.getBitSize();
+        }
+
+        @Override
+        public int getContent(long address) throws MemoryException {
+            return Byte.toUnsignedInt(getByte(address));
+        }
+
+        @Override
+        public byte getByte(long address) throws MemoryException {
+            byte value = this.io.getByte(address);
+            int unsigned = Byte.toUnsignedInt(value);
+            
+            check(Watchpoint.WATCH_IO_READ, address, unsigned, unsigned);
+            return value;
+        }
+
+        @Override
+        public short getShort(long address) throws MemoryException {
+            return this.io.getShort(address);
+        }
+
+        @Override
+        public int getInt(long address) throws MemoryException {
+            return this.io.getInt(address);
+        }
+
+        @Override
+        public long getLong(long address) throws MemoryException {
+            return this.io.getLong(address);
+        }
+
+        @Override
+        public void setContent(long address, int value) throws MemoryException {
+            setByte(address, (byte)value);
+        }
+
+        @Override
+        public void setByte(long address, byte value) throws MemoryException {
+            this.io.setByte(address, value);
+            check(Watchpoint.WATCH_IO_WRITE, address, WatchpointHit.UNKNOWN_VALUE, Byte.toUnsignedInt(value));
+        }
+
+        @Override
+        public void setShort(long address, short value) throws MemoryException {
+            this.io.setShort(address, value);
+        }
+
+        @Override
+        public void setInt(long address, int value) throws MemoryException {
+            this.io.setInt(address, value);
+        }
+
+        @Override
+        public void setLong(long address, long value) throws MemoryException {
+            this.io.setLong(address, value);
+        }
+    }
+    
+    List<Watchpoint> watchpoints = new ArrayList<>();
+    MemoryBus memoryBus;
+    List<IO> IOBlocks;
+    WatchpointHit hit;
+    
+    public WatchpointSet() {
+    }
+    
+    /**
+     * Installs the watchpoints on the memory bus and the IO blocks of a CPU
+     * 
+     * @param memoryBus (MemoryBus) the memory bus or null
+     * @param IOBlocks (List&lt;IO&gt;) the IO blocks or null
+     */
+    public void install(MemoryBus memoryBus, List<IO> IOBlocks) {
+        uninstall();
+        
+        this.memoryBus = memoryBus;
+        this.IOBlocks = IOBlocks;
+        
+        if(this.memoryBus != null)
+            this.memoryBus.setWatchpointSet(this);
+        update();
+    }
+    
+    /**
+     * Removes all wrappers from the memory bus and the IO blocks
+     */
+    public void uninstall() {
+        if(this.memoryBus != null)
+            this.memoryBus.setWatchpointSet(null);
+        
+        if(this.IOBlocks != null) {
+            for(int i=0; i<this.IOBlocks.size(); i++) {
+                if(this.IOBlocks.get(i) instanceof WatchedIO)
+                    this.IOBlocks.set(i, ((WatchedIO)this.IOBlocks.get(i)).getIO());
+            }
+        }
+        
+        this.memoryBus = null;
+        this.IOBlocks = null;
+    }
+    
+    public void add(Watchpoint watchpoint) {
+        this.watchpoints.add(watchpoint);
+        update();
+    }
+    
+    public void remove(Watchpoint watchpoint) {
+        this.watchpoints.remove(watchpoint);
+        update();
+    }
+    
+    public void clear() {
+        this.watchpoints.clear();
+        update();
+    }
+    
+    public List<Watchpoint> getWatchpoints() {
+        return this.watchpoints;
+    }
+    
+    /**
+     * Re-installs the wrappers, e.g. after a watchpoint has been changed
+     */
+    public void update() {
+        if(this.memoryBus != null)
+            this.memoryBus.updatePageTable();
+        
+        if(this.IOBlocks != null) {
+            boolean watchIO = false;
+            for(Watchpoint watchpoint : this.watchpoints) {
+                if((watchpoint.getType() & Watchpoint.WATCH_IO) != 0)
+                    watchIO = true;
+            }
+            
+            for(int i=0; i<this.IOBlocks.size(); i++) {
+                IO io = this.IOBlocks.get(i);
+                
+                if(watchIO && !(io instanceof WatchedIO))
+                    this.IOBlocks.set(i, new WatchedIO(io));
+                else if(!watchIO && (io instanceof WatchedIO))
+                    this.IOBlocks.set(i, ((WatchedIO)io).getIO());
+            }
+        }
+    }
+    
+    /**
+     * Wraps all pages of a page table that are covered by a memory
+     * watchpoint and unwraps all others. Called by the MemoryBus whenever its
+     * page table changes.
+     * 
+     * @param pageMemory (Memory[]) the memory per page
+     * @param pageOffset (long[]) the address offset per page
+     * @param pageShift (int) the page size as a power of 2
+     */
+    protected void wrapPages(Memory[] pageMemory, long[] pageOffset, int pageShift) {
+        boolean[] watched = new boolean[pageMemory.length];
+        
+        for(Watchpoint watchpoint : this.watchpoints) {
+            if((watchpoint.getType() & Watchpoint.WATCH_MEMORY) == 0) continue;
+            
+            long low = Math.max(0L, watchpoint.getLowAddress());
+            long high = Math.min((long)pageMemory.length << pageShift, watchpoint.getHighAddress());
+            for(long page = low >>> pageShift; (page << pageShift) < high; page++) {
+                watched[(int)page] = true;
+            }
+        }
+        
+        for(int page=0; page<pageMemory.length; page++) {
+            Memory memory = pageMemory[page];
+            
+            if(watched[page] && (memory != null) && !(memory instanceof WatchedMemory))
+                pageMemory[page] = new WatchedMemory(memory, pageOffset[page]);
+            else if(!watched[page] && (memory instanceof WatchedMemory))
+                pageMemory[page] = ((WatchedMemory)memory).getMemory();
+        }
+    }
+    
+    /**
+     * Checks an access against all watchpoints and records the first hit
+     * 
+     * @param type (int) the WATCH_ flag of the access
+     * @param address (long) the address or port
+     * @param oldValue (int) the value before the access
+     * @param newValue (int) the value after the access
+     */
+    protected void check(int type, long address, int oldValue, int newValue) {
+        if(this.hit != null) return;
+        
+        for(Watchpoint watchpoint : this.watchpoints) {
+            if(watchpoint.matches(type, address, newValue)) {
+                this.hit = new WatchpointHit(watchpoint, type, address, oldValue, newValue);
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Called by the debugger after each instruction; a hit of this
+     * instruction gets the address of the instruction.
+     * 
+     * @param programCounter (long) the address of the finished instruction
+     */
+    public void completeInstruction(long programCounter) {
+        if((this.hit != null) && (this.hit.getProgramCounter() < 0))
+            this.hit.setProgramCounter(programCounter);
+    }
+    
+    public boolean isHit() {
+        return this.hit != null;
+    }
+    
+    public WatchpointHit getHit() {
+        return this.hit;
+    }
+    
+    public void clearHit() {
+        this.hit = null;
+    }
+}
@@ -27,7 +27,7 @@ import java.util.List;
  * 
  * @author peter
  */
-public class Z80 implements CPU {
+public class Z80 implements TraceableCPU, ProfilableCPU {
     public static byte FLAG_S = (byte)0x80;
     public static byte FLAG_Z = (byte)0x40;
     public static byte FLAG_H = (byte)0x10;
@@ -38,6 +38,34 @@ public class Z80 implements CPU {
     public static byte INT_MODE_0 = (byte)0x00;
     public static byte INT_MODE_1 = (byte)0x01;
     public static byte INT_MODE_2 = (byte)0x02;
+    public static final long ADDRESS_SPACE_SIZE = 0x10000L;
+    public static final String TRACE_NAME = "Z80";
+    
+    static final ExecutionTracer.Field[] TRACE_FIELDS = {
+        new ExecutionTracer.Field("A", 0, 56, 8),
+        new ExecutionTracer.Field("F", 0, 48, 8),
+        new ExecutionTracer.Field("B", 0, 40, 8),
+        new ExecutionTracer.Field("C", 0, 32, 8),
+        new ExecutionTracer.Field("D", 0, 24, 8),
+        new ExecutionTracer.Field("E", 0, 16, 8),
+        new ExecutionTracer.Field("H", 0, 8, 8),
+        new ExecutionTracer.Field("L", 0, 0, 8),
+        new ExecutionTracer.Field("A'", 1, 56, 8),
+        new ExecutionTracer.Field("F'", 1, 48, 8),
+        new ExecutionTracer.Field("B'", 1, 40, 8),
+        new ExecutionTracer.Field("C'", 1, 32, 8),
+        new ExecutionTracer.Field("D'", 1, 24, 8),
+        new ExecutionTracer.Field("E'", 1, 16, 8),
+        new ExecutionTracer.Field("H'", 1, 8, 8),
+        new ExecutionTracer.Field("L'", 1, 0, 8),
+        new ExecutionTracer.Field("IX", 2, 32, 16),
+        new ExecutionTracer.Field("IY", 2, 16, 16),
+        new ExecutionTracer.Field("SP", 2, 0, 16),
+        new ExecutionTracer.Field("I", 3, 24, 8),
+        new ExecutionTracer.Field("R", 3, 16, 8),
+        new ExecutionTracer.Field("IM", 3, 8, 8),
+        new ExecutionTracer.Field("IFF", 3, 0, 1)
+    };
     
     byte regA, regF, regB, regC, regD, regE, regH, regL;
     byte regA2, regF2, regB2, regC2, regD2, regE2, regH2, regL2;
@@ -45,12 +73,16 @@ public class Z80 implements CPU {
     short regIX, regIY, regSP, regPC;
     List<Memory> memoryBlocks;
     List<IO> IOBlocks;
+    MemoryBus memoryBus;
     
     byte intMode;
     boolean intReq;
     boolean interruptsEnabled;
     byte intReqNumber;
     
+    ExecutionTracer tracer;
+    CodeProfiler profiler;
+    
     public Z80() {
         // Initialize the processor by setting all register to 0
         // 8 bit
@@ -84,6 +116,10 @@ public class Z80 implements CPU {
         this.intReqNumber = 0;
         this.interruptsEnabled = true;
         this.intMode = INT_MODE_0;
+        
+        this.memoryBlocks = new ArrayList<>();
+        this.IOBlocks = new ArrayList<>();
+        this.memoryBus = new MemoryBus(this.memoryBlocks, ADDRESS_SPACE_SIZE);
     }
     
     public Z80(Memory memoryBlock, IO IOBlock) {
@@ -94,12 +130,34 @@ public class Z80 implements CPU {
         
         this.memoryBlocks.add(memoryBlock);
         this.IOBlocks.add(IOBlock);
+        this.memoryBus = new MemoryBus(this.memoryBlocks, ADDRESS_SPACE_SIZE);
     }
     
     public Z80(List<Memory> memoryBlocks, List<IO> IOBlocks) {
         this();
         this.memoryBlocks = memoryBlocks;
         this.IOBlocks = IOBlocks;
+        this.memoryBus = new MemoryBus(memoryBlocks, ADDRESS_SPACE_SIZE);
+    }
+    
+    /**
+     * Returns the memory bus that decodes all memory accesses of this CPU.
+     * Memory blocks added to the bus later on are visible to the CPU at once.
+     * 
+     * @return the memory bus (MemoryBus)
+     */
+    public MemoryBus getMemoryBus() {
+        return this.memoryBus;
+    }
+    
+    /**
+     * Replaces the memory bus, e.g. by a ProfilingMemoryBus that shares the
+     * page table of the current bus
+     * 
+     * @param memoryBus (MemoryBus) the new memory bus
+     */
+    public void setMemoryBus(MemoryBus memoryBus) {
+        this.memoryBus = memoryBus;
     }
     
     /**
@@ -110,21 +168,7 @@ public class Z80 implements CPU {
      * @throws MemoryException if the address is not in the memory range
      */
     protected void writeMemory8(long address, byte value) throws MemoryException {
-        Iterator<Memory> memIterator = memoryBlocks.iterator();
-        
-        while(memIterator.hasNext()) {
-            Memory mem = memIterator.next();
-            
-            try {
-                mem.setByte(address, value);
-                return;
-            }
-            catch (MemoryException ex) {
-                // Try next memory block
-            }
-        }
-        
-        throw new MemoryException("No memory at address " + Long.toHexString(address));
+        this.memoryBus.writeByte(address, value);
     }
     
     /**
@@ -150,20 +194,7 @@ public class Z80 implements CPU {
      * @throws MemoryException if the address is not in the memory range
      */
     protected byte readMemory8(long address) throws MemoryException {
-        Iterator<Memory> memIterator = memoryBlocks.iterator();
-        
-        while(memIterator.hasNext()) {
-            Memory mem = memIterator.next();
-            
-            try {
-                return mem.getByte(address);
-            }
-            catch (MemoryException ex) {
-                // Try next memory block
-            }
-        }
-        
-        throw new MemoryException("No memory at address " + Long.toHexString(address));
+        return this.memoryBus.readByte(address);
     }
     
     /**
@@ -1178,6 +1209,7 @@ public class Z80 implements CPU {
         this.regSP++;
 
         this.regPC = (short)((high << 8) + low);
+        if(this.profiler != null) this.profiler.ret();
     }
     
     /**
@@ -1194,6 +1226,7 @@ public class Z80 implements CPU {
             this.regSP++;
             
             this.regPC = (short)((high << 8) + low);
+            if(this.profiler != null) this.profiler.ret();
         }
         else {
             this.regPC++;
@@ -1214,6 +1247,7 @@ public class Z80 implements CPU {
             this.regSP++;
             
             this.regPC = (short)((high << 8) + low);
+            if(this.profiler != null) this.profiler.ret();
         }
         else {
             this.regPC++;
@@ -1234,6 +1268,7 @@ public class Z80 implements CPU {
             this.regSP++;
             
             this.regPC = (short)((high << 8) + low);
+            if(this.profiler != null) this.profiler.ret();
         }
         else {
             this.regPC++;
@@ -1254,6 +1289,7 @@ public class Z80 implements CPU {
             this.regSP++;
             
             this.regPC = (short)((high << 8) + low);
+            if(this.profiler != null) this.profiler.ret();
         }
         else {
             this.regPC++;
@@ -1274,6 +1310,7 @@ public class Z80 implements CPU {
             this.regSP++;
             
             this.regPC = (short)((high << 8) + low);
+            if(this.profiler != null) this.profiler.ret();
         }
         else {
             this.regPC++;
@@ -1294,6 +1331,7 @@ public class Z80 implements CPU {
             this.regSP++;
             
             this.regPC = (short)((high << 8) + low);
+            if(this.profiler != null) this.profiler.ret();
         }
         else {
             this.regPC++;
@@ -1314,6 +1352,7 @@ public class Z80 implements CPU {
             this.regSP++;
             
             this.regPC = (short)((high << 8) + low);
+            if(this.profiler != null) this.profiler.ret();
         }
         else {
             this.regPC++;
@@ -1334,6 +1373,7 @@ public class Z80 implements CPU {
             this.regSP++;
             
             this.regPC = (short)((high << 8) + low);
+            if(this.profiler != null) this.profiler.ret();
         }
         else {
             this.regPC++;
@@ -1351,6 +1391,7 @@ public class Z80 implements CPU {
         this.regSP-=2;
         this.writeMemory16(Short.toUnsignedLong(this.regSP), this.regPC);
         this.regPC = callAddress;
+        if(this.profiler != null) this.profiler.call(Short.toUnsignedInt(callAddress));
     }
     
     /**
@@ -1365,6 +1406,7 @@ public class Z80 implements CPU {
             this.regSP-=2;
             this.writeMemory16(Short.toUnsignedLong(this.regSP), this.regPC);
             this.regPC = callAddress;
+            if(this.profiler != null) this.profiler.call(Short.toUnsignedInt(callAddress));
         }
         else {
             this.regPC += 3;
@@ -1383,6 +1425,7 @@ public class Z80 implements CPU {
             this.regSP-=2;
             this.writeMemory16(Short.toUnsignedLong(this.regSP), this.regPC);
             this.regPC = callAddress;
+            if(this.profiler != null) this.profiler.call(Short.toUnsignedInt(callAddress));
         }
         else {
             this.regPC += 3;
@@ -1401,6 +1444,7 @@ public class Z80 implements CPU {
             this.regSP-=2;
             this.writeMemory16(Short.toUnsignedLong(this.regSP), this.regPC);
             this.regPC = callAddress;
+            if(this.profiler != null) this.profiler.call(Short.toUnsignedInt(callAddress));
         }
         else {
             this.regPC += 3;
@@ -1419,6 +1463,7 @@ public class Z80 implements CPU {
             this.regSP-=2;
             this.writeMemory16(Short.toUnsignedLong(this.regSP), this.regPC);
             this.regPC = callAddress;
+            if(this.profiler != null) this.profiler.call(Short.toUnsignedInt(callAddress));
         }
         else {
             this.regPC += 3;
@@ -1437,6 +1482,7 @@ public class Z80 implements CPU {
             this.regSP-=2;
             this.writeMemory16(Short.toUnsignedLong(this.regSP), this.regPC);
             this.regPC = callAddress;
+            if(this.profiler != null) this.profiler.call(Short.toUnsignedInt(callAddress));
         }
         else {
             this.regPC += 3;
@@ -1455,6 +1501,7 @@ public class Z80 implements CPU {
             this.regSP-=2;
             this.writeMemory16(Short.toUnsignedLong(this.regSP), this.regPC);
             this.regPC = callAddress;
+            if(this.profiler != null) this.profiler.call(Short.toUnsignedInt(callAddress));
         }
         else {
             this.regPC += 3;
@@ -1473,6 +1520,7 @@ public class Z80 implements CPU {
             this.regSP-=2;
             this.writeMemory16(Short.toUnsignedLong(this.regSP), this.regPC);
             this.regPC = callAddress;
+            if(this.profiler != null) this.profiler.call(Short.toUnsignedInt(callAddress));
         }
         else {
             this.regPC += 3;
@@ -1491,6 +1539,7 @@ public class Z80 implements CPU {
             this.regSP-=2;
             this.writeMemory16(Short.toUnsignedLong(this.regSP), this.regPC);
             this.regPC = callAddress;
+            if(this.profiler != null) this.profiler.call(Short.toUnsignedInt(callAddress));
         }
         else {
             this.regPC += 3;
@@ -1508,6 +1557,7 @@ public class Z80 implements CPU {
         this.regSP-=2;
         this.writeMemory16(Short.toUnsignedLong(this.regSP), this.regPC);
         this.regPC = (short)((Byte.toUnsignedInt(low)));
+        if(this.profiler != null) this.profiler.call(Byte.toUnsignedInt(low));
     }
     
     /**
@@ -2732,6 +2782,7 @@ public class Z80 implements CPU {
                 // TODO: Code Interupt masking!
                 this.regPC = (short)(this.readMemory16(Short.toUnsignedLong(this.regSP)) - 1);   // -1 because this it gets added by 1 in the main routine!
                 this.regSP+=2;
+                if(this.profiler != null) this.profiler.returnFromInterrupt();
                 break;
                 
             case 0x46:  // IM 0
@@ -2764,6 +2815,7 @@ public class Z80 implements CPU {
                 // TODO: Code Interupt masking!
                 this.regPC = (short)(this.readMemory16(Short.toUnsignedLong(this.regSP)) - 1);   // -1 because this it gets added by 1 in the main routine!
                 this.regSP+=2;
+                if(this.profiler != null) this.profiler.returnFromInterrupt();
                 break;
                 
             case 0x4F:  // LD R, A
@@ -3178,749 +3230,833 @@ public class Z80 implements CPU {
      */
     @Override
     public int runNextOpCode() throws MemoryException, OpCodeException {
-        Iterator<Memory> memIterator = memoryBlocks.iterator();
+        CodeProfiler profiler = this.profiler;
+        if(profiler == null) return (this.tracer == null) ? executeNextOpCode() : runTracedOpCode();
         
-        while(memIterator.hasNext()) {
-            Memory mem = memIterator.next();
-            
-            try {
-                byte opCode = mem.getByte(this.regPC);
-                byte opCode2, opCode3, opCode4;
-                short nn;
-                int address;
-                
-                switch (Byte.toUnsignedInt(opCode)) {
-                    case 0x00: // NOP
-                        this.regPC++;
-                        break;
-                        
-                    case 0x01:  // LD BC, nn
-                    case 0x11:  // LD DE, nn
-                    case 0x21:  // LD HL, nn
-                    case 0x31:  // LD SP, nn
-                        this.setRegister16((byte)((opCode & 0x30) >> 4),this.readMemory16(this.regPC + 1));
-                        this.regPC += 3;
-                        break;
-                        
-                    case 0x02:  // LD (BC), A
-                        this.writeMemory8((long)(Short.toUnsignedInt(this.getRegister16((byte)0))), this.opLD8(this.getRegister8((byte)0)));
-                        this.regPC++;
-                        break;
-                        
-                    case 0x03:  // INC BC
-                    case 0x13:  // INC DE
-                    case 0x23:  // INC HL
-                    case 0x33:  // INC SP
-                        this.setRegister16((byte)((opCode & 0x30) >> 4), this.opINC16(this.getRegister16((byte)((opCode & 0x30) >> 4))));
-                        this.regPC++;
-                        break;
-                        
-                    case 0x04:  // INC B,   Flags changed: SZHPN
-                    case 0x0C:  // INC C,   Flags changed: SZHPN
-                    case 0x14:  // INC D,   Flags changed: SZHPN
-                    case 0x1C:  // INC E,   Flags changed: SZHPN
-                    case 0x24:  // INC H,   Flags changed: SZHPN
-                    case 0x2C:  // INC L,   Flags changed: SZHPN
-                    case 0x3C:  // INC A,   Flags changed: SZHPN
-                        this.setRegister8((byte)((opCode & 0x38) >> 3), opINC8(this.getRegister8((byte)((opCode & 0x38) >> 3))));
-                        this.regPC++;
-                        break;
-                        
-                    case 0x05:  // DEC B,   Flags changed: SZHPN
-                    case 0x0D:  // DEC C,   Flags changed: SZHPN
-                    case 0x15:  // DEC D,   Flags changed: SZHPN
-                    case 0x1D:  // DEC E,   Flags changed: SZHPN
-                    case 0x25:  // DEC H,   Flags changed: SZHPN
-                    case 0x2D:  // DEC L,   Flags changed: SZHPN
-                    case 0x3D:  // DEC A,   Flags changed: SZHPN
-                        this.setRegister8((byte)((opCode & 0x38) >> 3), opDEC8(this.getRegister8((byte)((opCode & 0x38) >> 3))));
-                        this.regPC++;
-                        break;
-                        
-                    case 0x06:  // LD B, n
-                    case 0x0E:  // LD C, n
-                    case 0x16:  // LD D, n
-                    case 0x1E:  // LD E, n
-                    case 0x26:  // LD H, n
-                    case 0x2E:  // LD L, n
-                    case 0x3E:  // LD A, n
-                        this.setRegister8((byte)((opCode & 0x38) >> 3), opLD8(this.readMemory8(this.regPC+1)));
-                        this.regPC+=2;
-                        break;
-                        
-                    case 0x07:  // RLCA
-                        this.opRLCA();
-                        this.regPC++;
-                        break;
-                        
-                    case 0x08:  // EX AF, AF'
-                        this.opEX_AF_AF2();
-                        this.regPC++;
-                        break;
-                        
-                    case 0x09:  // ADD HL, BC,  Flags changed: HNC
-                    case 0x19:  // ADD HL, DE,  Flags changed: HNC
-                    case 0x29:  // ADD HL, HL,  Flags changed: HNC
-                    case 0x39:  // ADD HL, SP,  Flags changed: HNC
-                        this.setRegister16((byte)2, this.opADD16(this.getRegister16((byte)2), this.getRegister16((byte)((opCode & 0x30) >> 4))));
-                        this.regPC++;
-                        break;
-                        
-                    case 0x0A:  // LD A, (BC)
-                    case 0x1A:  // LD A, (DE)
-                        this.setRegister8((byte)7, this.opLD8(this.readMemory8(Short.toUnsignedLong(this.getRegister16((byte)((opCode & 0x30) >> 4))))));
-                        this.regPC++;
-                        break;
-                        
-                    case 0x0B:  // DEC BC
-                    case 0x1B:  // DEC DE
-                    case 0x2B:  // DEC HL
-                    case 0x3B:  // DEC SP
-                        this.setRegister16((byte)((opCode & 0x30) >> 4), this.opDEC16(this.getRegister16((byte)((opCode & 0x30) >> 4))));
-                        this.regPC++;
-                        break;
-                        
-                    case 0x0F:  // RRCA
-                        this.opRRCA();
-                        this.regPC++;
-                        break;
-                        
-                    case 0x10:  // DJNZ n
-                        this.opDJNZ(this.readMemory8(this.regPC+1));
-                        this.regPC+=2;
-                        break;
-                        
-                    case 0x12:  // LD (DE), A
-                        this.writeMemory8(this.getRegister16((byte)1), this.opLD8(this.getRegister8((byte)7)));
-                        this.regPC++;
-                        break;
-                        
-                    case 0x17:  // RLA
-                        this.opRLA();
-                        this.regPC++;
-                        break;
-                        
-                    case 0x18:  // JR n
-                        this.opJR(this.readMemory8(this.regPC+1));
-                        this.regPC+=2;
-                        break;
-                        
-                    case 0x1F:  // RRA
-                        this.opRRA();
-                        this.regPC++;
-                        break;
-                        
-                    case 0x20:  // JRNZ n
-                        this.opJRNZ(this.readMemory8(this.regPC+1));
-                        this.regPC+=2;
-                        break;
-                        
-                    case 0x22:  // LD (nn), HL
-                        this.writeMemory16(Short.toUnsignedLong(this.readMemory16(this.regPC+1)), this.getRegister16((byte)0x02));
-                        this.regPC+=3;
-                        break;
-                        
-                    case 0x27:  // DAA
-                        this.opDAA();
-                        this.regPC++;
-                        break;
-                        
-                    case 0x28:  // JRZ n
-                        this.opJRZ(this.readMemory8(this.regPC+1));
-                        this.regPC+=2;
-                        break;
-                        
-                    case 0x2A:  // LD HL, (nn)
-                        this.setRegister16((byte)0x02, this.opLD16(this.readMemory16(this.readMemory16(this.regPC+1))));
-                        this.regPC+=3;
-                        break;
-                        
-                    case 0x2F:  // CPL
-                        this.opCPL();
-                        this.regPC++;
-                        break;
-                        
-                    case 0x30:  // JRNC n
-                        this.opJRNC(this.readMemory8(this.regPC+1));
-                        this.regPC+=2;
-                        break;
-                        
-                    case 0x32:  // LD (nn), A
-                        this.writeMemory8(Short.toUnsignedLong(this.readMemory16(this.regPC+1)), this.getRegister8((byte)0x07));
-                        this.regPC+=3;
-                        break;
-                        
-                    case 0x34:  // INC (HL)
-                        this.writeMemory8(Short.toUnsignedLong(this.getRegister16((byte)0x02)), this.opINC8(this.readMemory8(Short.toUnsignedLong(this.getRegister16((byte)0x02)))));
-                        this.regPC++;
-                        break;
-                        
-                    case 0x35:  // DEC (HL)
-                        this.writeMemory8(Short.toUnsignedLong(this.getRegister16((byte)0x02)), this.opDEC8(this.readMemory8(Short.toUnsignedLong(this.getRegister16((byte)0x02)))));
-                        this.regPC++;
-                        break;
-                        
-                    case 0x36:  // LD (HL), n
-                        this.writeMemory8(Short.toUnsignedLong(this.getRegister16((byte)0x02)), this.opLD8(this.readMemory8(this.regPC+1)));
-                        this.regPC+=2;
-                        break;
-                        
-                    case 0x37:  // SCF
-                        this.opSCF();
-                        this.regPC++;
-                        break;
-                        
-                    case 0x38:  // JRC n
-                        this.opJRC(this.readMemory8(this.regPC+1));
-                        this.regPC+=2;
-                        break;
-                        
-                    case 0x3A:  // LD A, (nn)
-                        this.setRegister8((byte)0x07, this.opLD8(this.readMemory8(Short.toUnsignedLong(this.readMemory16(this.regPC+1)))));
-                        this.regPC+=3;
-                        break;
-                        
-                    case 0x3F:  // CCF
-                        this.opCCF();
-                        this.regPC++;
-                        break;
-                        
-                    case 0x40:  // LD B, B'
-                    case 0x41:  // LD B, C'
-                    case 0x42:  // LD B, D'
-                    case 0x43:  // LD B, E'
-                    case 0x44:  // LD B, H'
-                    case 0x45:  // LD B, L'
-                    case 0x47:  // LD B, A'
-                    case 0x48:  // LD C, B'
-                    case 0x49:  // LD C, C'
-                    case 0x4A:  // LD C, D'
-                    case 0x4B:  // LD C, E'
-                    case 0x4C:  // LD C, H'
-                    case 0x4D:  // LD C, L'
-                    case 0x4F:  // LD C, A'
-                    case 0x50:  // LD D, B'
-                    case 0x51:  // LD D, C'
-                    case 0x52:  // LD D, D'
-                    case 0x53:  // LD D, E'
-                    case 0x54:  // LD D, H'
-                    case 0x55:  // LD D, L'
-                    case 0x57:  // LD D, A'
-                    case 0x58:  // LD E, B'
-                    case 0x59:  // LD E, C'
-                    case 0x5A:  // LD E, D'
-                    case 0x5B:  // LD E, E'
-                    case 0x5C:  // LD E, H'
-                    case 0x5D:  // LD E, L'
-                    case 0x5F:  // LD E, A'
-                    case 0x60:  // LD H, B'
-                    case 0x61:  // LD H, C'
-                    case 0x62:  // LD H, D'
-                    case 0x63:  // LD H, E'
-                    case 0x64:  // LD H, H'
-                    case 0x65:  // LD H, L'
-                    case 0x67:  // LD H, A'
-                    case 0x68:  // LD L, B'
-                    case 0x69:  // LD L, C'
-                    case 0x6A:  // LD L, D'
-                    case 0x6B:  // LD L, E'
-                    case 0x6C:  // LD L, H'
-                    case 0x6D:  // LD L, L'
-                    case 0x6F:  // LD L, A'
-                    case 0x78:  // LD A, B'
-                    case 0x79:  // LD A, C'
-                    case 0x7A:  // LD A, D'
-                    case 0x7B:  // LD A, E'
-                    case 0x7C:  // LD A, H'
-                    case 0x7D:  // LD A, L'
-                    case 0x7F:  // LD A, A'
-                        this.setRegister8((byte)((opCode & 0x38) >> 3), this.opLD8(this.getRegister8((byte)((opCode & 0x07) | 0x08))));
-                        this.regPC++;
-                        break;
-                        
-                    case 0x70:  // LD (HL), B
-                    case 0x71:  // LD (HL), C
-                    case 0x72:  // LD (HL), D
-                    case 0x73:  // LD (HL), E
-                    case 0x74:  // LD (HL), H
-                    case 0x75:  // LD (HL), L
-                    case 0x77:  // LD (HL), A
-                        this.writeMemory8(Short.toUnsignedLong(this.getRegister16((byte)0x02)), this.getRegister8((byte)(opCode & 0x07)));
-                        
-                    case 0x46:  // LD B, (HL)
-                    case 0x4E:  // LD C, (HL)
-                    case 0x56:  // LD D, (HL)
-                    case 0x5E:  // LD E, (HL)
-                    case 0x66:  // LD H, (HL)
-                    case 0x6E:  // LD L, (HL)
-                    case 0x7E:  // LD A, (HL)
-                        this.setRegister8((byte)((opCode & 0x38) >> 3), this.opLD8(this.readMemory8(Short.toUnsignedLong(this.getRegister16((byte)0x02)))));
-                        this.regPC++;
-                        break;
-                        
-                    case 0x76:  // HALT
-                        this.opHALT();
-                        this.regPC++;
-                        break;
-                        
-                    case 0x80:  // ADD A, B
-                    case 0x81:  // ADD A, C
-                    case 0x82:  // ADD A, D
-                    case 0x83:  // ADD A, E
-                    case 0x84:  // ADD A, H
-                    case 0x85:  // ADD A, L
-                    case 0x87:  // ADD A, A
-                        this.setRegister8((byte)0x07, this.opADD8(this.getRegister8((byte)0x07), this.getRegister8((byte)((opCode & 0x07)))));
-                        this.regPC++;
-                        break;
-                        
-                    case 0x86:  // ADD A, (HL)
-                        this.setRegister8((byte)0x07, this.opADD8(this.getRegister8((byte)0x07), this.readMemory8(Short.toUnsignedLong(this.getRegister16((byte)0x02)))));
-                        this.regPC++;
-                        break;
-                        
-                    case 0x88:  // ADC A, B
-                    case 0x89:  // ADC A, C
-                    case 0x8A:  // ADC A, D
-                    case 0x8B:  // ADC A, E
-                    case 0x8C:  // ADC A, H
-                    case 0x8D:  // ADC A, L
-                    case 0x8F:  // ADX A, A
-                        this.setRegister8((byte)0x07, this.opADC8(this.getRegister8((byte)0x07), this.getRegister8((byte)((opCode & 0x07)))));
-                        this.regPC++;
-                        break;
-                        
-                    case 0x8E:  // ADC A, (HL)
-                        this.setRegister8((byte)0x07, this.opADC8(this.getRegister8((byte)0x07), this.readMemory8(Short.toUnsignedLong(this.getRegister16((byte)0x02)))));
-                        this.regPC++;
-                        break;
-                        
-                    case 0x90:  // SUB A, B
-                    case 0x91:  // SUB A, C
-                    case 0x92:  // SUB A, D
-                    case 0x93:  // SUB A, E
-                    case 0x94:  // SUB A, H
-                    case 0x95:  // SUB A, L
-                    case 0x97:  // SUB A, A
-                        this.setRegister8((byte)0x07, this.opSUB8(this.getRegister8((byte)0x07), this.getRegister8((byte)((opCode & 0x07)))));
-                        this.regPC++;
-                        break;
-                        
-                    case 0x96:  // SUB A, (HL)
-                        this.setRegister8((byte)0x07, this.opSUB8(this.getRegister8((byte)0x07), this.readMemory8(Short.toUnsignedLong(this.getRegister16((byte)0x02)))));
-                        this.regPC++;
-                        break;
-                        
-                    case 0x98:  // SBC A, B
-                    case 0x99:  // SBC A, C
-                    case 0x9A:  // SBC A, D
-                    case 0x9B:  // SBC A, E
-                    case 0x9C:  // SBC A, H
-                    case 0x9D:  // SBC A, L
-                    case 0x9F:  // SBC A, A
-                        this.setRegister8((byte)0x07, this.opSBC8(this.getRegister8((byte)0x07), this.getRegister8((byte)((opCode & 0x07)))));
-                        this.regPC++;
-                        break;
-                        
-                    case 0x9E:  // SBC A, (HL)
-                        this.setRegister8((byte)0x07, this.opSBC8(this.getRegister8((byte)0x07), this.readMemory8(Short.toUnsignedLong(this.getRegister16((byte)0x02)))));
-                        this.regPC++;
-                        break;
-                        
-                    case 0xA0:  // AND A, B
-                    case 0xA1:  // AND A, C
-                    case 0xA2:  // AND A, D
-                    case 0xA3:  // AND A, E
-                    case 0xA4:  // AND A, H
-                    case 0xA5:  // AND A, L
-                    case 0xA7:  // AND A, A
-                        this.setRegister8((byte)0x07, this.opAND8(this.getRegister8((byte)0x07), this.getRegister8((byte)((opCode & 0x07)))));
-                        this.regPC++;
-                        break;
-                        
-                    case 0xA6:  // AND A, (HL)
-                        this.setRegister8((byte)0x07, this.opAND8(this.getRegister8((byte)0x07), this.readMemory8(Short.toUnsignedLong(this.getRegister16((byte)0x02)))));
-                        this.regPC++;
-                        break;
-                        
-                    case 0xA8:  // XOR A, B
-                    case 0xA9:  // XOR A, C
-                    case 0xAA:  // XOR A, D
-                    case 0xAB:  // XOR A, E
-                    case 0xAC:  // XOR A, H
-                    case 0xAD:  // XOR A, L
-                    case 0xAF:  // XOR A, A
-                        this.setRegister8((byte)0x07, this.opXOR8(this.getRegister8((byte)0x07), this.getRegister8((byte)((opCode & 0x07)))));
-                        this.regPC++;
-                        break;
-                        
-                    case 0xAE:  // XOR A, (HL)
-                        this.setRegister8((byte)0x07, this.opXOR8(this.getRegister8((byte)0x07), this.readMemory8(Short.toUnsignedLong(this.getRegister16((byte)0x02)))));
-                        this.regPC++;
-                        break;
-                        
-                    case 0xB0:  // OR A, B
-                    case 0xB1:  // OR A, C
-                    case 0xB2:  // OR A, D
-                    case 0xB3:  // OR A, E
-                    case 0xB4:  // OR A, H
-                    case 0xB5:  // OR A, L
-                    case 0xB7:  // OR A, A
-                        this.setRegister8((byte)0x07, this.opOR8(this.getRegister8((byte)0x07), this.getRegister8((byte)((opCode & 0x07)))));
-                        this.regPC++;
-                        break;
-                        
-                    case 0xB6:  // OR A, (HL)
-                        this.setRegister8((byte)0x07, this.opOR8(this.getRegister8((byte)0x07), this.readMemory8(Short.toUnsignedLong(this.getRegister16((byte)0x02)))));
-                        this.regPC++;
-                        break;
-                        
-                    case 0xB8:  // CP A, B
-                    case 0xB9:  // CP A, C
-                    case 0xBA:  // CP A, D
-                    case 0xBB:  // CP A, E
-                    case 0xBC:  // CP A, H
-                    case 0xBD:  // CP A, L
-                    case 0xBF:  // CP A, A
-                        this.opSUB8(this.getRegister8((byte)0x07), this.getRegister8((byte)((opCode & 0x07))));
-                        this.regPC++;
-                        break;
-                        
-                    case 0xBE:  // CP A, (HL)
-                        this.opSUB8(this.getRegister8((byte)0x07), this.readMemory8(Short.toUnsignedLong(this.getRegister16((byte)0x02))));
-                        this.regPC++;
-                        break;
-                        
-                    case 0xC0:  // RETNZ
-                        // here, do not change the PC!!
-                        this.opRETNZ();
-                        break;
-                        
-                    case 0xC1:  // POP BC
-                    case 0xD1:  // POP DE
-                    case 0xE1:  // POP HL
-                    case 0xF1:  // POP AF
-                        this.opPOP16((byte)((opCode & 0x30) >> 4));
-                        this.regPC++;
-                        break;
-                        
-                    case 0xC2:  // JNZ nn
-                        if(!this.checkFlag(FLAG_Z)) {
-                            this.regPC = this.readMemory16(Short.toUnsignedLong(this.regPC)+1);
-                        }
-                        else {
-                            this.regPC+=3;
-                        }
-                        break;
-                        
-                    case 0xC3:  // JP nn
-                        this.regPC = this.readMemory16(Short.toUnsignedLong(this.regPC)+1);
-                        break;
-                        
-                    case 0xC4:  // CALLNZ nn
-                        // here, do not change the PC!!
-                        this.opCALLNZ(this.readMemory16(Short.toUnsignedLong(this.regPC)+1));
-                        break;
-                        
-                    case 0xC5:  // PUSH BC
-                    case 0xD5:  // PUSH DE
-                    case 0xE5:  // PUSH HL
-                    case 0xF5:  // PUSH AF
-                        this.opPUSH16((byte)((opCode & 0x30) >> 4));
-                        this.regPC++;
-                        break;
-                        
-                    case 0xC6:  // ADD A, n
-                        this.setRegister8((byte)0x07, this.opADD8(this.getRegister8((byte)0x07), this.readMemory8(Short.toUnsignedLong(this.regPC)+1)));
-                        this.regPC+=2;
-                        break;
-                        
-                    case 0xC7:  // RTS 00h
-                        this.opRTS((byte)0x00);
-                        break;
-                        
-                    case 0xC8:  // RETZ
-                        // here, do not change the PC!!
-                        this.opRETZ();
-                        break;
-                        
-                    case 0xC9:  // RET
-                        // here, do not change the PC!!
-                        this.opRET();
-                        break;
-                        
-                    case 0xCA:  // JZ nn
-                        if(this.checkFlag(FLAG_Z)) {
-                            this.regPC = this.readMemory16(Short.toUnsignedLong(this.regPC)+1);
-                        }
-                        else {
-                            this.regPC+=3;
-                        }
-                        break;
-                        
-                    case 0xCB:  // Special 'CB' sub-thingys..
-                        this.regPC++;
-                        this.subOpCB();
-                        break;
-                        
-                    case 0xCC:  // CALLZ nn
-                        // here, do not change the PC!!
-                        this.opCALLZ(this.readMemory16(Short.toUnsignedLong(this.regPC)+1));
-                        break;
-                        
-                    case 0xCD:  // CALL nn
-                        // here, do not change the PC!!
-                        this.opCALL(this.readMemory16(Short.toUnsignedLong(this.regPC)+1));
-                        break;
-                        
-                    case 0xCE:  // ADC A, n
-                        this.setRegister8((byte)0x07, this.opADC8(this.getRegister8((byte)0x07), this.readMemory8(Short.toUnsignedLong(this.regPC)+1)));
-                        this.regPC+=2;
-                        break;
-                        
-                    case 0xCF:  // RTS 08h
-                        this.opRTS((byte)0x08);
-                        break;
-                        
-                    case 0xD0:  // RETNC
-                        // here, do not change the PC!!
-                        this.opRETNC();
-                        break;
-                        
-                    case 0xD2:  // JNC nn
-                        if(!this.checkFlag(FLAG_C)) {
-                            this.regPC = this.readMemory16(Short.toUnsignedLong(this.regPC)+1);
-                        }
-                        else {
-                            this.regPC+=3;
-                        }
-                        break;
-                        
-                    case 0xD3:  // OUT (n), A
-                        this.opOUT8(this.readMemory8(Short.toUnsignedLong(this.regPC)+1), this.getRegister8((byte)0x07));
-                        this.regPC+=2;
-                        break;
-                        
-                    case 0xD4:  // CALLNC nn
-                        // here, do not change the PC!!
-                        this.opCALLNC(this.readMemory16(Short.toUnsignedLong(this.regPC)+1));
-                        break;
-                        
-                    case 0xD6:  // SUB A, n
-                        this.setRegister8((byte)0x07, this.opSUB8(this.getRegister8((byte)0x07), this.readMemory8(Short.toUnsignedLong(this.regPC)+1)));
-                        this.regPC+=2;
-                        break;
-                        
-                    case 0xD7:  // RST 10h
-                        this.opRTS((byte)0x10);
-                        break;
-                        
-                    case 0xD8:  // RETC
-                        // here, do not change the PC!!
-                        this.opRETC();
-                        break;
-                        
-                    case 0xD9:  // EXX
-                        this.opEXX();
-                        this.regPC++;
-                        break;
-                        
-                    case 0xDA:  // JC nn
-                        if(this.checkFlag(FLAG_C)) {
-                            this.regPC = this.readMemory16(Short.toUnsignedLong(this.regPC)+1);
-                        }
-                        else {
-                            this.regPC+=3;
-                        }
-                        break;
-                        
-                    case 0xDB:  // IN A, (n)
-                        this.setRegister8((byte)0x07, this.opIN8(this.readMemory8(Short.toUnsignedLong(this.regPC)+1)));
-                        this.regPC+=2;
-                        break;
-                        
-                    case 0xDC:  // CALLC nn
-                        // here, do not change the PC!!
-                        this.opCALLC(this.readMemory16(Short.toUnsignedLong(this.regPC)+1));
-                        break;
-                        
-                    case 0xDD:  // Special 'DD' sub-thingys..
-                        this.regPC++;
-                        this.subOpDD();
-                        break;
-                        
-                    case 0xDE:  // SBC A, n
-                        this.setRegister8((byte)0x07, this.opSBC8(this.getRegister8((byte)0x07), this.readMemory8(Short.toUnsignedLong(this.regPC)+1)));
-                        this.regPC+=2;
-                        break;
-                        
-                    case 0xDF:  // RST 18h
-                        this.opRTS((byte)0x18);
-                        break;
-                        
-                    case 0xE0:  // RETPO
-                        // here, do not change the PC!!
-                        this.opRETPO();
-                        break;
-                        
-                    case 0xE2:  // JPO nn
-                        if(!this.checkFlag(FLAG_PV)) {
-                            this.regPC = this.readMemory16(Short.toUnsignedLong(this.regPC)+1);
-                        }
-                        else {
-                            this.regPC+=3;
-                        }
-                        break;
-                        
-                    case 0xE3:  // EX (SP), HL
-                        this.opEX_SP_HL();
-                        this.regPC++;
-                        break;
-                        
-                    case 0xE4:  // CALLPO nn
-                        // here, do not change the PC!!
-                        this.opCALLPO(this.readMemory16(Short.toUnsignedLong(this.regPC)+1));
-                        break;
-                        
-                    case 0xE6:  // AND A, n
-                        this.setRegister8((byte)0x07, this.opAND8(this.getRegister8((byte)0x07), this.readMemory8(Short.toUnsignedLong(this.regPC)+1)));
-                        this.regPC+=2;
-                        break;
-                        
-                    case 0xE7:  // RST 20h
-                        this.opRTS((byte)0x20);
-                        break;
-                        
-                    case 0xE8:  // RETPE
-                        // here, do not change the PC!!
-                        this.opRETPE();
-                        break;
-                        
-                    case 0xE9:  // JP (HL)
-                        this.regPC = (short)((Byte.toUnsignedInt(this.regH) << 8) + Byte.toUnsignedInt(this.regL));
-                        break;
-                        
-                    case 0xEA:  // JPE nn
-                        if(this.checkFlag(FLAG_PV)) {
-                            this.regPC = this.readMemory16(Short.toUnsignedLong(this.regPC)+1);
-                        }
-                        else {
-                            this.regPC+=3;
-                        }
-                        break;
-                        
-                    case 0xEB:  // EX DE, HL
-                        this.opEX_DE_HL();
-                        this.regPC++;
-                        break;
-                        
-                    case 0xEC:  // CALLPE nn
-                        // here, do not change the PC!!
-                        this.opCALLPE(this.readMemory16(Short.toUnsignedLong(this.regPC)+1));
-                        break;
-                        
-                    case 0xED:  // Special 'ED' sub-thingys...
-                        this.regPC++;
-                        this.subOpED();
-                        break;
-                        
-                    case 0xEE:  // XOR A, n
-                        this.setRegister8((byte)0x07, this.opXOR8(this.getRegister8((byte)0x07), this.readMemory8(Short.toUnsignedLong(this.regPC)+1)));
-                        this.regPC+=2;
-                        break;
-                        
-                    case 0xEF:  // RST 28h
-                        this.opRTS((byte)0x28);
-                        break;
-                        
-                    case 0xF0:  // RETNS
-                        // here, do not change the PC!!
-                        this.opRETNS();
-                        break;
-                        
-                    case 0xF2:  // JNS nn
-                        if(!this.checkFlag(FLAG_S)) {
-                            this.regPC = this.readMemory16(Short.toUnsignedLong(this.regPC)+1);
-                        }
-                        else {
-                            this.regPC+=3;
-                        }
-                        break;
-                        
-                    case 0xF3:  // DI
-                        opDI();
-                        this.regPC++;
-                        break;
-                        
-                    case 0xF4:  // CALLNS nn
-                        // here, do not change the PC!!
-                        this.opCALLNS(this.readMemory16(Short.toUnsignedLong(this.regPC)+1));
-                        break;
-                        
-                    case 0xF6:  // OR A, n
-                        this.setRegister8((byte)0x07, this.opOR8(this.getRegister8((byte)0x07), this.readMemory8(Short.toUnsignedLong(this.regPC)+1)));
-                        this.regPC+=2;
-                        break;
-                        
-                    case 0xF7:  // RST 30h
-                        this.opRTS((byte)0x30);
-                        break;
-                        
-                    case 0xF8:  // RETS
-                        // here, do not change the PC!!
-                        this.opRETS();
-                        break;
-                        
-                    case 0xF9:  // LD SP, HL
-                        this.regSP = (short)((Byte.toUnsignedInt(this.regH) << 8) + Byte.toUnsignedInt(this.regL));
-                        this.regPC++;
-                        break;
-                        
-                    case 0xFA:  // JS nn
-                        if(this.checkFlag(FLAG_S)) {
-                            this.regPC = this.readMemory16(Short.toUnsignedLong(this.regPC)+1);
-                        }
-                        else {
-                            this.regPC+=3;
-                        }
-                        break;
-                        
-                    case 0xFB:  // EI
-                        this.opEI();
-                        this.regPC++;
-                        break;
-                        
-                    case 0xFC:  // CALLS nn
-                        // here, do not change the PC!!
-                        this.opCALLS(this.readMemory16(Short.toUnsignedLong(this.regPC)+1));
-                        break;
-                        
-                    case 0xFD:  // Special "FE" sub.thingys...
-                        this.regPC++;
-                        this.subOpFD();
-                        break;
-                        
-                    case 0xFE:  // CP A, n
-                        this.opSUB8(this.getRegister8((byte)0x07), this.readMemory8(Short.toUnsignedLong(this.regPC)+1));
-                        this.regPC+=2;
-                        break;
-                        
-                    case 0xFF:  // RST 38h
-                        this.opRTS((byte)0x38);
-                        break;
-                        
-                    default:
-                        throw new OpCodeException("Opcode " + opCode + " not supported!");
+        profiler.begin(Short.toUnsignedInt(this.regPC));
+        int cycles = (this.tracer == null) ? executeNextOpCode() : runTracedOpCode();
+        profiler.end(cycles);
+        return cycles;
+    }
+    
+    /**
+     * Runs the operation at the current program counter address and records
+     * it in the tracer
+     * 
+     * @return the number of cycles (int)
+     * @throws MemoryException
+     * @throws OpCodeException 
+     */
+    protected int runTracedOpCode() throws MemoryException, OpCodeException {
+        long pc = Short.toUnsignedLong(this.regPC);
+        // the length of jumps is not known from the PC, so always keep as
+        // many bytes as the longest Z80 instruction has
+        long opCodes = this.memoryBus.peekBytes(pc, 4);
+        
+        int cycles;
+        try {
+            cycles = executeNextOpCode();
+        }
+        catch (MemoryException | OpCodeException | RuntimeException ex) {
+            this.tracer.fault(pc, opCodes, 4);
+            throw ex;
+        }
+        
+        this.tracer.record(pc, opCodes, 4, cycles);
+        return cycles;
+    }
+    
+    /**
+     * Executes the operation at the current program counter address
+     * 
+     * @return the number of cycles (int)
+     * @throws MemoryException
+     * @throws OpCodeException 
+     */
+    protected int executeNextOpCode() throws MemoryException, OpCodeException {
+        byte opCode = this.memoryBus.fetchByte(Short.toUnsignedLong(this.regPC));
+        byte opCode2, opCode3, opCode4;
+        short nn;
+        int address;
+        
+        switch (Byte.toUnsignedInt(opCode)) {
+            case 0x00: // NOP
+                this.regPC++;
+                break;
+                
+            case 0x01:  // LD BC, nn
+            case 0x11:  // LD DE, nn
+            case 0x21:  // LD HL, nn
+            case 0x31:  // LD SP, nn
+                this.setRegister16((byte)((opCode & 0x30) >> 4),this.readMemory16(this.regPC + 1));
+                this.regPC += 3;
+                break;
+                
+            case 0x02:  // LD (BC), A
+                this.writeMemory8((long)(Short.toUnsignedInt(this.getRegister16((byte)0))), this.opLD8(this.getRegister8((byte)0)));
+                this.regPC++;
+                break;
+                
+            case 0x03:  // INC BC
+            case 0x13:  // INC DE
+            case 0x23:  // INC HL
+            case 0x33:  // INC SP
+                this.setRegister16((byte)((opCode & 0x30) >> 4), this.opINC16(this.getRegister16((byte)((opCode & 0x30) >> 4))));
+                this.regPC++;
+                break;
+                
+            case 0x04:  // INC B,   Flags changed: SZHPN
+            case 0x0C:  // INC C,   Flags changed: SZHPN
+            case 0x14:  // INC D,   Flags changed: SZHPN
+            case 0x1C:  // INC E,   Flags changed: SZHPN
+            case 0x24:  // INC H,   Flags changed: SZHPN
+            case 0x2C:  // INC L,   Flags changed: SZHPN
+            case 0x3C:  // INC A,   Flags changed: SZHPN
+                this.setRegister8((byte)((opCode & 0x38) >> 3), opINC8(this.getRegister8((byte)((opCode & 0x38) >> 3))));
+                this.regPC++;
+                break;
+                
+            case 0x05:  // DEC B,   Flags changed: SZHPN
+            case 0x0D:  // DEC C,   Flags changed: SZHPN
+            case 0x15:  // DEC D,   Flags changed: SZHPN
+            case 0x1D:  // DEC E,   Flags changed: SZHPN
+            case 0x25:  // DEC H,   Flags changed: SZHPN
+            case 0x2D:  // DEC L,   Flags changed: SZHPN
+            case 0x3D:  // DEC A,   Flags changed: SZHPN
+                this.setRegister8((byte)((opCode & 0x38) >> 3), opDEC8(this.getRegister8((byte)((opCode & 0x38) >> 3))));
+                this.regPC++;
+                break;
+                
+            case 0x06:  // LD B, n
+            case 0x0E:  // LD C, n
+            case 0x16:  // LD D, n
+            case 0x1E:  // LD E, n
+            case 0x26:  // LD H, n
+            case 0x2E:  // LD L, n
+            case 0x3E:  // LD A, n
+                this.setRegister8((byte)((opCode & 0x38) >> 3), opLD8(this.readMemory8(this.regPC+1)));
+                this.regPC+=2;
+                break;
+                
+            case 0x07:  // RLCA
+                this.opRLCA();
+                this.regPC++;
+                break;
+                
+            case 0x08:  // EX AF, AF'
+                this.opEX_AF_AF2();
+                this.regPC++;
+                break;
+                
+            case 0x09:  // ADD HL, BC,  Flags changed: HNC
+            case 0x19:  // ADD HL, DE,  Flags changed: HNC
+            case 0x29:  // ADD HL, HL,  Flags changed: HNC
+            case 0x39:  // ADD HL, SP,  Flags changed: HNC
+                this.setRegister16((byte)2, this.opADD16(this.getRegister16((byte)2), this.getRegister16((byte)((opCode & 0x30) >> 4))));
+                this.regPC++;
+                break;
+                
+            case 0x0A:  // LD A, (BC)
+            case 0x1A:  // LD A, (DE)
+                this.setRegister8((byte)7, this.opLD8(this.readMemory8(Short.toUnsignedLong(this.getRegister16((byte)((opCode & 0x30) >> 4))))));
+                this.regPC++;
+                break;
+                
+            case 0x0B:  // DEC BC
+            case 0x1B:  // DEC DE
+            case 0x2B:  // DEC HL
+            case 0x3B:  // DEC SP
+                this.setRegister16((byte)((opCode & 0x30) >> 4), this.opDEC16(this.getRegister16((byte)((opCode & 0x30) >> 4))));
+                this.regPC++;
+                break;
+                
+            case 0x0F:  // RRCA
+                this.opRRCA();
+                this.regPC++;
+                break;
+                
+            case 0x10:  // DJNZ n
+                this.opDJNZ(this.readMemory8(this.regPC+1));
+                this.regPC+=2;
+                break;
+                
+            case 0x12:  // LD (DE), A
+                this.writeMemory8(this.getRegister16((byte)1), this.opLD8(this.getRegister8((byte)7)));
+                this.regPC++;
+                break;
+                
+            case 0x17:  // RLA
+                this.opRLA();
+                this.regPC++;
+                break;
+                
+            case 0x18:  // JR n
+                this.opJR(this.readMemory8(this.regPC+1));
+                this.regPC+=2;
+                break;
+                
+            case 0x1F:  // RRA
+                this.opRRA();
+                this.regPC++;
+                break;
+                
+            case 0x20:  // JRNZ n
+                this.opJRNZ(this.readMemory8(this.regPC+1));
+                this.regPC+=2;
+                break;
+                
+            case 0x22:  // LD (nn), HL
+                this.writeMemory16(Short.toUnsignedLong(this.readMemory16(this.regPC+1)), this.getRegister16((byte)0x02));
+                this.regPC+=3;
+                break;
+                
+            case 0x27:  // DAA
+                this.opDAA();
+                this.regPC++;
+                break;
+                
+            case 0x28:  // JRZ n
+                this.opJRZ(this.readMemory8(this.regPC+1));
+                this.regPC+=2;
+                break;
+                
+            case 0x2A:  // LD HL, (nn)
+                this.setRegister16((byte)0x02, this.opLD16(this.readMemory16(this.readMemory16(this.regPC+1))));
+                this.regPC+=3;
+                break;
+                
+            case 0x2F:  // CPL
+                this.opCPL();
+                this.regPC++;
+                break;
+                
+            case 0x30:  // JRNC n
+                this.opJRNC(this.readMemory8(this.regPC+1));
+                this.regPC+=2;
+                break;
+                
+            case 0x32:  // LD (nn), A
+                this.writeMemory8(Short.toUnsignedLong(this.readMemory16(this.regPC+1)), this.getRegister8((byte)0x07));
+                this.regPC+=3;
+                break;
+                
+            case 0x34:  // INC (HL)
+                this.writeMemory8(Short.toUnsignedLong(this.getRegister16((byte)0x02)), this.opINC8(this.readMemory8(Short.toUnsignedLong(this.getRegister16((byte)0x02)))));
+                this.regPC++;
+                break;
+                
+            case 0x35:  // DEC (HL)
+                this.writeMemory8(Short.toUnsignedLong(this.getRegister16((byte)0x02)), this.opDEC8(this.readMemory8(Short.toUnsignedLong(this.getRegister16((byte)0x02)))));
+                this.regPC++;
+                break;
+                
+            case 0x36:  // LD (HL), n
+                this.writeMemory8(Short.toUnsignedLong(this.getRegister16((byte)0x02)), this.opLD8(this.readMemory8(this.regPC+1)));
+                this.regPC+=2;
+                break;
+                
+            case 0x37:  // SCF
+                this.opSCF();
+                this.regPC++;
+                break;
+                
+            case 0x38:  // JRC n
+                this.opJRC(this.readMemory8(this.regPC+1));
+                this.regPC+=2;
+                break;
+                
+            case 0x3A:  // LD A, (nn)
+                this.setRegister8((byte)0x07, this.opLD8(this.readMemory8(Short.toUnsignedLong(this.readMemory16(this.regPC+1)))));
+                this.regPC+=3;
+                break;
+                
+            case 0x3F:  // CCF
+                this.opCCF();
+                this.regPC++;
+                break;
+                
+            case 0x40:  // LD B, B'
+            case 0x41:  // LD B, C'
+            case 0x42:  // LD B, D'
+            case 0x43:  // LD B, E'
+            case 0x44:  // LD B, H'
+            case 0x45:  // LD B, L'
+            case 0x47:  // LD B, A'
+            case 0x48:  // LD C, B'
+            case 0x49:  // LD C, C'
+            case 0x4A:  // LD C, D'
+            case 0x4B:  // LD C, E'
+            case 0x4C:  // LD C, H'
+            case 0x4D:  // LD C, L'
+            case 0x4F:  // LD C, A'
+            case 0x50:  // LD D, B'
+            case 0x51:  // LD D, C'
+            case 0x52:  // LD D, D'
+            case 0x53:  // LD D, E'
+            case 0x54:  // LD D, H'
+            case 0x55:  // LD D, L'
+            case 0x57:  // LD D, A'
+            case 0x58:  // LD E, B'
+            case 0x59:  // LD E, C'
+            case 0x5A:  // LD E, D'
+            case 0x5B:  // LD E, E'
+            case 0x5C:  // LD E, H'
+            case 0x5D:  // LD E, L'
+            case 0x5F:  // LD E, A'
+            case 0x60:  // LD H, B'
+            case 0x61:  // LD H, C'
+            case 0x62:  // LD H, D'
+            case 0x63:  // LD H, E'
+            case 0x64:  // LD H, H'
+            case 0x65:  // LD H, L'
+            case 0x67:  // LD H, A'
+            case 0x68:  // LD L, B'
+            case 0x69:  // LD L, C'
+            case 0x6A:  // LD L, D'
+            case 0x6B:  // LD L, E'
+            case 0x6C:  // LD L, H'
+            case 0x6D:  // LD L, L'
+            case 0x6F:  // LD L, A'
+            case 0x78:  // LD A, B'
+            case 0x79:  // LD A, C'
+            case 0x7A:  // LD A, D'
+            case 0x7B:  // LD A, E'
+            case 0x7C:  // LD A, H'
+            case 0x7D:  // LD A, L'
+            case 0x7F:  // LD A, A'
+                this.setRegister8((byte)((opCode & 0x38) >> 3), this.opLD8(this.getRegister8((byte)((opCode & 0x07) | 0x08))));
+                this.regPC++;
+                break;
+                
+            case 0x70:  // LD (HL), B
+            case 0x71:  // LD (HL), C
+            case 0x72:  // LD (HL), D
+            case 0x73:  // LD (HL), E
+            case 0x74:  // LD (HL), H
+            case 0x75:  // LD (HL), L
+            case 0x77:  // LD (HL), A
+                this.writeMemory8(Short.toUnsignedLong(this.getRegister16((byte)0x02)), this.getRegister8((byte)(opCode & 0x07)));
+                
+            case 0x46:  // LD B, (HL)
+            case 0x4E:  // LD C, (HL)
+            case 0x56:  // LD D, (HL)
+            case 0x5E:  // LD E, (HL)
+            case 0x66:  // LD H, (HL)
+            case 0x6E:  // LD L, (HL)
+            case 0x7E:  // LD A, (HL)
+                this.setRegister8((byte)((opCode & 0x38) >> 3), this.opLD8(this.readMemory8(Short.toUnsignedLong(this.getRegister16((byte)0x02)))));
+                this.regPC++;
+                break;
+                
+            case 0x76:  // HALT
+                this.opHALT();
+                this.regPC++;
+                break;
+                
+            case 0x80:  // ADD A, B
+            case 0x81:  // ADD A, C
+            case 0x82:  // ADD A, D
+            case 0x83:  // ADD A, E
+            case 0x84:  // ADD A, H
+            case 0x85:  // ADD A, L
+            case 0x87:  // ADD A, A
+                this.setRegister8((byte)0x07, this.opADD8(this.getRegister8((byte)0x07), this.getRegister8((byte)((opCode & 0x07)))));
+                this.regPC++;
+                break;
+                
+            case 0x86:  // ADD A, (HL)
+                this.setRegister8((byte)0x07, this.opADD8(this.getRegister8((byte)0x07), this.readMemory8(Short.toUnsignedLong(this.getRegister16((byte)0x02)))));
+                this.regPC++;
+                break;
+                
+            case 0x88:  // ADC A, B
+            case 0x89:  // ADC A, C
+            case 0x8A:  // ADC A, D
+            case 0x8B:  // ADC A, E
+            case 0x8C:  // ADC A, H
+            case 0x8D:  // ADC A, L
+            case 0x8F:  // ADX A, A
+                this.setRegister8((byte)0x07, this.opADC8(this.getRegister8((byte)0x07), this.getRegister8((byte)((opCode & 0x07)))));
+                this.regPC++;
+                break;
+                
+            case 0x8E:  // ADC A, (HL)
+                this.setRegister8((byte)0x07, this.opADC8(this.getRegister8((byte)0x07), this.readMemory8(Short.toUnsignedLong(this.getRegister16((byte)0x02)))));
+                this.regPC++;
+                break;
+                
+            case 0x90:  // SUB A, B
+            case 0x91:  // SUB A, C
+            case 0x92:  // SUB A, D
+            case 0x93:  // SUB A, E
+            case 0x94:  // SUB A, H
+            case 0x95:  // SUB A, L
+            case 0x97:  // SUB A, A
+                this.setRegister8((byte)0x07, this.opSUB8(this.getRegister8((byte)0x07), this.getRegister8((byte)((opCode & 0x07)))));
+                this.regPC++;
+                break;
+                
+            case 0x96:  // SUB A, (HL)
+                this.setRegister8((byte)0x07, this.opSUB8(this.getRegister8((byte)0x07), this.readMemory8(Short.toUnsignedLong(this.getRegister16((byte)0x02)))));
+                this.regPC++;
+                break;
+                
+            case 0x98:  // SBC A, B
+            case 0x99:  // SBC A, C
+            case 0x9A:  // SBC A, D
+            case 0x9B:  // SBC A, E
+            case 0x9C:  // SBC A, H
+            case 0x9D:  // SBC A, L
+            case 0x9F:  // SBC A, A
+                this.setRegister8((byte)0x07, this.opSBC8(this.getRegister8((byte)0x07), this.getRegister8((byte)((opCode & 0x07)))));
+                this.regPC++;
+                break;
+                
+            case 0x9E:  // SBC A, (HL)
+                this.setRegister8((byte)0x07, this.opSBC8(this.getRegister8((byte)0x07), this.readMemory8(Short.toUnsignedLong(this.getRegister16((byte)0x02)))));
+                this.regPC++;
+                break;
+                
+            case 0xA0:  // AND A, B
+            case 0xA1:  // AND A, C
+            case 0xA2:  // AND A, D
+            case 0xA3:  // AND A, E
+            case 0xA4:  // AND A, H
+            case 0xA5:  // AND A, L
+            case 0xA7:  // AND A, A
+                this.setRegister8((byte)0x07, this.opAND8(this.getRegister8((byte)0x07), this.getRegister8((byte)((opCode & 0x07)))));
+                this.regPC++;
+                break;
+                
+            case 0xA6:  // AND A, (HL)
+                this.setRegister8((byte)0x07, this.opAND8(this.getRegister8((byte)0x07), this.readMemory8(Short.toUnsignedLong(this.getRegister16((byte)0x02)))));
+                this.regPC++;
+                break;
+                
+            case 0xA8:  // XOR A, B
+            case 0xA9:  // XOR A, C
+            case 0xAA:  // XOR A, D
+            case 0xAB:  // XOR A, E
+            case 0xAC:  // XOR A, H
+            case 0xAD:  // XOR A, L
+            case 0xAF:  // XOR A, A
+                this.setRegister8((byte)0x07, this.opXOR8(this.getRegister8((byte)0x07), this.getRegister8((byte)((opCode & 0x07)))));
+                this.regPC++;
+                break;
+                
+            case 0xAE:  // XOR A, (HL)
+                this.setRegister8((byte)0x07, this.opXOR8(this.getRegister8((byte)0x07), this.readMemory8(Short.toUnsignedLong(this.getRegister16((byte)0x02)))));
+                this.regPC++;
+                break;
+                
+            case 0xB0:  // OR A, B
+            case 0xB1:  // OR A, C
+            case 0xB2:  // OR A, D
+            case 0xB3:  // OR A, E
+            case 0xB4:  // OR A, H
+            case 0xB5:  // OR A, L
+            case 0xB7:  // OR A, A
+                this.setRegister8((byte)0x07, this.opOR8(this.getRegister8((byte)0x07), this.getRegister8((byte)((opCode & 0x07)))));
+                this.regPC++;
+                break;
+                
+            case 0xB6:  // OR A, (HL)
+                this.setRegister8((byte)0x07, this.opOR8(this.getRegister8((byte)0x07), this.readMemory8(Short.toUnsignedLong(this.getRegister16((byte)0x02)))));
+                this.regPC++;
+                break;
+                
+            case 0xB8:  // CP A, B
+            case 0xB9:  // CP A, C
+            case 0xBA:  // CP A, D
+            case 0xBB:  // CP A, E
+            case 0xBC:  // CP A, H
+            case 0xBD:  // CP A, L
+            case 0xBF:  // CP A, A
+                this.opSUB8(this.getRegister8((byte)0x07), this.getRegister8((byte)((opCode & 0x07))));
+                this.regPC++;
+                break;
+                
+            case 0xBE:  // CP A, (HL)
+                this.opSUB8(this.getRegister8((byte)0x07), this.readMemory8(Short.toUnsignedLong(this.getRegister16((byte)0x02))));
+                this.regPC++;
+                break;
+                
+            case 0xC0:  // RETNZ
+                // here, do not change the PC!!
+                this.opRETNZ();
+                break;
+                
+            case 0xC1:  // POP BC
+            case 0xD1:  // POP DE
+            case 0xE1:  // POP HL
+            case 0xF1:  // POP AF
+                this.opPOP16((byte)((opCode & 0x30) >> 4));
+                this.regPC++;
+                break;
+                
+            case 0xC2:  // JNZ nn
+                if(!this.checkFlag(FLAG_Z)) {
+                    this.regPC = this.readMemory16(Short.toUnsignedLong(this.regPC)+1);
+                }
+                else {
+                    this.regPC+=3;
                 }
+                break;
                 
-                return 0;
-            }
-            catch (MemoryException ex) {
-                // Do nothing, try next block
-            }
+            case 0xC3:  // JP nn
+                this.regPC = this.readMemory16(Short.toUnsignedLong(this.regPC)+1);
+                break;
+                
+            case 0xC4:  // CALLNZ nn
+                // here, do not change the PC!!
+                this.opCALLNZ(this.readMemory16(Short.toUnsignedLong(this.regPC)+1));
+                break;
+                
+            case 0xC5:  // PUSH BC
+            case 0xD5:  // PUSH DE
+            case 0xE5:  // PUSH HL
+            case 0xF5:  // PUSH AF
+                this.opPUSH16((byte)((opCode & 0x30) >> 4));
+                this.regPC++;
+                break;
+                
+            case 0xC6:  // ADD A, n
+                this.setRegister8((byte)0x07, this.opADD8(this.getRegister8((byte)0x07), this.readMemory8(Short.toUnsignedLong(this.regPC)+1)));
+                this.regPC+=2;
+                break;
+                
+            case 0xC7:  // RTS 00h
+                this.opRTS((byte)0x00);
+                break;
+                
+            case 0xC8:  // RETZ
+                // here, do not change the PC!!
+                this.opRETZ();
+                break;
+                
+            case 0xC9:  // RET
+                // here, do not change the PC!!
+                this.opRET();
+                break;
+                
+            case 0xCA:  // JZ nn
+                if(this.checkFlag(FLAG_Z)) {
+                    this.regPC = this.readMemory16(Short.toUnsignedLong(this.regPC)+1);
+                }
+                else {
+                    this.regPC+=3;
+                }
+                break;
+                
+            case 0xCB:  // Special 'CB' sub-thingys..
+                this.regPC++;
+                this.subOpCB();
+                break;
+                
+            case 0xCC:  // CALLZ nn
+                // here, do not change the PC!!
+                this.opCALLZ(this.readMemory16(Short.toUnsignedLong(this.regPC)+1));
+                break;
+                
+            case 0xCD:  // CALL nn
+                // here, do not change the PC!!
+                this.opCALL(this.readMemory16(Short.toUnsignedLong(this.regPC)+1));
+                break;
+                
+            case 0xCE:  // ADC A, n
+                this.setRegister8((byte)0x07, this.opADC8(this.getRegister8((byte)0x07), this.readMemory8(Short.toUnsignedLong(this.regPC)+1)));
+                this.regPC+=2;
+                break;
+                
+            case 0xCF:  // RTS 08h
+                this.opRTS((byte)0x08);
+                break;
+                
+            case 0xD0:  // RETNC
+                // here, do not change the PC!!
+                this.opRETNC();
+                break;
+                
+            case 0xD2:  // JNC nn
+                if(!this.checkFlag(FLAG_C)) {
+                    this.regPC = this.readMemory16(Short.toUnsignedLong(this.regPC)+1);
+                }
+                else {
+                    this.regPC+=3;
+                }
+                break;
+                
+            case 0xD3:  // OUT (n), A
+                this.opOUT8(this.readMemory8(Short.toUnsignedLong(this.regPC)+1), this.getRegister8((byte)0x07));
+                this.regPC+=2;
+                break;
+                
+            case 0xD4:  // CALLNC nn
+                // here, do not change the PC!!
+                this.opCALLNC(this.readMemory16(Short.toUnsignedLong(this.regPC)+1));
+                break;
+                
+            case 0xD6:  // SUB A, n
+                this.setRegister8((byte)0x07, this.opSUB8(this.getRegister8((byte)0x07), this.readMemory8(Short.toUnsignedLong(this.regPC)+1)));
+                this.regPC+=2;
+                break;
+                
+            case 0xD7:  // RST 10h
+                this.opRTS((byte)0x10);
+                break;
+                
+            case 0xD8:  // RETC
+                // here, do not change the PC!!
+                this.opRETC();
+                break;
+                
+            case 0xD9:  // EXX
+                this.opEXX();
+                this.regPC++;
+                break;
+                
+            case 0xDA:  // JC nn
+                if(this.checkFlag(FLAG_C)) {
+                    this.regPC = this.readMemory16(Short.toUnsignedLong(this.regPC)+1);
+                }
+                else {
+                    this.regPC+=3;
+                }
+                break;
+                
+            case 0xDB:  // IN A, (n)
+                this.setRegister8((byte)0x07, this.opIN8(this.readMemory8(Short.toUnsignedLong(this.regPC)+1)));
+                this.regPC+=2;
+                break;
+                
+            case 0xDC:  // CALLC nn
+                // here, do not change the PC!!
+                this.opCALLC(this.readMemory16(Short.toUnsignedLong(this.regPC)+1));
+                break;
+                
+            case 0xDD:  // Special 'DD' sub-thingys..
+                this.regPC++;
+                this.subOpDD();
+                break;
+                
+            case 0xDE:  // SBC A, n
+                this.setRegister8((byte)0x07, this.opSBC8(this.getRegister8((byte)0x07), this.readMemory8(Short.toUnsignedLong(this.regPC)+1)));
+                this.regPC+=2;
+                break;
+                
+            case 0xDF:  // RST 18h
+                this.opRTS((byte)0x18);
+                break;
+                
+            case 0xE0:  // RETPO
+                // here, do not change the PC!!
+                this.opRETPO();
+                break;
+                
+            case 0xE2:  // JPO nn
+                if(!this.checkFlag(FLAG_PV)) {
+                    this.regPC = this.readMemory16(Short.toUnsignedLong(this.regPC)+1);
+                }
+                else {
+                    this.regPC+=3;
+                }
+                break;
+                
+            case 0xE3:  // EX (SP), HL
+                this.opEX_SP_HL();
+                this.regPC++;
+                break;
+                
+            case 0xE4:  // CALLPO nn
+                // here, do not change the PC!!
+                this.opCALLPO(this.readMemory16(Short.toUnsignedLong(this.regPC)+1));
+                break;
+                
+            case 0xE6:  // AND A, n
+                this.setRegister8((byte)0x07, this.opAND8(this.getRegister8((byte)0x07), this.readMemory8(Short.toUnsignedLong(this.regPC)+1)));
+                this.regPC+=2;
+                break;
+                
+            case 0xE7:  // RST 20h
+                this.opRTS((byte)0x20);
+                break;
+                
+            case 0xE8:  // RETPE
+                // here, do not change the PC!!
+                this.opRETPE();
+                break;
+                
+            case 0xE9:  // JP (HL)
+                this.regPC = (short)((Byte.toUnsignedInt(this.regH) << 8) + Byte.toUnsignedInt(this.regL));
+                break;
+                
+            case 0xEA:  // JPE nn
+                if(this.checkFlag(FLAG_PV)) {
+                    this.regPC = this.readMemory16(Short.toUnsignedLong(this.regPC)+1);
+                }
+                else {
+                    this.regPC+=3;
+                }
+                break;
+                
+            case 0xEB:  // EX DE, HL
+                this.opEX_DE_HL();
+                this.regPC++;
+                break;
+                
+            case 0xEC:  // CALLPE nn
+                // here, do not change the PC!!
+                this.opCALLPE(this.readMemory16(Short.toUnsignedLong(this.regPC)+1));
+                break;
+                
+            case 0xED:  // Special 'ED' sub-thingys...
+                this.regPC++;
+                this.subOpED();
+                break;
+                
+            case 0xEE:  // XOR A, n
+                this.setRegister8((byte)0x07, this.opXOR8(this.getRegister8((byte)0x07), this.readMemory8(Short.toUnsignedLong(this.regPC)+1)));
+                this.regPC+=2;
+                break;
+                
+            case 0xEF:  // RST 28h
+                this.opRTS((byte)0x28);
+                break;
+                
+            case 0xF0:  // RETNS
+                // here, do not change the PC!!
+                this.opRETNS();
+                break;
+                
+            case 0xF2:  // JNS nn
+                if(!this.checkFlag(FLAG_S)) {
+                    this.regPC = this.readMemory16(Short.toUnsignedLong(this.regPC)+1);
+                }
+                else {
+                    this.regPC+=3;
+                }
+                break;
+                
+            case 0xF3:  // DI
+                opDI();
+                this.regPC++;
+                break;
+                
+            case 0xF4:  // CALLNS nn
+                // here, do not change the PC!!
+                this.opCALLNS(this.readMemory16(Short.toUnsignedLong(this.regPC)+1));
+                break;
+                
+            case 0xF6:  // OR A, n
+                this.setRegister8((byte)0x07, this.opOR8(this.getRegister8((byte)0x07), this.readMemory8(Short.toUnsignedLong(this.regPC)+1)));
+                this.regPC+=2;
+                break;
+                
+            case 0xF7:  // RST 30h
+                this.opRTS((byte)0x30);
+                break;
+                
+            case 0xF8:  // RETS
+                // here, do not change the PC!!
+                this.opRETS();
+                break;
+                
+            case 0xF9:  // LD SP, HL
+                this.regSP = (short)((Byte.toUnsignedInt(this.regH) << 8) + Byte.toUnsignedInt(this.regL));
+                this.regPC++;
+                break;
+                
+            case 0xFA:  // JS nn
+                if(this.checkFlag(FLAG_S)) {
+                    this.regPC = this.readMemory16(Short.toUnsignedLong(this.regPC)+1);
+                }
+                else {
+                    this.regPC+=3;
+                }
+                break;
+                
+            case 0xFB:  // EI
+                this.opEI();
+                this.regPC++;
+                break;
+                
+            case 0xFC:  // CALLS nn
+                // here, do not change the PC!!
+                this.opCALLS(this.readMemory16(Short.toUnsignedLong(this.regPC)+1));
+                break;
+                
+            case 0xFD:  // Special "FE" sub.thingys...
+                this.regPC++;
+                this.subOpFD();
+                break;
+                
+            case 0xFE:  // CP A, n
+                this.opSUB8(this.getRegister8((byte)0x07), this.readMemory8(Short.toUnsignedLong(this.regPC)+1));
+                this.regPC+=2;
+                break;
+                
+            case 0xFF:  // RST 38h
+                this.opRTS((byte)0x38);
+                break;
+                
+            default:
+                throw new OpCodeException("Opcode " + opCode + " not supported!");
         }
         
-        throw new MemoryException("No memory at location of program counter!");
+        return 0;
+    }
+    
+    @Override
+    public void setProfiler(CodeProfiler profiler) {
+        this.profiler = profiler;
     }
     
+    @Override
+    public CodeProfiler getProfiler() {
+        return this.profiler;
+    }
+    
+    /**
+     * Returns the number of words on the stack, which starts at the end of
+     * the address space. Registers pushed by the program count as well.
+     * 
+     * @return the depth (int)
+     */
+    @Override
+    public int getCallDepth() {
+        return ((0x10000 - Short.toUnsignedInt(this.regSP)) & 0xFFFF) / 2;
+    }
+    
+    @Override
+    public void setTracer(ExecutionTracer tracer) {
+        this.tracer = tracer;
+    }
+    
+    @Override
+    public ExecutionTracer getTracer() {
+        return this.tracer;
+    }
+    
+    @Override
+    public String getTraceName() {
+        return TRACE_NAME;
+    }
+    
+    @Override
+    public ExecutionTracer.Field[] getTraceFields() {
+        return TRACE_FIELDS;
+    }
+    
+    @Override
+    public void packTraceWords(long[] words, int offset) {
+        words[offset] = pack8(this.regA, this.regF, this.regB, this.regC, this.regD, this.regE, this.regH, this.regL);
+        words[offset + 1] = pack8(this.regA2, this.regF2, this.regB2, this.regC2, this.regD2, this.regE2, this.regH2, this.regL2);
+        words[offset + 2] = (Short.toUnsignedLong(this.regIX) << 32) | (Short.toUnsignedLong(this.regIY) << 16) | Short.toUnsignedLong(this.regSP);
+        words[offset + 3] = (Byte.toUnsignedLong(this.regI) << 24) | (Byte.toUnsignedLong(this.regR) << 16) | (Byte.toUnsignedLong(this.intMode) << 8) | (this.interruptsEnabled ? 1 : 0);
+    }
+    
+    protected static long pack8(byte b7, byte b6, byte b5, byte b4, byte b3, byte b2, byte b1, byte b0) {
+        return (Byte.toUnsignedLong(b7) << 56) | (Byte.toUnsignedLong(b6) << 48) | (Byte.toUnsignedLong(b5) << 40) | (Byte.toUnsignedLong(b4) << 32)
+                | (Byte.toUnsignedLong(b3) << 24) | (Byte.toUnsignedLong(b2) << 16) | (Byte.toUnsignedLong(b1) << 8) | Byte.toUnsignedLong(b0);
+    }
 }
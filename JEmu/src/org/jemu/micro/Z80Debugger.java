@@ -19,10 +19,12 @@
 package org.jemu.micro;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.StringTokenizer;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.function.LongSupplier;
 
 /**
  * This class implements a debugger for the Z80 processor
@@ -167,7 +169,7 @@ public class Z80Debugger extends Z80 implements Debugger {
                 if((value < -128) || (value > 255))
                     throw new SyntaxErrorException("Offset value " + param1 + " too large to fit in 8 bit");
                 
-                return new byte[]{(byte)0xDD, (byte)(0x70 | (getRegisterNum8(param1))), (byte)(value)};
+                return new byte[]{(byte)0xDD, (byte)(0x70 | (getRegisterNum8(param2))), (byte)(value)};
             }
             
             // LD (IY+d), r
@@ -183,7 +185,7 @@ public class Z80Debugger extends Z80 implements Debugger {
                 if((value < -128) || (value > 255))
                     throw new SyntaxErrorException("Offset value " + param1 + " too large to fit in 8 bit");
                 
-                return new byte[]{(byte)0xFD, (byte)(0x70 | (getRegisterNum8(param1))), (byte)(value)};
+                return new byte[]{(byte)0xFD, (byte)(0x70 | (getRegisterNum8(param2))), (byte)(value)};
             }
             
             // LD (HL), n
@@ -245,7 +247,7 @@ public class Z80Debugger extends Z80 implements Debugger {
             
             // LD A, (nn)
             if(param1.equals("A") && param2.startsWith("(") && param2.endsWith(")") && isNumeric(param2.substring(1, param2.length()-1))) {
-                int value = getNumeric(param2.substring(2, param2.length()-1));
+                int value = getNumeric(param2.substring(1, param2.length()-1));
                 if((value < -32768) || (value > 65535))
                     throw new SyntaxErrorException("Value " + param2 + " too large to fit in 16 bit!");
                 return new byte[]{(byte)0x3A, (byte)(value & 0xFF), (byte)((value & 0xFF00) >> 8)};
@@ -261,7 +263,7 @@ public class Z80Debugger extends Z80 implements Debugger {
             
             // LD (nn), A
             if(param1.startsWith("(") && param1.endsWith(")") && isNumeric(param1.substring(1, param1.length()-1)) && param2.equals("A")) {
-                int value = getNumeric(param1.substring(2, param1.length()-1));
+                int value = getNumeric(param1.substring(1, param1.length()-1));
                 if((value < -32768) || (value > 65535))
                     throw new SyntaxErrorException("Value " + param1 + " too large to fit in 16 bit!");
                 return new byte[]{(byte)0x32, (byte)(value & 0xFF), (byte)((value & 0xFF00) >> 8)};
@@ -334,7 +336,7 @@ public class Z80Debugger extends Z80 implements Debugger {
             }
             
             // LD IY, (nn)
-            if(param1.equals("IX") && param2.startsWith("(") && param2.endsWith(")") && isNumeric(param2.substring(1, param2.length()-1))) {
+            if(param1.equals("IY") && param2.startsWith("(") && param2.endsWith(")") && isNumeric(param2.substring(1, param2.length()-1))) {
                 int value = getNumeric(param2.substring(1, param2.length()-1));
                 if((value < -32768) || (value > 65535))
                     throw new SyntaxErrorException("Value " + param1 + " too large to fit in 16 bit!");
@@ -343,7 +345,7 @@ public class Z80Debugger extends Z80 implements Debugger {
             
             // LD (nn), HL
             if(param1.startsWith("(") && param1.endsWith(")") && isNumeric(param1.substring(1, param1.length()-1)) && param2.equals("HL")) {
-                int value = getNumeric(param2.substring(1, param2.length()-1));
+                int value = getNumeric(param1.substring(1, param1.length()-1));
                 if((value < -32768) || (value > 65535))
                     throw new SyntaxErrorException("Value " + param1 + " too large to fit in 16 bit!");
                 return new byte[]{(byte)0x22, (byte)(value & 0xFF), (byte)((value & 0xFF00) >> 8)};
@@ -351,7 +353,7 @@ public class Z80Debugger extends Z80 implements Debugger {
             
             // LD (nn), dd
             if(param1.startsWith("(") && param1.endsWith(")") && isNumeric(param1.substring(1, param1.length()-1)) && isIn(param2,"BC,DE,HL,SP")) {
-                int value = getNumeric(param2.substring(1, param2.length()-1));
+                int value = getNumeric(param1.substring(1, param1.length()-1));
                 if((value < -32768) || (value > 65535))
                     throw new SyntaxErrorException("Value " + param1 + " too large to fit in 16 bit!");
                 return new byte[]{(byte)0xED, (byte)(0x43 | (getRegisterNum16(param2)<<4)), (byte)(value & 0xFF), (byte)((value & 0xFF00) >> 8)};
@@ -359,7 +361,7 @@ public class Z80Debugger extends Z80 implements Debugger {
             
             // LD (nn), IX
             if(param1.startsWith("(") && param1.endsWith(")") && isNumeric(param1.substring(1, param1.length()-1)) && param2.equals("IX")) {
-                int value = getNumeric(param2.substring(1, param2.length()-1));
+                int value = getNumeric(param1.substring(1, param1.length()-1));
                 if((value < -32768) || (value > 65535))
                     throw new SyntaxErrorException("Value " + param1 + " too large to fit in 16 bit!");
                 return new byte[]{(byte)0xDD, (byte)0x22, (byte)(value & 0xFF), (byte)((value & 0xFF00) >> 8)};
@@ -367,7 +369,7 @@ public class Z80Debugger extends Z80 implements Debugger {
             
             // LD (nn), IY
             if(param1.startsWith("(") && param1.endsWith(")") && isNumeric(param1.substring(1, param1.length()-1)) && param2.equals("IY")) {
-                int value = getNumeric(param2.substring(1, param2.length()-1));
+                int value = getNumeric(param1.substring(1, param1.length()-1));
                 if((value < -32768) || (value > 65535))
                     throw new SyntaxErrorException("Value " + param1 + " too large to fit in 16 bit!");
                 return new byte[]{(byte)0xFD, (byte)0x22, (byte)(value & 0xFF), (byte)((value & 0xFF00) >> 8)};
@@ -3122,6 +3124,113 @@ public class Z80Debugger extends Z80 implements Debugger {
    ========================================================================== */
     
     
+    /**
+     * All mnemonics of the Z80 by name, built once when the class is loaded.
+     * The Mnemonic classes have no state, so the instances are reused for
+     * every line that is translated.
+     */
+    public static final Map<String, Debugger.Mnemonic> MNEMONICS = createMnemonics();
+    
+    private static Map<String, Debugger.Mnemonic> createMnemonics() {
+        HashMap<String, Debugger.Mnemonic> mnemonics = new HashMap<>();
+        mnemonics.put("LD", new LD());
+        mnemonics.put("PUSH", new PUSH());
+        mnemonics.put("POP", new POP());
+        mnemonics.put("EX", new EX());
+        mnemonics.put("EXX", new EXX());
+        mnemonics.put("LDI", new LDI());
+        mnemonics.put("LDIR", new LDIR());
+        mnemonics.put("LDD", new LDD());
+        mnemonics.put("LDDR", new LDDR());
+        mnemonics.put("CPI", new CPI());
+        mnemonics.put("CPIR", new CPIR());
+        mnemonics.put("CPD", new CPD());
+        mnemonics.put("CPDR", new CPDR());
+        mnemonics.put("ADD", new ADD());
+        mnemonics.put("ADC", new ADC());
+        mnemonics.put("SUB", new SUB());
+        mnemonics.put("SBC", new SBC());
+        mnemonics.put("AND", new AND());
+        mnemonics.put("OR", new OR());
+        mnemonics.put("XOR", new XOR());
+        mnemonics.put("CP", new CP());
+        mnemonics.put("INC", new INC());
+        mnemonics.put("DEC", new DEC());
+        mnemonics.put("DAA", new DAA());
+        mnemonics.put("CPL", new CPL());
+        mnemonics.put("NEG", new NEG());
+        mnemonics.put("CCF", new CCF());
+        mnemonics.put("SCF", new SCF());
+        mnemonics.put("NOP", new NOP());
+        mnemonics.put("HALT", new HALT());
+        mnemonics.put("DI", new DI());
+        mnemonics.put("EI", new EI());
+        mnemonics.put("IM", new IM());
+        mnemonics.put("RLCA", new RLCA());
+        mnemonics.put("RLA", new RLA());
+        mnemonics.put("RRCA", new RRCA());
+        mnemonics.put("RRA", new RRA());
+        mnemonics.put("RLC", new RLC());
+        mnemonics.put("RL", new RL());
+        mnemonics.put("RRC", new RRC());
+        mnemonics.put("RR", new RR());
+        mnemonics.put("SLA", new SLA());
+        mnemonics.put("SRA", new SRA());
+        mnemonics.put("SRL", new SRL());
+        mnemonics.put("RLD", new RLD());
+        mnemonics.put("RRD", new RRD());
+        mnemonics.put("BIT", new BIT());
+        mnemonics.put("SET", new SET());
+        mnemonics.put("RES", new RES());
+        mnemonics.put("JP", new JP());
+        mnemonics.put("JPNZ", new JPNZ());
+        mnemonics.put("JPZ", new JPZ());
+        mnemonics.put("JPNC", new JPNC());
+        mnemonics.put("JPC", new JPC());
+        mnemonics.put("JPPO", new JPPO());
+        mnemonics.put("JPPE", new JPPE());
+        mnemonics.put("JPNS", new JPNS());
+        mnemonics.put("JPS", new JPS());
+        mnemonics.put("JPP", new JPP());
+        mnemonics.put("JPM", new JPM());
+        mnemonics.put("JR", new JR());
+        mnemonics.put("JRC", new JRC());
+        mnemonics.put("JRNC", new JRNC());
+        mnemonics.put("JRZ", new JRZ());
+        mnemonics.put("JRNZ", new JRNZ());
+        mnemonics.put("DJNZ", new DJNZ());
+        mnemonics.put("CALL", new CALL());
+        mnemonics.put("CALLNZ", new CALLNZ());
+        mnemonics.put("CALLZ", new CALLZ());
+        mnemonics.put("CALLNC", new CALLNC());
+        mnemonics.put("CALLC", new CALLC());
+        mnemonics.put("CALLPO", new CALLPO());
+        mnemonics.put("CALLPE", new CALLPE());
+        mnemonics.put("CALLNS", new CALLNS());
+        mnemonics.put("CALLS", new CALLS());
+        mnemonics.put("CALLP", new CALLP());
+        mnemonics.put("CALLM", new CALLM());
+        mnemonics.put("RET", new RET());
+        mnemonics.put("RETI", new RETI());
+        mnemonics.put("RETN", new RETN());
+        mnemonics.put("RST", new RST());
+        mnemonics.put("IN", new IN());
+        mnemonics.put("INI", new INI());
+        mnemonics.put("INIR", new INIR());
+        mnemonics.put("IND", new IND());
+        mnemonics.put("INDR", new INDR());
+        mnemonics.put("OUT", new OUT());
+        mnemonics.put("OUTI", new OUTI());
+        mnemonics.put("OTIR", new OTIR());
+        mnemonics.put("OUTD", new OUTD());
+        mnemonics.put("OTDR", new OTDR());
+        return Collections.unmodifiableMap(mnemonics);
+    }
+    
+    Debugger.Tokenizer tokenizer = new Debugger.Tokenizer();
+    
+    WatchpointSet watchpoints;
+    
     public Z80Debugger() {
         super();
     }
@@ -3299,6 +3408,16 @@ public class Z80Debugger extends Z80 implements Debugger {
                 this.regIY = (short)registerValue;
                 break;
                 
+            case "I":
+                checkValueSize(registerValue, 8);
+                this.regI = (byte)registerValue;
+                break;
+                
+            case "R":
+                checkValueSize(registerValue, 8);
+                this.regR = (byte)registerValue;
+                break;
+                
             case "BC":
                 checkValueSize(registerValue, 16);
                 try {
@@ -3436,6 +3555,66 @@ public class Z80Debugger extends Z80 implements Debugger {
         }
     }
     
+    /**
+     * Returns a function that reads a register field directly
+     * 
+     * @param registerName (String) the register name
+     * @return the register reader (LongSupplier)
+     * @throws IllegalRegisterException if the register does not exist
+     */
+    @Override
+    public LongSupplier getRegisterReader(String registerName) throws IllegalRegisterException {
+        switch (registerName) {
+            case "A":
+                return () -> Byte.toUnsignedLong(this.regA);
+                
+            case "F":
+                return () -> Byte.toUnsignedLong(this.regF);
+                
+            case "B":
+                return () -> Byte.toUnsignedLong(this.regB);
+                
+            case "C":
+                return () -> Byte.toUnsignedLong(this.regC);
+                
+            case "D":
+                return () -> Byte.toUnsignedLong(this.regD);
+                
+            case "E":
+                return () -> Byte.toUnsignedLong(this.regE);
+                
+            case "H":
+                return () -> Byte.toUnsignedLong(this.regH);
+                
+            case "L":
+                return () -> Byte.toUnsignedLong(this.regL);
+                
+            case "BC":
+                return () -> (Byte.toUnsignedLong(this.regB) << 8) | Byte.toUnsignedLong(this.regC);
+                
+            case "DE":
+                return () -> (Byte.toUnsignedLong(this.regD) << 8) | Byte.toUnsignedLong(this.regE);
+                
+            case "HL":
+                return () -> (Byte.toUnsignedLong(this.regH) << 8) | Byte.toUnsignedLong(this.regL);
+                
+            case "PC":
+                return () -> Short.toUnsignedLong(this.regPC);
+                
+            case "SP":
+                return () -> Short.toUnsignedLong(this.regSP);
+                
+            case "IX":
+                return () -> Short.toUnsignedLong(this.regIX);
+                
+            case "IY":
+                return () -> Short.toUnsignedLong(this.regIY);
+                
+            default:
+                return Debugger.super.getRegisterReader(registerName);
+        }
+    }
+    
     @Override
     public long getProgramCounter() {
         return Short.toUnsignedLong(this.regPC);
@@ -3513,7 +3692,33 @@ public class Z80Debugger extends Z80 implements Debugger {
 
     @Override
     public byte readMemoryByte(long address) throws MemoryException {
-        return this.readMemory8(address);
+        return this.peekMemory8(address);
+    }
+    
+    /**
+     * Read an (8 bit) byte from memory without triggering watchpoints, used
+     * by the disassembler and the memory views
+     * 
+     * @param address (long) the memory address
+     * @return the memory content (byte)
+     * @throws MemoryException if the address is not in the memory range
+     */
+    protected byte peekMemory8(long address) throws MemoryException {
+        return this.memoryBus.peekByte(address);
+    }
+    
+    /**
+     * Read a (16 bit) short from memory without triggering watchpoints
+     * 
+     * @param address (long) the memory address
+     * @return the memory content (short)
+     * @throws MemoryException if the address is not in the memory range
+     */
+    protected short peekMemory16(long address) throws MemoryException {
+        byte lowByte = peekMemory8(address);
+        byte highByte = peekMemory8(address + 1);
+        
+        return (short)(Byte.toUnsignedInt(lowByte) | (Byte.toUnsignedInt(highByte) << 8));
     }
     
     @Override
@@ -3521,6 +3726,52 @@ public class Z80Debugger extends Z80 implements Debugger {
         this.writeMemory8(address, value);
     }
     
+    @Override
+    public void setWatchpoints(WatchpointSet watchpoints) {
+        if(this.watchpoints != null)
+            this.watchpoints.uninstall();
+        
+        this.watchpoints = watchpoints;
+        if(watchpoints != null)
+            watchpoints.install(this.memoryBus, this.IOBlocks);
+    }
+    
+    @Override
+    public WatchpointSet getWatchpoints() {
+        return this.watchpoints;
+    }
+    
+    @Override
+    public void setMemoryBus(MemoryBus memoryBus) {
+        super.setMemoryBus(memoryBus);
+        
+        // move the watchpoints to the new bus
+        if(this.watchpoints != null)
+            this.watchpoints.install(memoryBus, this.IOBlocks);
+    }
+    
+    /**
+     * Runs the next opcode and reports the address of the instruction to the
+     * watchpoints (if there are any)
+     * 
+     * @return the number of cycles (int)
+     * @throws MemoryException if a memory access failed
+     * @throws OpCodeException if the opcode is not valid
+     */
+    @Override
+    public int runNextOpCode() throws MemoryException, OpCodeException {
+        if(this.watchpoints == null)
+            return super.runNextOpCode();
+        
+        long programCounter = getProgramCounter();
+        try {
+            return super.runNextOpCode();
+        }
+        finally {
+            this.watchpoints.completeInstruction(programCounter);
+        }
+    }
+    
     protected String getRegisterName8(int registerNum) throws OpCodeException {
         switch (registerNum) {
             case 0x00:
@@ -3600,7 +3851,7 @@ public class Z80Debugger extends Z80 implements Debugger {
     }
     
     protected CodeAndLength getCodeAndLengthCB(long address) throws MemoryException, OpCodeException {
-        byte byte2 = this.readMemory8(address);
+        byte byte2 = this.peekMemory8(address);
         
         switch (Byte.toUnsignedInt(byte2)) {
             case 0x00:  // RLC B
@@ -3897,8 +4148,8 @@ public class Z80Debugger extends Z80 implements Debugger {
     }
     
     protected CodeAndLength getCodeAndLengthDDCB(long address, String IXIY) throws MemoryException, OpCodeException {
-        int dd = Byte.toUnsignedInt(this.readMemory8(address));
-        int byte3 = Byte.toUnsignedInt(this.readMemory8(address+1));
+        int dd = Byte.toUnsignedInt(this.peekMemory8(address));
+        int byte3 = Byte.toUnsignedInt(this.peekMemory8(address+1));
         
         switch (byte3) {
             case 0x06:  // RLC (In+d)
@@ -3958,7 +4209,7 @@ public class Z80Debugger extends Z80 implements Debugger {
     }
     
     protected CodeAndLength getCodeAndLengthDD(long address, String IXIY) throws MemoryException, OpCodeException {
-        byte byte2 = this.readMemory8(address);
+        byte byte2 = this.peekMemory8(address);
         int nn;
         int dd;
         
@@ -3970,11 +4221,11 @@ public class Z80Debugger extends Z80 implements Debugger {
                 return new CodeAndLength(2, "ADD " + IXIY + ", DE");
                 
             case 0x21:  // LD In, nn
-                nn = Short.toUnsignedInt(this.readMemory16(address+1));
+                nn = Short.toUnsignedInt(this.peekMemory16(address+1));
                 return new CodeAndLength(4, "LD " + IXIY + ", $" + Integer.toHexString(nn));
                 
             case 0x22:  // LD (nn), In
-                nn = Short.toUnsignedInt(this.readMemory16(address+1));
+                nn = Short.toUnsignedInt(this.peekMemory16(address+1));
                 return new CodeAndLength(4, "LD ($" + Integer.toHexString(nn) + "), " + IXIY);
                 
             case 0x23:  // INC In
@@ -3984,23 +4235,23 @@ public class Z80Debugger extends Z80 implements Debugger {
                 return new CodeAndLength(2, "ADD " + IXIY + ", " + IXIY);
                 
             case 0x2A:  // LD In, (nn)
-                nn = Short.toUnsignedInt(this.readMemory16(address+1));
+                nn = Short.toUnsignedInt(this.peekMemory16(address+1));
                 return new CodeAndLength(4, "LD " + IXIY + ", ($" + Integer.toHexString(nn) + ")");
                 
             case 0x2B:  // DEC In
                 return new CodeAndLength(2, "DEC " + IXIY);
                 
             case 0x34:  // INC (In+d)
-                nn = Byte.toUnsignedInt(this.readMemory8(address+1));
+                nn = Byte.toUnsignedInt(this.peekMemory8(address+1));
                 return new CodeAndLength(3, "INC (" + IXIY + "+$" + Integer.toHexString(nn) + ")");
                 
             case 0x35:  // DEC (In+d)
-                nn = Byte.toUnsignedInt(this.readMemory8(address+1));
+                nn = Byte.toUnsignedInt(this.peekMemory8(address+1));
                 return new CodeAndLength(3, "DEC (" + IXIY + "+$" + Integer.toHexString(nn) + ")");
                 
             case 0x36:  // LD (In+d), n
-                dd = Byte.toUnsignedInt(this.readMemory8(address+1));
-                nn = Byte.toUnsignedInt(this.readMemory8(address+2));
+                dd = Byte.toUnsignedInt(this.peekMemory8(address+1));
+                nn = Byte.toUnsignedInt(this.peekMemory8(address+2));
                 return new CodeAndLength(4, "LD (" + IXIY + "+$" + Integer.toHexString(dd) + "), $" + Integer.toHexString(nn));
                 
             case 0x39:  // ADD In, SP
@@ -4013,7 +4264,7 @@ public class Z80Debugger extends Z80 implements Debugger {
             case 0x66:  // LD H, (In+d)
             case 0x6E:  // LD L, (In+d)
             case 0x7E:  // LD A, (In+d)
-                dd = Byte.toUnsignedInt(this.readMemory8(address+1));
+                dd = Byte.toUnsignedInt(this.peekMemory8(address+1));
                 return new CodeAndLength(3, "LD " + getRegisterName8((byte2 & 0x38) >> 3) + ", (" + IXIY + "+$" + Integer.toHexString(dd) + ")");
                 
             case 0x70:  // LD (In+d), B
@@ -4023,39 +4274,39 @@ public class Z80Debugger extends Z80 implements Debugger {
             case 0x74:  // LD (In+d), H
             case 0x75:  // LD (In+d), L
             case 0x77:  // LD (In+d), A
-                dd = Byte.toUnsignedInt(this.readMemory8(address+1));
+                dd = Byte.toUnsignedInt(this.peekMemory8(address+1));
                 return new CodeAndLength(3, "LD (" + IXIY + "+$" + Integer.toHexString(dd) + "), " + getRegisterName8((byte2 & 0x07)));
                 
             case 0x86:  // ADD A, (In+d)
-                dd = Byte.toUnsignedInt(this.readMemory8(address+1));
+                dd = Byte.toUnsignedInt(this.peekMemory8(address+1));
                 return new CodeAndLength(3, "ADD A, (" + IXIY + "+$" + Integer.toHexString(dd) + ")");
                 
             case 0x8E:  // ADC A, (In+d)                
-                dd = Byte.toUnsignedInt(this.readMemory8(address+1));
+                dd = Byte.toUnsignedInt(this.peekMemory8(address+1));
                 return new CodeAndLength(3, "ADC A, (" + IXIY + "+$" + Integer.toHexString(dd) + ")");
                 
             case 0x96:  // SUB A, (In+d)
-                dd = Byte.toUnsignedInt(this.readMemory8(address+1));
+                dd = Byte.toUnsignedInt(this.peekMemory8(address+1));
                 return new CodeAndLength(3, "SUB A, (" + IXIY + "+$" + Integer.toHexString(dd) + ")");
                 
             case 0x9E:  // SBC A, (In+d)
-                dd = Byte.toUnsignedInt(this.readMemory8(address+1));
+                dd = Byte.toUnsignedInt(this.peekMemory8(address+1));
                 return new CodeAndLength(3, "SBC A, (" + IXIY + "+$" + Integer.toHexString(dd) + ")");
                 
             case 0xA6:  // AND A, (In+d)
-                dd = Byte.toUnsignedInt(this.readMemory8(address+1));
+                dd = Byte.toUnsignedInt(this.peekMemory8(address+1));
                 return new CodeAndLength(3, "AND A, (" + IXIY + "+$" + Integer.toHexString(dd) + ")");
                 
             case 0xAE:  // XOR A, (In+d)
-                dd = Byte.toUnsignedInt(this.readMemory8(address+1));
+                dd = Byte.toUnsignedInt(this.peekMemory8(address+1));
                 return new CodeAndLength(3, "XOR A, (" + IXIY + "+$" + Integer.toHexString(dd) + ")");
                 
             case 0xB6:  // OR A, (In+d)
-                dd = Byte.toUnsignedInt(this.readMemory8(address+1));
+                dd = Byte.toUnsignedInt(this.peekMemory8(address+1));
                 return new CodeAndLength(3, "OR A, (" + IXIY + "+$" + Integer.toHexString(dd) + ")");
                 
             case 0xBE:  // CP A, (In+d)
-                dd = Byte.toUnsignedInt(this.readMemory8(address+1));
+                dd = Byte.toUnsignedInt(this.peekMemory8(address+1));
                 return new CodeAndLength(3, "CP A, (" + IXIY + "+$" + Integer.toHexString(dd) + ")");
                 
             case 0xCB:  // sub Opcode CB
@@ -4082,7 +4333,7 @@ public class Z80Debugger extends Z80 implements Debugger {
     }
     
     protected CodeAndLength getCodeAndLengthED(long address) throws MemoryException, OpCodeException {
-        int byte2 = Byte.toUnsignedInt(this.readMemory8(address));
+        int byte2 = Byte.toUnsignedInt(this.peekMemory8(address));
         int nn;
         
         switch (byte2) {
@@ -4114,7 +4365,7 @@ public class Z80Debugger extends Z80 implements Debugger {
             case 0x53:  // LD (nn), DE
             case 0x63:  // LD (nn), HL
             case 0x73:  // LD (nn), SP
-                nn = Short.toUnsignedInt(this.readMemory16(address+1));
+                nn = Short.toUnsignedInt(this.peekMemory16(address+1));
                 return new CodeAndLength(4, "LD ($" + Integer.toHexString(nn) + "), " + getRegisterName16((byte2 & 0x30) >> 4));
                 
             case 0x44:  // NEG
@@ -4139,7 +4390,7 @@ public class Z80Debugger extends Z80 implements Debugger {
             case 0x5B:  // LD DE, (nn)
             case 0x6B:  // LD HL, (nn)
             case 0x7B:  // LD SP, (nn)
-                nn = Short.toUnsignedInt(this.readMemory16(address+1));
+                nn = Short.toUnsignedInt(this.peekMemory16(address+1));
                 return new CodeAndLength(4, "LD " + getRegisterName16((byte2 & 0x30) >> 4) + ", ($" + Integer.toHexString(nn) + ")");
                 
             case 0x4D:  // RETI
@@ -4221,7 +4472,7 @@ public class Z80Debugger extends Z80 implements Debugger {
     
     @Override
     public CodeAndLength getCodeAndLength(long address) throws MemoryException, OpCodeException {
-        byte byte1 = this.readMemory8(address);
+        byte byte1 = this.peekMemory8(address);
         int nn;
         
         switch (Byte.toUnsignedInt(byte1)) {
@@ -4232,7 +4483,7 @@ public class Z80Debugger extends Z80 implements Debugger {
             case 0x11:  // LD DE, nn
             case 0x21:  // LD HL, nn
             case 0x31:  // LD SP, nn
-                nn = Short.toUnsignedInt(this.readMemory16(address + 1));
+                nn = Short.toUnsignedInt(this.peekMemory16(address + 1));
                 return new CodeAndLength(3, "LD " + getRegisterName16((byte1 & 0x30) >> 4) + ", $" + Integer.toHexString(nn));
                 
             case 0x02:  // LD (BC), A
@@ -4270,7 +4521,7 @@ public class Z80Debugger extends Z80 implements Debugger {
             case 0x26:  // LD H, n
             case 0x2E:  // LD L, n
             case 0x3E:  // LD A, n
-                nn = Byte.toUnsignedInt(this.readMemory8(address + 1));
+                nn = Byte.toUnsignedInt(this.peekMemory8(address + 1));
                 return new CodeAndLength(2, "LD " + getRegisterName8((byte1 & 0x38)>>3) + ", $" + Integer.toHexString(nn));
                 
             case 0x07:  // RLCA
@@ -4298,14 +4549,14 @@ public class Z80Debugger extends Z80 implements Debugger {
                 return new CodeAndLength(1, "RRCA");
                 
             case 0x10:  // DJNZ n
-                nn = Byte.toUnsignedInt(this.readMemory8(address+1));
+                nn = Byte.toUnsignedInt(this.peekMemory8(address+1));
                 return new CodeAndLength(2, "DJNZ $" + Integer.toHexString(nn));
                 
             case 0x17:  // RLA
                 return new CodeAndLength(1, "RLA");
                 
             case 0x18:  // JR n
-                nn = Byte.toUnsignedInt(this.readMemory8(address+1));
+                nn = Byte.toUnsignedInt(this.peekMemory8(address+1));
                 return new CodeAndLength(2, "JR $" + Integer.toHexString(nn));
                 
             case 0x1A:  // LD A, (DE)
@@ -4318,25 +4569,25 @@ public class Z80Debugger extends Z80 implements Debugger {
             case 0x28:  // JRZ n
             case 0x30:  // JRNC n
             case 0x38:  // JRC n
-                nn = Byte.toUnsignedInt(this.readMemory8(address+1));
+                nn = Byte.toUnsignedInt(this.peekMemory8(address+1));
                 return new CodeAndLength(2, "JR" + getConditionName((byte1 & 0x18) >> 3) + " $" + Integer.toHexString(nn));
                 
             case 0x22:  // LD (nn), HL
-                nn = Short.toUnsignedInt(this.readMemory16(address+1));
+                nn = Short.toUnsignedInt(this.peekMemory16(address+1));
                 return new CodeAndLength(3, "LD ($" + Integer.toHexString(nn) + "), HL");
                 
             case 0x27:  // DAA
                 return new CodeAndLength(1, "DAA");
                 
             case 0x2A:  // LD HL, (nn)
-                nn = Short.toUnsignedInt(this.readMemory16(address+1));
+                nn = Short.toUnsignedInt(this.peekMemory16(address+1));
                 return new CodeAndLength(3, "LD HL, ($" + Integer.toHexString(nn) + ")");
                 
             case 0x2F:  // CPL
                 return new CodeAndLength(1, "CPL");
                 
             case 0x32:  // LD (nn), A
-                nn = Short.toUnsignedInt(this.readMemory16(address+1));
+                nn = Short.toUnsignedInt(this.peekMemory16(address+1));
                 return new CodeAndLength(3, "LN ($" + Integer.toHexString(nn) + "), A");
                 
             case 0x34:  // INC (HL)
@@ -4346,14 +4597,14 @@ public class Z80Debugger extends Z80 implements Debugger {
                 return new CodeAndLength(1, "DEC (HL)");
                 
             case 0x36:  // LD (HL), n
-                nn = Byte.toUnsignedInt(this.readMemory8(address+1));
+                nn = Byte.toUnsignedInt(this.peekMemory8(address+1));
                 return new CodeAndLength(2, "LD (HL), $" + Integer.toHexString(nn));
                 
             case 0x37:  // SCF
                 return new CodeAndLength(1, "SCF");
                 
             case 0x3A:  // LD A, (nn)
-                nn = Short.toUnsignedInt(this.readMemory16(address+1));
+                nn = Short.toUnsignedInt(this.peekMemory16(address+1));
                 return new CodeAndLength(3, "LN A, ($" + Integer.toHexString(nn) + ")");
                 
             case 0x3F:  // CCF
@@ -4546,11 +4797,11 @@ public class Z80Debugger extends Z80 implements Debugger {
             case 0xEA:  // JPE nn
             case 0xF2:  // JNS nn
             case 0xFA:  // JS nn
-                nn = Short.toUnsignedInt(this.readMemory16(address+1));
+                nn = Short.toUnsignedInt(this.peekMemory16(address+1));
                 return new CodeAndLength(3, "J" + getConditionName((byte1 & 0x38) >> 3) + " $" + Integer.toHexString(nn));
                 
             case 0xC3:  // JP nn
-                nn = Short.toUnsignedInt(this.readMemory16(address+1));
+                nn = Short.toUnsignedInt(this.peekMemory16(address+1));
                 return new CodeAndLength(3, "JP $" + Integer.toHexString(nn));
                 
             case 0xC4:  // CALLNZ nn
@@ -4561,7 +4812,7 @@ public class Z80Debugger extends Z80 implements Debugger {
             case 0xEC:  // CALLPE nn
             case 0xF4:  // CALLNS nn
             case 0xFC:  // CALLS nn
-                nn = Short.toUnsignedInt(this.readMemory16(address+1));
+                nn = Short.toUnsignedInt(this.peekMemory16(address+1));
                 return new CodeAndLength(3, "CALL" + getConditionName((byte1 & 0x38) >> 3) + " $" + Integer.toHexString(nn));
                 
             case 0xC5:  // PUSH BC
@@ -4573,7 +4824,7 @@ public class Z80Debugger extends Z80 implements Debugger {
                 return new CodeAndLength(1, "PUSH AF");
                 
             case 0xC6:  // ADD A, n
-                nn = Byte.toUnsignedInt(this.readMemory8(address+1));
+                nn = Byte.toUnsignedInt(this.peekMemory8(address+1));
                 return new CodeAndLength(2, "ADD A, $" + Integer.toHexString(nn));
                 
             case 0xC7:  // RST 00h
@@ -4596,22 +4847,22 @@ public class Z80Debugger extends Z80 implements Debugger {
                 return getCodeAndLengthCB(address+1);
                 
             case 0xCD:  // CALL nn
-                nn = Short.toUnsignedInt(this.readMemory16(address+1));
+                nn = Short.toUnsignedInt(this.peekMemory16(address+1));
                 return new CodeAndLength(3, "CALL $" + Integer.toHexString(nn));
                 
             case 0xCE:  // ADC A, n
-                nn = Byte.toUnsignedInt(this.readMemory8(address+1));
+                nn = Byte.toUnsignedInt(this.peekMemory8(address+1));
                 return new CodeAndLength(2, "ADC A, $" + Integer.toHexString(nn));
                 
             case 0xD0:  // RETNC
                 return new CodeAndLength(1, "RETNC");
                 
             case 0xD3:  // OUT (n), A
-                nn = Byte.toUnsignedInt(this.readMemory8(address+1));
+                nn = Byte.toUnsignedInt(this.peekMemory8(address+1));
                 return new CodeAndLength(2, "OUT ($" + Integer.toHexString(nn) + "), A");
                 
             case 0xD6:  // SUB A, n
-                nn = Byte.toUnsignedInt(this.readMemory8(address+1));
+                nn = Byte.toUnsignedInt(this.peekMemory8(address+1));
                 return new CodeAndLength(2, "SUB A, $" + Integer.toHexString(nn));
                 
             case 0xD8:  // RETC
@@ -4621,14 +4872,14 @@ public class Z80Debugger extends Z80 implements Debugger {
                 return new CodeAndLength(1, "EXX");
                 
             case 0xDB:  // IN A, (n)
-                nn = Byte.toUnsignedInt(this.readMemory8(address+1));
+                nn = Byte.toUnsignedInt(this.peekMemory8(address+1));
                 return new CodeAndLength(2, "IN A, ($" + Integer.toHexString(nn) + ")");
                 
             case 0xDD:  // OpCodeDD
                 return getCodeAndLengthDD(address+1, "IX");
                 
             case 0xDE:  // SBC A, n
-                nn = Byte.toUnsignedInt(this.readMemory8(address+1));
+                nn = Byte.toUnsignedInt(this.peekMemory8(address+1));
                 return new CodeAndLength(2, "SBC A, $" + Integer.toHexString(nn));
                 
             case 0xE0:  // RETPO
@@ -4638,7 +4889,7 @@ public class Z80Debugger extends Z80 implements Debugger {
                 return new CodeAndLength(1, "EX (SP), HL");
                 
             case 0xE6:  // AND A, n
-                nn = Byte.toUnsignedInt(this.readMemory8(address+1));
+                nn = Byte.toUnsignedInt(this.peekMemory8(address+1));
                 return new CodeAndLength(2, "AND A, $" + Integer.toHexString(nn));
                 
             case 0xE8:  // RETPE
@@ -4654,7 +4905,7 @@ public class Z80Debugger extends Z80 implements Debugger {
                 return getCodeAndLengthED(address+1);
                 
             case 0xEE:  // XOR A, n
-                nn = Byte.toUnsignedInt(this.readMemory8(address+1));
+                nn = Byte.toUnsignedInt(this.peekMemory8(address+1));
                 return new CodeAndLength(2, "XOR A, $" + Integer.toHexString(nn));
                 
             case 0xF0:  // RETNS
@@ -4664,7 +4915,7 @@ public class Z80Debugger extends Z80 implements Debugger {
                 return new CodeAndLength(1, "DI");
                 
             case 0xF6:  // OR A, n
-                nn = Byte.toUnsignedInt(this.readMemory8(address+1));
+                nn = Byte.toUnsignedInt(this.peekMemory8(address+1));
                 return new CodeAndLength(2, "OR A, $" + Integer.toHexString(nn));
                 
             case 0xF8:  // RETS
@@ -4680,7 +4931,7 @@ public class Z80Debugger extends Z80 implements Debugger {
                 return getCodeAndLengthDD(address+1, "IY");
                 
             case 0xFE:  // CP A, n
-                nn = Byte.toUnsignedInt(this.readMemory8(address+1));
+                nn = Byte.toUnsignedInt(this.peekMemory8(address+1));
                 return new CodeAndLength(2, "CP A, $" + Integer.toHexString(nn));
                 
             default:
@@ -4688,6 +4939,11 @@ public class Z80Debugger extends Z80 implements Debugger {
         }
     }
     
+    @Override
+    public Map<String, Debugger.Mnemonic> getMnemonics() {
+        return MNEMONICS;
+    }
+    
     /**
      * Returns the bytecode for a given assembler mnemonic
      * 
@@ -4697,29 +4953,16 @@ public class Z80Debugger extends Z80 implements Debugger {
      */
     @Override
     public byte[] translate(String mnemonic) throws SyntaxErrorException {
-        mnemonic = mnemonic.toUpperCase();
-        StringTokenizer st = new StringTokenizer(mnemonic);
-        
-        String mnem1 = st.nextToken();
-        
-        try {
-            String className = "org.ansic.micro.Z80Debugger$" + mnem1;
-            Class theClass = Class.forName(className);
-            Object theObj = theClass.newInstance();
-            
-            Mnemonic mnem = (Mnemonic)theObj;
+        synchronized(this.tokenizer) {
+            this.tokenizer.reset(mnemonic);
+            if(!this.tokenizer.hasMoreTokens())
+                throw new SyntaxErrorException("Syntax error in <" + mnemonic + ">");
             
+            Debugger.Mnemonic mnem = MNEMONICS.get(this.tokenizer.nextToken());
+            if(mnem == null)
+                throw new SyntaxErrorException("Syntax error in <" + mnemonic + ">");
             
-            byte[] opCodes = mnem.getOpCodes(st);
-            
-            return opCodes;
-        }
-        catch (SyntaxErrorException sex) {
-            throw sex;
-        }
-        catch (ClassNotFoundException | IllegalAccessException | InstantiationException ex) {
-            Logger.getLogger(DebuggerGUI.class.getName()).log(Level.SEVERE, null, ex);
-            throw new SyntaxErrorException("Syntax error in <" + mnemonic + ">");
+            return mnem.getOpCodes(this.tokenizer);
         }
     }
     